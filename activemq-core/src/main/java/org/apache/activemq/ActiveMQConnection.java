@@ -21,8 +21,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -68,6 +70,8 @@ import org.apache.activemq.command.ControlCommand;
 import org.apache.activemq.command.DestinationInfo;
 import org.apache.activemq.command.ExceptionResponse;
 import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageAckBatch;
 import org.apache.activemq.command.MessageDispatch;
 import org.apache.activemq.command.MessageId;
 import org.apache.activemq.command.ProducerAck;
@@ -78,6 +82,8 @@ import org.apache.activemq.command.Response;
 import org.apache.activemq.command.SessionId;
 import org.apache.activemq.command.ShutdownInfo;
 import org.apache.activemq.command.WireFormatInfo;
+import org.apache.activemq.compression.CompressionCodec;
+import org.apache.activemq.compression.DeflateCodec;
 import org.apache.activemq.management.JMSConnectionStatsImpl;
 import org.apache.activemq.management.JMSStatsImpl;
 import org.apache.activemq.management.StatsCapable;
@@ -132,6 +138,8 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
     private boolean optimizedMessageDispatch = true;
     private boolean copyMessageOnSend = true;
     private boolean useCompression;
+    private CompressionCodec compressionCodec;
+    private int compressionThreshold;
     private boolean objectMessageSerializationDefered;
     private boolean useAsyncSend;
     private boolean optimizeAcknowledge;
@@ -190,6 +198,34 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
     private long consumerFailoverRedeliveryWaitPeriod;
     private Scheduler scheduler;
     private boolean messagePrioritySupported = true;
+    private boolean useRingBufferDispatchChannel;
+    private int producerBatchSize;
+    private long producerBatchLinger = 5;
+    private int producerMaxInFlightSends;
+    private boolean inlineListenerDispatch;
+    private int sessionDispatchBatchSize = 1;
+    private long ackCoalescingInterval;
+    private int ackCoalescingMaxAcks = 1000;
+    // acks waiting to be sent, the lock is not held while writing to the
+    // transport as the transport may be interrupted holding its own lock
+    private final List<MessageAck> pendingAcks = new ArrayList<MessageAck>();
+    // held while the taken acks are written so no other command can
+    // overtake them, taken before the pendingAcks lock
+    private final Object ackSendMutex = new Object();
+    private long firstPendingAckTime;
+    private boolean ackFlushScheduled;
+    private final Runnable ackFlushTask = new Runnable() {
+        public void run() {
+            synchronized (pendingAcks) {
+                ackFlushScheduled = false;
+            }
+            try {
+                flushPendingAcks();
+            } catch (JMSException e) {
+                onAsyncException(e);
+            }
+        }
+    };
     private boolean transactedIndividualAck = false;
     private boolean nonBlockingRedelivery = false;
 
@@ -629,6 +665,24 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
                         }
                     }
 
+                    // a failed flush must not stop the close, the first
+                    // failure is thrown once the connection is closed
+                    JMSException flushFailure = null;
+                    if (!transportFailed.get()) {
+                        for (Iterator<ActiveMQSession> i = this.sessions.iterator(); i.hasNext();) {
+                            ActiveMQSession s = i.next();
+                            if (!s.isTransacted()) {
+                                try {
+                                    s.flushProducerBatches();
+                                } catch (JMSException e) {
+                                    if (flushFailure == null) {
+                                        flushFailure = e;
+                                    }
+                                }
+                            }
+                        }
+                    }
+
                     long lastDeliveredSequenceId = 0;
                     for (Iterator<ActiveMQSession> i = this.sessions.iterator(); i.hasNext();) {
                         ActiveMQSession s = i.next();
@@ -656,6 +710,10 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
                         c.delete();
                     }
 
+                    if (!transportFailed.get()) {
+                        flushPendingAcks();
+                    }
+
                     if (isConnectionInfoSentToBroker) {
                         // If we announced ourselfs to the broker.. Try to let
                         // the broker
@@ -677,6 +735,10 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
                     }
                     closed.set(true);
                     closing.set(false);
+
+                    if (flushFailure != null) {
+                        throw flushFailure;
+                    }
                 }
             }
         } finally {
@@ -1264,11 +1326,79 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
     public void asyncSendPacket(Command command) throws JMSException {
         if (isClosed()) {
             throw new ConnectionClosedException();
-        } else {
+        } else if (!command.isMessageAck() || !coalesceAck((MessageAck) command)) {
+            flushPendingAcks();
             doAsyncSendPacket(command);
         }
     }
 
+    /**
+     * Holds a standard ack to be sent with the other acks of the connection,
+     * returns false if the ack has to be sent now.
+     */
+    private boolean coalesceAck(MessageAck ack) throws JMSException {
+        if (ackCoalescingInterval <= 0 || !ack.isStandardAck() || ack.isResponseRequired() || closing.get()) {
+            return false;
+        }
+        // got before taking the lock, close holds the connection's monitor
+        // while it sends
+        Scheduler scheduler = getScheduler();
+        boolean flush = false;
+        synchronized (pendingAcks) {
+            long now = System.currentTimeMillis();
+            if (pendingAcks.isEmpty()) {
+                firstPendingAckTime = now;
+            }
+            pendingAcks.add(ack);
+            // the timer may run late, the first ack held must not wait for
+            // longer than the interval
+            if (pendingAcks.size() >= ackCoalescingMaxAcks || now - firstPendingAckTime >= ackCoalescingInterval) {
+                flush = true;
+            } else if (!ackFlushScheduled) {
+                ackFlushScheduled = true;
+                scheduler.executeAfterDelay(ackFlushTask, ackCoalescingInterval);
+            }
+        }
+        if (flush) {
+            flushPendingAcks();
+        }
+        return true;
+    }
+
+    /**
+     * Sends the acks held by the connection, called before any other command
+     * is sent so transaction commits, consumer removals and so on always
+     * follow the acks that were sent before them.
+     */
+    private void flushPendingAcks() throws JMSException {
+        if (ackCoalescingInterval > 0) {
+            synchronized (ackSendMutex) {
+                MessageAck[] acks;
+                synchronized (pendingAcks) {
+                    if (pendingAcks.isEmpty()) {
+                        return;
+                    }
+                    acks = pendingAcks.toArray(new MessageAck[pendingAcks.size()]);
+                    pendingAcks.clear();
+                }
+                sendAcks(acks);
+            }
+        }
+    }
+
+    // must hold the ackSendMutex
+    private void sendAcks(MessageAck[] acks) throws JMSException {
+        if (acks.length == 1 || getProtocolVersion() < MessageAckBatch.MINIMUM_VERSION) {
+            for (MessageAck ack : acks) {
+                doAsyncSendPacket(ack);
+            }
+        } else {
+            MessageAckBatch batch = new MessageAckBatch();
+            batch.setAcks(acks);
+            doAsyncSendPacket(batch);
+        }
+    }
+
     private void doAsyncSendPacket(Command command) throws JMSException {
         try {
             this.transport.oneway(command);
@@ -1291,6 +1421,7 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
             if (isClosed()) {
                 throw new ConnectionClosedException();
             }
+            flushPendingAcks();
             try {
                 this.transport.asyncRequest(command, new ResponseCallback() {
                     @Override
@@ -1345,6 +1476,8 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
         if (isClosed()) {
             throw new ConnectionClosedException();
         } else {
+            checkNotDispatchingInline();
+            flushPendingAcks();
 
             try {
                 Response response = (Response)this.transport.request(command);
@@ -1392,6 +1525,8 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
         if (isClosed() || closing.get()) {
             throw new ConnectionClosedException();
         } else {
+            checkNotDispatchingInline();
+            flushPendingAcks();
             return doSyncSendPacket(command, timeout);
         }
     }
@@ -1532,6 +1667,203 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
         this.messagePrioritySupported = messagePrioritySupported;
     }
 
+    /**
+     * @return true if consumers queue their prefetched messages in a lock free
+     *         ring buffer
+     */
+    public boolean isUseRingBufferDispatchChannel() {
+        return this.useRingBufferDispatchChannel;
+    }
+
+    /**
+     * Enables queueing the prefetched messages of consumers in a lock free
+     * ring buffer rather than a synchronized list, which lowers the latency of
+     * handing a message to a thread blocked in receive(). The ring buffer is
+     * FIFO, so client side priority ordering is not applied to consumers
+     * using it.
+     *
+     * @param useRingBufferDispatchChannel the useRingBufferDispatchChannel to set
+     */
+    public void setUseRingBufferDispatchChannel(boolean useRingBufferDispatchChannel) {
+        this.useRingBufferDispatchChannel = useRingBufferDispatchChannel;
+    }
+
+    /**
+     * @return the number of messages producers collect before sending them to
+     *         the broker in one batch, 0 when producers don't batch
+     */
+    public int getProducerBatchSize() {
+        return this.producerBatchSize;
+    }
+
+    /**
+     * Enables batching of the messages that producers send asynchronously.
+     * Such messages are collected and sent to the broker in one command once
+     * this many are pending or the linger time has passed, the broker stores
+     * the messages of a batch in one store transaction. Batching needs a
+     * broker that supports openwire version 9, with older brokers the
+     * messages are sent one by one.
+     *
+     * @param producerBatchSize the producerBatchSize to set, 0 disables
+     *                batching
+     */
+    public void setProducerBatchSize(int producerBatchSize) {
+        this.producerBatchSize = producerBatchSize;
+    }
+
+    /**
+     * @return the longest time in milliseconds a message is held in a pending
+     *         producer batch
+     */
+    public long getProducerBatchLinger() {
+        return this.producerBatchLinger;
+    }
+
+    /**
+     * @param producerBatchLinger the longest time in milliseconds a message is
+     *                held in a pending producer batch before the batch is sent
+     */
+    public void setProducerBatchLinger(long producerBatchLinger) {
+        this.producerBatchLinger = producerBatchLinger;
+    }
+
+    /**
+     * @return the number of synchronous sends a producer can have waiting
+     *         for the broker's response, 0 if each send waits for its own
+     */
+    public int getProducerMaxInFlightSends() {
+        return this.producerMaxInFlightSends;
+    }
+
+    /**
+     * Pipelines the synchronous sends of producers. A send that would wait
+     * for the broker's response returns once the message is on the wire, as
+     * long as fewer than this many sends of the producer are still waiting,
+     * so throughput is no longer bound by the round trip time. A send that
+     * fails is reported to its completion callback if it has one, otherwise
+     * it is thrown from the next send, flush or close of the producer.
+     *
+     * @param producerMaxInFlightSends the producerMaxInFlightSends to set, 0
+     *                makes each synchronous send wait for its response
+     */
+    public void setProducerMaxInFlightSends(int producerMaxInFlightSends) {
+        this.producerMaxInFlightSends = producerMaxInFlightSends;
+    }
+
+    /**
+     * @return true if the listener of a session with a single consumer can
+     *         be run on the transport thread
+     */
+    public boolean isInlineListenerDispatch() {
+        return this.inlineListenerDispatch;
+    }
+
+    /**
+     * Lets a session run the MessageListener of its consumer on the thread
+     * the message arrived on, rather than handing the message to the session
+     * thread, when the session has a single consumer with a listener, acks
+     * messages automatically, acks are sent asynchronously and no earlier
+     * message is still queued. The listener must not wait for responses from
+     * the broker, as they arrive on the thread it runs on. A synchronous send
+     * made by the listener completes like a pipelined send, regardless of the
+     * sendTimeout, and its failure is thrown from the next send or flush of
+     * the producer. Flushing or closing the producer, its session or the
+     * connection from the listener does not wait for such sends, a failure
+     * after the producer is closed is logged. Other synchronous requests
+     * fail. Either way the session goes back to using its own thread for the
+     * messages that follow.
+     *
+     * @param inlineListenerDispatch the inlineListenerDispatch to set
+     */
+    public void setInlineListenerDispatch(boolean inlineListenerDispatch) {
+        this.inlineListenerDispatch = inlineListenerDispatch;
+    }
+
+    /**
+     * @return the most messages a session thread delivers each time it runs
+     */
+    public int getSessionDispatchBatchSize() {
+        return this.sessionDispatchBatchSize;
+    }
+
+    /**
+     * Sets how many queued messages a session thread delivers to listeners
+     * each time it runs. The session thread is woken once for all the
+     * messages queued while it is waiting to run.
+     *
+     * @param sessionDispatchBatchSize the sessionDispatchBatchSize to set
+     */
+    public void setSessionDispatchBatchSize(int sessionDispatchBatchSize) {
+        this.sessionDispatchBatchSize = Math.max(1, sessionDispatchBatchSize);
+    }
+
+    /**
+     * @return the longest time in milliseconds an ack is held to be sent with
+     *         other acks, 0 if acks are sent as they are made
+     */
+    public long getAckCoalescingInterval() {
+        return this.ackCoalescingInterval;
+    }
+
+    /**
+     * Coalesces the standard acks of all the consumers of the connection
+     * that are sent asynchronously. Acks made within the interval go to the
+     * broker together in one command, sent once the interval has passed since
+     * the first of them, once ackCoalescingMaxAcks are held, or before any
+     * other command of the connection, such as a transaction commit or a
+     * consumer close, is sent.
+     *
+     * @param ackCoalescingInterval the ackCoalescingInterval to set in
+     *                milliseconds, 0 to send each ack as it is made
+     */
+    public void setAckCoalescingInterval(long ackCoalescingInterval) {
+        this.ackCoalescingInterval = ackCoalescingInterval;
+    }
+
+    /**
+     * @return the most acks held before they are sent
+     */
+    public int getAckCoalescingMaxAcks() {
+        return this.ackCoalescingMaxAcks;
+    }
+
+    /**
+     * @param ackCoalescingMaxAcks the most acks held before they are sent
+     */
+    public void setAckCoalescingMaxAcks(int ackCoalescingMaxAcks) {
+        this.ackCoalescingMaxAcks = Math.min(MessageAckBatch.MAX_ACKS, Math.max(1, ackCoalescingMaxAcks));
+    }
+
+    /**
+     * Moves a session running a listener inline on the calling thread back
+     * to its own thread for the messages that follow, the listener can't
+     * wait for responses from the broker.
+     *
+     * @return true if the calling thread is running a listener of this
+     *         connection inline
+     */
+    boolean leaveInlineDispatch() {
+        if (inlineListenerDispatch) {
+            ActiveMQSessionExecutor executor = ActiveMQSessionExecutor.getInlineDispatch(this);
+            if (executor != null) {
+                executor.disableInlineDispatch();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fails a request that would wait for the broker's response on a thread
+     * that is running a listener inline, the response could never be read.
+     */
+    void checkNotDispatchingInline() throws JMSException {
+        if (leaveInlineDispatch()) {
+            throw new IllegalStateException("A listener run on the transport thread can't wait for a response from the broker,"
+                                            + " disable inlineListenerDispatch or use async sends");
+        }
+    }
+
     /**
      * Cleans up this connection so that it's state is as if the connection was
      * just created. This allows the Resource Adapter to clean up a connection
@@ -1738,7 +2070,9 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
     }
 
     /**
-     * @param sendTimeout the sendTimeout to set
+     * @param sendTimeout the sendTimeout to set, not applied to sends made by
+     *                a listener run inline, see
+     *                {@link #setInlineListenerDispatch(boolean)}
      */
     public void setSendTimeout(int sendTimeout) {
         this.sendTimeout = sendTimeout;
@@ -1815,7 +2149,11 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
                             // browse.
                             Message msg = md.getMessage();
                             if (msg != null) {
-                                msg = msg.copy();
+                                // a dispatch read from the wire with recycling
+                                // enabled is not shared with anything
+                                if (md.getMessagePool() == null) {
+                                    msg = msg.copy();
+                                }
                                 msg.setReadOnlyBody(true);
                                 msg.setReadOnlyProperties(true);
                                 msg.setRedeliveryCounter(md.getRedeliveryCounter());
@@ -1970,6 +2308,10 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
     }
 
     public void transportInterupted() {
+        // the consumers expect the unacked messages to be redelivered
+        synchronized (pendingAcks) {
+            pendingAcks.clear();
+        }
         this.transportInterruptionProcessingComplete = new CountDownLatch(dispatchers.size() - (advisoryConsumer != null ? 1:0));
         if (LOG.isDebugEnabled()) {
             LOG.debug("transport interrupted, dispatchers: " + transportInterruptionProcessingComplete.getCount());
@@ -2081,6 +2423,33 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
         this.useCompression = useCompression;
     }
 
+    public CompressionCodec getCompressionCodec() {
+        if (compressionCodec == null) {
+            compressionCodec = new DeflateCodec();
+        }
+        return compressionCodec;
+    }
+
+    /**
+     * Sets the codec used to compress message bodies when compression is
+     * enabled, defaults to a {@link DeflateCodec}
+     */
+    public void setCompressionCodec(CompressionCodec compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Sets the minimum size in bytes of a message body before it is
+     * compressed, smaller bodies are sent as is
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
     public void destroyDestination(ActiveMQDestination destination) throws JMSException {
 
         checkClosedOrFailed();
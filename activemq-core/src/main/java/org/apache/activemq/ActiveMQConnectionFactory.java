@@ -16,6 +16,7 @@
  */
 package org.apache.activemq;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
@@ -36,6 +37,8 @@ import javax.jms.TopicConnectionFactory;
 import javax.naming.Context;
 
 import org.apache.activemq.blob.BlobTransferPolicy;
+import org.apache.activemq.compression.CompressionCodecFactory;
+import org.apache.activemq.compression.DeflateCodec;
 import org.apache.activemq.jndi.JNDIBaseStorable;
 import org.apache.activemq.management.JMSStatsImpl;
 import org.apache.activemq.management.StatsCapable;
@@ -99,6 +102,9 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
     private long optimizeAcknowledgeTimeOut = 300;
     private boolean copyMessageOnSend = true;
     private boolean useCompression;
+    private String compressionCodec = DeflateCodec.NAME;
+    private int compressionThreshold;
+    private byte[] compressionDictionary;
     private boolean objectMessageSerializationDefered;
     private boolean useAsyncSend;
     private boolean optimizeAcknowledge;
@@ -121,6 +127,14 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
     private boolean checkForDuplicates = true;
     private ClientInternalExceptionListener clientInternalExceptionListener;
     private boolean messagePrioritySupported = true;
+    private boolean useRingBufferDispatchChannel;
+    private int producerBatchSize;
+    private long producerBatchLinger = 5;
+    private long ackCoalescingInterval;
+    private int ackCoalescingMaxAcks = 1000;
+    private int producerMaxInFlightSends;
+    private boolean inlineListenerDispatch;
+    private int sessionDispatchBatchSize = 1;
     private boolean transactedIndividualAck = false;
     private boolean nonBlockingRedelivery = false;
 
@@ -308,6 +322,14 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         connection.setOptimizedMessageDispatch(isOptimizedMessageDispatch());
         connection.setCopyMessageOnSend(isCopyMessageOnSend());
         connection.setUseCompression(isUseCompression());
+        // the codec is configured even without compression so that compressed
+        // bodies received from other producers can be read with the dictionary
+        try {
+            connection.setCompressionCodec(CompressionCodecFactory.createCodec(getCompressionCodec(), getCompressionDictionary()));
+        } catch (IOException e) {
+            throw JMSExceptionSupport.create(e);
+        }
+        connection.setCompressionThreshold(getCompressionThreshold());
         connection.setObjectMessageSerializationDefered(isObjectMessageSerializationDefered());
         connection.setDispatchAsync(isDispatchAsync());
         connection.setUseAsyncSend(isUseAsyncSend());
@@ -332,6 +354,14 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         connection.setConsumerFailoverRedeliveryWaitPeriod(getConsumerFailoverRedeliveryWaitPeriod());
         connection.setCheckForDuplicates(isCheckForDuplicates());
         connection.setMessagePrioritySupported(isMessagePrioritySupported());
+        connection.setUseRingBufferDispatchChannel(isUseRingBufferDispatchChannel());
+        connection.setProducerBatchSize(getProducerBatchSize());
+        connection.setProducerBatchLinger(getProducerBatchLinger());
+        connection.setAckCoalescingInterval(getAckCoalescingInterval());
+        connection.setAckCoalescingMaxAcks(getAckCoalescingMaxAcks());
+        connection.setProducerMaxInFlightSends(getProducerMaxInFlightSends());
+        connection.setInlineListenerDispatch(isInlineListenerDispatch());
+        connection.setSessionDispatchBatchSize(getSessionDispatchBatchSize());
         connection.setTransactedIndividualAck(isTransactedIndividualAck());
         connection.setNonBlockingRedelivery(isNonBlockingRedelivery());
         if (transportListener != null) {
@@ -600,7 +630,9 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
     }
 
     /**
-     * @param sendTimeout the sendTimeout to set
+     * @param sendTimeout the sendTimeout to set, not applied to sends made by
+     *                a listener run inline, see
+     *                {@link #setInlineListenerDispatch(boolean)}
      */
     public void setSendTimeout(int sendTimeout) {
         this.sendTimeout = sendTimeout;
@@ -634,6 +666,139 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         this.messagePrioritySupported = messagePrioritySupported;
     }
 
+    /**
+     * @return the useRingBufferDispatchChannel
+     */
+    public boolean isUseRingBufferDispatchChannel() {
+        return this.useRingBufferDispatchChannel;
+    }
+
+    /**
+     * Enables queueing the prefetched messages of consumers in a lock free
+     * ring buffer, see {@link ActiveMQConnection#setUseRingBufferDispatchChannel(boolean)}
+     *
+     * @param useRingBufferDispatchChannel the useRingBufferDispatchChannel to set
+     */
+    public void setUseRingBufferDispatchChannel(boolean useRingBufferDispatchChannel) {
+        this.useRingBufferDispatchChannel = useRingBufferDispatchChannel;
+    }
+
+    /**
+     * @return the producerBatchSize
+     */
+    public int getProducerBatchSize() {
+        return this.producerBatchSize;
+    }
+
+    /**
+     * Enables batching of the messages that producers send asynchronously,
+     * see {@link ActiveMQConnection#setProducerBatchSize(int)}
+     *
+     * @param producerBatchSize the producerBatchSize to set, 0 disables
+     *                batching
+     */
+    public void setProducerBatchSize(int producerBatchSize) {
+        this.producerBatchSize = producerBatchSize;
+    }
+
+    /**
+     * @return the producerBatchLinger
+     */
+    public long getProducerBatchLinger() {
+        return this.producerBatchLinger;
+    }
+
+    /**
+     * @param producerBatchLinger the longest time in milliseconds a message is
+     *                held in a pending producer batch
+     */
+    public void setProducerBatchLinger(long producerBatchLinger) {
+        this.producerBatchLinger = producerBatchLinger;
+    }
+
+    /**
+     * @return the ackCoalescingInterval
+     */
+    public long getAckCoalescingInterval() {
+        return this.ackCoalescingInterval;
+    }
+
+    /**
+     * Coalesces the acks of the consumers of a connection, see
+     * {@link ActiveMQConnection#setAckCoalescingInterval(long)}
+     *
+     * @param ackCoalescingInterval the ackCoalescingInterval to set in
+     *                milliseconds, 0 to send each ack as it is made
+     */
+    public void setAckCoalescingInterval(long ackCoalescingInterval) {
+        this.ackCoalescingInterval = ackCoalescingInterval;
+    }
+
+    /**
+     * @return the ackCoalescingMaxAcks
+     */
+    public int getAckCoalescingMaxAcks() {
+        return this.ackCoalescingMaxAcks;
+    }
+
+    /**
+     * @param ackCoalescingMaxAcks the most acks a connection holds before
+     *                they are sent
+     */
+    public void setAckCoalescingMaxAcks(int ackCoalescingMaxAcks) {
+        this.ackCoalescingMaxAcks = ackCoalescingMaxAcks;
+    }
+
+    /**
+     * @return the producerMaxInFlightSends
+     */
+    public int getProducerMaxInFlightSends() {
+        return this.producerMaxInFlightSends;
+    }
+
+    /**
+     * Pipelines the synchronous sends of producers, see
+     * {@link ActiveMQConnection#setProducerMaxInFlightSends(int)}
+     *
+     * @param producerMaxInFlightSends the producerMaxInFlightSends to set, 0
+     *                makes each synchronous send wait for its response
+     */
+    public void setProducerMaxInFlightSends(int producerMaxInFlightSends) {
+        this.producerMaxInFlightSends = producerMaxInFlightSends;
+    }
+
+    /**
+     * @return the inlineListenerDispatch
+     */
+    public boolean isInlineListenerDispatch() {
+        return this.inlineListenerDispatch;
+    }
+
+    /**
+     * Lets single consumer sessions run their listener on the transport
+     * thread, see {@link ActiveMQConnection#setInlineListenerDispatch(boolean)}
+     *
+     * @param inlineListenerDispatch the inlineListenerDispatch to set
+     */
+    public void setInlineListenerDispatch(boolean inlineListenerDispatch) {
+        this.inlineListenerDispatch = inlineListenerDispatch;
+    }
+
+    /**
+     * @return the sessionDispatchBatchSize
+     */
+    public int getSessionDispatchBatchSize() {
+        return this.sessionDispatchBatchSize;
+    }
+
+    /**
+     * @param sessionDispatchBatchSize the most messages a session thread
+     *                delivers each time it runs
+     */
+    public void setSessionDispatchBatchSize(int sessionDispatchBatchSize) {
+        this.sessionDispatchBatchSize = sessionDispatchBatchSize;
+    }
+
 
     /**
      * Sets the transformer used to transform messages before they are sent on
@@ -718,6 +883,8 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
 
         props.setProperty("useAsyncSend", Boolean.toString(isUseAsyncSend()));
         props.setProperty("useCompression", Boolean.toString(isUseCompression()));
+        props.setProperty("compressionCodec", getCompressionCodec());
+        props.setProperty("compressionThreshold", Integer.toString(getCompressionThreshold()));
         props.setProperty("useRetroactiveConsumer", Boolean.toString(isUseRetroactiveConsumer()));
         props.setProperty("watchTopicAdvisories", Boolean.toString(isWatchTopicAdvisories()));
 
@@ -737,6 +904,14 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         props.setProperty("auditMaximumProducerNumber", Integer.toString(getAuditMaximumProducerNumber()));
         props.setProperty("checkForDuplicates", Boolean.toString(isCheckForDuplicates()));
         props.setProperty("messagePrioritySupported", Boolean.toString(isMessagePrioritySupported()));
+        props.setProperty("useRingBufferDispatchChannel", Boolean.toString(isUseRingBufferDispatchChannel()));
+        props.setProperty("producerBatchSize", Integer.toString(getProducerBatchSize()));
+        props.setProperty("producerBatchLinger", Long.toString(getProducerBatchLinger()));
+        props.setProperty("ackCoalescingInterval", Long.toString(getAckCoalescingInterval()));
+        props.setProperty("ackCoalescingMaxAcks", Integer.toString(getAckCoalescingMaxAcks()));
+        props.setProperty("producerMaxInFlightSends", Integer.toString(getProducerMaxInFlightSends()));
+        props.setProperty("inlineListenerDispatch", Boolean.toString(isInlineListenerDispatch()));
+        props.setProperty("sessionDispatchBatchSize", Integer.toString(getSessionDispatchBatchSize()));
         props.setProperty("transactedIndividualAck", Boolean.toString(isTransactedIndividualAck()));
         props.setProperty("nonBlockingRedelivery", Boolean.toString(isNonBlockingRedelivery()));
     }
@@ -752,6 +927,44 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         this.useCompression = useCompression;
     }
 
+    public String getCompressionCodec() {
+        return compressionCodec;
+    }
+
+    /**
+     * Sets the name of the codec used to compress message bodies, such as
+     * <code>deflate</code> (the default) or <code>lz4</code>. Codecs other than
+     * deflate can only be read by clients that support them.
+     */
+    public void setCompressionCodec(String compressionCodec) {
+        this.compressionCodec = compressionCodec;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Sets the minimum size in bytes of a text or bytes message body before it
+     * is compressed, smaller bodies are sent uncompressed
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public byte[] getCompressionDictionary() {
+        return compressionDictionary;
+    }
+
+    /**
+     * Sets a preset dictionary for the compression codec, which helps the
+     * ratio of small similar payloads. Consumers must be configured with the
+     * same dictionary.
+     */
+    public void setCompressionDictionary(byte[] compressionDictionary) {
+        this.compressionDictionary = compressionDictionary;
+    }
+
     public boolean isObjectMessageSerializationDefered() {
         return objectMessageSerializationDefered;
     }
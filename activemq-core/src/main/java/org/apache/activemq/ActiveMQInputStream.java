@@ -50,6 +50,10 @@ public class ActiveMQInputStream extends InputStream implements ActiveMQDispatch
 
     private int deliveredCounter;
     private MessageDispatch lastDelivered;
+    // the chunk being read, acked once it has been read
+    private MessageDispatch current;
+    private boolean resumable;
+    private long position;
     private boolean eosReached;
     private byte buffer[];
     private int pos;
@@ -122,6 +126,10 @@ public class ActiveMQInputStream extends InputStream implements ActiveMQDispatch
     public void close() throws IOException {
         if (!unconsumedMessages.isClosed()) {
             try {
+                // a chunk that was not read to its end is redelivered
+                if (current != null && (eosReached || (buffer != null && pos >= buffer.length))) {
+                    consumed(current);
+                }
                 if (lastDelivered != null) {
                     MessageAck ack = new MessageAck(lastDelivered, MessageAck.STANDARD_ACK_TYPE, deliveredCounter);
                     connection.asyncSendPacket(ack);
@@ -155,8 +163,39 @@ public class ActiveMQInputStream extends InputStream implements ActiveMQDispatch
         return jmsProperties;
     }
 
+    /**
+     * @return true if the stream can start at any chunk of a stream that a
+     *         previous reader didn't finish
+     */
+    public boolean isResumable() {
+        return resumable;
+    }
+
+    /**
+     * Lets the stream start reading at the first chunk a previous reader of
+     * the stream didn't read, rather than skipping all the chunks of a stream
+     * until a stream starts from its beginning. Chunks are only acked once
+     * they have been read, so {@link #getPosition()} then tells where in the
+     * original stream reading resumed. Must be set before the first read.
+     */
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    /**
+     * @return the position in the stream that was sent of the next byte read
+     */
+    public long getPosition() {
+        return position;
+    }
+
     public ActiveMQMessage receive() throws JMSException, ReadTimeoutException {
         checkClosed();
+        // the previous message has been read by now
+        if (current != null) {
+            consumed(current);
+            current = null;
+        }
         MessageDispatch md;
         try {
             if (firstReceived || timeout == -1) {
@@ -171,10 +210,17 @@ public class ActiveMQInputStream extends InputStream implements ActiveMQDispatch
             throw JMSExceptionSupport.create(e);
         }
 
-        if (md == null || unconsumedMessages.isClosed() || md.getMessage().isExpired()) {
+        if (md == null || unconsumedMessages.isClosed()) {
+            return null;
+        }
+        current = md;
+        if (md.getMessage().isExpired()) {
             return null;
         }
+        return (ActiveMQMessage)md.getMessage();
+    }
 
+    private void consumed(MessageDispatch md) throws JMSException {
         deliveredCounter++;
         if ((0.75 * info.getPrefetchSize()) <= deliveredCounter) {
             MessageAck ack = new MessageAck(md, MessageAck.STANDARD_ACK_TYPE, deliveredCounter);
@@ -184,8 +230,6 @@ public class ActiveMQInputStream extends InputStream implements ActiveMQDispatch
         } else {
             lastDelivered = md;
         }
-
-        return (ActiveMQMessage)md.getMessage();
     }
 
     /**
@@ -209,6 +253,7 @@ public class ActiveMQInputStream extends InputStream implements ActiveMQDispatch
             return -1;
         }
 
+        position++;
         return buffer[pos++] & 0xff;
     }
     
@@ -228,6 +273,7 @@ public class ActiveMQInputStream extends InputStream implements ActiveMQDispatch
         System.arraycopy(buffer, pos, b, off, max);
 
         pos += max;
+        position += max;
         return max;
     }
 
@@ -242,11 +288,15 @@ public class ActiveMQInputStream extends InputStream implements ActiveMQDispatch
                     // First message.
                     long producerSequenceId = m.getMessageId().getProducerSequenceId();
                     if (producerId == null) {
-                        // We have to start a stream at sequence id = 0
+                        // We have to start a stream at sequence id = 0,
+                        // unless resuming at a chunk that knows its offset
                         if (producerSequenceId != 0) {
-                            continue;
+                            if (!resumable || !m.propertyExists(ActiveMQOutputStream.AMQ_STREAM_OFFSET)) {
+                                continue;
+                            }
+                            position = m.getLongProperty(ActiveMQOutputStream.AMQ_STREAM_OFFSET);
                         }
-                        nextSequenceId++;
+                        nextSequenceId = producerSequenceId + 1;
                         producerId = m.getMessageId().getProducerId();
                     } else {
                         // Verify it's the next message of the sequence.
@@ -264,7 +314,9 @@ public class ActiveMQInputStream extends InputStream implements ActiveMQDispatch
                     bm.readBytes(buffer);
                     pos = 0;
                     if (jmsProperties == null) {
-                        jmsProperties = Collections.unmodifiableMap(new HashMap<String, Object>(bm.getProperties()));
+                        Map<String, Object> properties = new HashMap<String, Object>(bm.getProperties());
+                        properties.remove(ActiveMQOutputStream.AMQ_STREAM_OFFSET);
+                        jmsProperties = Collections.unmodifiableMap(properties);
                     }
                 } else {
                     eosReached = true;
@@ -16,68 +16,336 @@
  */
 package org.apache.activemq;
 
+import java.io.Serializable;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.util.IdGenerator;
 
 /**
- * Provides basic audit functions for Messages
- * 
- * 
+ * Provides basic audit functions for Messages, safe for use by many threads.
+ *
+ * The sequence ids seen from each producer are kept in a window of bits held
+ * in a ring of longs, each window has its own lock. The windows are found
+ * in a concurrent map, so threads auditing messages of different producers
+ * share no lock, and checking a message id against a known producer
+ * allocates nothing. Once either the number of producers or the memory used
+ * by their windows goes over its limit, producers are forgotten in
+ * approximately least recently used order: the oldest producer goes first
+ * unless it was seen since it was last considered, in which case it gets a
+ * second chance. Only adding a producer takes a lock.
+ *
  */
 public class ActiveMQMessageAudit extends ActiveMQMessageAuditNoSync {
 
     private static final long serialVersionUID = 1L;
 
+    // the rough size of the map entry, key and object header of a window
+    private static final int WINDOW_OVERHEAD = 160;
+
+    private final ConcurrentHashMap<Object, SequenceWindow> windows = new ConcurrentHashMap<Object, SequenceWindow>();
+    // the producers in the order they are considered for eviction, also
+    // guards adding and removing windows
+    private final LinkedList<Object> evictionOrder = new LinkedList<Object>();
+    private final AtomicLong memoryUsage = new AtomicLong();
+    private volatile long maximumMemory;
+
     /**
      * Default Constructor windowSize = 2048, maximumNumberOfProducersToTrack =
      * 64
      */
     public ActiveMQMessageAudit() {
-        super();
+        this(DEFAULT_WINDOW_SIZE, MAXIMUM_PRODUCER_COUNT);
     }
 
     /**
      * Construct a MessageAudit
-     * 
+     *
      * @param auditDepth range of ids to track
      * @param maximumNumberOfProducersToTrack number of producers expected in
      *                the system
      */
     public ActiveMQMessageAudit(int auditDepth, final int maximumNumberOfProducersToTrack) {
-        super(auditDepth, maximumNumberOfProducersToTrack);
+        super(auditDepth, maximumNumberOfProducersToTrack, false);
     }
-    
+
+    /**
+     * @return the most memory in bytes used to track producers, 0 when only
+     *         the number of producers is limited
+     */
+    public long getMaximumMemory() {
+        return maximumMemory;
+    }
+
+    /**
+     * Limits the memory used to track producers, on top of the limit on the
+     * number of producers.
+     *
+     * @param maximumMemory the maximumMemory to set in bytes, 0 for no limit
+     */
+    public void setMaximumMemory(long maximumMemory) {
+        this.maximumMemory = maximumMemory;
+        synchronized (evictionOrder) {
+            evict();
+        }
+    }
+
+    /**
+     * @return the approximate memory in bytes used to track producers
+     */
+    public long getMemoryUsage() {
+        return memoryUsage.get();
+    }
+
+    /**
+     * @return the number of producers tracked
+     */
+    public int getProducerCount() {
+        return windows.size();
+    }
+
+    @Override
+    public void setMaximumNumberOfProducersToTrack(int maximumNumberOfProducersToTrack) {
+        super.setMaximumNumberOfProducersToTrack(maximumNumberOfProducersToTrack);
+        synchronized (evictionOrder) {
+            evict();
+        }
+    }
+
     @Override
     public boolean isDuplicate(String id) {
-        synchronized (this) {
-            return super.isDuplicate(id);
+        boolean answer = false;
+        String seed = IdGenerator.getSeedFromId(id);
+        if (seed != null) {
+            long index = IdGenerator.getSequenceFromId(id);
+            SequenceWindow window = getWindow(seed, true);
+            if (index >= 0) {
+                answer = window.setBit(index, true);
+            }
         }
+        return answer;
     }
 
     @Override
     public boolean isDuplicate(final MessageId id) {
-        synchronized (this) {
-            return super.isDuplicate(id);
+        boolean answer = false;
+        if (id != null) {
+            ProducerId pid = id.getProducerId();
+            if (pid != null) {
+                answer = getWindow(pid, true).setBit(id.getProducerSequenceId(), true);
+            }
+        }
+        return answer;
+    }
+
+    @Override
+    public void rollback(final MessageId id) {
+        if (id != null) {
+            ProducerId pid = id.getProducerId();
+            if (pid != null) {
+                SequenceWindow window = getWindow(pid, false);
+                if (window != null) {
+                    window.setBit(id.getProducerSequenceId(), false);
+                }
+            }
         }
     }
 
     @Override
-    public void rollback(final  MessageId id) {
-        synchronized (this) {
-            super.rollback(id);
+    public void rollback(final String id) {
+        String seed = IdGenerator.getSeedFromId(id);
+        if (seed != null) {
+            SequenceWindow window = getWindow(seed, false);
+            if (window != null) {
+                window.setBit(IdGenerator.getSequenceFromId(id), false);
+            }
         }
     }
-    
+
     @Override
     public boolean isInOrder(final String id) {
-        synchronized (this) {
-            return super.isInOrder(id);
+        boolean answer = true;
+        if (id != null) {
+            String seed = IdGenerator.getSeedFromId(id);
+            if (seed != null) {
+                SequenceWindow window = getWindow(seed, false);
+                if (window != null) {
+                    answer = window.isInOrder(IdGenerator.getSequenceFromId(id));
+                }
+            }
         }
+        return answer;
     }
-    
+
     @Override
     public boolean isInOrder(final MessageId id) {
-        synchronized (this) {
-            return super.isInOrder(id);
+        boolean answer = false;
+        if (id != null) {
+            ProducerId pid = id.getProducerId();
+            if (pid != null) {
+                answer = getWindow(pid, true).isInOrder(id.getProducerSequenceId());
+            }
+        }
+        return answer;
+    }
+
+    @Override
+    public long getLastSeqId(ProducerId id) {
+        SequenceWindow window = getWindow(id, false);
+        if (window == null) {
+            window = getWindow(id.toString(), false);
+        }
+        return window != null ? window.getLastSetIndex() : -1;
+    }
+
+    @Override
+    public void clear() {
+        synchronized (evictionOrder) {
+            windows.clear();
+            evictionOrder.clear();
+            memoryUsage.set(0);
+        }
+    }
+
+    private SequenceWindow getWindow(Object key, boolean create) {
+        SequenceWindow window = windows.get(key);
+        if (window != null) {
+            window.touch();
+            return window;
+        }
+        if (!create) {
+            return null;
+        }
+        synchronized (evictionOrder) {
+            window = windows.get(key);
+            if (window == null) {
+                window = new SequenceWindow(getAuditDepth());
+                Object internedKey = intern(key);
+                windows.put(internedKey, window);
+                evictionOrder.addLast(internedKey);
+                memoryUsage.addAndGet(window.getMemoryUsage());
+                evict();
+            }
+            return window;
+        }
+    }
+
+    /**
+     * The map keeps its own copy of a producer id, the one passed in belongs
+     * to a message and would keep its other state reachable.
+     */
+    private Object intern(Object key) {
+        if (key instanceof ProducerId) {
+            return new ProducerId((ProducerId) key);
+        }
+        return key;
+    }
+
+    // must hold the evictionOrder lock
+    private void evict() {
+        int maximumProducers = getMaximumNumberOfProducersToTrack();
+        while (!evictionOrder.isEmpty() && (windows.size() > maximumProducers
+                || (maximumMemory > 0 && memoryUsage.get() > maximumMemory && windows.size() > 1))) {
+            Object key = evictionOrder.removeFirst();
+            SequenceWindow window = windows.get(key);
+            if (window.referenced) {
+                // seen since it was last considered, so a second chance
+                window.referenced = false;
+                evictionOrder.addLast(key);
+            } else {
+                windows.remove(key);
+                memoryUsage.addAndGet(-window.getMemoryUsage());
+            }
+        }
+    }
+
+    /**
+     * The sequence ids seen from one producer, a window of bits that slides
+     * forward as higher ids are set. Ids that fall behind the window are
+     * treated as not seen, as before.
+     */
+    private static final class SequenceWindow implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long[] words;
+        // the word holding the bit of firstIndex
+        private int head;
+        private long firstIndex = -1;
+        private long lastSetIndex = -1;
+        private long lastInOrderIndex = -1;
+        // set when the producer is seen, cleared by eviction
+        volatile boolean referenced;
+
+        SequenceWindow(int auditDepth) {
+            words = new long[Math.max(((auditDepth + 1) / 64) + 1, 1)];
+        }
+
+        void touch() {
+            // only written when it changes, to keep the line shared
+            if (!referenced) {
+                referenced = true;
+            }
+        }
+
+        synchronized boolean setBit(long index, boolean value) {
+            if (firstIndex < 0) {
+                firstIndex = index - (index % 64);
+            }
+            long offset = index - firstIndex;
+            if (offset < 0) {
+                return false;
+            }
+            long word = offset >>> 6;
+            if (word >= words.length) {
+                slide(word - words.length + 1);
+                offset = index - firstIndex;
+                word = words.length - 1;
+            }
+            int slot = (int) ((head + word) % words.length);
+            long mask = 1L << (offset & 63);
+            boolean answer = (words[slot] & mask) != 0;
+            if (value) {
+                words[slot] |= mask;
+                if (index > lastSetIndex) {
+                    lastSetIndex = index;
+                }
+            } else {
+                words[slot] &= ~mask;
+            }
+            return answer;
+        }
+
+        private void slide(long count) {
+            if (count >= words.length) {
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = 0;
+                }
+                head = 0;
+            } else {
+                for (int i = 0; i < count; i++) {
+                    words[head] = 0;
+                    head = (head + 1) % words.length;
+                }
+            }
+            firstIndex += count * 64;
+        }
+
+        synchronized boolean isInOrder(long index) {
+            boolean result = lastInOrderIndex == -1 || lastInOrderIndex + 1 == index;
+            lastInOrderIndex = index;
+            return result;
+        }
+
+        synchronized long getLastSetIndex() {
+            return lastSetIndex;
+        }
+
+        long getMemoryUsage() {
+            return WINDOW_OVERHEAD + words.length * 8L;
         }
     }
 }
@@ -59,9 +59,24 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
      *                the system
      */
     public ActiveMQMessageAuditNoSync(int auditDepth, final int maximumNumberOfProducersToTrack) {
+        this(auditDepth, maximumNumberOfProducersToTrack, true);
+    }
+
+    /**
+     * Construct a MessageAudit, a subclass that keeps track of the producers
+     * itself can do without the cache of them kept here
+     *
+     * @param auditDepth range of ids to track
+     * @param maximumNumberOfProducersToTrack number of producers expected in
+     *                the system
+     * @param createCache false if the cache of producers isn't used
+     */
+    protected ActiveMQMessageAuditNoSync(int auditDepth, final int maximumNumberOfProducersToTrack, boolean createCache) {
         this.auditDepth = auditDepth;
         this.maximumNumberOfProducersToTrack=maximumNumberOfProducersToTrack;
-        this.map = new LRUCache<Object, BitArrayBin>(0, maximumNumberOfProducersToTrack, 0.75f, true);
+        if (createCache) {
+            this.map = new LRUCache<Object, BitArrayBin>(0, maximumNumberOfProducersToTrack, 0.75f, true);
+        }
     }
     
     /**
@@ -91,7 +106,9 @@ public class ActiveMQMessageAuditNoSync implements Serializable {
     public void setMaximumNumberOfProducersToTrack(
             int maximumNumberOfProducersToTrack) {
         this.maximumNumberOfProducersToTrack = maximumNumberOfProducersToTrack;
-        this.map.setMaxCacheSize(maximumNumberOfProducersToTrack);
+        if (this.map != null) {
+            this.map.setMaxCacheSize(maximumNumberOfProducersToTrack);
+        }
     }
 
     /**
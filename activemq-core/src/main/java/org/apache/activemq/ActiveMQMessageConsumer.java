@@ -44,6 +44,7 @@ import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.ActiveMQMessage;
 import org.apache.activemq.command.ActiveMQTempDestination;
 import org.apache.activemq.command.CommandTypes;
+import org.apache.activemq.command.ConsumerControl;
 import org.apache.activemq.command.ConsumerId;
 import org.apache.activemq.command.ConsumerInfo;
 import org.apache.activemq.command.MessageAck;
@@ -110,6 +111,8 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(ActiveMQMessageConsumer.class);
+    // keeps consumers asking for a short in flight time from flooding the broker with reports
+    private static final long MIN_RATE_REPORT_INTERVAL = 100;
     protected final ActiveMQSession session;
     protected final ConsumerInfo info;
 
@@ -154,6 +157,13 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
     private long failoverRedeliveryWaitPeriod = 0;
     private boolean transactedIndividualAck = false;
     private boolean nonBlockingRedelivery = false;
+    private int targetInFlightTime;
+    private int consumedSinceRateReport;
+    private long lastRateReport;
+    // time spent processing messages since the last report, waits for
+    // messages to arrive are left out so an idle consumer is not seen as slow
+    private long busyNanos;
+    private long busySince;
 
     /**
      * Create a MessageConsumer
@@ -200,7 +210,10 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
                 throw new JMSException("Cannot have a prefetch size less than zero");
             }
         }
-        if (session.connection.isMessagePrioritySupported()) {
+        if (session.connection.isUseRingBufferDispatchChannel()) {
+            // room for a full prefetch and the messages put back on rollback
+            this.unconsumedMessages = new RingBufferMessageDispatchChannel((int) Math.min(Math.max(prefetch, 1) * 2L, Integer.MAX_VALUE));
+        } else if (session.connection.isMessagePrioritySupported()) {
             this.unconsumedMessages = new SimplePriorityMessageDispatchChannel();
         }else {
             this.unconsumedMessages = new FifoMessageDispatchChannel();
@@ -259,6 +272,10 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
             this.optimizeAcknowledgeTimeOut = session.connection.getOptimizeAcknowledgeTimeOut();
         }
         this.info.setOptimizedAcknowledge(this.optimizeAcknowledge);
+        if (!info.isBrowser() && info.getPrefetchSize() > 0) {
+            this.targetInFlightTime = session.connection.getPrefetchPolicy().getTargetInFlightTime();
+            this.lastRateReport = System.currentTimeMillis();
+        }
         this.failoverRedeliveryWaitPeriod = session.connection.getConsumerFailoverRedeliveryWaitPeriod();
         this.nonBlockingRedelivery = session.connection.isNonBlockingRedelivery();
         this.transactedIndividualAck = session.connection.isTransactedIndividualAck() || this.nonBlockingRedelivery;
@@ -516,6 +533,7 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
         checkClosed();
         checkMessageListener();
 
+        endBusy();
         sendPullCommand(0);
         MessageDispatch md = dequeue(-1);
         if (md == null) {
@@ -524,6 +542,7 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
 
         beforeMessageIsConsumed(md);
         afterMessageIsConsumed(md, false);
+        startBusy();
 
         return createActiveMQMessage(md);
     }
@@ -582,6 +601,7 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
             return this.receive();
         }
 
+        endBusy();
         sendPullCommand(timeout);
         while (timeout > 0) {
 
@@ -598,6 +618,7 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
 
             beforeMessageIsConsumed(md);
             afterMessageIsConsumed(md, false);
+            startBusy();
             return createActiveMQMessage(md);
         }
         return null;
@@ -614,6 +635,7 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
     public Message receiveNoWait() throws JMSException {
         checkClosed();
         checkMessageListener();
+        endBusy();
         sendPullCommand(-1);
 
         MessageDispatch md;
@@ -630,6 +652,7 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
 
         beforeMessageIsConsumed(md);
         afterMessageIsConsumed(md, false);
+        startBusy();
         return createActiveMQMessage(md);
     }
 
@@ -840,6 +863,59 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
     protected void setPrefetchSize(int prefetch) {
         deliverAcks();
         this.info.setCurrentPrefetchSize(prefetch);
+        if (targetInFlightTime > 0) {
+            // the broker sized the prefetch from our rate, acks are batched
+            // against the new size
+            this.info.setPrefetchSize(prefetch);
+        }
+    }
+
+    /**
+     * Tells the broker how many messages a second have been processed, once
+     * per target in flight time, so it can size the prefetch to match. The
+     * rate is taken over the time spent processing, not the time spent
+     * waiting for messages to arrive.
+     */
+    private void reportProcessingRate() throws JMSException {
+        consumedSinceRateReport++;
+        long now = System.currentTimeMillis();
+        long elapsed = now - lastRateReport;
+        if (elapsed >= Math.max(targetInFlightTime, MIN_RATE_REPORT_INTERVAL)) {
+            if (session.connection.getProtocolVersion() >= ConsumerControl.RATE_REPORT_VERSION) {
+                long busyMicros = Math.max(1, busyNanos / 1000);
+                ConsumerControl control = new ConsumerControl();
+                control.setConsumerId(info.getConsumerId());
+                control.setDestination(info.getDestination());
+                control.setPrefetch(info.getCurrentPrefetchSize());
+                control.setProcessingRate((int) Math.min(Integer.MAX_VALUE, Math.max(1, consumedSinceRateReport * 1000000L / busyMicros)));
+                control.setInFlightTime(targetInFlightTime);
+                session.asyncSendPacket(control);
+            }
+            consumedSinceRateReport = 0;
+            busyNanos = 0;
+            lastRateReport = now;
+        }
+    }
+
+    /**
+     * Marks the start of processing a message handed to a listener or
+     * returned from a receive.
+     */
+    private void startBusy() {
+        if (targetInFlightTime > 0) {
+            busySince = System.nanoTime();
+        }
+    }
+
+    /**
+     * Marks the end of processing, the application is back to waiting for
+     * the next message.
+     */
+    private void endBusy() {
+        if (busySince != 0) {
+            busyNanos += System.nanoTime() - busySince;
+            busySince = 0;
+        }
     }
 
     private void beforeMessageIsConsumed(MessageDispatch md) throws JMSException {
@@ -880,6 +956,9 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
             ackLater(md, MessageAck.DELIVERED_ACK_TYPE);
         } else {
             stats.onMessage();
+            if (targetInFlightTime > 0) {
+                reportProcessingRate();
+            }
             if (session.getTransacted()) {
                 // Do nothing.
             } else if (isAutoAcknowledgeEach()) {
@@ -1290,14 +1369,23 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
                 if (!unconsumedMessages.isClosed()) {
                     if (this.info.isBrowser() || !session.connection.isDuplicate(this, md.getMessage())) {
                         if (listener != null && unconsumedMessages.isRunning()) {
-                            ActiveMQMessage message = createActiveMQMessage(md);
+                            boolean recyclable = isRecyclable(md);
+                            ActiveMQMessage message = recyclable ? (ActiveMQMessage)md.getMessage() : createActiveMQMessage(md);
                             beforeMessageIsConsumed(md);
                             try {
                                 boolean expired = message.isExpired();
                                 if (!expired) {
-                                    listener.onMessage(message);
+                                    startBusy();
+                                    try {
+                                        listener.onMessage(message);
+                                    } finally {
+                                        endBusy();
+                                    }
                                 }
                                 afterMessageIsConsumed(md, expired);
+                                if (recyclable) {
+                                    recycle(md);
+                                }
                             } catch (RuntimeException e) {
                                 LOG.error(getConsumerId() + " Exception while processing message: " + md.getMessage().getMessageId(), e);
                                 if (isAutoAcknowledgeBatch() || isAutoAcknowledgeEach() || session.isIndividualAcknowledge()) {
@@ -1423,6 +1511,34 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
                + " }";
     }
 
+    /**
+     * A message read with recycling enabled is handed to the listener as is
+     * when it is acked as soon as the listener returns, the listener is
+     * then the only user of the message.
+     */
+    private boolean isRecyclable(MessageDispatch md) {
+        return md.getMessagePool() != null && transformer == null && isAutoAcknowledgeEach()
+               && md.getMessage().getDataStructureType() != CommandTypes.ACTIVEMQ_BLOB_MESSAGE;
+    }
+
+    private void recycle(MessageDispatch md) {
+        synchronized (deliveredMessages) {
+            // still referenced until acked, when acks are optimized say
+            if (!deliveredMessages.isEmpty()) {
+                return;
+            }
+        }
+        md.getMessagePool().recycle(md);
+    }
+
+    /**
+     * @return true if a message can be handed to the listener of this
+     *         consumer without waiting for messages queued before it
+     */
+    boolean canDispatchInline() {
+        return messageListener.get() != null && unconsumedMessages.isRunning() && unconsumedMessages.isEmpty();
+    }
+
     /**
      * Delivers a message to the message listener.
      *
@@ -16,7 +16,9 @@
  */
 package org.apache.activemq;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.jms.Destination;
@@ -25,14 +27,18 @@ import javax.jms.InvalidDestinationException;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.MessageBatch;
 import org.apache.activemq.command.ProducerAck;
 import org.apache.activemq.command.ProducerId;
 import org.apache.activemq.command.ProducerInfo;
+import org.apache.activemq.command.TransactionId;
 import org.apache.activemq.management.JMSProducerStatsImpl;
 import org.apache.activemq.management.StatsCapable;
 import org.apache.activemq.management.StatsImpl;
 import org.apache.activemq.usage.MemoryUsage;
 import org.apache.activemq.util.IntrospectionSupport;
+import org.apache.activemq.util.JMSExceptionSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -81,6 +87,32 @@ public class ActiveMQMessageProducer extends ActiveMQMessageProducerSupport impl
     private MessageTransformer transformer;
     private MemoryUsage producerWindow;
 
+    // messages waiting to be sent in a batch, guarded by the session's send mutex
+    private final List<ActiveMQMessage> batch = new ArrayList<ActiveMQMessage>();
+    private int batchSize;
+    private long batchLinger;
+    private boolean batchFlushScheduled;
+    private final Runnable batchFlushTask = new Runnable() {
+        public void run() {
+            synchronized (session.sendMutex) {
+                batchFlushScheduled = false;
+                if (!closed) {
+                    try {
+                        flushBatch();
+                    } catch (JMSException e) {
+                        session.connection.onAsyncException(e);
+                    }
+                }
+            }
+        }
+    };
+
+    // pipelined sends waiting for the broker's response
+    private final Object inFlightMutex = new Object();
+    private int maxInFlightSends;
+    private int inFlightSends;
+    private JMSException inFlightFailure;
+
     protected ActiveMQMessageProducer(ActiveMQSession session, ProducerId producerId, ActiveMQDestination destination, int sendTimeout) throws JMSException {
         super(session);
         this.info = new ProducerInfo(producerId);
@@ -118,6 +150,9 @@ public class ActiveMQMessageProducer extends ActiveMQMessageProducerSupport impl
         this.startTime = System.currentTimeMillis();
         this.messageSequence = new AtomicLong(0);
         this.stats = new JMSProducerStatsImpl(session.getSessionStats(), destination);
+        this.batchSize = session.connection.getProducerBatchSize();
+        this.batchLinger = session.connection.getProducerBatchLinger();
+        this.maxInFlightSends = session.connection.getProducerMaxInFlightSends();
         this.session.addProducer(this);
         this.session.asyncSendPacket(info);
         this.setSendTimeout(sendTimeout);
@@ -159,14 +194,25 @@ public class ActiveMQMessageProducer extends ActiveMQMessageProducerSupport impl
      */
     public void close() throws JMSException {
         if (!closed) {
-            dispose();
-            this.session.asyncSendPacket(info.createRemoveCommand());
+            // a failed flush is thrown once the producer is removed
+            try {
+                flush();
+            } finally {
+                try {
+                    dispose();
+                } finally {
+                    this.session.asyncSendPacket(info.createRemoveCommand());
+                }
+            }
         }
     }
 
     public void dispose() {
         if (!closed) {
             this.session.removeProducer(this);
+            synchronized (session.sendMutex) {
+                batch.clear();
+            }
             if (producerWindow != null) {
                 producerWindow.stop();
             }
@@ -240,6 +286,7 @@ public class ActiveMQMessageProducer extends ActiveMQMessageProducerSupport impl
 
     public void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive, AsyncCallback onComplete) throws JMSException {
         checkClosed();
+        checkInFlightFailure();
         if (destination == null) {
             if (info.getDestination() == null) {
                 throw new UnsupportedOperationException("A destination must be specified.");
@@ -279,6 +326,306 @@ public class ActiveMQMessageProducer extends ActiveMQMessageProducerSupport impl
         stats.onMessage();
     }
 
+    /**
+     * Sends a number of messages to the producer's destination in one batch
+     * using the producer's default delivery mode, priority and time to live.
+     *
+     * @param messages the messages to send
+     * @throws JMSException if the messages could not be sent
+     * @see #sendBatch(Destination, List)
+     */
+    public void sendBatch(List<Message> messages) throws JMSException {
+        sendBatch(this.getDestination(), messages);
+    }
+
+    /**
+     * Sends a number of messages to a destination in one batch using the
+     * producer's default delivery mode, priority and time to live. The broker
+     * stores all the messages of the batch in one store transaction, a
+     * persistent batch is sent synchronously unless async sends are enabled
+     * on the connection.
+     *
+     * @param destination the destination to send the messages to
+     * @param messages the messages to send
+     * @throws JMSException if the messages could not be sent
+     */
+    public void sendBatch(Destination destination, List<Message> messages) throws JMSException {
+        checkClosed();
+        checkInFlightFailure();
+        if (destination == null) {
+            if (info.getDestination() == null) {
+                throw new UnsupportedOperationException("A destination must be specified.");
+            }
+            throw new InvalidDestinationException("Don't understand null destinations");
+        }
+
+        ActiveMQDestination dest;
+        if (destination == info.getDestination()) {
+            dest = (ActiveMQDestination)destination;
+        } else if (info.getDestination() == null) {
+            dest = ActiveMQDestination.transform(destination);
+        } else {
+            throw new UnsupportedOperationException("This producer can only send messages to: " + this.info.getDestination().getPhysicalName());
+        }
+        if (dest == null) {
+            throw new JMSException("No destination specified");
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        if (transformer != null) {
+            List<Message> transformed = new ArrayList<Message>(messages.size());
+            for (Message message : messages) {
+                Message transformedMessage = transformer.producerTransform(session, this, message);
+                transformed.add(transformedMessage != null ? transformedMessage : message);
+            }
+            messages = transformed;
+        }
+
+        if (producerWindow != null) {
+            try {
+                producerWindow.waitForSpace();
+            } catch (InterruptedException e) {
+                throw new JMSException("Send aborted due to thread interrupt.");
+            }
+        }
+
+        this.session.sendBatch(this, dest, messages, defaultDeliveryMode, defaultPriority, defaultTimeToLive, producerWindow, sendTimeout);
+
+        for (int i = 0; i < messages.size(); i++) {
+            stats.onMessage();
+        }
+    }
+
+    /**
+     * Sends the messages batched so far, see {@link #setBatchSize(int)}, and
+     * waits for the pipelined sends to complete, see
+     * {@link #setMaxInFlightSends(int)}.
+     *
+     * @throws JMSException if the messages could not be sent or a pipelined
+     *                 send failed
+     */
+    public void flush() throws JMSException {
+        synchronized (session.sendMutex) {
+            flushBatch();
+        }
+        waitForInFlightSends();
+    }
+
+    /**
+     * @return the number of messages collected before they are sent to the
+     *         broker in one batch, 0 when the producer does not batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of messages this producer collects before sending them
+     * in one batch. Only messages that would otherwise be sent asynchronously
+     * are batched, a batch is also sent once its first message has waited for
+     * the linger time, before a message is sent synchronously, on commit and
+     * when the producer or session is closed. Defaults to the connection's
+     * producerBatchSize.
+     *
+     * @param batchSize the batchSize to set, 0 disables batching
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.min(batchSize, MessageBatch.MAX_MESSAGES);
+    }
+
+    /**
+     * @return the longest time in milliseconds a message is held in a pending
+     *         batch
+     */
+    public long getBatchLinger() {
+        return batchLinger;
+    }
+
+    /**
+     * @param batchLinger the longest time in milliseconds a message is held in
+     *                a pending batch, 0 holds messages until the batch is
+     *                full or flushed
+     */
+    public void setBatchLinger(long batchLinger) {
+        this.batchLinger = batchLinger;
+    }
+
+    /**
+     * @return the number of synchronous sends that can wait for the broker's
+     *         response at the same time, 0 if each send waits for its own
+     */
+    public int getMaxInFlightSends() {
+        return maxInFlightSends;
+    }
+
+    /**
+     * Pipelines the synchronous sends of this producer. A send returns once
+     * the message is on the wire as long as fewer than this many earlier
+     * sends are still waiting for the broker's response, otherwise it waits
+     * for one of them. A send that fails is reported to its completion
+     * callback if it has one, otherwise it is thrown from the next send,
+     * flush or close. Defaults to the connection's producerMaxInFlightSends.
+     *
+     * @param maxInFlightSends the maxInFlightSends to set, 0 makes each send
+     *                wait for its response
+     */
+    public void setMaxInFlightSends(int maxInFlightSends) {
+        synchronized (inFlightMutex) {
+            this.maxInFlightSends = maxInFlightSends;
+            inFlightMutex.notifyAll();
+        }
+    }
+
+    boolean isPipelining() {
+        return maxInFlightSends > 0;
+    }
+
+    /**
+     * Waits until one more send can be in flight and returns the callback
+     * that completes it, must be called holding the session's send mutex.
+     */
+    AsyncCallback beginInFlightSend(final AsyncCallback onComplete) throws JMSException {
+        synchronized (inFlightMutex) {
+            // the responses can't arrive while a listener runs on the
+            // transport thread, its sends are let past the window
+            while (maxInFlightSends > 0 && inFlightSends >= maxInFlightSends && !session.connection.leaveInlineDispatch()) {
+                waitForInFlight();
+            }
+            inFlightSends++;
+        }
+        return new AsyncCallback() {
+            public void onSuccess() {
+                endInFlightSend(null);
+                if (onComplete != null) {
+                    onComplete.onSuccess();
+                }
+            }
+
+            public void onException(JMSException exception) {
+                endInFlightSend(onComplete == null ? exception : null);
+                if (onComplete != null) {
+                    onComplete.onException(exception);
+                }
+            }
+        };
+    }
+
+    /**
+     * Completes a send started with {@link #beginInFlightSend(AsyncCallback)}
+     * and keeps its failure, if any, to throw from the next send.
+     */
+    void endInFlightSend(JMSException failure) {
+        synchronized (inFlightMutex) {
+            inFlightSends--;
+            if (failure != null) {
+                if (closed) {
+                    // closed by a listener run inline, which did not wait
+                    LOG.warn("Send of closed producer " + info.getProducerId() + " failed: " + failure);
+                } else if (inFlightFailure == null) {
+                    inFlightFailure = failure;
+                }
+            }
+            inFlightMutex.notifyAll();
+        }
+    }
+
+    int getInFlightSends() {
+        synchronized (inFlightMutex) {
+            return inFlightSends;
+        }
+    }
+
+    /**
+     * Waits for the pipelined sends to complete and throws the first of them
+     * that failed. A listener run on the transport thread does not wait, the
+     * responses only arrive once it returns.
+     */
+    void waitForInFlightSends() throws JMSException {
+        if (session.connection.leaveInlineDispatch()) {
+            checkInFlightFailure();
+            return;
+        }
+        synchronized (inFlightMutex) {
+            while (inFlightSends > 0) {
+                waitForInFlight();
+            }
+        }
+        checkInFlightFailure();
+    }
+
+    private void checkInFlightFailure() throws JMSException {
+        synchronized (inFlightMutex) {
+            JMSException failure = inFlightFailure;
+            if (failure != null) {
+                inFlightFailure = null;
+                throw failure;
+            }
+        }
+    }
+
+    // must hold inFlightMutex
+    private void waitForInFlight() throws JMSException {
+        session.connection.checkNotDispatchingInline();
+        if (session.connection.isTransportFailed()) {
+            // the responses are not coming
+            throw JMSExceptionSupport.create(session.connection.getFirstFailureError());
+        }
+        if (session.connection.isClosed()) {
+            throw new ConnectionClosedException();
+        }
+        try {
+            inFlightMutex.wait(1000);
+        } catch (InterruptedException e) {
+            throw new JMSException("Send aborted due to thread interrupt.");
+        }
+    }
+
+    boolean isBatching() {
+        return batchSize > 1;
+    }
+
+    /**
+     * Adds a prepared message to the pending batch, must be called holding
+     * the session's send mutex.
+     */
+    void addToBatch(ActiveMQMessage message) throws JMSException {
+        if (!batch.isEmpty()) {
+            TransactionId txid = batch.get(0).getTransactionId();
+            if (txid == null ? message.getTransactionId() != null : !txid.equals(message.getTransactionId())) {
+                flushBatch();
+            }
+        }
+        batch.add(message);
+        if (batch.size() >= batchSize) {
+            flushBatch();
+        } else if (!batchFlushScheduled && batchLinger > 0) {
+            batchFlushScheduled = true;
+            session.connection.getScheduler().executeAfterDelay(batchFlushTask, batchLinger);
+        }
+    }
+
+    /**
+     * Sends the pending batch, must be called holding the session's send
+     * mutex.
+     */
+    void flushBatch() throws JMSException {
+        if (!batch.isEmpty()) {
+            ActiveMQMessage[] messages = batch.toArray(new ActiveMQMessage[batch.size()]);
+            batch.clear();
+            session.sendBatch(this, messages, messages[0].getTransactionId(), producerWindow, true, 0);
+        }
+    }
+
+    /**
+     * Drops the pending batch, must be called holding the session's send
+     * mutex.
+     */
+    void clearBatch() {
+        batch.clear();
+    }
+
     public MessageTransformer getTransformer() {
         return transformer;
     }
@@ -53,12 +53,22 @@ public class ActiveMQOutputStream extends OutputStream implements Disposable {
     private final int priority;
     private final long timeToLive;
     private boolean alwaysSyncSend = false;
+    private int maxChunksInFlight = 16;
+    private int chunksInFlight;
+    private long offset;
 
     /**
      * JMS Property which is used to specify the size (in kb) which is used as chunk size when splitting the stream. Default is 64kb
      */
     public final static String AMQ_STREAM_CHUNK_SIZE = "AMQ_STREAM_CHUNK_SIZE";
 
+    /**
+     * JMS Property set on each chunk to the position of its first byte in the
+     * stream, and on the end of stream message to the length of the stream.
+     * Lets a reader resume a stream from the first chunk it didn't consume.
+     */
+    public final static String AMQ_STREAM_OFFSET = "AMQ_STREAM_OFFSET";
+
     public ActiveMQOutputStream(ActiveMQConnection connection, ProducerId producerId, ActiveMQDestination destination, Map<String, Object> properties, int deliveryMode, int priority,
                                 long timeToLive) throws JMSException {
         this.connection = connection;
@@ -155,6 +165,7 @@ public class ActiveMQOutputStream extends OutputStream implements Disposable {
             } catch (JMSException e) {
                 throw IOExceptionSupport.create(e);
             }
+            offset += count;
             count = 0;
         }
     }
@@ -173,13 +184,20 @@ public class ActiveMQOutputStream extends OutputStream implements Disposable {
         }
         msg.setType("org.apache.activemq.Stream");
         msg.setGroupID(info.getProducerId().toString());
+        msg.setLongProperty(AMQ_STREAM_OFFSET, offset);
         if (eosMessage) {
             msg.setGroupSequence(-1);
         } else {
             msg.setGroupSequence((int) messageSequence);
         }
         MessageId id = new MessageId(info.getProducerId(), messageSequence++);
-        connection.send(info.getDestination(), msg, id, deliveryMode, priority, timeToLive, !eosMessage && !isAlwaysSyncSend());
+        // every so often a chunk waits for the broker, so no more than a
+        // window of chunks is ever on its way to the broker
+        boolean async = !eosMessage && !isAlwaysSyncSend() && (maxChunksInFlight <= 0 || ++chunksInFlight < maxChunksInFlight);
+        if (!async) {
+            chunksInFlight = 0;
+        }
+        connection.send(info.getDestination(), msg, id, deliveryMode, priority, timeToLive, async);
     }
 
     public String toString() {
@@ -194,4 +212,21 @@ public class ActiveMQOutputStream extends OutputStream implements Disposable {
         this.alwaysSyncSend = alwaysSyncSend;
     }
 
+    public int getMaxChunksInFlight() {
+        return maxChunksInFlight;
+    }
+
+    /**
+     * Sets how many chunks are sent asynchronously before one is sent
+     * synchronously, which bounds the memory a stream can take up in the
+     * broker before producer flow control applies. Can be set with the
+     * producer.maxChunksInFlight destination option.
+     *
+     * @param maxChunksInFlight the maxChunksInFlight to set, 0 sends every
+     *                chunk but the last asynchronously
+     */
+    public void setMaxChunksInFlight(int maxChunksInFlight) {
+        this.maxChunksInFlight = maxChunksInFlight;
+    }
+
 }
@@ -45,6 +45,7 @@ public class ActiveMQPrefetchPolicy extends Object implements Serializable {
     private int optimizeDurableTopicPrefetch;
     private int inputStreamPrefetch;
     private int maximumPendingMessageLimit;
+    private int targetInFlightTime;
 
     /**
      * Initialize default prefetch policies
@@ -166,6 +167,27 @@ public class ActiveMQPrefetchPolicy extends Object implements Serializable {
         this.inputStreamPrefetch = getMaxPrefetchLimit(inputStreamPrefetch);
     }
 
+    /**
+     * @return the time in milliseconds the prefetched messages of a consumer
+     *         should last it, 0 if prefetch sizes are fixed
+     */
+    public int getTargetInFlightTime() {
+        return targetInFlightTime;
+    }
+
+    /**
+     * Turns on adaptive prefetch. Consumers report the rate they process
+     * messages at to the broker, which then grows or shrinks the prefetch of
+     * each consumer so it holds about this many milliseconds of work. The
+     * prefetch sizes set here are only used until the first report.
+     *
+     * @param targetInFlightTime the time in milliseconds, 0 to keep prefetch
+     *                sizes fixed
+     */
+    public void setTargetInFlightTime(int targetInFlightTime) {
+        this.targetInFlightTime = targetInFlightTime;
+    }
+
     public boolean equals(Object object){
         if (object instanceof ActiveMQPrefetchPolicy){
             ActiveMQPrefetchPolicy other = (ActiveMQPrefetchPolicy) object;
@@ -174,7 +196,8 @@ public class ActiveMQPrefetchPolicy extends Object implements Serializable {
             this.topicPrefetch == other.topicPrefetch &&
             this.durableTopicPrefetch == other.durableTopicPrefetch &&
             this.optimizeDurableTopicPrefetch == other.optimizeDurableTopicPrefetch &&
-            this.inputStreamPrefetch == other.inputStreamPrefetch;
+            this.inputStreamPrefetch == other.inputStreamPrefetch &&
+            this.targetInFlightTime == other.targetInFlightTime;
         }
         return false;
     }
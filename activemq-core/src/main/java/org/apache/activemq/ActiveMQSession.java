@@ -74,6 +74,7 @@ import org.apache.activemq.command.ActiveMQTopic;
 import org.apache.activemq.command.Command;
 import org.apache.activemq.command.ConsumerId;
 import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageBatch;
 import org.apache.activemq.command.MessageDispatch;
 import org.apache.activemq.command.MessageId;
 import org.apache.activemq.command.ProducerId;
@@ -558,6 +559,7 @@ public class ActiveMQSession implements Session, QueueSession, TopicSession, Sta
         if (LOG.isDebugEnabled()) {
             LOG.debug(getSessionId() + " Transaction Commit :" + transactionContext.getTransactionId());
         }
+        flushProducerBatches();
         transactionContext.commit();
     }
 
@@ -578,6 +580,12 @@ public class ActiveMQSession implements Session, QueueSession, TopicSession, Sta
         if (LOG.isDebugEnabled()) {
             LOG.debug(getSessionId() + " Transaction Rollback, txid:"  + transactionContext.getTransactionId());
         }
+        synchronized (sendMutex) {
+            // the batched messages are part of the transaction, no need to send them
+            for (ActiveMQMessageProducer producer : producers) {
+                producer.clearBatch();
+            }
+        }
         transactionContext.rollback();
     }
 
@@ -638,12 +646,22 @@ public class ActiveMQSession implements Session, QueueSession, TopicSession, Sta
 
     private void doClose() throws JMSException {
         boolean interrupted = Thread.interrupted();
-        dispose();
-        RemoveInfo removeCommand = info.createRemoveCommand();
-        removeCommand.setLastDeliveredSequenceId(lastDeliveredSequenceId);
-        connection.asyncSendPacket(removeCommand);
-        if (interrupted) {
-            Thread.currentThread().interrupt();
+        // a failed flush is thrown once the session is removed
+        try {
+            if (!isTransacted()) {
+                flushProducerBatches();
+            }
+        } finally {
+            try {
+                dispose();
+                RemoveInfo removeCommand = info.createRemoveCommand();
+                removeCommand.setLastDeliveredSequenceId(lastDeliveredSequenceId);
+                connection.asyncSendPacket(removeCommand);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
     }
 
@@ -1724,48 +1742,18 @@ public class ActiveMQSession implements Session, QueueSession, TopicSession, Sta
             // tell the Broker we are about to start a new transaction
             doStartTransaction();
             TransactionId txid = transactionContext.getTransactionId();
-            long sequenceNumber = producer.getMessageSequence();
-
-            //Set the "JMS" header fields on the original message, see 1.1 spec section 3.4.11
-            message.setJMSDeliveryMode(deliveryMode);
-            long expiration = 0L;
-            if (!producer.getDisableMessageTimestamp()) {
-                long timeStamp = System.currentTimeMillis();
-                message.setJMSTimestamp(timeStamp);
-                if (timeToLive > 0) {
-                    expiration = timeToLive + timeStamp;
+            ActiveMQMessage msg = prepareMessage(producer, destination, message, deliveryMode, priority, timeToLive, txid);
+            if (onComplete==null && sendTimeout <= 0 && !msg.isResponseRequired() && isAsyncSend(msg, txid)) {
+                if (producer.isBatching() && !transactionContext.isInXATransaction()) {
+                    if (!connection.isCopyMessageOnSend()) {
+                        // the application may reuse the message before the batch is sent
+                        msg = (ActiveMQMessage)msg.copy();
+                    }
+                    producer.addToBatch(msg);
+                    return;
                 }
-            }
-            message.setJMSExpiration(expiration);
-            message.setJMSPriority(priority);
-            message.setJMSRedelivered(false);
-
-            // transform to our own message format here
-            ActiveMQMessage msg = ActiveMQMessageTransformation.transformMessage(message, connection);
-
-            // Set the message id.
-            if (msg == message) {
-                msg.setMessageId(new MessageId(producer.getProducerInfo().getProducerId(), sequenceNumber));
-            } else {
-                msg.setMessageId(new MessageId(producer.getProducerInfo().getProducerId(), sequenceNumber));
-                message.setJMSMessageID(msg.getMessageId().toString());
-            }
-            //clear the brokerPath in case we are re-sending this message
-            msg.setBrokerPath(null);
-            // destination format is provider specific so only set on transformed message
-            msg.setJMSDestination(destination);
-
-            msg.setTransactionId(txid);
-            if (connection.isCopyMessageOnSend()) {
-                msg = (ActiveMQMessage)msg.copy();
-            }
-            msg.setConnection(connection);
-            msg.onSend();
-            msg.setProducerId(msg.getMessageId().getProducerId());
-            if (LOG.isTraceEnabled()) {
-                LOG.trace(getSessionId() + " sending message: " + msg);
-            }
-            if (onComplete==null && sendTimeout <= 0 && !msg.isResponseRequired() && !connection.isAlwaysSyncSend() && (!msg.isPersistent() || connection.isUseAsyncSend() || txid != null)) {
+                // anything batched before goes first
+                producer.flushBatch();
                 this.connection.asyncSendPacket(msg);
                 if (producerWindow != null) {
                     // Since we defer lots of the marshaling till we hit the
@@ -1779,8 +1767,20 @@ public class ActiveMQSession implements Session, QueueSession, TopicSession, Sta
                     producerWindow.increaseUsage(size);
                 }
             } else {
-                if (sendTimeout > 0 && onComplete==null) {
+                producer.flushBatch();
+                // a listener run on the transport thread can't wait for the
+                // response, its send completes like a pipelined one
+                boolean inline = onComplete == null && connection.leaveInlineDispatch();
+                if (sendTimeout > 0 && onComplete==null && !inline) {
                     this.connection.syncSendPacket(msg,sendTimeout);
+                } else if (producer.isPipelining() || inline) {
+                    AsyncCallback callback = producer.beginInFlightSend(onComplete);
+                    try {
+                        this.connection.syncSendPacket(msg, callback);
+                    } catch (JMSException e) {
+                        producer.endInFlightSend(null);
+                        throw e;
+                    }
                 }else {
                     this.connection.syncSendPacket(msg, onComplete);
                 }
@@ -1789,6 +1789,163 @@ public class ActiveMQSession implements Session, QueueSession, TopicSession, Sta
         }
     }
 
+    /**
+     * Sends a number of messages for dispatch by the broker in one
+     * {@link MessageBatch} command, the broker stores all the messages of the
+     * batch in one store transaction. If the broker does not support batches
+     * the messages are sent one by one.
+     *
+     * @param producer - message producer.
+     * @param destination - message destination.
+     * @param messages - messages to be sent.
+     * @param deliveryMode - JMS messsage delivery mode.
+     * @param priority - message priority.
+     * @param timeToLive - message expiration.
+     * @param producerWindow
+     * @param sendTimeout
+     * @throws JMSException
+     */
+    protected void sendBatch(ActiveMQMessageProducer producer, ActiveMQDestination destination, List<Message> messages, int deliveryMode, int priority,
+                             long timeToLive, MemoryUsage producerWindow, int sendTimeout) throws JMSException {
+
+        checkClosed();
+        if (destination.isTemporary() && connection.isDeleted(destination)) {
+            throw new InvalidDestinationException("Cannot publish to a deleted Destination: " + destination);
+        }
+        synchronized (sendMutex) {
+            producer.flushBatch();
+            doStartTransaction();
+            TransactionId txid = transactionContext.getTransactionId();
+            ActiveMQMessage[] batch = new ActiveMQMessage[messages.size()];
+            boolean async = sendTimeout <= 0;
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = prepareMessage(producer, destination, messages.get(i), deliveryMode, priority, timeToLive, txid);
+                async &= !batch[i].isResponseRequired() && isAsyncSend(batch[i], txid);
+            }
+            sendBatch(producer, batch, txid, producerWindow, async, sendTimeout);
+        }
+    }
+
+    /**
+     * Sends prepared messages in one batch, must be called holding the send
+     * mutex.
+     */
+    void sendBatch(ActiveMQMessageProducer producer, ActiveMQMessage[] messages, TransactionId txid, MemoryUsage producerWindow,
+                   boolean async, int sendTimeout) throws JMSException {
+        if (connection.getProtocolVersion() < MessageBatch.MINIMUM_VERSION) {
+            for (ActiveMQMessage msg : messages) {
+                sendPrepared(msg, producerWindow, async, sendTimeout);
+            }
+            return;
+        }
+        for (int offset = 0; offset < messages.length; offset += MessageBatch.MAX_MESSAGES) {
+            int count = Math.min(messages.length - offset, MessageBatch.MAX_MESSAGES);
+            ActiveMQMessage[] part = new ActiveMQMessage[count];
+            System.arraycopy(messages, offset, part, 0, count);
+            if (count == 1) {
+                sendPrepared(part[0], producerWindow, async, sendTimeout);
+                continue;
+            }
+            MessageBatch batch = new MessageBatch(producer.getProducerInfo().getProducerId(), txid, part);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace(getSessionId() + " sending batch of " + count + " messages");
+            }
+            if (async) {
+                this.connection.asyncSendPacket(batch);
+                if (producerWindow != null) {
+                    producerWindow.increaseUsage(batch.getSize());
+                }
+            } else if (sendTimeout > 0) {
+                this.connection.syncSendPacket(batch, sendTimeout);
+            } else {
+                this.connection.syncSendPacket(batch);
+            }
+        }
+    }
+
+    private void sendPrepared(ActiveMQMessage msg, MemoryUsage producerWindow, boolean async, int sendTimeout) throws JMSException {
+        if (async) {
+            this.connection.asyncSendPacket(msg);
+            if (producerWindow != null) {
+                producerWindow.increaseUsage(msg.getSize());
+            }
+        } else if (sendTimeout > 0) {
+            this.connection.syncSendPacket(msg, sendTimeout);
+        } else {
+            this.connection.syncSendPacket(msg);
+        }
+    }
+
+    private boolean isAsyncSend(ActiveMQMessage msg, TransactionId txid) {
+        return !connection.isAlwaysSyncSend() && (!msg.isPersistent() || connection.isUseAsyncSend() || txid != null);
+    }
+
+    /**
+     * Sets the JMS headers and the id of a message and transforms it to
+     * an ActiveMQMessage ready to be sent, must be called holding the send
+     * mutex.
+     */
+    private ActiveMQMessage prepareMessage(ActiveMQMessageProducer producer, ActiveMQDestination destination, Message message, int deliveryMode,
+                                           int priority, long timeToLive, TransactionId txid) throws JMSException {
+        long sequenceNumber = producer.getMessageSequence();
+
+        //Set the "JMS" header fields on the original message, see 1.1 spec section 3.4.11
+        message.setJMSDeliveryMode(deliveryMode);
+        long expiration = 0L;
+        if (!producer.getDisableMessageTimestamp()) {
+            long timeStamp = System.currentTimeMillis();
+            message.setJMSTimestamp(timeStamp);
+            if (timeToLive > 0) {
+                expiration = timeToLive + timeStamp;
+            }
+        }
+        message.setJMSExpiration(expiration);
+        message.setJMSPriority(priority);
+        message.setJMSRedelivered(false);
+
+        // transform to our own message format here
+        ActiveMQMessage msg = ActiveMQMessageTransformation.transformMessage(message, connection);
+
+        // Set the message id.
+        if (msg == message) {
+            msg.setMessageId(new MessageId(producer.getProducerInfo().getProducerId(), sequenceNumber));
+        } else {
+            msg.setMessageId(new MessageId(producer.getProducerInfo().getProducerId(), sequenceNumber));
+            message.setJMSMessageID(msg.getMessageId().toString());
+        }
+        //clear the brokerPath in case we are re-sending this message
+        msg.setBrokerPath(null);
+        // destination format is provider specific so only set on transformed message
+        msg.setJMSDestination(destination);
+
+        msg.setTransactionId(txid);
+        if (connection.isCopyMessageOnSend()) {
+            msg = (ActiveMQMessage)msg.copy();
+        }
+        msg.setConnection(connection);
+        msg.onSend();
+        msg.setProducerId(msg.getMessageId().getProducerId());
+        if (LOG.isTraceEnabled()) {
+            LOG.trace(getSessionId() + " sending message: " + msg);
+        }
+        return msg;
+    }
+
+    /**
+     * Sends the messages the producers of this session have batched so far
+     * and waits for their pipelined sends to complete.
+     */
+    protected void flushProducerBatches() throws JMSException {
+        synchronized (sendMutex) {
+            for (ActiveMQMessageProducer producer : producers) {
+                producer.flushBatch();
+            }
+        }
+        for (ActiveMQMessageProducer producer : producers) {
+            producer.waitForInFlightSends();
+        }
+    }
+
     /**
      * Send TransactionInfo to indicate transaction has started
      *
@@ -17,7 +17,10 @@
 
 package org.apache.activemq;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.jms.JMSException;
 import org.apache.activemq.command.ConsumerId;
 import org.apache.activemq.command.MessageDispatch;
@@ -35,12 +38,21 @@ import org.slf4j.LoggerFactory;
  */
 public class ActiveMQSessionExecutor implements Task {
     private static final Logger LOG = LoggerFactory.getLogger(ActiveMQSessionExecutor.class);
+    // the executor running a listener inline on the calling thread
+    private static final ThreadLocal<ActiveMQSessionExecutor> INLINE_DISPATCH = new ThreadLocal<ActiveMQSessionExecutor>();
 
     private final ActiveMQSession session;
     private final MessageDispatchChannel messageQueue;
     private boolean dispatchedBySessionPool;
     private volatile TaskRunner taskRunner;
     private boolean startedOrWarnedThatNotStarted;
+    // held while delivering so a message run inline can't overtake one
+    // the session thread is delivering
+    private final ReentrantLock dispatchLock = new ReentrantLock();
+    // set while the session thread has been woken and not yet started
+    // draining the queue, so it is woken once for a batch of messages
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private volatile boolean inlineDispatchDisabled;
 
     ActiveMQSessionExecutor(ActiveMQSession session) {
         this.session = session;
@@ -79,15 +91,81 @@ public class ActiveMQSessionExecutor implements Task {
 
         if (!session.isSessionAsyncDispatch() && !dispatchedBySessionPool) {
             dispatch(message);
-        } else {
+        } else if (!dispatchInline(message)) {
             messageQueue.enqueue(message);
-            wakeup();
+            if (!wakeupPending.get()) {
+                wakeup();
+            }
+        }
+    }
+
+    /**
+     * Runs the listener of a single consumer session on the calling thread
+     * when it is safe to, see
+     * {@link ActiveMQConnection#setInlineListenerDispatch(boolean)}.
+     *
+     * @return true if the message was delivered
+     */
+    private boolean dispatchInline(MessageDispatch message) {
+        if (!session.connection.isInlineListenerDispatch() || inlineDispatchDisabled || dispatchedBySessionPool
+            || !(session.isAutoAcknowledge() || session.isDupsOkAcknowledge()) || !session.connection.isSendAcksAsync()) {
+            return false;
+        }
+        Iterator<ActiveMQMessageConsumer> consumers = session.consumers.iterator();
+        if (!consumers.hasNext()) {
+            return false;
+        }
+        ActiveMQMessageConsumer consumer = consumers.next();
+        if (consumers.hasNext() || !consumer.getConsumerId().equals(message.getConsumerId())) {
+            return false;
+        }
+        // the session thread is busy, the message waits its turn
+        if (!dispatchLock.tryLock()) {
+            return false;
+        }
+        try {
+            if (!messageQueue.isRunning() || !messageQueue.isEmpty() || !consumer.canDispatchInline()) {
+                return false;
+            }
+            INLINE_DISPATCH.set(this);
+            try {
+                consumer.dispatch(message);
+            } finally {
+                INLINE_DISPATCH.remove();
+            }
+            return true;
+        } finally {
+            dispatchLock.unlock();
+        }
+    }
+
+    /**
+     * @return the executor running a listener of the connection inline on
+     *         the calling thread, or null
+     */
+    static ActiveMQSessionExecutor getInlineDispatch(ActiveMQConnection connection) {
+        ActiveMQSessionExecutor executor = INLINE_DISPATCH.get();
+        return executor != null && executor.session.connection == connection ? executor : null;
+    }
+
+    /**
+     * Stops running the listener inline after it made a request that can't
+     * be answered while it runs on the transport thread.
+     */
+    void disableInlineDispatch() {
+        if (!inlineDispatchDisabled) {
+            inlineDispatchDisabled = true;
+            LOG.warn("Session " + session.getSessionId() + " made a synchronous request from a listener run on the transport thread,"
+                     + " its messages are delivered by the session thread from now on");
         }
     }
 
     public void wakeup() {
         if (!dispatchedBySessionPool) {
             if (session.isSessionAsyncDispatch()) {
+                // set before waking the session thread, which clears it when it
+                // starts draining the queue
+                wakeupPending.set(true);
                 try {
                     TaskRunner taskRunner = this.taskRunner;
                     if (taskRunner == null) {
@@ -95,6 +173,7 @@ public class ActiveMQSessionExecutor implements Task {
                             if (this.taskRunner == null) {
                                 if (!isRunning()) {
                                     // stop has been called
+                                    wakeupPending.set(false);
                                     return;
                                 }
                                 this.taskRunner = session.connection.getSessionTaskRunner().createTaskRunner(this,
@@ -105,6 +184,7 @@ public class ActiveMQSessionExecutor implements Task {
                     }
                     taskRunner.wakeup();
                 } catch (InterruptedException e) {
+                    wakeupPending.set(false);
                     Thread.currentThread().interrupt();
                 }
             } else {
@@ -148,6 +228,7 @@ public class ActiveMQSessionExecutor implements Task {
             if (messageQueue.isRunning()) {
                 synchronized(this) {
                     messageQueue.stop();
+                    wakeupPending.set(false);
                     if (this.taskRunner != null) {
                         this.taskRunner.shutdown();
                         this.taskRunner = null;
@@ -185,22 +266,29 @@ public class ActiveMQSessionExecutor implements Task {
     }
 
     public boolean iterate() {
-
-        // Deliver any messages queued on the consumer to their listeners.
-        for (ActiveMQMessageConsumer consumer : this.session.consumers) {
-            if (consumer.iterate()) {
-                return true;
+        wakeupPending.set(false);
+        dispatchLock.lock();
+        try {
+            // Deliver any messages queued on the consumer to their listeners.
+            for (ActiveMQMessageConsumer consumer : this.session.consumers) {
+                if (consumer.iterate()) {
+                    return true;
+                }
             }
-        }
 
-        // No messages left queued on the listeners.. so now dispatch messages
-        // queued on the session
-        MessageDispatch message = messageQueue.dequeueNoWait();
-        if (message == null) {
-            return false;
-        } else {
-            dispatch(message);
+            // No messages left queued on the listeners.. so now dispatch a
+            // batch of the messages queued on the session
+            int batchSize = session.connection.getSessionDispatchBatchSize();
+            for (int i = 0; i < batchSize; i++) {
+                MessageDispatch message = messageQueue.dequeueNoWait();
+                if (message == null) {
+                    return false;
+                }
+                dispatch(message);
+            }
             return !messageQueue.isEmpty();
+        } finally {
+            dispatchLock.unlock();
         }
     }
 
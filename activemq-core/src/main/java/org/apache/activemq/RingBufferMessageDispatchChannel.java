@@ -0,0 +1,313 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.activemq.command.MessageDispatch;
+
+/**
+ * A FIFO {@link MessageDispatchChannel} built on a bounded ring buffer.
+ *
+ * A dispatch does not allocate a list node, and only takes the lock of the
+ * receiving side to wake a consumer that waits for a message. The ring is sized from the prefetch so it normally
+ * never fills, if it does the extra messages go to an overflow list until it
+ * drains. Enqueues are serialized on the overflow lock, which is uncontended
+ * while a single transport thread dispatches, so that a message can never
+ * pass one still waiting in the overflow list. Messages put back with {@link #enqueueFirst(MessageDispatch)}, which
+ * only happens on rollback, are kept in a separate list that is read first.
+ *
+ * Only one thread at a time takes messages out, others wait on a small lock
+ * which is uncontended as long as a single thread receives. A consumer
+ * waiting for a message releases that lock, so removing the messages on
+ * failover does not wait for its receive to time out.
+ */
+public class RingBufferMessageDispatchChannel implements MessageDispatchChannel {
+
+    private static final int MAX_CAPACITY = 1 << 16;
+
+    private final Object mutex = new Object();
+    private final ReentrantLock takeLock = new ReentrantLock();
+    private final Condition notEmpty = takeLock.newCondition();
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<MessageDispatch> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    // messages put back on rollback, read before the ring
+    private final LinkedList<MessageDispatch> front = new LinkedList<MessageDispatch>();
+    private volatile int frontSize;
+    // messages enqueued while the ring was full, read after it
+    private final LinkedList<MessageDispatch> overflow = new LinkedList<MessageDispatch>();
+    private volatile int overflowSize;
+
+    // consumers waiting on notEmpty, only changed holding takeLock
+    private volatile int waiters;
+    private volatile boolean closed;
+    private volatile boolean running;
+
+    /**
+     * @param capacity the number of slots in the ring, rounded up to a power
+     *                of two
+     */
+    public RingBufferMessageDispatchChannel(int capacity) {
+        int size = 2;
+        while (size < capacity && size < MAX_CAPACITY) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<MessageDispatch>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public void enqueue(MessageDispatch message) {
+        synchronized (overflow) {
+            if (overflowSize != 0 || !offer(message)) {
+                overflow.addLast(message);
+                overflowSize++;
+            }
+        }
+        signal();
+    }
+
+    public void enqueueFirst(MessageDispatch message) {
+        synchronized (front) {
+            front.addFirst(message);
+            frontSize++;
+        }
+        signal();
+    }
+
+    // must hold the overflow lock
+    private boolean offer(MessageDispatch message) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.set(index, message);
+                    // publishes the message to the consumer
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    private void signal() {
+        if (waiters != 0) {
+            takeLock.lock();
+            try {
+                notEmpty.signalAll();
+            } finally {
+                takeLock.unlock();
+            }
+        }
+    }
+
+    // must hold takeLock
+    private MessageDispatch poll(boolean remove) {
+        if (frontSize != 0) {
+            synchronized (front) {
+                if (!front.isEmpty()) {
+                    if (remove) {
+                        frontSize--;
+                        return front.removeFirst();
+                    }
+                    return front.getFirst();
+                }
+            }
+        }
+        long position = head;
+        int index = (int) (position & mask);
+        if (sequences.get(index) == position + 1) {
+            MessageDispatch message = buffer.get(index);
+            if (remove) {
+                buffer.set(index, null);
+                // hands the slot back to the producers
+                sequences.set(index, position + capacity);
+                head = position + 1;
+            }
+            return message;
+        }
+        if (overflowSize != 0) {
+            synchronized (overflow) {
+                if (!overflow.isEmpty()) {
+                    if (remove) {
+                        overflowSize--;
+                        return overflow.removeFirst();
+                    }
+                    return overflow.getFirst();
+                }
+            }
+        }
+        return null;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public MessageDispatch dequeue(long timeout) throws InterruptedException {
+        long remaining = timeout > 0 ? TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+        takeLock.lock();
+        try {
+            while (true) {
+                if (closed) {
+                    return null;
+                }
+                if (running) {
+                    MessageDispatch message = poll(true);
+                    if (message != null || timeout == 0) {
+                        return message;
+                    }
+                } else if (timeout == 0) {
+                    return null;
+                }
+
+                // register before checking again so an enqueue can't be missed
+                waiters++;
+                try {
+                    if (closed || (running && poll(false) != null)) {
+                        continue;
+                    }
+                    if (timeout < 0) {
+                        notEmpty.await();
+                    } else {
+                        if (remaining <= 0) {
+                            return null;
+                        }
+                        remaining = notEmpty.awaitNanos(remaining);
+                    }
+                } finally {
+                    waiters--;
+                }
+            }
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    public MessageDispatch dequeueNoWait() {
+        if (closed || !running) {
+            return null;
+        }
+        takeLock.lock();
+        try {
+            return poll(true);
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    public MessageDispatch peek() {
+        if (closed || !running) {
+            return null;
+        }
+        takeLock.lock();
+        try {
+            return poll(false);
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    public void start() {
+        running = true;
+        signal();
+    }
+
+    public void stop() {
+        running = false;
+        signal();
+    }
+
+    public void close() {
+        if (!closed) {
+            running = false;
+            closed = true;
+        }
+        signal();
+    }
+
+    public void clear() {
+        removeAll();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int size() {
+        long ringSize = tail.get() - head;
+        return (int) Math.max(0, ringSize) + frontSize + overflowSize;
+    }
+
+    public Object getMutex() {
+        return mutex;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public List<MessageDispatch> removeAll() {
+        takeLock.lock();
+        try {
+            ArrayList<MessageDispatch> rc = new ArrayList<MessageDispatch>(size());
+            MessageDispatch message;
+            while ((message = poll(true)) != null) {
+                rc.add(message);
+            }
+            return rc;
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of slots in the ring
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        return "RingBufferMessageDispatchChannel[size=" + size() + ", capacity=" + capacity + "]";
+    }
+}
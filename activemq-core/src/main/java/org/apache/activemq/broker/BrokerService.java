@@ -30,6 +30,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
@@ -91,6 +92,7 @@ import org.apache.activemq.store.PersistenceAdapterFactory;
 import org.apache.activemq.store.amq.AMQPersistenceAdapter;
 import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
 import org.apache.activemq.store.kahadb.plist.PListStore;
+import org.apache.activemq.store.spool.SpoolStore;
 import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
 import org.apache.activemq.thread.Scheduler;
 import org.apache.activemq.thread.TaskRunnerFactory;
@@ -185,6 +187,7 @@ public class BrokerService implements Service {
     private DestinationInterceptor[] destinationInterceptors;
     private ActiveMQDestination[] destinations;
     private PListStore tempDataStore;
+    private SpoolStore tempSpoolStore;
     private int persistenceThreadPriority = Thread.MAX_PRIORITY;
     private boolean useLocalHostBrokerName;
     private final CountDownLatch stoppedLatch = new CountDownLatch(1);
@@ -209,6 +212,8 @@ public class BrokerService implements Service {
     private File schedulerDirectoryFile;
     private Scheduler scheduler;
     private ThreadPoolExecutor executor;
+    private ThreadPoolExecutor storeReadAheadExecutor;
+    private int storeReadAheadPoolSize = 4;
     private boolean slave = true;
     private int schedulePeriodForDestinationPurge= 0;
     private int maxPurgedDestinationsPerSweep = 0;
@@ -629,6 +634,10 @@ public class BrokerService implements Service {
             tempDataStore.stop();
             tempDataStore = null;
         }
+        if (tempSpoolStore != null) {
+            tempSpoolStore.stop();
+            tempSpoolStore = null;
+        }
         try {
             stopper.stop(persistenceAdapter);
             persistenceAdapter = null;
@@ -669,6 +678,12 @@ public class BrokerService implements Service {
             this.executor.shutdownNow();
             this.executor = null;
         }
+        synchronized (this) {
+            if (this.storeReadAheadExecutor != null) {
+                this.storeReadAheadExecutor.shutdownNow();
+                this.storeReadAheadExecutor = null;
+            }
+        }
 
         this.destinationInterceptors = null;
         this.destinationFactory = null;
@@ -1530,6 +1545,40 @@ public class BrokerService implements Service {
         }
     }
 
+    /**
+     * @return the store that pending message cursors spool non persistent
+     *         messages to, or null if the broker is not persistent
+     */
+    public synchronized SpoolStore getTempSpoolStore() {
+        if (tempSpoolStore == null) {
+            if (!isPersistent()) {
+                return null;
+            }
+            SpoolStore store = new SpoolStore();
+            store.setDirectory(new File(getTmpDataDirectory(), "spool"));
+            setTempSpoolStore(store);
+        }
+        return tempSpoolStore;
+    }
+
+    /**
+     * @param tempSpoolStore
+     *            the tempSpoolStore to set
+     */
+    public synchronized void setTempSpoolStore(SpoolStore tempSpoolStore) {
+        this.tempSpoolStore = tempSpoolStore;
+        if (tempSpoolStore.getTempUsage() == null) {
+            tempSpoolStore.setTempUsage(getSystemUsage().getTempUsage());
+        }
+        try {
+            tempSpoolStore.start();
+        } catch (Exception e) {
+            RuntimeException exception = new RuntimeException("Failed to start provided temp spool store: " + tempSpoolStore, e);
+            LOG.error(exception.getLocalizedMessage(), e);
+            throw exception;
+        }
+    }
+
     public int getPersistenceThreadPriority() {
         return persistenceThreadPriority;
     }
@@ -2406,6 +2455,45 @@ public class BrokerService implements Service {
         return this.executor;
     }
 
+    /**
+     * @return the threads that store cursors read batches ahead of dispatch
+     *         on, kept apart from the broker's worker so that store reads do
+     *         not delay its other tasks. A read ahead that does not fit in
+     *         the queue of the pool is read when it is needed instead.
+     */
+    public synchronized Executor getStoreReadAheadExecutor() {
+        if (this.storeReadAheadExecutor == null) {
+            this.storeReadAheadExecutor = new ThreadPoolExecutor(storeReadAheadPoolSize, storeReadAheadPoolSize, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(storeReadAheadPoolSize * 100), new ThreadFactory() {
+
+                private long i = 0;
+
+                public Thread newThread(Runnable runnable) {
+                    this.i++;
+                    Thread thread = new Thread(runnable, "ActiveMQ Store Read Ahead " + this.i);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.storeReadAheadExecutor.allowCoreThreadTimeOut(true);
+        }
+        return this.storeReadAheadExecutor;
+    }
+
+    public int getStoreReadAheadPoolSize() {
+        return storeReadAheadPoolSize;
+    }
+
+    /**
+     * Sets the number of threads store cursors read batches ahead of dispatch
+     * on, see maxReadAheadBatches of the storeCursor policy.
+     *
+     * @param storeReadAheadPoolSize
+     */
+    public void setStoreReadAheadPoolSize(int storeReadAheadPoolSize) {
+        this.storeReadAheadPoolSize = storeReadAheadPoolSize;
+    }
+
     public synchronized Scheduler getScheduler() {
         if (this.scheduler==null) {
             this.scheduler = new Scheduler("ActiveMQ Broker["+getBrokerName()+"] Scheduler");
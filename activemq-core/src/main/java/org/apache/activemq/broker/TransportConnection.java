@@ -35,6 +35,7 @@ import org.apache.activemq.thread.DefaultThreadPools;
 import org.apache.activemq.thread.Task;
 import org.apache.activemq.thread.TaskRunner;
 import org.apache.activemq.thread.TaskRunnerFactory;
+import org.apache.activemq.transaction.Synchronization;
 import org.apache.activemq.transaction.Transaction;
 import org.apache.activemq.transport.DefaultTransportListener;
 import org.apache.activemq.transport.ResponseCorrelator;
@@ -54,6 +55,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.net.SocketException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -66,6 +68,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -114,6 +117,9 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
     private boolean networkConnection;
     private boolean faultTolerantConnection;
     private final AtomicInteger protocolVersion = new AtomicInteger(CommandTypes.PROTOCOL_VERSION);
+    // ids of the transactions that batches outside of a client transaction are
+    // stored in, negative so they never clash with the ids the client uses
+    private final AtomicLong batchTransactionIdGenerator = new AtomicLong();
     private DemandForwardingBridge duplexBridge;
     private final TaskRunnerFactory taskRunnerFactory;
     private TransportConnectionStateRegister connectionStateRegister = new SingleTransportConnectionStateRegister();
@@ -454,6 +460,83 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
         return null;
     }
 
+    public Response processMessageBatch(MessageBatch batch) throws Exception {
+        Message[] messages = batch.getMessages();
+        if (messages == null || messages.length == 0) {
+            return null;
+        }
+        ProducerId producerId = batch.getProducerId();
+        ProducerBrokerExchange producerExchange = getProducerBrokerExchange(producerId);
+        ProducerState producerState = producerExchange.getProducerState();
+
+        // The messages are sent with a zero window so that memory limits block
+        // here, as for a sync send, rather than deferring the individual
+        // messages, and the batch is acked with one ProducerAck at the end.
+        ProducerBrokerExchange batchExchange = producerExchange.copy();
+        int windowSize = 0;
+        if (producerState != null) {
+            ProducerInfo info = producerState.getInfo().copy();
+            windowSize = info.getWindowSize();
+            info.setWindowSize(0);
+            batchExchange.setProducerState(new ProducerState(info));
+        }
+
+        TransactionInfo batchTransaction = null;
+        final List<Message> joined = new ArrayList<Message>(messages.length);
+        if (batch.getTransactionId() == null) {
+            ConnectionId connectionId = producerId.getParentId().getParentId();
+            LocalTransactionId transactionId = new LocalTransactionId(connectionId, -batchTransactionIdGenerator.incrementAndGet());
+            batchTransaction = new TransactionInfo(connectionId, transactionId, TransactionInfo.BEGIN);
+            processBeginTransaction(batchTransaction);
+            // added before the sends so that it runs ahead of the dispatches
+            // the destinations do once the transaction commits
+            Transaction transaction = context.getTransactions().get(transactionId);
+            if (transaction != null) {
+                transaction.addSynchronization(new Synchronization() {
+                    public void afterCommit() throws Exception {
+                        for (Message message : joined) {
+                            message.setTransactionId(null);
+                        }
+                    }
+                });
+            }
+        }
+        int size = 0;
+        try {
+            for (Message message : messages) {
+                if (batchTransaction != null) {
+                    // the store needs the transaction on the message, which is
+                    // copied so a vm:// client's own message is left alone
+                    message = message.copy();
+                    message.setTransactionId(batchTransaction.getTransactionId());
+                    joined.add(message);
+                }
+                size += message.getSize();
+                if (producerExchange.canDispatch(message)) {
+                    broker.send(batchExchange, message);
+                }
+            }
+            if (batchTransaction != null) {
+                batchTransaction.setType(TransactionInfo.COMMIT_ONE_PHASE);
+                processCommitTransactionOnePhase(batchTransaction);
+            }
+        } catch (Exception e) {
+            if (batchTransaction != null) {
+                try {
+                    batchTransaction.setType(TransactionInfo.ROLLBACK);
+                    processRollbackTransaction(batchTransaction);
+                } catch (Exception ignored) {
+                    LOG.debug("Failed to roll back the transaction of a message batch: " + ignored, ignored);
+                }
+            }
+            throw e;
+        }
+        if (windowSize > 0 && !batch.isResponseRequired() && !batchExchange.getConnectionContext().isInRecoveryMode()) {
+            dispatchAsync(new ProducerAck(producerId, size));
+        }
+        return null;
+    }
+
     public Response processMessageAck(MessageAck ack) throws Exception {
         ConsumerBrokerExchange consumerExchange = getConsumerBrokerExchange(ack.getConsumerId());
         if (consumerExchange != null) {
@@ -462,6 +545,28 @@ public class TransportConnection implements Connection, Task, CommandVisitor {
         return null;
     }
 
+    public Response processMessageAckBatch(MessageAckBatch batch) throws Exception {
+        MessageAck[] acks = batch.getAcks();
+        if (acks == null) {
+            return null;
+        }
+        // a bad ack must not stop the acks of other consumers in the batch
+        Exception failure = null;
+        for (MessageAck ack : acks) {
+            try {
+                processMessageAck(ack);
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return null;
+    }
+
     public Response processMessagePull(MessagePull pull) throws Exception {
         return broker.messagePull(lookupConnectionState(pull.getConsumerId()).getContext(), pull);
     }
@@ -143,7 +143,7 @@ public class DestinationView implements DestinationViewMBean {
     }
 
     public CompositeData[] browse(String selector) throws OpenDataException, InvalidSelectorException {
-        Message[] messages = destination.browse();
+        Message[] messages = browseDestination(selector);
         ArrayList<CompositeData> c = new ArrayList<CompositeData>();
 
         MessageEvaluationContext ctx = new MessageEvaluationContext();
@@ -176,6 +176,14 @@ public class DestinationView implements DestinationViewMBean {
         return rc;
     }
 
+    /**
+     * @return the messages of the destination to browse for the selector,
+     *         they are matched against it once more
+     */
+    protected Message[] browseDestination(String selector) throws InvalidSelectorException {
+        return destination.browse();
+    }
+
     /**
      * Browses the current destination returning a list of messages
      */
@@ -188,7 +196,7 @@ public class DestinationView implements DestinationViewMBean {
      * of messages
      */
     public List<Object> browseMessages(String selector) throws InvalidSelectorException {
-        Message[] messages = destination.browse();
+        Message[] messages = browseDestination(selector);
         ArrayList<Object> answer = new ArrayList<Object>();
 
         MessageEvaluationContext ctx = new MessageEvaluationContext();
@@ -224,7 +232,7 @@ public class DestinationView implements DestinationViewMBean {
 
     public TabularData browseAsTable(String selector) throws OpenDataException, InvalidSelectorException {
         OpenTypeFactory factory = OpenTypeSupport.getFactory(ActiveMQMessage.class);
-        Message[] messages = destination.browse();
+        Message[] messages = browseDestination(selector);
         CompositeType ct = factory.getCompositeType();
         TabularType tt = new TabularType("MessageList", "MessageList", ct, new String[] { "JMSMessageID" });
         TabularDataSupport rc = new TabularDataSupport(tt);
@@ -386,7 +394,10 @@ public class DestinationView implements DestinationViewMBean {
     }
 
     public ObjectName[] getSubscriptions() throws IOException, MalformedObjectNameException {
-        List<Subscription> subscriptions = destination.getConsumers();
+        return getSubscriptionObjectNames(destination.getConsumers());
+    }
+
+    protected ObjectName[] getSubscriptionObjectNames(List<Subscription> subscriptions) throws IOException, MalformedObjectNameException {
         ObjectName[] answer = new ObjectName[subscriptions.size()];
         ObjectName objectName = broker.getBrokerService().getBrokerObjectName();
         int index = 0;
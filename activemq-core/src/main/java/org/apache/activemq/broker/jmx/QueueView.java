@@ -16,8 +16,13 @@
  */
 package org.apache.activemq.broker.jmx;
 
+import java.io.IOException;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.OpenDataException;
+import javax.jms.InvalidSelectorException;
 import javax.jms.JMSException;
 
 import org.apache.activemq.broker.ConnectionContext;
@@ -177,4 +182,13 @@ public class QueueView extends DestinationView implements QueueViewMBean {
         }
         return false;
     }
+
+    @Override
+    protected Message[] browseDestination(String selector) throws InvalidSelectorException {
+        return ((Queue) destination).browse(selector);
+    }
+
+    public ObjectName[] getStarvedSubscriptions() throws IOException, MalformedObjectNameException {
+        return getSubscriptionObjectNames(((Queue) destination).getStarvedConsumers());
+    }
 }
@@ -16,6 +16,10 @@
  */
 package org.apache.activemq.broker.jmx;
 
+import java.io.IOException;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.OpenDataException;
 
@@ -174,4 +178,11 @@ public interface QueueViewMBean extends DestinationViewMBean {
      */
     @MBeanInfo("Caching is enabled")
     boolean isCacheEnabled();
+
+    /**
+     * @return the names of the subscriptions with room for more messages
+     *         whose selectors match none of the messages paged in
+     */
+    @MBeanInfo("returns the subscription MBeans with room for messages whose selectors match none of the messages paged in")
+    ObjectName[] getStarvedSubscriptions() throws IOException, MalformedObjectNameException;
 }
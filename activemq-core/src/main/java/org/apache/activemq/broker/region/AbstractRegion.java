@@ -581,10 +581,27 @@ public abstract class AbstractRegion implements Region {
     public void processConsumerControl(ConsumerBrokerExchange consumerExchange, ConsumerControl control) {
         Subscription sub = subscriptions.get(control.getConsumerId());
         if (sub != null && sub instanceof AbstractSubscription) {
-            ((AbstractSubscription) sub).setPrefetchSize(control.getPrefetch());
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("setting prefetch: " + control.getPrefetch() + ", on subscription: "
-                        + control.getConsumerId());
+            if (control.isRateReport()) {
+                // a pull consumer has no prefetch to adapt
+                int current = sub.getPrefetchSize();
+                if (current == 0) {
+                    return;
+                }
+                int prefetch = ((AbstractSubscription) sub).adaptPrefetchSize(control.getProcessingRate(), control.getInFlightTime());
+                if (prefetch == current) {
+                    return;
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("adapting prefetch: " + current + " -> " + prefetch + ", at " + control.getProcessingRate()
+                            + " msg/s, on subscription: " + control.getConsumerId());
+                }
+                sub.updateConsumerPrefetch(prefetch);
+            } else {
+                ((AbstractSubscription) sub).setPrefetchSize(control.getPrefetch());
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("setting prefetch: " + control.getPrefetch() + ", on subscription: "
+                            + control.getConsumerId());
+                }
             }
             try {
                 lookup(consumerExchange.getConnectionContext(), control.getDestination(),false).wakeup();
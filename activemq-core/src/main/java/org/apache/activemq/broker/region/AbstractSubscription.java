@@ -23,6 +23,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import javax.jms.InvalidSelectorException;
 import javax.jms.JMSException;
 import javax.management.ObjectName;
+import org.apache.activemq.ActiveMQPrefetchPolicy;
 import org.apache.activemq.broker.Broker;
 import org.apache.activemq.broker.ConnectionContext;
 import org.apache.activemq.command.ActiveMQDestination;
@@ -160,6 +161,27 @@ public abstract class AbstractSubscription implements Subscription {
         info.setPrefetchSize(newSize);
     }
 
+    /**
+     * Resizes the prefetch so that the messages dispatched to the consumer
+     * last it about inFlightTime milliseconds at the rate it reported. The
+     * prefetch moves half way to that size on each report so a single busy or
+     * idle period doesn't swing it.
+     *
+     * @param processingRate messages a second processed by the consumer
+     * @param inFlightTime milliseconds of work to keep on the consumer
+     * @return the new prefetch size
+     */
+    public int adaptPrefetchSize(int processingRate, int inFlightTime) {
+        int current = getPrefetchSize();
+        long target = Math.max(1, ((long) processingRate * inFlightTime) / 1000);
+        long next = (current + target + 1) / 2;
+        int size = (int) Math.min(next, ActiveMQPrefetchPolicy.MAX_PREFETCH_SIZE);
+        if (size != current) {
+            setPrefetchSize(size);
+        }
+        return size;
+    }
+
     public boolean isRecoveryRequired() {
         return true;
     }
@@ -70,6 +70,9 @@ public abstract class BaseDestination implements Destination {
     private int maxAuditDepth = 2048;
     private boolean enableAudit = true;
     private int maxPageSize = MAX_PAGE_SIZE;
+    private long maxPageInBytes;
+    private long maxPagedInBodyBytes;
+    private int maxPageInScanSize;
     private int maxBrowsePageSize = MAX_BROWSE_PAGE_SIZE;
     private boolean useCache = true;
     private int minimumMessageSize = 1024;
@@ -280,6 +283,61 @@ public abstract class BaseDestination implements Destination {
         this.maxPageSize = maxPageSize;
     }
 
+    /**
+     * @return the most bytes of messages paged in waiting for dispatch, 0 if
+     *         only the number of messages is limited
+     */
+    public long getMaxPageInBytes() {
+        return maxPageInBytes;
+    }
+
+    /**
+     * Bounds the memory used by the messages paged in from the store for
+     * dispatch, on top of maxPageSize, which only counts them. Keeps a queue
+     * of large messages, such as the chunks of a stream, to a small window in
+     * memory. At least one message is always paged in.
+     */
+    public void setMaxPageInBytes(long maxPageInBytes) {
+        this.maxPageInBytes = maxPageInBytes;
+    }
+
+    /**
+     * @return the most bytes of message bodies a queue holds for the
+     *         persistent messages it paged in, 0 if they are all held
+     */
+    public long getMaxPagedInBodyBytes() {
+        return maxPagedInBodyBytes;
+    }
+
+    /**
+     * Lets a queue page in persistent messages deeper than the memory their
+     * bodies would take, for selectors and message groups to choose from.
+     * Paged in messages keep their headers and properties, the bodies past
+     * this many bytes are let go and read back from the store on dispatch.
+     */
+    public void setMaxPagedInBodyBytes(long maxPagedInBodyBytes) {
+        this.maxPagedInBodyBytes = maxPagedInBodyBytes;
+    }
+
+    /**
+     * @return the most messages looked at past those paged in for consumers
+     *         whose selectors match none of them, 0 if they are not looked for
+     */
+    public int getMaxPageInScanSize() {
+        return maxPageInScanSize;
+    }
+
+    /**
+     * Keeps consumers with selectors that match only a few of the messages
+     * of a deep queue from starving behind a full page of messages for other
+     * consumers. When none of the messages paged in match a consumer with
+     * room, up to this many messages further along are looked at and the
+     * matching ones are paged in ahead of the others.
+     */
+    public void setMaxPageInScanSize(int maxPageInScanSize) {
+        this.maxPageInScanSize = maxPageInScanSize;
+    }
+
     public int getMaxBrowsePageSize() {
         return this.maxBrowsePageSize;
     }
@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+
+import org.apache.activemq.command.Message;
+import org.apache.activemq.store.MessageStore;
+
+/**
+ * A reference to a persistent message paged in by a queue that keeps only
+ * the headers and properties of the message for good, enough for selectors,
+ * groups and expiry. The body is held while the {@link MessageBodyCache} has
+ * room for it, then only softly, and is read back from the store when it has
+ * been collected by the time the message is dispatched.
+ *
+ * The reference count of the reference is that of the headers. The body
+ * holds one count of its own while it is cached, so that the memory usage
+ * covers it.
+ */
+final class EvictableMessageReference extends IndirectMessageReference {
+
+    private final MessageBodyCache cache;
+    private final MessageStore store;
+    private final int size;
+    private Message body;
+    private SoftReference<Message> evicted;
+
+    /**
+     * @param message the paged in message, its reference count is taken over
+     *                for the body
+     */
+    EvictableMessageReference(Message message, MessageBodyCache cache, MessageStore store) {
+        super(message.copyWithoutBody());
+        this.cache = cache;
+        this.store = store;
+        this.size = message.getSize();
+        this.body = message;
+        getMessageHardRef().incrementReferenceCount();
+    }
+
+    @Override
+    public Message getMessage() {
+        Message result;
+        boolean restored = false;
+        boolean reloaded = false;
+        synchronized (this) {
+            result = body;
+            if (result == null) {
+                result = evicted != null ? evicted.get() : null;
+                if (result == null) {
+                    result = load();
+                    reloaded = true;
+                }
+                if (!isDropped()) {
+                    evicted = null;
+                    result.incrementReferenceCount();
+                    body = result;
+                    restored = true;
+                }
+            }
+            // counted against the headers while the body was let go
+            result.setRedeliveryCounter(getRedeliveryCounter());
+        }
+        if (restored) {
+            cache.add(this, reloaded);
+        } else {
+            cache.touch(this);
+        }
+        return result;
+    }
+
+    private Message load() {
+        Message headers = getMessageHardRef();
+        Message result;
+        try {
+            result = store.getMessage(headers.getMessageId());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to reload the body of " + headers.getMessageId(), e);
+        }
+        if (result == null) {
+            throw new RuntimeException("Failed to reload the body of " + headers.getMessageId() + ", it is no longer in the store");
+        }
+        result.setRegionDestination(headers.getRegionDestination());
+        result.setMemoryUsage(headers.getMemoryUsage());
+        return result;
+    }
+
+    /**
+     * Lets go of the body, keeping it only softly
+     */
+    synchronized void evictBody() {
+        if (body != null) {
+            evicted = new SoftReference<Message>(body);
+            body.decrementReferenceCount();
+            body = null;
+        }
+    }
+
+    /**
+     * Lets go of the body altogether, it is read from the store if needed
+     */
+    synchronized void releaseBody() {
+        evictBody();
+        evicted = null;
+    }
+
+    synchronized boolean isBodyEvicted() {
+        return body == null;
+    }
+
+    @Override
+    public void drop() {
+        synchronized (this) {
+            super.drop();
+            releaseBody();
+        }
+        cache.remove(this);
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.activemq.command.MessageId;
+
+/**
+ * Bounds the bytes of message bodies held by the
+ * {@link EvictableMessageReference}s a queue has paged in. The least recently
+ * used bodies are let go first, except those of messages locked by a
+ * subscription as they are on their way to a consumer, and those of messages
+ * the store is still adding, which could not be read back yet.
+ *
+ * Lock order is cache, then reference.
+ */
+final class MessageBodyCache {
+
+    private final LinkedHashMap<MessageId, EvictableMessageReference> references = new LinkedHashMap<MessageId, EvictableMessageReference>(16, 0.75f, true);
+    private final Set<MessageId> pendingStoreAdds = Collections.newSetFromMap(new ConcurrentHashMap<MessageId, Boolean>());
+    private long limit;
+    private long size;
+    private long evictions;
+    private long reloads;
+
+    synchronized void setLimit(long limit) {
+        this.limit = limit;
+    }
+
+    synchronized long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the bytes of the bodies held
+     */
+    synchronized long getSize() {
+        return size;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    synchronized long getReloads() {
+        return reloads;
+    }
+
+    /**
+     * Takes in a reference holding its body, making room for it.
+     *
+     * @param reloaded true if the body was read again after being let go
+     */
+    synchronized void add(EvictableMessageReference reference, boolean reloaded) {
+        // a reference dropped since it loaded its body lets it go itself
+        if (reference.isDropped()) {
+            return;
+        }
+        if (references.put(reference.getMessageId(), reference) == null) {
+            size += reference.getSize();
+        }
+        if (reloaded) {
+            reloads++;
+        }
+        evict();
+    }
+
+    /**
+     * Marks a reference as most recently used
+     */
+    synchronized void touch(EvictableMessageReference reference) {
+        references.get(reference.getMessageId());
+    }
+
+    synchronized void remove(EvictableMessageReference reference) {
+        if (references.remove(reference.getMessageId()) != null) {
+            size -= reference.getSize();
+        }
+    }
+
+    /**
+     * Keeps the body of a message from being let go until the store has
+     * added it, as it is added asynchronously
+     */
+    void storeAddPending(MessageId messageId) {
+        pendingStoreAdds.add(messageId);
+    }
+
+    void storeAddCompleted(MessageId messageId) {
+        pendingStoreAdds.remove(messageId);
+    }
+
+    /**
+     * Lets go of all the bodies, for good
+     */
+    synchronized void clear() {
+        for (EvictableMessageReference reference : references.values()) {
+            reference.releaseBody();
+        }
+        references.clear();
+        size = 0;
+    }
+
+    private void evict() {
+        for (Iterator<EvictableMessageReference> i = references.values().iterator(); size > limit && i.hasNext();) {
+            EvictableMessageReference reference = i.next();
+            if (!reference.isLocked() && !pendingStoreAdds.contains(reference.getMessageId())) {
+                reference.evictBody();
+                size -= reference.getSize();
+                evictions++;
+                i.remove();
+            }
+        }
+    }
+}
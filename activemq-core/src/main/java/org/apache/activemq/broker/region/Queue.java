@@ -71,9 +71,15 @@ import org.apache.activemq.command.MessageId;
 import org.apache.activemq.command.ProducerAck;
 import org.apache.activemq.command.ProducerInfo;
 import org.apache.activemq.command.Response;
+import org.apache.activemq.filter.BinaryExpression;
 import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.ComparisonExpression;
+import org.apache.activemq.filter.ConstantExpression;
+import org.apache.activemq.filter.Expression;
+import org.apache.activemq.filter.LogicExpression;
 import org.apache.activemq.filter.MessageEvaluationContext;
 import org.apache.activemq.filter.NonCachedMessageEvaluationContext;
+import org.apache.activemq.filter.PropertyExpression;
 import org.apache.activemq.selector.SelectorParser;
 import org.apache.activemq.state.ProducerState;
 import org.apache.activemq.store.MessageRecoveryListener;
@@ -113,6 +119,11 @@ public class Queue extends BaseDestination implements Task, UsageListener {
     private MessageGroupMapFactory messageGroupMapFactory = new MessageGroupHashBucketFactory();
     final Lock sendLock = new ReentrantLock();
     private ExecutorService executor;
+    private final MessageBodyCache bodyCache = new MessageBodyCache();
+    // consumers with room that none of a full page of paged in messages can go to
+    private volatile List<Subscription> starvedConsumers = Collections.emptyList();
+    private long fruitlessScanEnqueues = -1;
+    private List<Subscription> fruitlessScanConsumers;
     private final Map<MessageId, Runnable> messagesWaitingForSpace = new LinkedHashMap<MessageId, Runnable>();
     private boolean useConsumerPriority = true;
     private boolean strictOrderDispatch = false;
@@ -232,6 +243,14 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         }
     }
 
+    /**
+     * @return the consumers with room for more messages whose selectors match
+     *         none of the full page of messages waiting for dispatch
+     */
+    public List<Subscription> getStarvedConsumers() {
+        return Collections.unmodifiableList(starvedConsumers);
+    }
+
     // make the queue easily visible in the debugger from its task runner
     // threads
     final class QueueThread extends Thread {
@@ -725,67 +744,79 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         final ConnectionContext context = producerExchange.getConnectionContext();
         Future<Object> result = null;
 
-        checkUsage(context, message);
-        sendLock.lockInterruptibly();
+        boolean storeAddPending = false;
         try {
-            if (store != null && message.isPersistent()) {
-                message.getMessageId().setBrokerSequenceId(getDestinationSequenceId());
-                if (messages.isCacheEnabled()) {
-                    result = store.asyncAddQueueMessage(context, message, isOptimizeStorage());
-                } else {
-                    store.addMessage(context, message);
-                }
-                if (isReduceMemoryFootprint()) {
-                    message.clearMarshalledState();
+            checkUsage(context, message);
+            sendLock.lockInterruptibly();
+            try {
+                if (store != null && message.isPersistent()) {
+                    message.getMessageId().setBrokerSequenceId(getDestinationSequenceId());
+                    if (messages.isCacheEnabled()) {
+                        result = store.asyncAddQueueMessage(context, message, isOptimizeStorage());
+                        if (getMaxPagedInBodyBytes() > 0) {
+                            // its body cannot be read back until it is added
+                            bodyCache.storeAddPending(message.getMessageId());
+                            storeAddPending = true;
+                        }
+                    } else {
+                        store.addMessage(context, message);
+                    }
+                    if (isReduceMemoryFootprint()) {
+                        message.clearMarshalledState();
+                    }
                 }
-            }
-            if (context.isInTransaction()) {
-                // If this is a transacted message.. increase the usage now so that
-                // a big TX does not blow up
-                // our memory. This increment is decremented once the tx finishes..
-                message.incrementReferenceCount();
-
-                context.getTransaction().addSynchronization(new Synchronization() {
-                    @Override
-                    public void afterCommit() throws Exception {
-                        sendLock.lockInterruptibly();
-                        try {
-                            // It could take while before we receive the commit
-                            // op, by that time the message could have expired..
-                            if (broker.isExpired(message)) {
-                                broker.messageExpired(context, message, null);
-                                destinationStatistics.getExpired().increment();
-                                return;
+                if (context.isInTransaction()) {
+                    // If this is a transacted message.. increase the usage now so that
+                    // a big TX does not blow up
+                    // our memory. This increment is decremented once the tx finishes..
+                    message.incrementReferenceCount();
+
+                    context.getTransaction().addSynchronization(new Synchronization() {
+                        @Override
+                        public void afterCommit() throws Exception {
+                            sendLock.lockInterruptibly();
+                            try {
+                                // It could take while before we receive the commit
+                                // op, by that time the message could have expired..
+                                if (broker.isExpired(message)) {
+                                    broker.messageExpired(context, message, null);
+                                    destinationStatistics.getExpired().increment();
+                                    return;
+                                }
+                                sendMessage(message);
+                            } finally {
+                                sendLock.unlock();
+                                message.decrementReferenceCount();
                             }
-                            sendMessage(message);
-                        } finally {
-                            sendLock.unlock();
+                            messageSent(context, message);
+                        }
+                        @Override
+                        public void afterRollback() throws Exception {
                             message.decrementReferenceCount();
                         }
-                        messageSent(context, message);
-                    }
-                    @Override
-                    public void afterRollback() throws Exception {
-                        message.decrementReferenceCount();
-                    }
-                });
-            } else {
-                // Add to the pending list, this takes care of incrementing the
-                // usage manager.
-                sendMessage(message);
+                    });
+                } else {
+                    // Add to the pending list, this takes care of incrementing the
+                    // usage manager.
+                    sendMessage(message);
+                }
+            } finally {
+                sendLock.unlock();
+            }
+            if (!context.isInTransaction()) {
+                messageSent(context, message);
+            }
+            if (result != null && !result.isCancelled()) {
+                try {
+                    result.get();
+                } catch (CancellationException e) {
+                    // ignore - the task has been cancelled if the message
+                    // has already been deleted
+                }
             }
         } finally {
-            sendLock.unlock();
-        }
-        if (!context.isInTransaction()) {
-            messageSent(context, message);
-        }
-        if (result != null && !result.isCancelled()) {
-            try {
-                result.get();
-            } catch (CancellationException e) {
-                // ignore - the task has been cancelled if the message
-                // has already been deleted
+            if (storeAddPending) {
+                bodyCache.storeAddCompleted(message.getMessageId());
             }
         }
     }
@@ -817,6 +848,8 @@ public class Queue extends BaseDestination implements Task, UsageListener {
             LOG.debug(getActiveMQDestination().getQualifiedName() + " expiring messages ..");
         }
 
+        expireStoredMessages();
+
         // just track the insertion count
         List<Message> browsedMessages = new InsertionCountList<Message>();
         doBrowse(browsedMessages, this.getMaxExpirePageSize());
@@ -826,6 +859,43 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         }
     }
 
+    /**
+     * Expires the messages of the store that have expired by now, found
+     * through an index of their expiration the store keeps rather than by
+     * paging through the ones ahead of them. Messages paged in are not read
+     * but left for the browse that follows.
+     */
+    private void expireStoredMessages() {
+        if (store == null) {
+            return;
+        }
+        ConnectionContext context = createConnectionContext();
+        int max = getMaxExpirePageSize();
+        List<Message> batch = new ArrayList<Message>();
+        try {
+            while (store.recoverExpiredMessages(System.currentTimeMillis(), max, createRecoveryListener(batch, true))) {
+                List<QueueMessageReference> expired = new ArrayList<QueueMessageReference>();
+                for (Message message : batch) {
+                    message.setRegionDestination(this);
+                    QueueMessageReference ref = createMessageReference(message);
+                    if (broker.isExpired(ref)) {
+                        // held as if paged in until dropped
+                        ref.incrementReferenceCount();
+                        expired.add(ref);
+                    }
+                }
+                int removed = expireUnpagedMessages(context, expired);
+                // carry on while whole batches go
+                if (batch.size() < max || removed < batch.size()) {
+                    break;
+                }
+                batch.clear();
+            }
+        } catch (Exception e) {
+            LOG.error("Failed to expire messages of " + getActiveMQDestination() + " found through the store", e);
+        }
+    }
+
     public void gc() {
     }
 
@@ -908,6 +978,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         if (messages != null) {
             messages.stop();
         }
+        bodyCache.clear();
 
         systemUsage.getMemoryUsage().removeUsageListener(this);
         if (memoryUsage != null) {
@@ -1012,12 +1083,50 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         return result;
     }
 
+    /**
+     * @return a reference that may let go of the body of a persistent
+     *         message, if the bodies of paged in messages are bounded
+     */
+    private QueueMessageReference createPagedInReference(QueueMessageReference ref) {
+        long maxBodyBytes = getMaxPagedInBodyBytes();
+        if (maxBodyBytes <= 0 || store == null || !ref.isPersistent()) {
+            return ref;
+        }
+        bodyCache.setLimit(maxBodyBytes);
+        EvictableMessageReference result = new EvictableMessageReference(ref.getMessage(), bodyCache, store);
+        bodyCache.add(result, false);
+        return result;
+    }
+
+    MessageBodyCache getBodyCache() {
+        return bodyCache;
+    }
+
     public Message[] browse() {
         List<Message> browseList = new ArrayList<Message>();
         doBrowse(browseList, getMaxBrowsePageSize());
         return browseList.toArray(new Message[browseList.size()]);
     }
 
+    /**
+     * Browses the messages matching the selector through an index the store
+     * keeps of a property the selector requires a value of, or else as
+     * {@link #browse()} does, leaving the caller to match them.
+     */
+    public Message[] browse(String selector) throws InvalidSelectorException {
+        List<Message> browseList = new ArrayList<Message>();
+        try {
+            if (processIndexedMessages(createConnectionContext(), selector, null, false, browseList, getMaxBrowsePageSize()) >= 0) {
+                return browseList.toArray(new Message[browseList.size()]);
+            }
+        } catch (InvalidSelectorException e) {
+            throw e;
+        } catch (Exception e) {
+            LOG.warn("Failed to browse " + getActiveMQDestination() + " through the store index for " + selector, e);
+        }
+        return browse();
+    }
+
     public void doBrowse(List<Message> browseList, int max) {
         final ConnectionContext connectionContext = createConnectionContext();
         try {
@@ -1145,6 +1254,10 @@ public class Queue extends BaseDestination implements Task, UsageListener {
 
     public void purge() throws Exception {
         ConnectionContext c = createConnectionContext();
+        if (removeAllStoredMessages(c)) {
+            gc();
+            return;
+        }
         List<MessageReference> list = null;
         do {
             doPageIn(true);
@@ -1175,6 +1288,59 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         getMessages().clear();
     }
 
+    /**
+     * Removes all the messages with a single operation of the store rather
+     * than paging them in to remove them one at a time
+     *
+     * @return false if some of the messages are only held by the cursor
+     */
+    private boolean removeAllStoredMessages(ConnectionContext context) throws Exception {
+        // keeps messages from being paged in while the store is emptied
+        synchronized (iteratingMutex) {
+            messagesLock.writeLock().lock();
+            try {
+                if (store == null || !(messages instanceof StoreQueueCursor)
+                        || !((StoreQueueCursor) messages).getNonPersistent().isEmpty()) {
+                    return false;
+                }
+                long count = destinationStatistics.getMessages().getCount();
+                store.removeAllMessages(context);
+
+                List<QueueMessageReference> list;
+                pagedInMessagesLock.readLock().lock();
+                try {
+                    list = new ArrayList<QueueMessageReference>(pagedInMessages.values());
+                } finally {
+                    pagedInMessagesLock.readLock().unlock();
+                }
+                for (QueueMessageReference ref : list) {
+                    ref.setAcked(true);
+                    messageConsumed(context, ref);
+                    ref.drop();
+                    pagedInMessagesLock.writeLock().lock();
+                    try {
+                        pagedInMessages.remove(ref.getMessageId());
+                    } finally {
+                        pagedInMessagesLock.writeLock().unlock();
+                    }
+                    pagedInPendingDispatchLock.writeLock().lock();
+                    try {
+                        pagedInPendingDispatch.remove(ref);
+                    } finally {
+                        pagedInPendingDispatchLock.writeLock().unlock();
+                    }
+                }
+                getDestinationStatistics().getDequeues().add(count);
+                destinationStatistics.getMessages().setCount(0);
+                // the cursor may still hold some of them
+                clearPendingMessages();
+            } finally {
+                messagesLock.writeLock().unlock();
+            }
+        }
+        return true;
+    }
+
     public void clearPendingMessages() {
         messagesLock.writeLock().lock();
         try {
@@ -1211,7 +1377,8 @@ public class Queue extends BaseDestination implements Task, UsageListener {
      * @return the number of messages removed
      */
     public int removeMatchingMessages(String selector, int maximumMessages) throws Exception {
-        return removeMatchingMessages(createSelectorFilter(selector), maximumMessages);
+        int removed = processIndexedMessages(createConnectionContext(), selector, null, true, null, maximumMessages);
+        return removed >= 0 ? removed : removeMatchingMessages(createSelectorFilter(selector), maximumMessages);
     }
 
     /**
@@ -1274,7 +1441,8 @@ public class Queue extends BaseDestination implements Task, UsageListener {
      */
     public int copyMatchingMessagesTo(ConnectionContext context, String selector, ActiveMQDestination dest,
             int maximumMessages) throws Exception {
-        return copyMatchingMessages(context, createSelectorFilter(selector), dest, maximumMessages);
+        int copied = processIndexedMessages(context, selector, dest, false, null, maximumMessages);
+        return copied >= 0 ? copied : copyMatchingMessages(context, createSelectorFilter(selector), dest, maximumMessages);
     }
 
     /**
@@ -1368,7 +1536,8 @@ public class Queue extends BaseDestination implements Task, UsageListener {
      */
     public int moveMatchingMessagesTo(ConnectionContext context, String selector, ActiveMQDestination dest,
             int maximumMessages) throws Exception {
-        return moveMatchingMessagesTo(context, createSelectorFilter(selector), dest, maximumMessages);
+        int moved = processIndexedMessages(context, selector, dest, true, null, maximumMessages);
+        return moved >= 0 ? moved : moveMatchingMessagesTo(context, createSelectorFilter(selector), dest, maximumMessages);
     }
 
     /**
@@ -1402,6 +1571,343 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         return movedCounter;
     }
 
+    /**
+     * Browses, copies, moves or removes the messages matching the selector
+     * without paging in the others, when the store keeps an index of a
+     * property the selector requires a string value of and no non persistent
+     * messages are pending.
+     *
+     * @param dest where to copy or move the messages to, null to browse or
+     *                remove them
+     * @param remove true to remove the messages once copied, if at all
+     * @param browseList where to add the messages browsed, or null
+     * @return the number of messages matched, -1 if the messages have to be
+     *         paged in to find them
+     */
+    private int processIndexedMessages(ConnectionContext context, String selector, ActiveMQDestination dest,
+            boolean remove, List<Message> browseList, int maximumMessages) throws Exception {
+        if (store == null || selector == null || selector.isEmpty()) {
+            return -1;
+        }
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        findRequiredPropertyValues(SelectorParser.parse(selector), values);
+        if (values.isEmpty()) {
+            return -1;
+        }
+        messagesLock.readLock().lock();
+        try {
+            if (!(messages instanceof StoreQueueCursor) || !((StoreQueueCursor) messages).getNonPersistent().isEmpty()) {
+                return -1;
+            }
+        } finally {
+            messagesLock.readLock().unlock();
+        }
+        List<Message> batch = recoverIndexedMessages(values, null);
+        if (batch == null) {
+            return -1;
+        }
+
+        MessageReferenceFilter filter = createSelectorFilter(selector);
+        Set<MessageId> processed = new HashSet<MessageId>();
+        int count = 0;
+        List<QueueMessageReference> pagedIn;
+        pagedInMessagesLock.readLock().lock();
+        try {
+            pagedIn = new ArrayList<QueueMessageReference>(pagedInMessages.values());
+        } finally {
+            pagedInMessagesLock.readLock().unlock();
+        }
+        for (QueueMessageReference ref : pagedIn) {
+            processed.add(ref.getMessageId());
+            if (processPagedInMessage(context, filter, ref, dest, remove, browseList)
+                    && ++count >= maximumMessages && maximumMessages > 0) {
+                return count;
+            }
+        }
+
+        while (batch != null && !batch.isEmpty()) {
+            List<QueueMessageReference> unpaged = new ArrayList<QueueMessageReference>();
+            MessageId after = null;
+            try {
+                for (Message message : batch) {
+                    after = message.getMessageId();
+                    if (!processed.add(message.getMessageId())) {
+                        continue;
+                    }
+                    QueueMessageReference ref;
+                    pagedInMessagesLock.readLock().lock();
+                    try {
+                        ref = pagedInMessages.get(message.getMessageId());
+                    } finally {
+                        pagedInMessagesLock.readLock().unlock();
+                    }
+                    boolean matched;
+                    if (ref != null) {
+                        matched = processPagedInMessage(context, filter, ref, dest, remove, browseList);
+                    } else {
+                        message.setRegionDestination(this);
+                        ref = createMessageReference(message);
+                        matched = filter.evaluate(context, ref);
+                        if (matched && remove) {
+                            QueueMessageReference claimed = claimUnpagedMessage(ref);
+                            if (claimed == null) {
+                                // consumed since it was read
+                                matched = false;
+                            } else if (claimed != ref) {
+                                // paged in since, and left alone if dispatched
+                                matched = claimed.getLockOwner() == null
+                                        && processPagedInMessage(context, filter, claimed, dest, remove, browseList);
+                            } else {
+                                if (dest != null) {
+                                    try {
+                                        BrokerSupport.resend(context, message, dest);
+                                    } catch (Exception e) {
+                                        releaseClaim(ref);
+                                        throw e;
+                                    }
+                                }
+                                unpaged.add(ref);
+                            }
+                        } else if (matched) {
+                            if (browseList != null) {
+                                browseList.add(message);
+                            }
+                            if (dest != null) {
+                                BrokerSupport.resend(context, message, dest);
+                            }
+                        }
+                    }
+                    if (matched && ++count >= maximumMessages && maximumMessages > 0) {
+                        break;
+                    }
+                }
+            } finally {
+                if (!unpaged.isEmpty()) {
+                    removeClaimedMessages(context, unpaged);
+                }
+            }
+            if (count >= maximumMessages && maximumMessages > 0) {
+                break;
+            }
+            batch = recoverIndexedMessages(values, after);
+        }
+        return count;
+    }
+
+    /**
+     * @return true if the message matched and was browsed, copied, moved or
+     *         removed
+     */
+    private boolean processPagedInMessage(ConnectionContext context, MessageReferenceFilter filter, QueueMessageReference ref,
+            ActiveMQDestination dest, boolean remove, List<Message> browseList) throws Exception {
+        if (ref.isDropped() || !filter.evaluate(context, ref)) {
+            return false;
+        }
+        if (remove) {
+            if (dest != null) {
+                moveMessageTo(context, ref, dest);
+            } else {
+                removeMessage(context, ref);
+            }
+        } else {
+            ref.incrementReferenceCount();
+            try {
+                Message m = ref.getMessage();
+                if (browseList != null) {
+                    browseList.add(m);
+                }
+                if (dest != null) {
+                    BrokerSupport.resend(context, m, dest);
+                }
+            } finally {
+                ref.decrementReferenceCount();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Claims a message read from the store rather than paged in, by putting
+     * it in the paged in messages as a page in would, so that it can no
+     * longer be paged in and dispatched while it is moved or removed. The
+     * reference is held until it is dropped.
+     *
+     * @return the reference passed in if claimed, the one paged in meanwhile,
+     *         or null if the message has been consumed since it was read
+     */
+    private QueueMessageReference claimUnpagedMessage(QueueMessageReference ref) throws IOException {
+        messagesLock.writeLock().lock();
+        try {
+            pagedInMessagesLock.writeLock().lock();
+            try {
+                QueueMessageReference pagedIn = pagedInMessages.get(ref.getMessageId());
+                if (pagedIn != null) {
+                    return pagedIn;
+                }
+            } finally {
+                pagedInMessagesLock.writeLock().unlock();
+            }
+            // a page in needs the messages lock, so this one cannot be
+            // paged in, dispatched and acked until it is claimed
+            if (store.getMessage(ref.getMessageId()) == null) {
+                return null;
+            }
+            ref.incrementReferenceCount();
+            pagedInMessagesLock.writeLock().lock();
+            try {
+                pagedInMessages.put(ref.getMessageId(), ref);
+            } finally {
+                pagedInMessagesLock.writeLock().unlock();
+            }
+            return ref;
+        } finally {
+            messagesLock.writeLock().unlock();
+        }
+    }
+
+    private void releaseClaim(QueueMessageReference ref) {
+        pagedInMessagesLock.writeLock().lock();
+        try {
+            pagedInMessages.remove(ref.getMessageId());
+        } finally {
+            pagedInMessagesLock.writeLock().unlock();
+        }
+        ref.decrementReferenceCount();
+    }
+
+    /**
+     * Removes the messages claimed, other than the ones expired meanwhile.
+     */
+    private void removeClaimedMessages(ConnectionContext context, List<QueueMessageReference> refs) throws IOException {
+        messagesLock.writeLock().lock();
+        try {
+            for (QueueMessageReference ref : refs) {
+                if (!ref.isDropped()) {
+                    removeMessage(context, null, ref);
+                }
+            }
+            // the cursor may still hold them
+            clearPendingMessages();
+        } finally {
+            messagesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Expires messages read from the store rather than paged in, keeping a
+     * page in under way from taking them in as they go. Messages paged in
+     * meanwhile are left to expire that way. The references passed in are
+     * expected to be held, and are let go of either way.
+     *
+     * @return the number of messages read from the store that were expired
+     */
+    private int expireUnpagedMessages(ConnectionContext context, List<QueueMessageReference> refs) {
+        int removed = 0;
+        messagesLock.writeLock().lock();
+        try {
+            for (QueueMessageReference ref : refs) {
+                QueueMessageReference pagedIn;
+                pagedInMessagesLock.writeLock().lock();
+                try {
+                    pagedIn = pagedInMessages.get(ref.getMessageId());
+                    if (pagedIn == null) {
+                        pagedInMessages.put(ref.getMessageId(), ref);
+                    }
+                } finally {
+                    pagedInMessagesLock.writeLock().unlock();
+                }
+                if (pagedIn == null) {
+                    messageExpired(context, ref);
+                    removed++;
+                } else {
+                    ref.decrementReferenceCount();
+                }
+            }
+            if (removed > 0) {
+                // the cursor may still hold them
+                clearPendingMessages();
+            }
+        } finally {
+            messagesLock.writeLock().unlock();
+        }
+        return removed;
+    }
+
+    /**
+     * @return the next messages of the store that may have one of the values,
+     *         null if it keeps no index of any of the properties
+     */
+    private List<Message> recoverIndexedMessages(Map<String, Object> values, MessageId after) throws Exception {
+        List<Message> result = new ArrayList<Message>();
+        MessageRecoveryListener listener = createRecoveryListener(result, false);
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            if (store.recoverIndexedMessages(value.getKey(), value.getValue(), after, getMaxPageSize(), listener)) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param skipPagedIn true to have the store pass over the messages paged
+     *                in rather than read them
+     * @return a listener adding the messages it recovers to the list
+     */
+    private MessageRecoveryListener createRecoveryListener(final List<Message> messages, final boolean skipPagedIn) {
+        return new MessageRecoveryListener() {
+            public boolean recoverMessage(Message message) {
+                messages.add(message);
+                return true;
+            }
+
+            public boolean recoverMessageReference(MessageId ref) {
+                return false;
+            }
+
+            public boolean hasSpace() {
+                return true;
+            }
+
+            public boolean isDuplicate(MessageId ref) {
+                if (!skipPagedIn) {
+                    return false;
+                }
+                pagedInMessagesLock.readLock().lock();
+                try {
+                    return pagedInMessages.containsKey(ref);
+                } finally {
+                    pagedInMessagesLock.readLock().unlock();
+                }
+            }
+        };
+    }
+
+    /**
+     * Finds the properties the selector requires to equal a string, by
+     * following the terms it ANDs together.
+     */
+    private static void findRequiredPropertyValues(Expression expression, Map<String, Object> values) {
+        if (!(expression instanceof BinaryExpression)) {
+            return;
+        }
+        BinaryExpression binary = (BinaryExpression) expression;
+        if (binary instanceof LogicExpression && "AND".equals(binary.getExpressionSymbol())) {
+            findRequiredPropertyValues(binary.getLeft(), values);
+            findRequiredPropertyValues(binary.getRight(), values);
+        } else if (binary instanceof ComparisonExpression && "=".equals(binary.getExpressionSymbol())) {
+            Expression left = binary.getLeft();
+            Expression right = binary.getRight();
+            if (right instanceof PropertyExpression) {
+                left = binary.getRight();
+                right = binary.getLeft();
+            }
+            if (left instanceof PropertyExpression && right instanceof ConstantExpression
+                    && ((ConstantExpression) right).getValue() instanceof String) {
+                values.put(((PropertyExpression) left).getName(), ((ConstantExpression) right).getValue());
+            }
+        }
+    }
+
     /**
      * @return true if we would like to iterate again
      * @see org.apache.activemq.thread.Task#iterate()
@@ -1750,21 +2256,29 @@ public class Queue extends BaseDestination implements Task, UsageListener {
             toPageIn = Math.min(getConsumerMessageCountBeforeFull(), toPageIn);
         }
         int pagedInPendingSize = 0;
+        long pagedInPendingBytes = 0;
+        long maxPageInBytes = getMaxPageInBytes();
         pagedInPendingDispatchLock.readLock().lock();
         try {
             pagedInPendingSize = pagedInPendingDispatch.size();
+            pagedInPendingBytes = pagedInPendingDispatch.messageSize();
         } finally {
             pagedInPendingDispatchLock.readLock().unlock();
         }
-        if (toPageIn > 0 && (force || (!consumers.isEmpty() && pagedInPendingSize < getMaxPageSize()))) {
+        boolean hasSpace = pagedInPendingSize < getMaxPageSize() && (maxPageInBytes <= 0 || pagedInPendingBytes < maxPageInBytes);
+        List<Subscription> starved = starvedConsumers;
+        if (toPageIn > 0 && (force || (!consumers.isEmpty() && hasSpace))) {
             int count = 0;
+            long bytes = pagedInPendingBytes;
             result = new ArrayList<QueueMessageReference>(toPageIn);
             messagesLock.writeLock().lock();
             try {
                 try {
                     messages.setMaxBatchSize(toPageIn);
                     messages.reset();
-                    while (messages.hasNext() && count < toPageIn) {
+                    // large messages, such as the chunks of a stream, are
+                    // paged in a few at a time when the bytes are limited
+                    while (messages.hasNext() && count < toPageIn && (maxPageInBytes <= 0 || count == 0 || bytes < maxPageInBytes)) {
                         MessageReference node = messages.next();
                         messages.remove();
 
@@ -1778,6 +2292,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
                         } else {
                             result.add(ref);
                             count++;
+                            bytes += ref.getSize();
                         }
                     }
                 } finally {
@@ -1786,6 +2301,10 @@ public class Queue extends BaseDestination implements Task, UsageListener {
             } finally {
                 messagesLock.writeLock().unlock();
             }
+        } else if (toPageIn > 0 && !hasSpace && !starved.isEmpty() && getMaxPageInScanSize() > 0) {
+            result = pageInForStarvedConsumers(starved, toPageIn);
+        }
+        if (result != null) {
             // Only add new messages, not already pagedIn to avoid multiple
             // dispatch attempts
             pagedInMessagesLock.writeLock().lock();
@@ -1797,6 +2316,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
                 }
                 for (QueueMessageReference ref : result) {
                     if (!pagedInMessages.containsKey(ref.getMessageId())) {
+                        ref = createPagedInReference(ref);
                         pagedInMessages.put(ref.getMessageId(), ref);
                         resultList.addMessageLast(ref);
                     } else {
@@ -1814,6 +2334,110 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         return resultList;
     }
 
+    /**
+     * Looks past the full page of messages waiting for dispatch for messages
+     * the starved consumers can take, leaving the others in the cursor
+     */
+    private List<QueueMessageReference> pageInForStarvedConsumers(List<Subscription> starved, int toPageIn) throws Exception {
+        List<QueueMessageReference> result = new ArrayList<QueueMessageReference>(toPageIn);
+        long enqueues = destinationStatistics.getEnqueues().getCount();
+        long maxPageInBytes = getMaxPageInBytes();
+        long bytes = 0;
+        int scanned = 0;
+        messagesLock.writeLock().lock();
+        try {
+            if (enqueues == fruitlessScanEnqueues && starved.equals(fruitlessScanConsumers)) {
+                // nothing has changed since they were last looked for
+                return result;
+            }
+            Set<MessageId> seen = new HashSet<MessageId>();
+            try {
+                messages.reset();
+                while (result.size() < toPageIn && seen.size() < getMaxPageInScanSize()
+                        && (maxPageInBytes <= 0 || result.isEmpty() || bytes < maxPageInBytes)) {
+                    if (!messages.hasNext()) {
+                        // iteration starts over when more are buffered
+                        if (messages.bufferMoreMessages()) {
+                            continue;
+                        }
+                        break;
+                    }
+                    MessageReference node = messages.next();
+                    if (seen.add(node.getMessageId()) && !node.isExpired() && isWanted(starved, node)) {
+                        messages.remove();
+                        QueueMessageReference ref = createMessageReference(node.getMessage());
+                        result.add(ref);
+                        bytes += ref.getSize();
+                    } else {
+                        node.decrementReferenceCount();
+                    }
+                }
+                scanned = seen.size();
+            } finally {
+                messages.release();
+            }
+            if (result.isEmpty()) {
+                fruitlessScanEnqueues = enqueues;
+                fruitlessScanConsumers = starved;
+            } else {
+                fruitlessScanEnqueues = -1;
+                fruitlessScanConsumers = null;
+            }
+        } finally {
+            messagesLock.writeLock().unlock();
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(destination.getPhysicalName() + " paged in " + result.size() + " of " + scanned
+                    + " messages looked at for starved consumers " + starved);
+        }
+        return result;
+    }
+
+    private boolean isWanted(List<Subscription> starved, MessageReference node) throws Exception {
+        for (Subscription s : starved) {
+            if (dispatchSelector.canSelect(s, node)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Notes the consumers with room once a full page of messages is still
+     * waiting for dispatch, as none of those messages match their selectors.
+     * Called with the pagedInPendingDispatch lock held.
+     *
+     * @return true if a consumer is newly starved
+     */
+    private boolean updateStarvedConsumers() {
+        boolean newlyStarved = false;
+        List<Subscription> starved = Collections.emptyList();
+        boolean full = pagedInPendingDispatch.size() >= getMaxPageSize()
+                || (getMaxPageInBytes() > 0 && !pagedInPendingDispatch.isEmpty() && pagedInPendingDispatch.messageSize() >= getMaxPageInBytes());
+        if (full) {
+            for (Subscription s : getConsumers()) {
+                if (!s.isBrowser() && !s.isFull()) {
+                    if (starved.isEmpty()) {
+                        starved = new ArrayList<Subscription>();
+                    }
+                    starved.add(s);
+                    if (!starvedConsumers.contains(s)) {
+                        newlyStarved = true;
+                        // without a selector the consumer is only waiting for
+                        // messages held for other consumers, such as groups
+                        if (s.getConsumerInfo().getSelector() != null && LOG.isDebugEnabled()) {
+                            LOG.debug(getActiveMQDestination().getQualifiedName() + ", consumer " + s.getConsumerInfo().getConsumerId()
+                                    + " with selector: " + s.getConsumerInfo().getSelector() + " matches none of the "
+                                    + pagedInPendingDispatch.size() + " messages paged in");
+                        }
+                    }
+                }
+            }
+        }
+        starvedConsumers = starved;
+        return newlyStarved;
+    }
+
     private void doDispatch(PendingList list) throws Exception {
         boolean doWakeUp = false;
 
@@ -1844,6 +2468,10 @@ public class Queue extends BaseDestination implements Task, UsageListener {
                     doWakeUp = true;
                 }
             }
+            // look past the paged in messages for them on the next iteration
+            if (updateStarvedConsumers() && getMaxPageInScanSize() > 0) {
+                doWakeUp = true;
+            }
         } finally {
             pagedInPendingDispatchLock.writeLock().unlock();
         }
@@ -163,6 +163,10 @@ public abstract class AbstractPendingMessageCursor implements PendingMessageCurs
         return false;
     }
 
+    public boolean bufferMoreMessages() {
+        return false;
+    }
+
     /**
      * @return the memoryUsageHighWaterMark
      */
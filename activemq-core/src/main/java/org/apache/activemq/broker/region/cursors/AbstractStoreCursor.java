@@ -16,7 +16,12 @@
  */
 package org.apache.activemq.broker.region.cursors;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 import org.apache.activemq.broker.region.Destination;
 import org.apache.activemq.broker.region.MessageReference;
 import org.apache.activemq.command.Message;
@@ -28,6 +33,11 @@ import org.slf4j.LoggerFactory;
 /**
  *  Store based cursor
  *
+ *  When read ahead is enabled the next batch is recovered from the store on
+ *  the read ahead executor while the current one is dispatched. The depth
+ *  of the read ahead grows by a batch each time the consumers catch up with
+ *  it and shrinks again when memory gets short.
+ *
  */
 public abstract class AbstractStoreCursor extends AbstractPendingMessageCursor implements MessageRecoveryListener {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractStoreCursor.class);
@@ -39,6 +49,16 @@ public abstract class AbstractStoreCursor extends AbstractPendingMessageCursor i
     protected int size;
     private MessageId lastCachedId;
     private boolean hadSpace = false;
+    // serializes reads of the store batch with the read ahead
+    private final Object storeLock = new Object();
+    // changes, under the store lock, each time the store batch is moved
+    private int batchEpoch;
+    private int maxReadAheadBatches;
+    private int readAheadDepth;
+    private ReadAhead readAhead;
+    private Executor readAheadExecutor;
+    private long readAheadHits;
+    private long readAheadMisses;
 
     protected AbstractStoreCursor(Destination destination) {
         super((destination != null ? destination.isPrioritizedMessages():false));
@@ -55,7 +75,7 @@ public abstract class AbstractStoreCursor extends AbstractPendingMessageCursor i
         if (!isStarted()) {
             clear();
             super.start();      
-            resetBatch();
+            resetStoreBatch();
             resetSize();
             setCacheEnabled(!this.storeHasMessages&&useCache);
         } 
@@ -69,7 +89,7 @@ public abstract class AbstractStoreCursor extends AbstractPendingMessageCursor i
     }
 
     public final synchronized void stop() throws Exception {
-        resetBatch();
+        resetStoreBatch();
         super.stop();
         gc();
     }
@@ -192,7 +212,7 @@ public abstract class AbstractStoreCursor extends AbstractPendingMessageCursor i
                             + ", lastCachedId: " + lastCachedId
                             + " current node Id: " + node.getMessageId() + " batchList size: " + batchList.size());
                 }
-                setBatch(lastCachedId);
+                setStoreBatch(lastCachedId);
                 lastCachedId = null;
             }
         }
@@ -242,6 +262,8 @@ public abstract class AbstractStoreCursor extends AbstractPendingMessageCursor i
         }
         batchList.clear();
         clearIterator(false);
+        // the reset that follows moves the store batch past anything read ahead
+        readAhead = null;
         batchResetNeeded = true;
         // wonder do we need to determine size here, it may change before restart
         resetSize();
@@ -259,18 +281,179 @@ public abstract class AbstractStoreCursor extends AbstractPendingMessageCursor i
             LOG.trace(this + " - fillBatch");
         }
         if (batchResetNeeded) {
-            resetBatch();
+            resetStoreBatch();
             this.batchResetNeeded = false;
         }
         if (this.batchList.isEmpty() && this.storeHasMessages && this.size >0) {
             try {
-                doFillBatch();
+                readBatch();
             } catch (Exception e) {
                 LOG.error(this + " - Failed to fill batch", e);
                 throw new RuntimeException(e);
             }
             this.storeHasMessages = !this.batchList.isEmpty() || !hadSpace;
+            if (this.storeHasMessages) {
+                scheduleReadAhead();
+            }
+        }
+    }
+
+    private void readBatch() throws Exception {
+        if (!takeReadAhead()) {
+            synchronized (storeLock) {
+                doFillBatch(maxBatchSize, this);
+            }
+        }
+    }
+
+    public final synchronized boolean bufferMoreMessages() {
+        int buffered = batchList.size();
+        // with the cache enabled everything is buffered already
+        if (buffered == 0 || buffered >= size || batchResetNeeded || isCacheEnabled() || !hasSpace()) {
+            return false;
+        }
+        try {
+            readBatch();
+        } catch (Exception e) {
+            LOG.error(this + " - Failed to buffer more messages", e);
+            throw new RuntimeException(e);
+        }
+        if (batchList.size() > buffered) {
+            scheduleReadAhead();
+            return true;
         }
+        return false;
+    }
+
+    /**
+     * Moves the messages read ahead into the batch
+     *
+     * @return false if there were none, and the batch has to be read now
+     */
+    private boolean takeReadAhead() throws Exception {
+        ReadAhead pending = readAhead;
+        if (pending == null) {
+            if (maxReadAheadBatches > 0) {
+                readAheadMisses++;
+            }
+            return false;
+        }
+        readAhead = null;
+        if (!pending.complete()) {
+            // the consumers caught up, read further ahead next time
+            readAheadMisses++;
+            readAheadDepth = Math.min(readAheadDepth + maxBatchSize, maxBatchSize * maxReadAheadBatches);
+            if (pending.isCancelled()) {
+                return false;
+            }
+            pending.await();
+        } else {
+            readAheadHits++;
+        }
+        if (pending.failure != null) {
+            throw pending.failure;
+        }
+        if (pending.epoch != batchEpoch) {
+            // the store batch has been moved since, it will be read again
+            return false;
+        }
+        hadSpace = pending.hadSpace;
+        for (Message message : pending.messages) {
+            recoverMessage(message, false);
+        }
+        return !batchList.isEmpty();
+    }
+
+    private void scheduleReadAhead() {
+        Executor executor = readAheadExecutor;
+        if (maxReadAheadBatches <= 0 || executor == null || isCacheEnabled() || !super.hasSpace()) {
+            return;
+        }
+        if (systemUsage.getMemoryUsage().getPercentUsage() > memoryUsageHighWaterMark / 2) {
+            readAheadDepth /= 2;
+        }
+        readAheadDepth = Math.max(maxBatchSize, Math.min(readAheadDepth, maxBatchSize * maxReadAheadBatches));
+        ReadAhead task = new ReadAhead(batchEpoch, readAheadDepth);
+        try {
+            executor.execute(task);
+            readAhead = task;
+        } catch (RejectedExecutionException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(this + " - read ahead rejected", e);
+            }
+        }
+    }
+
+    private void resetStoreBatch() {
+        synchronized (storeLock) {
+            batchEpoch++;
+            resetBatch();
+        }
+    }
+
+    private void setStoreBatch(MessageId messageId) throws Exception {
+        synchronized (storeLock) {
+            batchEpoch++;
+            setBatch(messageId);
+        }
+    }
+
+    /**
+     * @return the number of batches read from the store in the background
+     *         before they were needed, zero to read them only when needed
+     */
+    public synchronized int getMaxReadAheadBatches() {
+        return maxReadAheadBatches;
+    }
+
+    /**
+     * @param maxReadAheadBatches the most batches to read from the store
+     *                ahead of dispatch, zero disables read ahead
+     */
+    public synchronized void setMaxReadAheadBatches(int maxReadAheadBatches) {
+        this.maxReadAheadBatches = maxReadAheadBatches;
+    }
+
+    public synchronized Executor getReadAheadExecutor() {
+        return readAheadExecutor;
+    }
+
+    /**
+     * @param readAheadExecutor what to read batches ahead of dispatch on, see
+     *                {@link org.apache.activemq.broker.BrokerService#getStoreReadAheadExecutor()}
+     */
+    public synchronized void setReadAheadExecutor(Executor readAheadExecutor) {
+        this.readAheadExecutor = readAheadExecutor;
+    }
+
+    /**
+     * @return the number of messages the next read ahead will ask for
+     */
+    public synchronized int getReadAheadDepth() {
+        return readAheadDepth;
+    }
+
+    /**
+     * @return the number of batches that had been read ahead by the time they
+     *         were needed
+     */
+    public synchronized long getReadAheadHits() {
+        return readAheadHits;
+    }
+
+    /**
+     * @return the number of batches that had to be waited for, or read on
+     *         the dispatch thread, while read ahead was enabled
+     */
+    public synchronized long getReadAheadMisses() {
+        return readAheadMisses;
+    }
+
+    /**
+     * Loads a message that the store only recovered the id of
+     */
+    protected Message loadMessage(MessageId messageId) throws Exception {
+        throw new RuntimeException("Not supported");
     }
     
     
@@ -297,12 +480,103 @@ public abstract class AbstractStoreCursor extends AbstractPendingMessageCursor i
         return super.toString() + ":" + regionDestination.getActiveMQDestination().getPhysicalName() + ",batchResetNeeded=" + batchResetNeeded
                     + ",storeHasMessages=" + this.storeHasMessages + ",size=" + this.size + ",cacheEnabled=" + isCacheEnabled();
     }
-    
-    protected abstract void doFillBatch() throws Exception;
+
+    /**
+     * Recovers the next messages of the store batch
+     *
+     * @param maxReturned the most messages to recover
+     * @param listener either this cursor or a read ahead
+     */
+    protected abstract void doFillBatch(int maxReturned, MessageRecoveryListener listener) throws Exception;
     
     protected abstract void resetBatch();
     
     protected abstract int getStoreSize();
     
     protected abstract boolean isStoreEmpty();
+
+    /**
+     * Reads a batch from the store on the executor, collecting the messages
+     * for the dispatch thread to take once it runs out of the current batch.
+     * It is cancelled rather than waited for if it has not started by then.
+     */
+    private final class ReadAhead implements Runnable, MessageRecoveryListener {
+        final int epoch;
+        final int count;
+        final List<Message> messages;
+        boolean hadSpace = true;
+        Exception failure;
+        private boolean started;
+        private boolean cancelled;
+        private boolean done;
+
+        ReadAhead(int epoch, int count) {
+            this.epoch = epoch;
+            this.count = count;
+            this.messages = new ArrayList<Message>(count);
+        }
+
+        public void run() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                started = true;
+            }
+            try {
+                synchronized (storeLock) {
+                    // the batch may have been moved while this was queued
+                    if (epoch == batchEpoch) {
+                        doFillBatch(count, this);
+                    }
+                }
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                synchronized (this) {
+                    done = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * @return true if done, otherwise it is cancelled when not yet started
+         */
+        synchronized boolean complete() {
+            if (!started) {
+                cancelled = true;
+            }
+            return done;
+        }
+
+        synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        synchronized void await() throws InterruptedException {
+            while (!done) {
+                wait();
+            }
+        }
+
+        public boolean recoverMessage(Message message) throws Exception {
+            messages.add(message);
+            return true;
+        }
+
+        public boolean recoverMessageReference(MessageId ref) throws Exception {
+            return recoverMessage(loadMessage(ref));
+        }
+
+        public boolean hasSpace() {
+            hadSpace = AbstractStoreCursor.super.hasSpace();
+            return hadSpace;
+        }
+
+        public boolean isDuplicate(MessageId ref) {
+            // never take the cursor lock here, duplicates are dropped on hand over
+            return false;
+        }
+    }
 }
@@ -30,6 +30,7 @@ public class OrderedPendingList implements PendingList {
     private PendingNode root = null;
     private PendingNode tail = null;
     private final Map<MessageId, PendingNode> map = new HashMap<MessageId, PendingNode>();
+    private long messageSize;
 
     public PendingNode addMessageFirst(MessageReference message) {
         PendingNode node = new PendingNode(this, message);
@@ -40,6 +41,7 @@ public class OrderedPendingList implements PendingList {
             root.linkBefore(node);
         }
         this.map.put(message.getMessageId(), node);
+        messageSize += node.getSize();
         return node;
     }
 
@@ -52,6 +54,7 @@ public class OrderedPendingList implements PendingList {
         }
         tail = node;
         this.map.put(message.getMessageId(), node);
+        messageSize += node.getSize();
         return node;
     }
 
@@ -59,6 +62,7 @@ public class OrderedPendingList implements PendingList {
         this.root = null;
         this.tail = null;
         this.map.clear();
+        this.messageSize = 0;
     }
 
     public boolean isEmpty() {
@@ -104,6 +108,10 @@ public class OrderedPendingList implements PendingList {
         return this.map.size();
     }
 
+    public long messageSize() {
+        return this.messageSize;
+    }
+
     void removeNode(PendingNode node) {
         if (node != null) {
             map.remove(node.getMessage().getMessageId());
@@ -114,6 +122,7 @@ public class OrderedPendingList implements PendingList {
                 tail = (PendingNode) node.getPrevious();
             }
             node.unlink();
+            messageSize -= node.getSize();
         }
     }
 
@@ -72,6 +72,14 @@ public interface PendingList extends Iterable<MessageReference> {
      */
     public int size();
 
+    /**
+     * Returns the total size of the MessageReferences held, each counted at
+     * the size it had when it was added, kept up to date as messages are
+     * added and removed.
+     * @return the size in bytes of the pending messages.
+     */
+    public long messageSize();
+
     /**
      * Returns an iterator over the pending Messages.  The subclass controls how
      * the returned iterator actually traverses the list of pending messages allowing
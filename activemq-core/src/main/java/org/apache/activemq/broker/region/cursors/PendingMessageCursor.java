@@ -213,6 +213,16 @@ public interface PendingMessageCursor extends Service {
      */
     boolean hasMessagesBufferedToDeliver();
 
+    /**
+     * Buffers the next batch of messages behind those already buffered, so
+     * that messages further along can be looked at without removing the ones
+     * in front of them. Iteration starts over from the first buffered message
+     * when it returns true.
+     *
+     * @return true if more messages were buffered
+     */
+    boolean bufferMoreMessages();
+
     /**
      * destroy the cursor
      * 
@@ -22,9 +22,11 @@ import org.apache.activemq.util.LinkedNode;
 public class PendingNode extends LinkedNode {
     private final MessageReference message;
     private final OrderedPendingList list;
+    private final int size;
     public PendingNode(OrderedPendingList list,MessageReference message) {
         this.list = list;
         this.message = message;
+        this.size = message.getSize();
     }
 
     MessageReference getMessage() {
@@ -34,6 +36,10 @@ public class PendingNode extends LinkedNode {
     OrderedPendingList getList() {
         return this.list;
     }
+
+    int getSize() {
+        return this.size;
+    }
     
     @Override
     public String toString() {
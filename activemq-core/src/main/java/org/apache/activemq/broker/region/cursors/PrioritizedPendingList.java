@@ -80,6 +80,14 @@ public class PrioritizedPendingList implements PendingList {
         return this.map.size();
     }
 
+    public long messageSize() {
+        long size = 0;
+        for (int i = 0; i < MAX_PRIORITY; i++) {
+            size += this.lists[i].messageSize();
+        }
+        return size;
+    }
+
     @Override
     public String toString() {
         return "PrioritizedPendingList(" + System.identityHashCode(this) + ")";
@@ -20,6 +20,7 @@ import java.io.IOException;
 import org.apache.activemq.broker.region.Queue;
 import org.apache.activemq.command.Message;
 import org.apache.activemq.command.MessageId;
+import org.apache.activemq.store.MessageRecoveryListener;
 import org.apache.activemq.store.MessageStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,14 +46,18 @@ class QueueStorePrefetch extends AbstractStoreCursor {
     }
 
     public boolean recoverMessageReference(MessageId messageReference) throws Exception {
+        return recoverMessage(loadMessage(messageReference));
+    }
+
+    @Override
+    protected Message loadMessage(MessageId messageReference) throws Exception {
         Message msg = this.store.getMessage(messageReference);
-        if (msg != null) {
-            return recoverMessage(msg);
-        } else {
+        if (msg == null) {
             String err = "Failed to retrieve message for id: " + messageReference;
             LOG.error(err);
             throw new IOException(err);
         }
+        return msg;
     }
 
    
@@ -93,8 +98,8 @@ class QueueStorePrefetch extends AbstractStoreCursor {
 
     
     @Override
-    protected void doFillBatch() throws Exception {
-        this.store.recoverNextMessages(this.maxBatchSize, this);
+    protected void doFillBatch(int maxReturned, MessageRecoveryListener listener) throws Exception {
+        this.store.recoverNextMessages(maxReturned, listener);
     }
 
 }
@@ -21,6 +21,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import org.apache.activemq.advisory.AdvisorySupport;
 import org.apache.activemq.broker.Broker;
 import org.apache.activemq.broker.ConnectionContext;
@@ -50,6 +51,9 @@ public class StoreDurableSubscriberCursor extends AbstractPendingMessageCursor {
     private PendingMessageCursor currentCursor;
     private final DurableTopicSubscription subscription;
     private boolean immediatePriorityDispatch = true;
+    private int maxReadAheadBatches;
+    private Executor readAheadExecutor;
+    private final Broker broker;
     /**
      * @param broker Broker for this cursor
      * @param clientId clientId for this cursor
@@ -59,6 +63,7 @@ public class StoreDurableSubscriberCursor extends AbstractPendingMessageCursor {
      */
     public StoreDurableSubscriberCursor(Broker broker,String clientId, String subscriberName,int maxBatchSize, DurableTopicSubscription subscription) {
         super(AbstractPendingMessageCursor.isPrioritizedMessageSubscriber(broker,subscription));
+        this.broker = broker;
         this.subscription=subscription;
         this.clientId = clientId;
         this.subscriberName = subscriberName;
@@ -123,6 +128,8 @@ public class StoreDurableSubscriberCursor extends AbstractPendingMessageCursor {
             tsp.setEnableAudit(isEnableAudit());
             tsp.setMemoryUsageHighWaterMark(getMemoryUsageHighWaterMark());
             tsp.setUseCache(isUseCache());
+            tsp.setReadAheadExecutor(readAheadExecutor);
+            tsp.setMaxReadAheadBatches(getMaxReadAheadBatches());
             topics.put(destination, tsp);
             storePrefetches.add(tsp);
             if (isStarted()) {
@@ -397,4 +404,47 @@ public class StoreDurableSubscriberCursor extends AbstractPendingMessageCursor {
         this.immediatePriorityDispatch = immediatePriorityDispatch;
     }
 
+    public synchronized int getMaxReadAheadBatches() {
+        return maxReadAheadBatches;
+    }
+
+    /**
+     * @param maxReadAheadBatches the most batches to read from the store
+     *                ahead of dispatch for each topic, zero disables read ahead
+     */
+    public synchronized void setMaxReadAheadBatches(int maxReadAheadBatches) {
+        this.maxReadAheadBatches = maxReadAheadBatches;
+        if (maxReadAheadBatches > 0 && readAheadExecutor == null) {
+            readAheadExecutor = broker.getBrokerService().getStoreReadAheadExecutor();
+        }
+        for (TopicStorePrefetch tsp : topics.values()) {
+            tsp.setReadAheadExecutor(readAheadExecutor);
+            tsp.setMaxReadAheadBatches(maxReadAheadBatches);
+        }
+    }
+
+    /**
+     * @return the number of batches that had been read ahead by the time they
+     *         were needed, over all topics
+     */
+    public synchronized long getReadAheadHits() {
+        long hits = 0;
+        for (TopicStorePrefetch tsp : topics.values()) {
+            hits += tsp.getReadAheadHits();
+        }
+        return hits;
+    }
+
+    /**
+     * @return the number of batches that had to be read on demand while read
+     *         ahead was enabled, over all topics
+     */
+    public synchronized long getReadAheadMisses() {
+        long misses = 0;
+        for (TopicStorePrefetch tsp : topics.values()) {
+            misses += tsp.getReadAheadMisses();
+        }
+        return misses;
+    }
+
 }
@@ -164,6 +164,10 @@ public class StoreQueueCursor extends AbstractPendingMessageCursor {
     }
 
 
+    public synchronized boolean bufferMoreMessages() {
+        return currentCursor != null ? currentCursor.bufferMoreMessages() : false;
+    }
+
     public synchronized int size() {
         if (pendingCount < 0) {
             pendingCount = persistent.size() + nonPersistent.size();
@@ -194,6 +198,10 @@ public class StoreQueueCursor extends AbstractPendingMessageCursor {
         return this.nonPersistent;
     }
 
+    QueueStorePrefetch getPersistent() {
+        return this.persistent;
+    }
+
     /**
      * @param nonPersistent cursor to set
      */
@@ -264,6 +272,37 @@ public class StoreQueueCursor extends AbstractPendingMessageCursor {
 
 
 
+    /**
+     * @param maxReadAheadBatches the most batches of persistent messages to
+     *                read ahead of dispatch, zero disables read ahead
+     */
+    public void setMaxReadAheadBatches(int maxReadAheadBatches) {
+        if (maxReadAheadBatches > 0 && broker != null) {
+            persistent.setReadAheadExecutor(broker.getBrokerService().getStoreReadAheadExecutor());
+        }
+        persistent.setMaxReadAheadBatches(maxReadAheadBatches);
+    }
+
+    public int getMaxReadAheadBatches() {
+        return persistent.getMaxReadAheadBatches();
+    }
+
+    /**
+     * @return the number of batches that had been read ahead by the time they
+     *         were needed
+     */
+    public long getReadAheadHits() {
+        return persistent.getReadAheadHits();
+    }
+
+    /**
+     * @return the number of batches that had to be read on demand while read
+     *         ahead was enabled
+     */
+    public long getReadAheadMisses() {
+        return persistent.getReadAheadMisses();
+    }
+
     public synchronized void gc() {
         if (persistent != null) {
             persistent.gc();
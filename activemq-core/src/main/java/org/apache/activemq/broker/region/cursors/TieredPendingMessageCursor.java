@@ -0,0 +1,498 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.cursors;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.IndirectMessageReference;
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.broker.region.QueueMessageReference;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.filter.NonCachedMessageEvaluationContext;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.apache.activemq.store.spool.Spool;
+import org.apache.activemq.store.spool.SpoolStore;
+import org.apache.activemq.usage.Usage;
+import org.apache.activemq.usage.UsageListener;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.wireformat.WireFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pending messages cursor for non durable subscribers that keeps a window of
+ * messages in memory and spills the rest to a {@link Spool} of the broker's
+ * {@link SpoolStore} rather than to a PList of the temp data store.
+ *
+ * The memory window always holds the oldest messages. Once messages are
+ * spilled, new messages are appended to the spool, and when the memory
+ * window has to be given up it is pushed to the front of the spool, so the
+ * order is kept without rewriting anything. The window is refilled from the
+ * front of the spool a batch at a time, reading the entries in order.
+ *
+ */
+public class TieredPendingMessageCursor extends AbstractPendingMessageCursor implements UsageListener {
+    static final Logger LOG = LoggerFactory.getLogger(TieredPendingMessageCursor.class);
+    private static final AtomicLong NAME_COUNT = new AtomicLong();
+    protected Broker broker;
+    private final SpoolStore store;
+    private final String name;
+    private final PendingList memoryList;
+    private Spool spool;
+    private Iterator<MessageReference> iter;
+    private Destination regionDestination;
+    private boolean iterating;
+    private boolean flushRequired;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final WireFormat wireFormat = new OpenWireFormat();
+
+    /**
+     * @param broker
+     * @param name
+     * @param prioritizedMessages
+     */
+    public TieredPendingMessageCursor(Broker broker, String name, boolean prioritizedMessages) {
+        super(prioritizedMessages);
+        if (this.prioritizedMessages) {
+            this.memoryList = new PrioritizedPendingList();
+        } else {
+            this.memoryList = new OrderedPendingList();
+        }
+        this.broker = broker;
+        // the store is null if the BrokerService has persistence turned off
+        this.store = broker.getBrokerService().getTempSpoolStore();
+        this.name = NAME_COUNT.incrementAndGet() + "_" + name;
+    }
+
+    @Override
+    public void start() throws Exception {
+        if (started.compareAndSet(false, true)) {
+            super.start();
+            if (systemUsage != null) {
+                systemUsage.getMemoryUsage().addUsageListener(this);
+            }
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (started.compareAndSet(true, false)) {
+            super.stop();
+            if (systemUsage != null) {
+                systemUsage.getMemoryUsage().removeUsageListener(this);
+            }
+        }
+    }
+
+    /**
+     * @return true if there are no pending messages
+     */
+    @Override
+    public synchronized boolean isEmpty() {
+        if (memoryList.isEmpty() && isSpillEmpty()) {
+            return true;
+        }
+        for (Iterator<MessageReference> iterator = memoryList.iterator(); iterator.hasNext();) {
+            MessageReference node = iterator.next();
+            if (node == QueueMessageReference.NULL_MESSAGE) {
+                continue;
+            }
+            if (!node.isDropped()) {
+                return false;
+            }
+            // We can remove dropped references.
+            iterator.remove();
+        }
+        return isSpillEmpty();
+    }
+
+    /**
+     * reset the cursor
+     */
+    @Override
+    public synchronized void reset() {
+        if (!iterating && memoryList.isEmpty() && !isSpillEmpty() && hasSpace()) {
+            pageInFromSpill();
+        }
+        iterating = true;
+        last = null;
+        this.iter = new TieredIterator();
+    }
+
+    @Override
+    public synchronized void release() {
+        iterating = false;
+        if (flushRequired) {
+            flushRequired = false;
+            if (!hasSpace()) {
+                flushToDisk();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        stop();
+        for (Iterator<MessageReference> i = memoryList.iterator(); i.hasNext();) {
+            Message node = (Message) i.next();
+            node.decrementReferenceCount();
+        }
+        memoryList.clear();
+        if (spool != null) {
+            store.removeSpool(name);
+            spool = null;
+        }
+    }
+
+    @Override
+    public synchronized LinkedList<MessageReference> pageInList(int maxItems) {
+        LinkedList<MessageReference> result = new LinkedList<MessageReference>();
+        int count = 0;
+        for (Iterator<MessageReference> i = memoryList.iterator(); i.hasNext() && count < maxItems;) {
+            MessageReference ref = i.next();
+            ref.incrementReferenceCount();
+            result.add(ref);
+            count++;
+        }
+        if (count < maxItems && !isSpillEmpty()) {
+            for (Iterator<ByteSequence> i = spool.iterator(); i.hasNext() && count < maxItems;) {
+                Message message = readMessage(i.next());
+                message.incrementReferenceCount();
+                result.add(message);
+                count++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * add message to await dispatch
+     *
+     * @param node
+     * @throws Exception
+     */
+    @Override
+    public synchronized void addMessageLast(MessageReference node) throws Exception {
+        tryAddMessageLast(node, 0);
+    }
+
+    @Override
+    public synchronized boolean tryAddMessageLast(MessageReference node, long maxWaitTime) throws Exception {
+        if (!node.isExpired()) {
+            try {
+                regionDestination = node.getMessage().getRegionDestination();
+                if (isSpillEmpty()) {
+                    if (hasSpace() || this.store == null) {
+                        memoryList.addMessageLast(node);
+                        node.incrementReferenceCount();
+                        setCacheEnabled(true);
+                        return true;
+                    }
+                    expireOldMessages();
+                    if (hasSpace()) {
+                        memoryList.addMessageLast(node);
+                        node.incrementReferenceCount();
+                        return true;
+                    }
+                    flushToDisk();
+                }
+                if (systemUsage.getTempUsage().waitForSpace(maxWaitTime)) {
+                    getSpool().addLast(node.getMessageId().toString(), wireFormat.marshal(node.getMessage()));
+                    return true;
+                }
+                return false;
+
+            } catch (Exception e) {
+                LOG.error("Caught an Exception adding a message: " + node + " last to TieredPendingMessageCursor ", e);
+                throw new RuntimeException(e);
+            }
+        } else {
+            discardExpiredMessage(node);
+        }
+        //message expired
+        return true;
+    }
+
+    /**
+     * add message to await dispatch
+     *
+     * @param node
+     */
+    @Override
+    public synchronized void addMessageFirst(MessageReference node) {
+        if (!node.isExpired()) {
+            try {
+                regionDestination = node.getMessage().getRegionDestination();
+                // the memory window is always ahead of the spilled messages
+                if (hasSpace() || this.store == null) {
+                    memoryList.addMessageFirst(node);
+                    node.incrementReferenceCount();
+                    return;
+                }
+                expireOldMessages();
+                if (hasSpace()) {
+                    memoryList.addMessageFirst(node);
+                    node.incrementReferenceCount();
+                    return;
+                }
+                flushToDisk();
+                systemUsage.getTempUsage().waitForSpace();
+                getSpool().addFirst(node.getMessageId().toString(), wireFormat.marshal(node.getMessage()));
+
+            } catch (Exception e) {
+                LOG.error("Caught an Exception adding a message: " + node + " first to TieredPendingMessageCursor ", e);
+                throw new RuntimeException(e);
+            }
+        } else {
+            discardExpiredMessage(node);
+        }
+    }
+
+    /**
+     * @return true if there pending messages to dispatch
+     */
+    @Override
+    public synchronized boolean hasNext() {
+        return iter.hasNext();
+    }
+
+    /**
+     * @return the next pending message
+     */
+    @Override
+    public synchronized MessageReference next() {
+        MessageReference reference = iter.next();
+        last = reference;
+        reference.incrementReferenceCount();
+        return reference;
+    }
+
+    /**
+     * remove the message at the cursor position
+     */
+    @Override
+    public synchronized void remove() {
+        iter.remove();
+        if (last != null) {
+            last.decrementReferenceCount();
+        }
+    }
+
+    /**
+     * @param node
+     * @see org.apache.activemq.broker.region.cursors.AbstractPendingMessageCursor#remove(org.apache.activemq.broker.region.MessageReference)
+     */
+    @Override
+    public synchronized void remove(MessageReference node) {
+        if (memoryList.remove(node) != null) {
+            node.decrementReferenceCount();
+        } else if (!isSpillEmpty()) {
+            spool.remove(node.getMessageId().toString());
+        }
+    }
+
+    /**
+     * @return the number of pending messages
+     */
+    @Override
+    public synchronized int size() {
+        return memoryList.size() + (isSpillEmpty() ? 0 : (int)spool.size());
+    }
+
+    /**
+     * clear all pending messages
+     */
+    @Override
+    public synchronized void clear() {
+        memoryList.clear();
+        if (spool != null) {
+            spool.destroy();
+        }
+        last = null;
+    }
+
+    @Override
+    public synchronized boolean isFull() {
+        return super.isFull() || (!isSpillEmpty() && systemUsage != null && systemUsage.getTempUsage().isFull());
+    }
+
+    @Override
+    public boolean hasMessagesBufferedToDeliver() {
+        return !isEmpty();
+    }
+
+    public void onUsageChanged(Usage usage, int oldPercentUsage, int newPercentUsage) {
+        if (newPercentUsage >= getMemoryUsageHighWaterMark()) {
+            synchronized (this) {
+                if (!flushRequired && size() != 0) {
+                    flushRequired =true;
+                    if (!iterating) {
+                        expireOldMessages();
+                        if (!hasSpace()) {
+                            flushToDisk();
+                            flushRequired = false;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isTransient() {
+        return true;
+    }
+
+    protected boolean isSpillEmpty() {
+        return spool == null || spool.isEmpty();
+    }
+
+    protected synchronized void expireOldMessages() {
+        if (!memoryList.isEmpty()) {
+            for (Iterator<MessageReference> iterator = memoryList.iterator(); iterator.hasNext();) {
+                MessageReference node = iterator.next();
+                if (node.isExpired()) {
+                    node.decrementReferenceCount();
+                    discardExpiredMessage(node);
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Pushes the memory window to the front of the spool.
+     */
+    protected synchronized void flushToDisk() {
+        if (!memoryList.isEmpty() && store != null) {
+            long start = 0;
+            if (LOG.isTraceEnabled()) {
+                start = System.currentTimeMillis();
+                LOG.trace("" + name + ", flushToDisk() mem list size: " + memoryList.size() + " " + (systemUsage != null ? systemUsage.getMemoryUsage() : ""));
+            }
+            List<MessageReference> window = new ArrayList<MessageReference>(memoryList.values());
+            try {
+                for (int i = window.size() - 1; i >= 0; i--) {
+                    MessageReference node = window.get(i);
+                    getSpool().addFirst(node.getMessageId().toString(), wireFormat.marshal(node.getMessage()));
+                    node.decrementReferenceCount();
+                }
+            } catch (IOException e) {
+                LOG.error("Failed to write to spool", e);
+                throw new RuntimeException(e);
+            }
+            memoryList.clear();
+            setCacheEnabled(false);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("" + name + ", flushToDisk() done - " + (System.currentTimeMillis() - start) + "ms " + (systemUsage != null ? systemUsage.getMemoryUsage() : ""));
+            }
+        }
+    }
+
+    protected Spool getSpool() {
+        if (spool == null) {
+            spool = store.getSpool(name);
+        }
+        return spool;
+    }
+
+    private void pageInFromSpill() {
+        int count = 0;
+        ByteSequence data;
+        while (count < maxBatchSize && (data = spool.removeFirst()) != null) {
+            Message message = readMessage(data);
+            memoryList.addMessageLast(message);
+            message.incrementReferenceCount();
+            count++;
+        }
+        if (count > 0) {
+            setCacheEnabled(true);
+        }
+    }
+
+    private Message readMessage(ByteSequence data) {
+        try {
+            Message message = (Message) wireFormat.unmarshal(data);
+            message.setRegionDestination(regionDestination);
+            message.setMemoryUsage(this.getSystemUsage().getMemoryUsage());
+            return message;
+        } catch (IOException e) {
+            LOG.error("Failed to read from spool " + spool, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void discardExpiredMessage(MessageReference reference) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Discarding expired message " + reference);
+        }
+        if (broker.isExpired(reference)) {
+            ConnectionContext context = new ConnectionContext(new NonCachedMessageEvaluationContext());
+            context.setBroker(broker);
+            reference.getRegionDestination().messageExpired(context, null, new IndirectMessageReference(reference.getMessage()));
+        }
+    }
+
+    /**
+     * Goes through the memory window and then through the spilled messages.
+     */
+    final class TieredIterator implements Iterator<MessageReference> {
+        private final Iterator<MessageReference> memory = memoryList.iterator();
+        private final Iterator<ByteSequence> spilled = isSpillEmpty() ? null : spool.iterator();
+        private boolean inMemory = true;
+        private boolean lastInMemory;
+
+        public boolean hasNext() {
+            if (inMemory) {
+                if (memory.hasNext()) {
+                    return true;
+                }
+                inMemory = false;
+            }
+            return spilled != null && spilled.hasNext();
+        }
+
+        public MessageReference next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastInMemory = inMemory;
+            if (inMemory) {
+                return memory.next();
+            }
+            return readMessage(spilled.next());
+        }
+
+        public void remove() {
+            if (lastInMemory) {
+                memory.remove();
+            } else {
+                spilled.remove();
+            }
+        }
+    }
+}
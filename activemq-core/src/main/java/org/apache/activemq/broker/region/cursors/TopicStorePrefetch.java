@@ -22,6 +22,7 @@ import org.apache.activemq.command.Message;
 import org.apache.activemq.command.MessageId;
 import org.apache.activemq.filter.MessageEvaluationContext;
 import org.apache.activemq.filter.NonCachedMessageEvaluationContext;
+import org.apache.activemq.store.MessageRecoveryListener;
 import org.apache.activemq.store.TopicMessageStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -104,9 +105,9 @@ class TopicStorePrefetch extends AbstractStoreCursor {
     }
 
     @Override
-    protected void doFillBatch() throws Exception {
+    protected void doFillBatch(int maxReturned, MessageRecoveryListener listener) throws Exception {
         this.store.recoverNextMessages(clientId, subscriberName,
-                maxBatchSize, this);
+                maxReturned, listener);
     }
 
     public byte getLastRecoveredPriority() {
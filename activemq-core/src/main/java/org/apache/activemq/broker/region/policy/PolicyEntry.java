@@ -65,6 +65,9 @@ public class PolicyEntry extends DestinationMapEntry {
     private long blockedProducerWarningInterval = Destination.DEFAULT_BLOCKED_PRODUCER_WARNING_INTERVAL;
     private boolean optimizedDispatch=false;
     private int maxPageSize=BaseDestination.MAX_PAGE_SIZE;
+    private long maxPageInBytes;
+    private long maxPagedInBodyBytes;
+    private int maxPageInScanSize;
     private int maxBrowsePageSize=BaseDestination.MAX_BROWSE_PAGE_SIZE;
     private boolean useCache=true;
     private long minimumMessageSize=1024;
@@ -152,6 +155,9 @@ public class PolicyEntry extends DestinationMapEntry {
         destination.setMaxAuditDepth(getMaxQueueAuditDepth());
         destination.setMaxProducersToAudit(getMaxProducersToAudit());
         destination.setMaxPageSize(getMaxPageSize());
+        destination.setMaxPageInBytes(getMaxPageInBytes());
+        destination.setMaxPagedInBodyBytes(getMaxPagedInBodyBytes());
+        destination.setMaxPageInScanSize(getMaxPageInScanSize());
         destination.setMaxBrowsePageSize(getMaxBrowsePageSize());
         destination.setUseCache(isUseCache());
         destination.setMinimumMessageSize((int) getMinimumMessageSize());
@@ -523,6 +529,36 @@ public class PolicyEntry extends DestinationMapEntry {
         this.maxPageSize = maxPageSize;
     } 
     
+    public long getMaxPageInBytes() {
+        return maxPageInBytes;
+    }
+
+    /**
+     * @org.apache.xbean.Property propertyEditor="org.apache.activemq.util.MemoryPropertyEditor"
+     */
+    public void setMaxPageInBytes(long maxPageInBytes) {
+        this.maxPageInBytes = maxPageInBytes;
+    }
+
+    public long getMaxPagedInBodyBytes() {
+        return maxPagedInBodyBytes;
+    }
+
+    /**
+     * @org.apache.xbean.Property propertyEditor="org.apache.activemq.util.MemoryPropertyEditor"
+     */
+    public void setMaxPagedInBodyBytes(long maxPagedInBodyBytes) {
+        this.maxPagedInBodyBytes = maxPagedInBodyBytes;
+    }
+
+    public int getMaxPageInScanSize() {
+        return maxPageInScanSize;
+    }
+
+    public void setMaxPageInScanSize(int maxPageInScanSize) {
+        this.maxPageInScanSize = maxPageInScanSize;
+    }
+
     public int getMaxBrowsePageSize() {
         return maxBrowsePageSize;
     }
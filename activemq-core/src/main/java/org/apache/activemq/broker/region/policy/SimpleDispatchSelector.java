@@ -19,8 +19,8 @@ package org.apache.activemq.broker.region.policy;
 import org.apache.activemq.broker.region.MessageReference;
 import org.apache.activemq.broker.region.Subscription;
 import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.filter.HeaderMessageEvaluationContext;
 import org.apache.activemq.filter.MessageEvaluationContext;
-import org.apache.activemq.filter.NonCachedMessageEvaluationContext;
 
 /**
  * Simple dispatch policy that determines if a message can be sent to a subscription
@@ -40,7 +40,8 @@ public class SimpleDispatchSelector implements DispatchSelector {
     }
 
     public boolean canDispatch(Subscription subscription, MessageReference node) throws Exception {
-        MessageEvaluationContext msgContext = new NonCachedMessageEvaluationContext();
+        // selectors only need the headers of a message whose body was let go
+        MessageEvaluationContext msgContext = new HeaderMessageEvaluationContext();
         msgContext.setDestination(this.destination);
         msgContext.setMessageReference(node);
         return subscription.matches(node, msgContext);
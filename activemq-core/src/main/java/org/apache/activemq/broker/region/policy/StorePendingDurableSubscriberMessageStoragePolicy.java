@@ -35,6 +35,7 @@ import org.apache.activemq.kaha.Store;
 public class StorePendingDurableSubscriberMessageStoragePolicy implements PendingDurableSubscriberMessageStoragePolicy {
     boolean immediatePriorityDispatch = true;
     boolean useCache = true;
+    int maxReadAheadBatches;
 
     public boolean isImmediatePriorityDispatch() {
         return immediatePriorityDispatch;
@@ -59,6 +60,21 @@ public class StorePendingDurableSubscriberMessageStoragePolicy implements Pendin
         this.useCache = useCache;
     }
 
+    public int getMaxReadAheadBatches() {
+        return maxReadAheadBatches;
+    }
+
+    /**
+     * Read up to this many batches of pending messages from the store in the
+     * background while the current batch is dispatched. Zero, the default,
+     * reads a batch only when it is needed.
+     *
+     * @param maxReadAheadBatches
+     */
+    public void setMaxReadAheadBatches(int maxReadAheadBatches) {
+        this.maxReadAheadBatches = maxReadAheadBatches;
+    }
+
     /**
      * Retrieve the configured pending message storage cursor;
      * @param broker 
@@ -73,6 +89,7 @@ public class StorePendingDurableSubscriberMessageStoragePolicy implements Pendin
         StoreDurableSubscriberCursor cursor = new StoreDurableSubscriberCursor(broker,clientId, name, maxBatchSize, sub);
         cursor.setUseCache(isUseCache());
         cursor.setImmediatePriorityDispatch(isImmediatePriorityDispatch());
+        cursor.setMaxReadAheadBatches(getMaxReadAheadBatches());
         return cursor;
     }
 }
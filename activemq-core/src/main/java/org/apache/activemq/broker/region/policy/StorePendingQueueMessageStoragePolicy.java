@@ -30,6 +30,23 @@ import org.apache.activemq.broker.region.cursors.StoreQueueCursor;
  * 
  */
 public class StorePendingQueueMessageStoragePolicy implements PendingQueueMessageStoragePolicy {
+    int maxReadAheadBatches;
+
+    public int getMaxReadAheadBatches() {
+        return maxReadAheadBatches;
+    }
+
+    /**
+     * Read up to this many batches of persistent messages from the store in
+     * the background while the current batch is dispatched, so that consumers
+     * of a backlogged queue do not wait on the store each time a batch runs
+     * out. Zero, the default, reads a batch only when it is needed.
+     *
+     * @param maxReadAheadBatches
+     */
+    public void setMaxReadAheadBatches(int maxReadAheadBatches) {
+        this.maxReadAheadBatches = maxReadAheadBatches;
+    }
 
     /**
      * @param broker 
@@ -39,7 +56,9 @@ public class StorePendingQueueMessageStoragePolicy implements PendingQueueMessag
      *      org.apache.activemq.kaha.Store)
      */
     public PendingMessageCursor getQueuePendingMessageCursor(Broker broker,Queue queue) {
-        return new StoreQueueCursor(broker,queue);
+        StoreQueueCursor cursor = new StoreQueueCursor(broker,queue);
+        cursor.setMaxReadAheadBatches(getMaxReadAheadBatches());
+        return cursor;
     }
 
 }
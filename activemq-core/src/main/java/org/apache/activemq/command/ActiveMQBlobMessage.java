@@ -75,6 +75,7 @@ public class ActiveMQBlobMessage extends ActiveMQMessage implements BlobMessage
     }
 
     public void setRemoteBlobUrl(String remoteBlobUrl) {
+        clearCachedMarshalledForm();
         this.remoteBlobUrl = remoteBlobUrl;
         url = null;
     }
@@ -93,6 +94,7 @@ public class ActiveMQBlobMessage extends ActiveMQMessage implements BlobMessage
     }
 
     public void setMimeType(String mimeType) {
+        clearCachedMarshalledForm();
         this.mimeType = mimeType;
     }
 
@@ -107,6 +109,7 @@ public class ActiveMQBlobMessage extends ActiveMQMessage implements BlobMessage
      * @openwire:property version=3 cache=false
      */
     public void setName(String name) {
+        clearCachedMarshalledForm();
         this.name = name;
     }
 
@@ -118,6 +121,7 @@ public class ActiveMQBlobMessage extends ActiveMQMessage implements BlobMessage
     }
 
     public void setDeletedByBroker(boolean deletedByBroker) {
+        clearCachedMarshalledForm();
         this.deletedByBroker = deletedByBroker;
     }
 
@@ -144,6 +148,7 @@ public class ActiveMQBlobMessage extends ActiveMQMessage implements BlobMessage
     }
 
     public void setURL(URL url) {
+        clearCachedMarshalledForm();
         this.url = url;
         remoteBlobUrl = url != null ? url.toExternalForm() : null;
     }
@@ -182,4 +187,9 @@ public class ActiveMQBlobMessage extends ActiveMQMessage implements BlobMessage
     public void deleteFile() throws IOException, JMSException {
         blobDownloader.deleteFile(this);
     }
+
+    @Override
+    protected boolean isBrokerOutTimeMarshalledLast() {
+        return false;
+    }
 }
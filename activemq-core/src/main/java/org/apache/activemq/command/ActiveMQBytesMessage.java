@@ -19,24 +19,17 @@ package org.apache.activemq.command;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
-import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.nio.ByteBuffer;
 
 import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.MessageFormatException;
 import javax.jms.MessageNotReadableException;
 
-import org.apache.activemq.ActiveMQConnection;
 import org.apache.activemq.util.ByteArrayInputStream;
 import org.apache.activemq.util.ByteArrayOutputStream;
 import org.apache.activemq.util.ByteSequence;
-import org.apache.activemq.util.ByteSequenceData;
 import org.apache.activemq.util.JMSExceptionSupport;
 
 /**
@@ -123,10 +116,16 @@ public class ActiveMQBytesMessage extends ActiveMQMessage implements BytesMessag
             if (dataOut != null) {
                 dataOut.close();
                 ByteSequence bs = bytesOut.toByteSequence();
+                ByteSequence body = compressContent(bs);
                 if (compressed) {
-                    int pos = bs.offset;
-                    ByteSequenceData.writeIntBig(bs, length);
-                    bs.offset = pos;
+                    // keep track of the real length of the content if
+                    // we are compressed.
+                    ByteArrayOutputStream compressedOut = new ByteArrayOutputStream(body.getLength() + 4);
+                    DataOutputStream compressedDataOut = new DataOutputStream(compressedOut);
+                    compressedDataOut.writeInt(bs.getLength());
+                    compressedDataOut.write(body.getData(), body.getOffset(), body.getLength());
+                    compressedDataOut.close();
+                    bs = compressedOut.toByteSequence();
                 }
                 setContent(bs);
                 bytesOut = null;
@@ -164,6 +163,15 @@ public class ActiveMQBytesMessage extends ActiveMQMessage implements BytesMessag
         this.bytesOut = null;
     }
 
+    @Override
+    void recycle() {
+        super.recycle();
+        this.dataOut = null;
+        this.dataIn = null;
+        this.bytesOut = null;
+        this.length = 0;
+    }
+
     /**
      * Gets the number of bytes of the message body when the message is in
      * read-only mode. The value returned can be used to allocate a byte array.
@@ -772,44 +780,10 @@ public class ActiveMQBytesMessage extends ActiveMQMessage implements BytesMessag
     private void initializeWriting() throws JMSException {
         checkReadOnlyBody();
         if (this.dataOut == null) {
+            // a stored body is never written to, it may be shared with copies
+            // of this message
             this.bytesOut = new ByteArrayOutputStream();
-            OutputStream os = bytesOut;
-            ActiveMQConnection connection = getConnection();
-            if (connection != null && connection.isUseCompression()) {
-                // keep track of the real length of the content if
-                // we are compressed.
-                try {
-                    os.write(new byte[4]);
-                } catch (IOException e) {
-                    throw JMSExceptionSupport.create(e);
-                }
-                length = 0;
-                compressed = true;
-                final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
-                os = new FilterOutputStream(new DeflaterOutputStream(os, deflater)) {
-                    public void write(byte[] arg0) throws IOException {
-                        length += arg0.length;
-                        out.write(arg0);
-                    }
-
-                    public void write(byte[] arg0, int arg1, int arg2) throws IOException {
-                        length += arg2;
-                        out.write(arg0, arg1, arg2);
-                    }
-
-                    public void write(int arg0) throws IOException {
-                        length++;
-                        out.write(arg0);
-                    }
-
-                    @Override
-                    public void close() throws IOException {
-                        super.close();
-                        deflater.end();
-                    }
-                };
-            }
-            this.dataOut = new DataOutputStream(os);
+            this.dataOut = new DataOutputStream(bytesOut);
         }
     }
 
@@ -822,27 +796,47 @@ public class ActiveMQBytesMessage extends ActiveMQMessage implements BytesMessag
     private void initializeReading() throws JMSException {
         checkWriteOnlyBody();
         if (dataIn == null) {
-            ByteSequence data = getContent();
-            if (data == null) {
-                data = new ByteSequence(new byte[] {}, 0, 0);
-            }
-            InputStream is = new ByteArrayInputStream(data);
-            if (isCompressed()) {
-                // keep track of the real length of the content if
-                // we are compressed.
-                try {
-                    DataInputStream dis = new DataInputStream(is);
-                    length = dis.readInt();
-                    dis.close();
-                } catch (IOException e) {
-                    throw JMSExceptionSupport.create(e);
-                }
-                is = new InflaterInputStream(is);
-            } else {
-                length = data.getLength();
+            ByteSequence data = readBody();
+            length = data.getLength();
+            dataIn = new DataInputStream(new ByteArrayInputStream(data));
+        }
+    }
+
+    /**
+     * @return the stored body, decompressed if needed, the bytes are only
+     *         copied when the body is compressed
+     */
+    private ByteSequence readBody() throws JMSException {
+        ByteSequence data = getContent();
+        if (data == null) {
+            return new ByteSequence(new byte[] {}, 0, 0);
+        }
+        if (isCompressed()) {
+            // the real length of the content precedes the compressed
+            // body.
+            try {
+                return decompressContent(new ByteSequence(data.getData(), data.getOffset() + 4, data.getLength() - 4));
+            } catch (IOException e) {
+                throw JMSExceptionSupport.create(e);
             }
-            dataIn = new DataInputStream(is);
         }
+        return data;
+    }
+
+    /**
+     * Gives access to the whole body without copying it, for applications
+     * that process or pass on large bodies. The view is independent of the
+     * position of the read methods and the body can't be changed through it,
+     * it shares the bytes with any copies of the message.
+     *
+     * @return a read-only view of the body
+     * @throws MessageNotReadableException if the message is in write-only mode
+     * @throws JMSException if the body can't be read
+     */
+    public ByteBuffer getBodyBuffer() throws JMSException {
+        checkWriteOnlyBody();
+        ByteSequence data = readBody();
+        return ByteBuffer.wrap(data.getData(), data.getOffset(), data.getLength()).slice().asReadOnlyBuffer();
     }
 
     public void setObjectProperty(String name, Object value) throws JMSException {
@@ -109,6 +109,12 @@ public class ActiveMQMessage extends Message implements org.apache.activemq.Mess
         readOnlyBody = false;
     }
 
+    @Override
+    void recycle() {
+        super.recycle();
+        acknowledgeCallback = null;
+    }
+
     public String getJMSMessageID() {
         MessageId messageId = this.getMessageId();
         if (messageId == null) {
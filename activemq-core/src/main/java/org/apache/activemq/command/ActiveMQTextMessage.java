@@ -16,22 +16,15 @@
  */
 package org.apache.activemq.command;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
 
 import javax.jms.JMSException;
 import javax.jms.MessageNotWriteableException;
 import javax.jms.TextMessage;
 
-import org.apache.activemq.ActiveMQConnection;
-import org.apache.activemq.util.ByteArrayInputStream;
-import org.apache.activemq.util.ByteArrayOutputStream;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.JMSExceptionSupport;
 import org.apache.activemq.util.MarshallingSupport;
@@ -74,52 +67,69 @@ public class ActiveMQTextMessage extends ActiveMQMessage implements TextMessage
 
     public String getText() throws JMSException {
         if (text == null && getContent() != null) {
-            InputStream is = null;
             try {
                 ByteSequence bodyAsBytes = getContent();
-                if (bodyAsBytes != null) {
-                    is = new ByteArrayInputStream(bodyAsBytes);
-                    if (isCompressed()) {
-                        is = new InflaterInputStream(is);
-                    }
-                    DataInputStream dataIn = new DataInputStream(is);
-                    text = MarshallingSupport.readUTF8(dataIn);
-                    dataIn.close();
-                    setContent(null);
-                    setCompressed(false);
+                if (isCompressed()) {
+                    bodyAsBytes = decompressContent(bodyAsBytes);
                 }
+                // decoded straight from the body, without copying it to a
+                // stream first
+                text = MarshallingSupport.readUTF8(bodyAsBytes);
+                setContent(null);
+                setCompressed(false);
             } catch (IOException ioe) {
                 throw JMSExceptionSupport.create(ioe);
-            } finally {
-                if (is != null) {
-                    try {
-                        is.close();
-                    } catch (IOException e) {
-                        // ignore
-                    }
-                }
             }
         }
         return text;
     }
 
-    public void beforeMarshall(WireFormat wireFormat) throws IOException {
-        super.beforeMarshall(wireFormat);
+    /**
+     * Gives access to the encoded text without decoding it to a String, for
+     * applications that pass the text on as bytes. The encoding is the
+     * modified UTF-8 used on the wire, which is plain UTF-8 for text without
+     * null characters or supplementary characters.
+     *
+     * @return a read-only view of the encoded text, null if the message has
+     *         no text
+     * @throws JMSException if the body can't be read
+     */
+    public ByteBuffer getTextBuffer() throws JMSException {
+        try {
+            ByteSequence bodyAsBytes = getContent();
+            if (bodyAsBytes == null) {
+                if (text == null) {
+                    return null;
+                }
+                bodyAsBytes = MarshallingSupport.encodeUTF8(text);
+            } else if (isCompressed()) {
+                bodyAsBytes = decompressContent(bodyAsBytes);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bodyAsBytes.getData(), bodyAsBytes.getOffset(), bodyAsBytes.getLength());
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            buffer.limit(buffer.position() + length);
+            return buffer.slice().asReadOnlyBuffer();
+        } catch (IOException ioe) {
+            throw JMSExceptionSupport.create(ioe);
+        } catch (BufferUnderflowException e) {
+            throw JMSExceptionSupport.create("Truncated text message body", e);
+        } catch (IllegalArgumentException e) {
+            throw JMSExceptionSupport.create("Truncated text message body", e);
+        }
+    }
 
+    public void beforeMarshall(WireFormat wireFormat) throws IOException {
+        // the content is stored first as compressing it may record the codec
+        // in the properties, which are marshalled by the super class
         ByteSequence content = getContent();
         if (content == null && text != null) {
-            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-            OutputStream os = bytesOut;
-            ActiveMQConnection connection = getConnection();
-            if (connection != null && connection.isUseCompression()) {
-                compressed = true;
-                os = new DeflaterOutputStream(os);
-            }
-            DataOutputStream dataOut = new DataOutputStream(os);
-            MarshallingSupport.writeUTF8(dataOut, this.text);
-            dataOut.close();
-            setContent(bytesOut.toByteSequence());
+            setContent(compressContent(MarshallingSupport.encodeUTF8(this.text)));
         }
+
+        super.beforeMarshall(wireFormat);
     }
 
     // see https://issues.apache.org/activemq/browse/AMQ-2103
@@ -145,6 +155,12 @@ public class ActiveMQTextMessage extends ActiveMQMessage implements TextMessage
         this.text = null;
     }
 
+    @Override
+    void recycle() {
+        super.recycle();
+        this.text = null;
+    }
+
     public int getSize() {
         if (size == 0 && content == null && text != null) {
             size = getMinimumMessageSize();
@@ -24,7 +24,7 @@ package org.apache.activemq.command;
 public interface CommandTypes {
 
     // What is the latest version of the openwire protocol
-    byte PROTOCOL_VERSION = 9;
+    byte PROTOCOL_VERSION = 10;
 
     // What is the latest version of the openwire protocol used in the stores
     byte PROTOCOL_STORE_VERSION = 6;
@@ -87,6 +87,20 @@ public interface CommandTypes {
     byte DATA_ARRAY_RESPONSE = 33;
     byte INTEGER_RESPONSE = 34;
 
+    // /////////////////////////////////////////////////
+    //
+    // Batches of messages sent by a producer
+    //
+    // /////////////////////////////////////////////////
+    byte MESSAGE_BATCH = 35;
+
+    // /////////////////////////////////////////////////
+    //
+    // Batches of acks sent by the consumers of a connection
+    //
+    // /////////////////////////////////////////////////
+    byte MESSAGE_ACK_BATCH = 36;
+
     // /////////////////////////////////////////////////
     //
     // Used by discovery
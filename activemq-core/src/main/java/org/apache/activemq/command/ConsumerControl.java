@@ -28,6 +28,11 @@ public class ConsumerControl extends BaseCommand {
 
     public static final byte DATA_STRUCTURE_TYPE = CommandTypes.CONSUMER_CONTROL;
 
+    /**
+     * The first version of the openwire protocol that can carry rate reports.
+     */
+    public static final int RATE_REPORT_VERSION = 10;
+
     protected ConsumerId consumerId;
     protected boolean close;
     protected boolean stop;
@@ -35,6 +40,8 @@ public class ConsumerControl extends BaseCommand {
     protected boolean flush;
     protected int prefetch;
     protected ActiveMQDestination destination;
+    protected int processingRate;
+    protected int inFlightTime;
 
     /**
      * @openwire:property version=6
@@ -145,4 +152,47 @@ public class ConsumerControl extends BaseCommand {
     public void setStop(boolean stop) {
         this.stop = stop;
     }
+
+    /**
+     * The number of messages a second the consumer has been processing, set
+     * when the consumer asks the broker to size its prefetch from its rate.
+     *
+     * @openwire:property version=10
+     * @return the processingRate
+     */
+    public int getProcessingRate() {
+        return processingRate;
+    }
+
+    /**
+     * @param processingRate the processingRate to set
+     */
+    public void setProcessingRate(int processingRate) {
+        this.processingRate = processingRate;
+    }
+
+    /**
+     * The time in milliseconds the messages prefetched by the consumer should
+     * last it at its processing rate.
+     *
+     * @openwire:property version=10
+     * @return the inFlightTime
+     */
+    public int getInFlightTime() {
+        return inFlightTime;
+    }
+
+    /**
+     * @param inFlightTime the inFlightTime to set
+     */
+    public void setInFlightTime(int inFlightTime) {
+        this.inFlightTime = inFlightTime;
+    }
+
+    /**
+     * @return true if this reports the processing rate of the consumer
+     */
+    public boolean isRateReport() {
+        return processingRate > 0 && inFlightTime > 0;
+    }
 }
@@ -28,6 +28,9 @@ import org.apache.activemq.advisory.AdvisorySupport;
 import org.apache.activemq.broker.region.Destination;
 import org.apache.activemq.broker.region.MessageReference;
 import org.apache.activemq.broker.region.RegionBroker;
+import org.apache.activemq.compression.CompressionCodec;
+import org.apache.activemq.compression.CompressionCodecFactory;
+import org.apache.activemq.compression.DeflateCodec;
 import org.apache.activemq.usage.MemoryUsage;
 import org.apache.activemq.util.ByteArrayInputStream;
 import org.apache.activemq.util.ByteArrayOutputStream;
@@ -92,6 +95,16 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     private BrokerId[] brokerPath;
     private BrokerId[] cluster;
 
+    // tight encoded form of this message kept so that it is marshalled once
+    // when dispatched to many consumers, see OpenWireFormat
+    private transient ByteSequence cachedMarshalledForm;
+    private transient int cachedMarshalledFormVersion;
+    private transient long cachedMarshalledFormBrokerOutTime;
+    private transient int cachedMarshalledFormStamp;
+    // set once the body buffers are shared with a copy, neither message can
+    // give them back to a MessagePool then
+    private transient boolean buffersShared;
+
     public abstract Message copy();
     public abstract void clearBody() throws JMSException;
 
@@ -100,6 +113,22 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
         properties = null;
     }
 
+    /**
+     * @return a copy with the headers and properties of this message but not
+     *         its body, sized accordingly
+     */
+    public Message copyWithoutBody() {
+        Message copy = copy();
+        try {
+            copy.clearBody();
+        } catch (JMSException e) {
+            // clearing a copy only drops references
+            copy.content = null;
+        }
+        copy.size = 0;
+        return copy;
+    }
+
     protected void copy(Message copy) {
         super.copy(copy);
         copy.producerId = producerId;
@@ -132,6 +161,10 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
         copy.content = content;
         copy.marshalledProperties = marshalledProperties;
+        if (content != null || marshalledProperties != null) {
+            buffersShared = true;
+            copy.buffersShared = true;
+        }
         copy.dataStructure = dataStructure;
         copy.readOnlyProperties = readOnlyProperties;
         copy.readOnlyBody = readOnlyBody;
@@ -173,16 +206,19 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void clearProperties() {
+        clearCachedMarshalledForm();
         marshalledProperties = null;
         properties = null;
     }
 
     public void setProperty(String name, Object value) throws IOException {
+        clearCachedMarshalledForm();
         lazyCreateProperties();
         properties.put(name, value);
     }
 
     public void removeProperty(String name) throws IOException {
+        clearCachedMarshalledForm();
         lazyCreateProperties();
         properties.remove(name);
     }
@@ -236,6 +272,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setProducerId(ProducerId producerId) {
+        clearCachedMarshalledForm();
         this.producerId = producerId;
     }
 
@@ -247,6 +284,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setDestination(ActiveMQDestination destination) {
+        clearCachedMarshalledForm();
         this.destination = destination;
     }
 
@@ -258,6 +296,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setTransactionId(TransactionId transactionId) {
+        clearCachedMarshalledForm();
         this.transactionId = transactionId;
     }
 
@@ -273,6 +312,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setOriginalDestination(ActiveMQDestination destination) {
+        clearCachedMarshalledForm();
         this.originalDestination = destination;
     }
 
@@ -284,6 +324,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setMessageId(MessageId messageId) {
+        clearCachedMarshalledForm();
         this.messageId = messageId;
     }
 
@@ -295,6 +336,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setOriginalTransactionId(TransactionId transactionId) {
+        clearCachedMarshalledForm();
         this.originalTransactionId = transactionId;
     }
 
@@ -306,6 +348,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setGroupID(String groupID) {
+        clearCachedMarshalledForm();
         this.groupID = groupID;
     }
 
@@ -317,6 +360,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setGroupSequence(int groupSequence) {
+        clearCachedMarshalledForm();
         this.groupSequence = groupSequence;
     }
 
@@ -328,6 +372,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setCorrelationId(String correlationId) {
+        clearCachedMarshalledForm();
         this.correlationId = correlationId;
     }
 
@@ -339,6 +384,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setPersistent(boolean deliveryMode) {
+        clearCachedMarshalledForm();
         this.persistent = deliveryMode;
     }
 
@@ -350,6 +396,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setExpiration(long expiration) {
+        clearCachedMarshalledForm();
         this.expiration = expiration;
     }
 
@@ -361,6 +408,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setPriority(byte priority) {
+        clearCachedMarshalledForm();
         if (priority < 0) {
             this.priority = 0;
         } else if (priority > 9) {
@@ -378,6 +426,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setReplyTo(ActiveMQDestination replyTo) {
+        clearCachedMarshalledForm();
         this.replyTo = replyTo;
     }
 
@@ -389,6 +438,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setTimestamp(long timestamp) {
+        clearCachedMarshalledForm();
         this.timestamp = timestamp;
     }
 
@@ -400,6 +450,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setType(String type) {
+        clearCachedMarshalledForm();
         this.type = type;
     }
 
@@ -411,6 +462,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setContent(ByteSequence content) {
+        clearCachedMarshalledForm();
         this.content = content;
     }
 
@@ -422,6 +474,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setMarshalledProperties(ByteSequence marshalledProperties) {
+        clearCachedMarshalledForm();
         this.marshalledProperties = marshalledProperties;
     }
 
@@ -433,6 +486,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setDataStructure(DataStructure data) {
+        clearCachedMarshalledForm();
         this.dataStructure = data;
     }
 
@@ -450,6 +504,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setTargetConsumerId(ConsumerId targetConsumerId) {
+        clearCachedMarshalledForm();
         this.targetConsumerId = targetConsumerId;
     }
 
@@ -470,9 +525,56 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setCompressed(boolean compressed) {
+        clearCachedMarshalledForm();
         this.compressed = compressed;
     }
 
+    /**
+     * Compresses a message body using the codec configured on the connection
+     * and records the codec used. Bodies smaller than the connection's
+     * compression threshold, or sent without compression enabled, are
+     * returned as is.
+     */
+    protected ByteSequence compressContent(ByteSequence body) throws IOException {
+        ActiveMQConnection connection = getConnection();
+        if (connection == null || !connection.isUseCompression() || body.getLength() < connection.getCompressionThreshold()) {
+            setCompressionCodecName(null);
+            compressed = false;
+            return body;
+        }
+        CompressionCodec codec = connection.getCompressionCodec();
+        ByteSequence rc = codec.compress(body);
+        setCompressionCodecName(codec.getName());
+        compressed = true;
+        return rc;
+    }
+
+    /**
+     * Decompresses a message body with the codec that was recorded when it was
+     * compressed, primed with the dictionary configured on the connection.
+     */
+    protected ByteSequence decompressContent(ByteSequence body) throws IOException {
+        Object name = getProperty(CompressionCodec.CODEC_PROPERTY);
+        String codecName = name != null ? name.toString() : DeflateCodec.NAME;
+        ActiveMQConnection connection = getConnection();
+        if (connection == null) {
+            return CompressionCodecFactory.createCodec(codecName).decompress(body);
+        }
+        CompressionCodec codec = connection.getCompressionCodec();
+        if (!codecName.equals(codec.getName())) {
+            codec = CompressionCodecFactory.createCodec(codecName, codec.getDictionary());
+        }
+        return codec.decompress(body);
+    }
+
+    private void setCompressionCodecName(String name) throws IOException {
+        if (name != null && !DeflateCodec.NAME.equals(name)) {
+            setProperty(CompressionCodec.CODEC_PROPERTY, name);
+        } else if ((properties != null || marshalledProperties != null) && getProperty(CompressionCodec.CODEC_PROPERTY) != null) {
+            removeProperty(CompressionCodec.CODEC_PROPERTY);
+        }
+    }
+
     public boolean isRedelivered() {
         return redeliveryCounter > 0;
     }
@@ -490,6 +592,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void incrementRedeliveryCounter() {
+        clearCachedMarshalledForm();
         redeliveryCounter++;
     }
 
@@ -501,6 +604,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setRedeliveryCounter(int deliveryCounter) {
+        clearCachedMarshalledForm();
         this.redeliveryCounter = deliveryCounter;
     }
 
@@ -514,6 +618,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setBrokerPath(BrokerId[] brokerPath) {
+        clearCachedMarshalledForm();
         this.brokerPath = brokerPath;
     }
 
@@ -553,6 +658,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setArrival(long arrival) {
+        clearCachedMarshalledForm();
         this.arrival = arrival;
     }
 
@@ -568,6 +674,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setUserID(String jmsxUserID) {
+        clearCachedMarshalledForm();
         this.userID = jmsxUserID;
     }
 
@@ -607,6 +714,150 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
         return true;
     }
 
+    @Override
+    public void setCommandId(int commandId) {
+        clearCachedMarshalledForm();
+        super.setCommandId(commandId);
+    }
+
+    @Override
+    public void setResponseRequired(boolean responseRequired) {
+        clearCachedMarshalledForm();
+        super.setResponseRequired(responseRequired);
+    }
+
+    /**
+     * Returns the tight encoded form of this message that was stored for the
+     * given wire format version, or null if there is none or the message has
+     * been modified since.
+     * <p/>
+     * The broker out time is updated on every dispatch, so rather than
+     * discarding the cached form it is patched in a copy when possible; it is
+     * the last field of the message from version 3 on.
+     */
+    public synchronized ByteSequence getCachedMarshalledForm(int version) {
+        ByteSequence rc = cachedMarshalledForm;
+        if (rc == null || cachedMarshalledFormVersion != version) {
+            return null;
+        }
+        if (cachedMarshalledFormBrokerOutTime != brokerOutTime) {
+            if (version < 3 || !isBrokerOutTimeMarshalledLast()
+                || !isLongTimestamp(cachedMarshalledFormBrokerOutTime) || !isLongTimestamp(brokerOutTime)) {
+                cachedMarshalledForm = null;
+                return null;
+            }
+            byte[] data = new byte[rc.getLength()];
+            System.arraycopy(rc.getData(), rc.getOffset(), data, 0, data.length);
+            long value = brokerOutTime;
+            for (int i = data.length - 1; i >= data.length - 8; i--) {
+                data[i] = (byte) value;
+                value >>>= 8;
+            }
+            rc = new ByteSequence(data);
+            cachedMarshalledForm = rc;
+            cachedMarshalledFormBrokerOutTime = brokerOutTime;
+        }
+        return rc;
+    }
+
+    /**
+     * @return a stamp that changes whenever the cached marshalled form is
+     *         invalidated, to be passed to
+     *         {@link #setCachedMarshalledForm(int, ByteSequence, int)}
+     */
+    public synchronized int getCachedMarshalledFormStamp() {
+        return cachedMarshalledFormStamp;
+    }
+
+    /**
+     * Stores the tight encoded form of this message for the given wire format
+     * version unless the message was modified since the stamp was taken. The
+     * sequence must not be modified afterwards.
+     */
+    public synchronized void setCachedMarshalledForm(int version, ByteSequence marshalledForm, int stamp) {
+        if (stamp == cachedMarshalledFormStamp) {
+            this.cachedMarshalledForm = marshalledForm;
+            this.cachedMarshalledFormVersion = version;
+            this.cachedMarshalledFormBrokerOutTime = brokerOutTime;
+        }
+    }
+
+    public synchronized void clearCachedMarshalledForm() {
+        this.cachedMarshalledForm = null;
+        this.cachedMarshalledFormStamp++;
+    }
+
+    /**
+     * Drops the state of the message before it is reused for another message
+     * read from the wire, see {@link MessagePool}.
+     */
+    void recycle() {
+        clearCachedMarshalledForm();
+        commandId = 0;
+        responseRequired = false;
+        setFrom(null);
+        setTo(null);
+        messageId = null;
+        producerId = null;
+        destination = null;
+        transactionId = null;
+        originalDestination = null;
+        originalTransactionId = null;
+        expiration = 0;
+        timestamp = 0;
+        arrival = 0;
+        brokerInTime = 0;
+        brokerOutTime = 0;
+        correlationId = null;
+        replyTo = null;
+        persistent = false;
+        type = null;
+        priority = 0;
+        groupID = null;
+        groupSequence = 0;
+        targetConsumerId = null;
+        compressed = false;
+        userID = null;
+        content = null;
+        marshalledProperties = null;
+        dataStructure = null;
+        redeliveryCounter = 0;
+        brokerPath = null;
+        cluster = null;
+        properties = null;
+        size = 0;
+        readOnlyProperties = false;
+        readOnlyBody = false;
+        recievedByDFBridge = false;
+        droppable = false;
+        referenceCount = 0;
+        connection = null;
+        regionDestination = null;
+        memoryUsage = null;
+        buffersShared = false;
+    }
+
+    /**
+     * @return true if a copy of this message refers to its body buffers
+     */
+    boolean isBuffersShared() {
+        return buffersShared;
+    }
+
+    /**
+     * @return true if no subclass fields are marshalled after the broker out
+     *         time
+     */
+    protected boolean isBrokerOutTimeMarshalledLast() {
+        return true;
+    }
+
+    // tight encoding writes these using all 8 bytes, so the value can be
+    // overwritten in place
+    private static boolean isLongTimestamp(long value) {
+        return (value & 0xFFFFFFFF00000000L) != 0;
+    }
+
     public int incrementReferenceCount() {
         int rc;
         int size;
@@ -631,6 +882,9 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
         synchronized (this) {
             rc = --referenceCount;
             size = getSize();
+            if (rc == 0) {
+                cachedMarshalledForm = null;
+            }
         }
 
         if (rc == 0 && getMemoryUsage() != null) {
@@ -680,6 +934,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
      * @param recievedByDFBridge The recievedByDFBridge to set.
      */
     public void setRecievedByDFBridge(boolean recievedByDFBridge) {
+        clearCachedMarshalledForm();
         this.recievedByDFBridge = recievedByDFBridge;
     }
 
@@ -695,6 +950,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setDroppable(boolean droppable) {
+        clearCachedMarshalledForm();
         this.droppable = droppable;
     }
 
@@ -709,6 +965,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setCluster(BrokerId[] cluster) {
+        clearCachedMarshalledForm();
         this.cluster = cluster;
     }
 
@@ -725,6 +982,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setBrokerInTime(long brokerInTime) {
+        clearCachedMarshalledForm();
         this.brokerInTime = brokerInTime;
     }
 
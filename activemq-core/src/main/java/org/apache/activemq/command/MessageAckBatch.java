@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.command;
+
+import org.apache.activemq.state.CommandVisitor;
+
+/**
+ * Carries a number of acks, from any of the consumers of a connection, in a
+ * single command. The broker processes them in order as if they had been sent
+ * one by one.
+ *
+ * @openwire:marshaller code="36" version="10"
+ *
+ */
+public class MessageAckBatch extends BaseCommand {
+
+    public static final byte DATA_STRUCTURE_TYPE = CommandTypes.MESSAGE_ACK_BATCH;
+
+    /**
+     * The first version of the openwire protocol that can carry ack batches.
+     */
+    public static final int MINIMUM_VERSION = 10;
+
+    /**
+     * The largest number of acks a batch can carry.
+     */
+    public static final int MAX_ACKS = Short.MAX_VALUE;
+
+    protected MessageAck[] acks;
+
+    public MessageAckBatch() {
+    }
+
+    public MessageAckBatch(MessageAck[] acks) {
+        this.acks = acks;
+    }
+
+    public void copy(MessageAckBatch copy) {
+        super.copy(copy);
+        copy.acks = acks;
+    }
+
+    public byte getDataStructureType() {
+        return DATA_STRUCTURE_TYPE;
+    }
+
+    public Response visit(CommandVisitor visitor) throws Exception {
+        return visitor.processMessageAckBatch(this);
+    }
+
+    /**
+     * @openwire:property version=10
+     */
+    public MessageAck[] getAcks() {
+        return acks;
+    }
+
+    public void setAcks(MessageAck[] acks) {
+        this.acks = acks;
+    }
+}
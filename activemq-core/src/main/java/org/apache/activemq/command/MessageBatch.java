@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.command;
+
+import org.apache.activemq.state.CommandVisitor;
+
+/**
+ * Carries a number of messages sent by one producer in a single command. The
+ * broker stores all the messages of a batch which is not part of a client
+ * transaction in one store transaction, and acks the batch with one
+ * ProducerAck.
+ *
+ * @openwire:marshaller code="35" version="10"
+ *
+ */
+public class MessageBatch extends BaseCommand {
+
+    public static final byte DATA_STRUCTURE_TYPE = CommandTypes.MESSAGE_BATCH;
+
+    /**
+     * The first version of the openwire protocol that can carry batches.
+     */
+    public static final int MINIMUM_VERSION = 10;
+
+    /**
+     * The largest number of messages a batch can carry.
+     */
+    public static final int MAX_MESSAGES = Short.MAX_VALUE;
+
+    protected ProducerId producerId;
+    protected TransactionId transactionId;
+    protected Message[] messages;
+
+    public MessageBatch() {
+    }
+
+    public MessageBatch(ProducerId producerId, TransactionId transactionId, Message[] messages) {
+        this.producerId = producerId;
+        this.transactionId = transactionId;
+        this.messages = messages;
+    }
+
+    public void copy(MessageBatch copy) {
+        super.copy(copy);
+        copy.producerId = producerId;
+        copy.transactionId = transactionId;
+        copy.messages = messages;
+    }
+
+    public byte getDataStructureType() {
+        return DATA_STRUCTURE_TYPE;
+    }
+
+    public Response visit(CommandVisitor visitor) throws Exception {
+        return visitor.processMessageBatch(this);
+    }
+
+    /**
+     * The producer that sent the messages.
+     *
+     * @openwire:property version=10 cache=true
+     */
+    public ProducerId getProducerId() {
+        return producerId;
+    }
+
+    public void setProducerId(ProducerId producerId) {
+        this.producerId = producerId;
+    }
+
+    /**
+     * The client transaction the messages were sent in, if any.
+     *
+     * @openwire:property version=10 cache=true
+     */
+    public TransactionId getTransactionId() {
+        return transactionId;
+    }
+
+    public void setTransactionId(TransactionId transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    /**
+     * @openwire:property version=10
+     */
+    public Message[] getMessages() {
+        return messages;
+    }
+
+    public void setMessages(Message[] messages) {
+        this.messages = messages;
+    }
+
+    /**
+     * @return the total size of the messages in the batch
+     */
+    public int getSize() {
+        int size = 0;
+        if (messages != null) {
+            for (Message message : messages) {
+                size += message.getSize();
+            }
+        }
+        return size;
+    }
+}
@@ -36,6 +36,7 @@ public class MessageDispatch extends BaseCommand {
     protected transient Object consumer;
     protected transient Runnable transmitCallback;
     protected transient Throwable rollbackCause;
+    protected transient MessagePool messagePool;
 
     public byte getDataStructureType() {
         return DATA_STRUCTURE_TYPE;
@@ -124,4 +125,28 @@ public class MessageDispatch extends BaseCommand {
     public void setRollbackCause(Throwable rollbackCause) {
         this.rollbackCause = rollbackCause;
     }
+
+    /**
+     * @return the pool of the connection the dispatch was read from, null
+     *         unless message recycling is enabled on its wire format
+     */
+    public MessagePool getMessagePool() {
+        return messagePool;
+    }
+
+    public void setMessagePool(MessagePool messagePool) {
+        this.messagePool = messagePool;
+    }
+
+    // keeps the pool, the dispatch is only reused by the same connection
+    void recycle() {
+        consumerId = null;
+        destination = null;
+        message = null;
+        redeliveryCounter = 0;
+        deliverySequenceId = 0;
+        consumer = null;
+        transmitCallback = null;
+        rollbackCause = null;
+    }
 }
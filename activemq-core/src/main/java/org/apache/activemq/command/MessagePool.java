@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.command;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.util.ByteSequence;
+
+/**
+ * Holds the message dispatches, messages and body buffers of a connection
+ * once a consumer is done with them, so that the wire format can read the
+ * next messages into them rather than allocating new ones.
+ *
+ * Objects are taken by the thread reading from the transport and given back
+ * by the threads delivering messages, so both sides are lock free. Only plain,
+ * text and bytes messages are pooled, and only buffers up to
+ * {@link #MAX_POOLED_BUFFER_SIZE} that no copy of the message refers to are
+ * kept.
+ *
+ */
+public class MessagePool {
+
+    public static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+    // buffers are kept by size, don't keep a queue for every size seen
+    private static final int MAX_BUFFER_SIZES = 64;
+
+    private final int maximumSize;
+    private final Pool[] pools = new Pool[256];
+    private final ConcurrentHashMap<Integer, Queue<byte[]>> buffers = new ConcurrentHashMap<Integer, Queue<byte[]>>();
+    private final AtomicInteger bufferCount = new AtomicInteger();
+
+    /**
+     * @param maximumSize the most objects of each type, and twice as many
+     *                buffers, that are kept
+     */
+    public MessagePool(int maximumSize) {
+        this.maximumSize = maximumSize;
+        pools[MessageDispatch.DATA_STRUCTURE_TYPE] = new Pool();
+        pools[ActiveMQMessage.DATA_STRUCTURE_TYPE] = new Pool();
+        pools[ActiveMQTextMessage.DATA_STRUCTURE_TYPE] = new Pool();
+        pools[ActiveMQBytesMessage.DATA_STRUCTURE_TYPE] = new Pool();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return a recycled object of the type, or null if there is none
+     */
+    public DataStructure take(byte type) {
+        Pool pool = pools[type & 0xFF];
+        return pool != null ? pool.take() : null;
+    }
+
+    /**
+     * @return a buffer of exactly the size, recycled if possible
+     */
+    public byte[] takeBuffer(int size) {
+        if (size > 0 && size <= MAX_POOLED_BUFFER_SIZE) {
+            Queue<byte[]> queue = buffers.get(size);
+            if (queue != null) {
+                byte[] buffer = queue.poll();
+                if (buffer != null) {
+                    bufferCount.decrementAndGet();
+                    return buffer;
+                }
+            }
+        }
+        return new byte[size];
+    }
+
+    /**
+     * Gives back a dispatch together with its message and the message's
+     * buffers. Nothing may refer to any of them afterwards.
+     */
+    public void recycle(MessageDispatch md) {
+        Message message = md.getMessage();
+        md.recycle();
+        pools[MessageDispatch.DATA_STRUCTURE_TYPE].offer(md);
+        if (message != null) {
+            Pool pool = pools[message.getDataStructureType() & 0xFF];
+            if (pool != null) {
+                // a copy, forwarded say, still reads the buffers
+                if (!message.isBuffersShared()) {
+                    recycleBuffer(message.getContent());
+                    recycleBuffer(message.getMarshalledProperties());
+                }
+                message.recycle();
+                pool.offer(message);
+            }
+        }
+    }
+
+    private void recycleBuffer(ByteSequence sequence) {
+        // only buffers the wire format read whole, any other may be shared
+        if (sequence == null || sequence.getOffset() != 0 || sequence.getLength() != sequence.getData().length
+            || sequence.getLength() == 0 || sequence.getLength() > MAX_POOLED_BUFFER_SIZE) {
+            return;
+        }
+        if (bufferCount.incrementAndGet() > maximumSize * 2) {
+            bufferCount.decrementAndGet();
+            return;
+        }
+        Integer size = Integer.valueOf(sequence.getLength());
+        Queue<byte[]> queue = buffers.get(size);
+        if (queue == null) {
+            if (buffers.size() >= MAX_BUFFER_SIZES) {
+                bufferCount.decrementAndGet();
+                return;
+            }
+            queue = new ConcurrentLinkedQueue<byte[]>();
+            Queue<byte[]> existing = buffers.putIfAbsent(size, queue);
+            if (existing != null) {
+                queue = existing;
+            }
+        }
+        queue.offer(sequence.getData());
+    }
+
+    private final class Pool {
+        private final Queue<DataStructure> objects = new ConcurrentLinkedQueue<DataStructure>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        DataStructure take() {
+            DataStructure answer = objects.poll();
+            if (answer != null) {
+                size.decrementAndGet();
+            }
+            return answer;
+        }
+
+        void offer(DataStructure object) {
+            if (size.incrementAndGet() > maximumSize) {
+                size.decrementAndGet();
+            } else {
+                objects.offer(object);
+            }
+        }
+    }
+}
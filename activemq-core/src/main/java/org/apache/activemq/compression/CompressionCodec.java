@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.compression;
+
+import java.io.IOException;
+
+import org.apache.activemq.util.ByteSequence;
+
+/**
+ * A pluggable codec used to compress message bodies when
+ * {@link org.apache.activemq.ActiveMQConnection#setUseCompression(boolean)} is
+ * enabled.
+ * <p/>
+ * Codecs are located by name using the
+ * <code>META-INF/services/org/apache/activemq/compression/</code> service path,
+ * see {@link CompressionCodecFactory}. The name of the codec used for a message
+ * is recorded in the message so the receiver can pick the matching codec.
+ * Implementations must be safe to use from multiple threads once configured.
+ */
+public interface CompressionCodec {
+
+    /**
+     * The message property used to record the codec of a compressed body. It is
+     * only set for codecs other than {@link DeflateCodec} so that messages
+     * compressed with the default codec remain readable by older clients.
+     */
+    String CODEC_PROPERTY = "AMQ_COMPRESSION_CODEC";
+
+    /**
+     * @return the name this codec is registered under
+     */
+    String getName();
+
+    /**
+     * Sets a preset dictionary that is used to prime the codec. Dictionaries
+     * improve the ratio of small payloads that share a common structure, but
+     * the same dictionary must be configured on both the sending and the
+     * receiving side.
+     *
+     * @param dictionary the preset dictionary, or null for none
+     */
+    void setDictionary(byte[] dictionary);
+
+    byte[] getDictionary();
+
+    ByteSequence compress(ByteSequence data) throws IOException;
+
+    ByteSequence decompress(ByteSequence data) throws IOException;
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.compression;
+
+import java.io.IOException;
+
+import org.apache.activemq.util.FactoryFinder;
+import org.apache.activemq.util.IOExceptionSupport;
+
+/**
+ * Creates {@link CompressionCodec} instances by name.
+ */
+public final class CompressionCodecFactory {
+
+    private static final FactoryFinder CODEC_FINDER = new FactoryFinder("META-INF/services/org/apache/activemq/compression/");
+
+    private CompressionCodecFactory() {
+    }
+
+    public static CompressionCodec createCodec(String name) throws IOException {
+        return createCodec(name, null);
+    }
+
+    public static CompressionCodec createCodec(String name, byte[] dictionary) throws IOException {
+        if (name == null || name.length() == 0) {
+            name = DeflateCodec.NAME;
+        }
+        CompressionCodec codec;
+        try {
+            codec = (CompressionCodec) CODEC_FINDER.newInstance(name);
+        } catch (Throwable e) {
+            throw IOExceptionSupport.create("Compression codec NOT recognized: [" + name + "]", e);
+        }
+        codec.setDictionary(dictionary);
+        return codec;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.compression;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.activemq.util.ByteArrayOutputStream;
+import org.apache.activemq.util.ByteSequence;
+
+/**
+ * The default codec which produces a zlib stream using {@link Deflater}. Its
+ * output is what older clients read with an
+ * {@link java.util.zip.InflaterInputStream} so it is always used when no other
+ * codec is configured.
+ */
+public class DeflateCodec implements CompressionCodec {
+
+    public static final String NAME = "deflate";
+
+    private int level = Deflater.BEST_SPEED;
+    private byte[] dictionary;
+
+    public String getName() {
+        return NAME;
+    }
+
+    public ByteSequence compress(ByteSequence data) throws IOException {
+        Deflater deflater = new Deflater(level);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data.getData(), data.getOffset(), data.getLength());
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.getLength() / 2));
+            byte[] buffer = new byte[Math.min(8192, data.getLength() + 64)];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteSequence();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public ByteSequence decompress(ByteSequence data) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data.getData(), data.getOffset(), data.getLength());
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.getLength() * 2);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && !inflater.finished()) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null) {
+                            throw new IOException("Compressed content requires a preset dictionary but none is configured");
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new IOException("Unexpected end of compressed content");
+                    }
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteSequence();
+        } catch (DataFormatException e) {
+            IOException ioe = new IOException("Invalid compressed content: " + e.getMessage());
+            ioe.initCause(e);
+            throw ioe;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public byte[] getDictionary() {
+        return dictionary;
+    }
+
+    public void setDictionary(byte[] dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the {@link Deflater} compression level, defaults to
+     * {@link Deflater#BEST_SPEED}
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.activemq.util.ByteSequence;
+
+/**
+ * A pure Java codec producing the LZ4 block format. It trades compression ratio
+ * for speed, which suits the small to medium sized bodies that are typical for
+ * messaging where deflate costs more CPU than it saves on the wire.
+ * <p/>
+ * The compressed form is the 4 byte big endian length of the original data
+ * followed by a single LZ4 block. When a dictionary is configured (at most the
+ * last 64k of it is used) matches may refer back into the dictionary as if it
+ * preceded the data.
+ */
+public class LZ4Codec implements CompressionCodec {
+
+    public static final String NAME = "lz4";
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 0xFFFF;
+    private static final int HASH_LOG = 12;
+    private static final int SKIP_TRIGGER = 6;
+    private static final int ML_MASK = 0x0F;
+    private static final int RUN_MASK = 0x0F;
+
+    private byte[] dictionary;
+
+    public String getName() {
+        return NAME;
+    }
+
+    public ByteSequence compress(ByteSequence data) throws IOException {
+        final int length = data.getLength();
+        final int dictLength = dictionary != null ? dictionary.length : 0;
+
+        // lay the dictionary out in front of the data so matches can refer to it
+        final byte[] src;
+        final int windowStart;
+        final int start;
+        if (dictLength > 0) {
+            src = new byte[dictLength + length];
+            System.arraycopy(dictionary, 0, src, 0, dictLength);
+            System.arraycopy(data.getData(), data.getOffset(), src, dictLength, length);
+            windowStart = 0;
+            start = dictLength;
+        } else {
+            src = data.getData();
+            windowStart = data.getOffset();
+            start = data.getOffset();
+        }
+        final int end = start + length;
+
+        byte[] dest = new byte[4 + length + (length / 255) + 16];
+        writeIntBig(dest, 0, length);
+        int op = 4;
+        int anchor = start;
+
+        if (length >= MF_LIMIT) {
+            int[] table = new int[1 << HASH_LOG];
+            Arrays.fill(table, -1);
+            for (int p = windowStart; p + MIN_MATCH <= start; p++) {
+                table[hash(readInt(src, p))] = p;
+            }
+
+            final int matchLimit = end - LAST_LITERALS;
+            final int mfLimit = end - MF_LIMIT;
+            int ip = start;
+            int searchCount = 1 << SKIP_TRIGGER;
+            while (ip < mfLimit) {
+                int sequence = readInt(src, ip);
+                int h = hash(sequence);
+                int ref = table[h];
+                table[h] = ip;
+                if (ref < windowStart || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                    ip += searchCount++ >>> SKIP_TRIGGER;
+                    continue;
+                }
+                searchCount = 1 << SKIP_TRIGGER;
+
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+                while (ip > anchor && ref > windowStart && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                    matchLength++;
+                }
+
+                op = writeSequence(dest, op, src, anchor, ip - anchor, ip - ref, matchLength);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+
+        op = writeLastLiterals(dest, op, src, anchor, end - anchor);
+        return new ByteSequence(dest, 0, op);
+    }
+
+    public ByteSequence decompress(ByteSequence data) throws IOException {
+        final byte[] src = data.getData();
+        int ip = data.getOffset();
+        final int end = ip + data.getLength();
+        if (data.getLength() < 4) {
+            throw new IOException("Invalid compressed content: missing length header");
+        }
+        final int length = readIntBig(src, ip);
+        ip += 4;
+        final int dictLength = dictionary != null ? dictionary.length : 0;
+        if (length < 0) {
+            throw new IOException("Invalid compressed content: negative length " + length);
+        }
+
+        final byte[] dest = new byte[dictLength + length];
+        if (dictLength > 0) {
+            System.arraycopy(dictionary, 0, dest, 0, dictLength);
+        }
+        int op = dictLength;
+
+        while (ip < end) {
+            int token = src[ip++] & 0xFF;
+
+            int literals = token >>> 4;
+            if (literals == RUN_MASK) {
+                int b;
+                do {
+                    if (ip >= end) {
+                        throw new IOException("Invalid compressed content: truncated literal length");
+                    }
+                    b = src[ip++] & 0xFF;
+                    literals += b;
+                } while (b == 0xFF);
+            }
+            if (ip + literals > end || op + literals > dest.length) {
+                throw new IOException("Invalid compressed content: literals overrun");
+            }
+            System.arraycopy(src, ip, dest, op, literals);
+            ip += literals;
+            op += literals;
+
+            if (ip >= end) {
+                break;
+            }
+
+            if (ip + 2 > end) {
+                throw new IOException("Invalid compressed content: truncated match offset");
+            }
+            int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+            ip += 2;
+
+            int matchLength = token & ML_MASK;
+            if (matchLength == ML_MASK) {
+                int b;
+                do {
+                    if (ip >= end) {
+                        throw new IOException("Invalid compressed content: truncated match length");
+                    }
+                    b = src[ip++] & 0xFF;
+                    matchLength += b;
+                } while (b == 0xFF);
+            }
+            matchLength += MIN_MATCH;
+
+            int ref = op - offset;
+            if (offset == 0 || ref < 0 || op + matchLength > dest.length) {
+                throw new IOException("Invalid compressed content: bad match at " + (op - dictLength));
+            }
+            if (offset >= matchLength) {
+                System.arraycopy(dest, ref, dest, op, matchLength);
+                op += matchLength;
+            } else {
+                // overlapping copy repeats the last offset bytes
+                for (int i = 0; i < matchLength; i++) {
+                    dest[op++] = dest[ref++];
+                }
+            }
+        }
+
+        if (op != dest.length) {
+            throw new IOException("Invalid compressed content: expected " + length + " bytes but got " + (op - dictLength));
+        }
+        return new ByteSequence(dest, dictLength, length);
+    }
+
+    public byte[] getDictionary() {
+        return dictionary;
+    }
+
+    public void setDictionary(byte[] dictionary) {
+        if (dictionary != null && dictionary.length > MAX_DISTANCE) {
+            byte[] tail = new byte[MAX_DISTANCE];
+            System.arraycopy(dictionary, dictionary.length - MAX_DISTANCE, tail, 0, MAX_DISTANCE);
+            dictionary = tail;
+        }
+        this.dictionary = dictionary != null && dictionary.length > 0 ? dictionary : null;
+    }
+
+    private static int writeSequence(byte[] dest, int op, byte[] src, int literalStart, int literals, int offset, int matchLength) {
+        int tokenPos = op++;
+        int token = 0;
+
+        if (literals >= RUN_MASK) {
+            token = RUN_MASK << 4;
+            op = writeLength(dest, op, literals - RUN_MASK);
+        } else {
+            token = literals << 4;
+        }
+        System.arraycopy(src, literalStart, dest, op, literals);
+        op += literals;
+
+        dest[op++] = (byte) offset;
+        dest[op++] = (byte) (offset >>> 8);
+
+        int ml = matchLength - MIN_MATCH;
+        if (ml >= ML_MASK) {
+            token |= ML_MASK;
+            op = writeLength(dest, op, ml - ML_MASK);
+        } else {
+            token |= ml;
+        }
+        dest[tokenPos] = (byte) token;
+        return op;
+    }
+
+    private static int writeLastLiterals(byte[] dest, int op, byte[] src, int literalStart, int literals) {
+        if (literals >= RUN_MASK) {
+            dest[op++] = (byte) (RUN_MASK << 4);
+            op = writeLength(dest, op, literals - RUN_MASK);
+        } else {
+            dest[op++] = (byte) (literals << 4);
+        }
+        System.arraycopy(src, literalStart, dest, op, literals);
+        return op + literals;
+    }
+
+    private static int writeLength(byte[] dest, int op, int length) {
+        while (length >= 0xFF) {
+            dest[op++] = (byte) 0xFF;
+            length -= 0xFF;
+        }
+        dest[op++] = (byte) length;
+        return op;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int readInt(byte[] buf, int pos) {
+        return (buf[pos] & 0xFF) | ((buf[pos + 1] & 0xFF) << 8) | ((buf[pos + 2] & 0xFF) << 16) | ((buf[pos + 3] & 0xFF) << 24);
+    }
+
+    private static int readIntBig(byte[] buf, int pos) {
+        return ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16) | ((buf[pos + 2] & 0xFF) << 8) | (buf[pos + 3] & 0xFF);
+    }
+
+    private static void writeIntBig(byte[] buf, int pos, int value) {
+        buf[pos] = (byte) (value >>> 24);
+        buf[pos + 1] = (byte) (value >>> 16);
+        buf[pos + 2] = (byte) (value >>> 8);
+        buf[pos + 3] = (byte) value;
+    }
+}
@@ -97,7 +97,9 @@ public final class XPathExpression implements BooleanExpression {
             if (message.isDropped()) {
                 return null;
             }
-            return evaluator.evaluate(message.getMessage()) ? Boolean.TRUE : Boolean.FALSE;
+            // the context may only hold the headers, the body is needed here
+            Message body = message.getMessageReference() != null ? message.getMessageReference().getMessage() : message.getMessage();
+            return evaluator.evaluate(body) ? Boolean.TRUE : Boolean.FALSE;
         } catch (IOException e) {
             throw JMSExceptionSupport.create(e);
         }
@@ -21,15 +21,23 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.Map;
 
+import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.CommandTypes;
+import org.apache.activemq.command.ConsumerId;
 import org.apache.activemq.command.DataStructure;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageDispatch;
+import org.apache.activemq.command.MessagePool;
+import org.apache.activemq.command.ProducerId;
 import org.apache.activemq.command.WireFormatInfo;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.ByteSequenceData;
 import org.apache.activemq.util.DataByteArrayInputStream;
 import org.apache.activemq.util.DataByteArrayOutputStream;
+import org.apache.activemq.util.LRUCache;
 import org.apache.activemq.wireformat.WireFormat;
 
 /**
@@ -41,6 +49,7 @@ public final class OpenWireFormat implements WireFormat {
     public static final int DEFAULT_VERSION = CommandTypes.PROTOCOL_STORE_VERSION;
     public static final int DEFAULT_WIRE_VERSION = CommandTypes.PROTOCOL_VERSION;
     public static final int DEFAULT_MAX_FRAME_SIZE = 100 * 1024 * 1024; //100 MB
+    public static final int DEFAULT_MAX_MARSHALLED_MESSAGE_CACHE_SIZE = 64 * 1024;
 
     static final byte NULL_TYPE = CommandTypes.NULL;
     private static final int MARSHAL_CACHE_SIZE = Short.MAX_VALUE / 2;
@@ -54,6 +63,14 @@ public final class OpenWireFormat implements WireFormat {
     private boolean tightEncodingEnabled;
     private boolean sizePrefixDisabled;
     private long maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    private boolean marshalledMessageCacheEnabled;
+    private int maxMarshalledMessageCacheSize = DEFAULT_MAX_MARSHALLED_MESSAGE_CACHE_SIZE;
+    private int messagePoolSize;
+    private MessagePool messagePool;
+    // reused to read each command when the message pool is enabled
+    private final BooleanStream unmarshalBooleanStream = new BooleanStream();
+    private int internCacheSize;
+    private Map<DataStructure, DataStructure> internCache;
 
     // The following fields are used for value caching
     private short nextMarshallCacheIndex;
@@ -64,6 +81,9 @@ public final class OpenWireFormat implements WireFormat {
     private DataByteArrayOutputStream bytesOut = new DataByteArrayOutputStream();
     private DataByteArrayInputStream bytesIn = new DataByteArrayInputStream();
     private WireFormatInfo preferedWireFormatInfo;
+    // marshalled forms handed out by the first pass of the tight encoding
+    // for the second pass to write
+    private final LinkedList<ByteSequence> pendingMarshalledForms = new LinkedList<ByteSequence>();
     
     public OpenWireFormat() {
         this(DEFAULT_VERSION);
@@ -88,6 +108,10 @@ public final class OpenWireFormat implements WireFormat {
         answer.tightEncodingEnabled = tightEncodingEnabled;
         answer.sizePrefixDisabled = sizePrefixDisabled;
         answer.preferedWireFormatInfo = preferedWireFormatInfo;
+        answer.marshalledMessageCacheEnabled = marshalledMessageCacheEnabled;
+        answer.maxMarshalledMessageCacheSize = maxMarshalledMessageCacheSize;
+        answer.setMessagePoolSize(messagePoolSize);
+        answer.setInternCacheSize(internCacheSize);
         return answer;
     }
 
@@ -144,6 +168,7 @@ public final class OpenWireFormat implements WireFormat {
                 }
                 if (tightEncodingEnabled) {
 
+                    pendingMarshalledForms.clear();
                     BooleanStream bs = new BooleanStream();
                     size += dsm.tightMarshal1(this, c, bs);
                     size += bs.marshalledSize();
@@ -230,6 +255,7 @@ public final class OpenWireFormat implements WireFormat {
                 throw new IOException("Unknown data type: " + type);
             }
             if (tightEncodingEnabled) {
+                pendingMarshalledForms.clear();
                 BooleanStream bs = new BooleanStream();
                 size += dsm.tightMarshal1(this, c, bs);
                 size += bs.marshalledSize();
@@ -298,6 +324,7 @@ public final class OpenWireFormat implements WireFormat {
                 throw new IOException("Unknown data type: " + type);
             }
 
+            pendingMarshalledForms.clear();
             size += dsm.tightMarshal1(this, c, bs);
             size += bs.marshalledSize();
         }
@@ -364,14 +391,17 @@ public final class OpenWireFormat implements WireFormat {
             if (dsm == null) {
                 throw new IOException("Unknown data type: " + dataType);
             }
-            Object data = dsm.createObject();
+            DataStructure data = createObject(dsm, dataType);
             if (this.tightEncodingEnabled) {
-                BooleanStream bs = new BooleanStream();
+                BooleanStream bs = messagePool != null ? unmarshalBooleanStream : new BooleanStream();
                 bs.unmarshal(dis);
                 dsm.tightUnmarshal(this, data, dis, bs);
             } else {
                 dsm.looseUnmarshal(this, data, dis);
             }
+            if (messagePool != null && data instanceof MessageDispatch) {
+                ((MessageDispatch)data).setMessagePool(messagePool);
+            }
             return data;
         } else {
             return null;
@@ -389,11 +419,10 @@ public final class OpenWireFormat implements WireFormat {
         }
 
         if (o.isMarshallAware()) {
-            // MarshallAware ma = (MarshallAware)o;
-            ByteSequence sequence = null;
-            // sequence=ma.getCachedMarshalledForm(this);
+            ByteSequence sequence = getMarshalledMessageForm(o);
             bs.writeBoolean(sequence != null);
             if (sequence != null) {
+                pendingMarshalledForms.addLast(sequence);
                 return 1 + sequence.getLength();
             }
         }
@@ -417,12 +446,12 @@ public final class OpenWireFormat implements WireFormat {
 
         if (o.isMarshallAware() && bs.readBoolean()) {
 
-            // We should not be doing any caching
-            throw new IOException("Corrupted stream");
-            // MarshallAware ma = (MarshallAware) o;
-            // ByteSequence sequence=ma.getCachedMarshalledForm(this);
-            // ds.write(sequence.getData(), sequence.getOffset(),
-            // sequence.getLength());
+            // splice in the form that was sized by the first pass
+            if (pendingMarshalledForms.isEmpty()) {
+                throw new IOException("Corrupted stream");
+            }
+            ByteSequence sequence = pendingMarshalledForms.removeFirst();
+            ds.write(sequence.getData(), sequence.getOffset(), sequence.getLength());
 
         } else {
 
@@ -435,6 +464,45 @@ public final class OpenWireFormat implements WireFormat {
         }
     }
 
+    /**
+     * Returns the standalone tight encoded form of a message nested in another
+     * command, such as a MessageDispatch, marshalling and caching it on the
+     * message if needed. The same message is then not encoded again when it
+     * is dispatched to other consumers or redispatched, as long as it is not
+     * modified. Only possible when value caching is disabled as the cached
+     * values are specific to a connection.
+     */
+    private ByteSequence getMarshalledMessageForm(DataStructure o) throws IOException {
+        if (!marshalledMessageCacheEnabled || cacheEnabled || !(o instanceof Message)) {
+            return null;
+        }
+        Message message = (Message)o;
+        ByteSequence sequence = message.getCachedMarshalledForm(version);
+        if (sequence == null && message.getSize() <= maxMarshalledMessageCacheSize) {
+            // lets the message store its body first, which modifies it
+            message.beforeMarshall(this);
+            int stamp = message.getCachedMarshalledFormStamp();
+            byte type = o.getDataStructureType();
+            DataStreamMarshaller dsm = (DataStreamMarshaller)dataMarshallers[type & 0xFF];
+            if (dsm == null) {
+                throw new IOException("Unknown data type: " + type);
+            }
+            BooleanStream bs = new BooleanStream();
+            int size = 1 + dsm.tightMarshal1(this, o, bs);
+            size += bs.marshalledSize();
+
+            // the nested form always carries its size, see tightUnmarshalNestedObject
+            DataByteArrayOutputStream out = new DataByteArrayOutputStream(size + 4);
+            out.writeInt(size);
+            out.writeByte(type);
+            bs.marshal(out);
+            dsm.tightMarshal2(this, o, out, bs);
+            sequence = out.toByteSequence();
+            message.setCachedMarshalledForm(version, sequence, stamp);
+        }
+        return sequence;
+    }
+
     public DataStructure tightUnmarshalNestedObject(DataInput dis, BooleanStream bs) throws IOException {
         if (bs.readBoolean()) {
 
@@ -443,7 +511,7 @@ public final class OpenWireFormat implements WireFormat {
             if (dsm == null) {
                 throw new IOException("Unknown data type: " + dataType);
             }
-            DataStructure data = dsm.createObject();
+            DataStructure data = createObject(dsm, dataType);
 
             if (data.isMarshallAware() && bs.readBoolean()) {
 
@@ -462,7 +530,7 @@ public final class OpenWireFormat implements WireFormat {
                 dsm.tightUnmarshal(this, data, dis, bs);
             }
 
-            return data;
+            return intern(data);
         } else {
             return null;
         }
@@ -476,15 +544,52 @@ public final class OpenWireFormat implements WireFormat {
             if (dsm == null) {
                 throw new IOException("Unknown data type: " + dataType);
             }
-            DataStructure data = dsm.createObject();
+            DataStructure data = createObject(dsm, dataType);
             dsm.looseUnmarshal(this, data, dis);
-            return data;
+            return intern(data);
 
         } else {
             return null;
         }
     }
 
+    private DataStructure createObject(DataStreamMarshaller dsm, byte dataType) {
+        if (messagePool != null) {
+            DataStructure data = messagePool.take(dataType);
+            if (data != null) {
+                return data;
+            }
+        }
+        return dsm.createObject();
+    }
+
+    /**
+     * Returns the instance already read for an id or destination equal to the
+     * one just read, so the many messages of a producer or for a destination
+     * share one.
+     */
+    private DataStructure intern(DataStructure data) {
+        if (internCache != null
+            && (data instanceof ProducerId || data instanceof ConsumerId || data instanceof ActiveMQDestination)) {
+            synchronized (internCache) {
+                DataStructure existing = internCache.get(data);
+                if (existing != null) {
+                    return existing;
+                }
+                internCache.put(data, data);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * @return a buffer to read a message body or properties of the size into,
+     *         recycled when the message pool is enabled
+     */
+    public byte[] createBuffer(int size) {
+        return messagePool != null ? messagePool.takeBuffer(size) : new byte[size];
+    }
+
     public void looseMarshalNestedObject(DataStructure o, DataOutput dataOut) throws IOException {
         dataOut.writeBoolean(o != null);
         if (o != null) {
@@ -611,6 +716,70 @@ public final class OpenWireFormat implements WireFormat {
         this.maxFrameSize = maxFrameSize;
     }
 
+    public boolean isMarshalledMessageCacheEnabled() {
+        return marshalledMessageCacheEnabled;
+    }
+
+    /**
+     * Enables caching the tight encoded form of dispatched messages so that a
+     * message sent to many consumers is only encoded once. Has no effect
+     * unless tight encoding is used and value caching is disabled.
+     */
+    public void setMarshalledMessageCacheEnabled(boolean marshalledMessageCacheEnabled) {
+        this.marshalledMessageCacheEnabled = marshalledMessageCacheEnabled;
+    }
+
+    public int getMaxMarshalledMessageCacheSize() {
+        return maxMarshalledMessageCacheSize;
+    }
+
+    /**
+     * Sets the size above which the encoded form of a message is not cached,
+     * as the cached form is held in addition to the message itself.
+     */
+    public void setMaxMarshalledMessageCacheSize(int maxMarshalledMessageCacheSize) {
+        this.maxMarshalledMessageCacheSize = maxMarshalledMessageCacheSize;
+    }
+
+    public int getMessagePoolSize() {
+        return messagePoolSize;
+    }
+
+    /**
+     * Lets the dispatches, messages and body buffers read by this wire format
+     * be reused once their consumer is done with them, see
+     * {@link MessagePool}. Only for clients whose message listeners keep no
+     * reference to a message after it returns. Body buffers are only reused
+     * from version 10 of the protocol.
+     *
+     * @param messagePoolSize the most objects of each type kept, 0 disables
+     *                recycling
+     */
+    public void setMessagePoolSize(int messagePoolSize) {
+        this.messagePoolSize = messagePoolSize;
+        this.messagePool = messagePoolSize > 0 ? new MessagePool(messagePoolSize) : null;
+    }
+
+    public MessagePool getMessagePool() {
+        return messagePool;
+    }
+
+    public int getInternCacheSize() {
+        return internCacheSize;
+    }
+
+    /**
+     * Shares one instance between all the equal producer ids, consumer ids
+     * and destinations read by this wire format, which the value cache only
+     * does when it is enabled.
+     *
+     * @param internCacheSize the most instances kept, 0 disables interning
+     */
+    public void setInternCacheSize(int internCacheSize) {
+        this.internCacheSize = internCacheSize;
+        this.internCache = internCacheSize > 0 ? new LRUCache<DataStructure, DataStructure>(internCacheSize) : null;
+    }
+
     public void renegotiateWireFormat(WireFormatInfo info) throws IOException {
 
         if (preferedWireFormatInfo == null) {
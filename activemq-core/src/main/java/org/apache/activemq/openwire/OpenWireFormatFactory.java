@@ -40,6 +40,10 @@ public class OpenWireFormatFactory implements WireFormatFactory {
     private long maxInactivityDurationInitalDelay = 10*1000;
     private int cacheSize = 1024;
     private long maxFrameSize = OpenWireFormat.DEFAULT_MAX_FRAME_SIZE;
+    private boolean marshalledMessageCacheEnabled;
+    private int maxMarshalledMessageCacheSize = OpenWireFormat.DEFAULT_MAX_MARSHALLED_MESSAGE_CACHE_SIZE;
+    private int messagePoolSize;
+    private int internCacheSize;
 
     public WireFormat createWireFormat() {
         WireFormatInfo info = new WireFormatInfo();
@@ -63,6 +67,10 @@ public class OpenWireFormatFactory implements WireFormatFactory {
 
         OpenWireFormat f = new OpenWireFormat(version);
         f.setMaxFrameSize(maxFrameSize);
+        f.setMarshalledMessageCacheEnabled(marshalledMessageCacheEnabled);
+        f.setMaxMarshalledMessageCacheSize(maxMarshalledMessageCacheSize);
+        f.setMessagePoolSize(messagePoolSize);
+        f.setInternCacheSize(internCacheSize);
         f.setPreferedWireFormatInfo(info);
         return f;
     }
@@ -147,4 +155,36 @@ public class OpenWireFormatFactory implements WireFormatFactory {
     public void setMaxFrameSize(long maxFrameSize) {
         this.maxFrameSize = maxFrameSize;
     }
+
+    public boolean isMarshalledMessageCacheEnabled() {
+        return marshalledMessageCacheEnabled;
+    }
+
+    public void setMarshalledMessageCacheEnabled(boolean marshalledMessageCacheEnabled) {
+        this.marshalledMessageCacheEnabled = marshalledMessageCacheEnabled;
+    }
+
+    public int getMaxMarshalledMessageCacheSize() {
+        return maxMarshalledMessageCacheSize;
+    }
+
+    public void setMaxMarshalledMessageCacheSize(int maxMarshalledMessageCacheSize) {
+        this.maxMarshalledMessageCacheSize = maxMarshalledMessageCacheSize;
+    }
+
+    public int getMessagePoolSize() {
+        return messagePoolSize;
+    }
+
+    public void setMessagePoolSize(int messagePoolSize) {
+        this.messagePoolSize = messagePoolSize;
+    }
+
+    public int getInternCacheSize() {
+        return internCacheSize;
+    }
+
+    public void setInternCacheSize(int internCacheSize) {
+        this.internCacheSize = internCacheSize;
+    }
 }
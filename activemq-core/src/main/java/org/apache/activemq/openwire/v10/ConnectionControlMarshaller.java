@@ -0,0 +1 @@
+/** * * Licensed to the Apache Software Foundation (ASF) under one or more * contributor license agreements.  See the NOTICE file distributed with * this work for additional information regarding copyright ownership. * The ASF licenses this file to You under the Apache License, Version 2.0 * (the "License"); you may not use this file except in compliance with * the License.  You may obtain a copy of the License at * * http://www.apache.org/licenses/LICENSE-2.0 * * Unless required by applicable law or agreed to in writing, software * distributed under the License is distributed on an "AS IS" BASIS, * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. * See the License for the specific language governing permissions and * limitations under the License. */package org.apache.activemq.openwire.v10;import java.io.DataInput;import java.io.DataOutput;import java.io.IOException;import org.apache.activemq.openwire.*;import org.apache.activemq.command.*;/** * Marshalling code for Open Wire Format for ConnectionControlMarshaller * * * NOTE!: This file is auto generated - do not modify! *        if you need to make a change, please see the modify the groovy scripts in the *        under src/gram/script and then use maven openwire:generate to regenerate  *        this file. * *  */public class ConnectionControlMarshaller extends BaseCommandMarshaller {    /**     * Return the type of Data Structure we marshal     * @return short representation of the type data structure     */    public byte getDataStructureType() {        return ConnectionControl.DATA_STRUCTURE_TYPE;    }        /**     * @return a new object instance     */    public DataStructure createObject() {        return new ConnectionControl();    }    /**     * Un-marshal an object instance from the data input stream     *     * @param o the object to un-marshal     * @param dataIn the data input stream to build the object from     * @throws IOException     */    public void tightUnmarshal(OpenWireFormat wireFormat, Object o, DataInput dataIn, BooleanStream bs) throws IOException {        super.tightUnmarshal(wireFormat, o, dataIn, bs);        ConnectionControl info = (ConnectionControl)o;        info.setClose(bs.readBoolean());        info.setExit(bs.readBoolean());        info.setFaultTolerant(bs.readBoolean());        info.setResume(bs.readBoolean());        info.setSuspend(bs.readBoolean());        info.setConnectedBrokers(tightUnmarshalString(dataIn, bs));        info.setReconnectTo(tightUnmarshalString(dataIn, bs));        info.setRebalanceConnection(bs.readBoolean());        info.setToken(tightUnmarshalByteArray(dataIn, bs));    }    /**     * Write the booleans that this object uses to a BooleanStream     */    public int tightMarshal1(OpenWireFormat wireFormat, Object o, BooleanStream bs) throws IOException {        ConnectionControl info = (ConnectionControl)o;        int rc = super.tightMarshal1(wireFormat, o, bs);        bs.writeBoolean(info.isClose());        bs.writeBoolean(info.isExit());        bs.writeBoolean(info.isFaultTolerant());        bs.writeBoolean(info.isResume());        bs.writeBoolean(info.isSuspend());        rc += tightMarshalString1(info.getConnectedBrokers(), bs);        rc += tightMarshalString1(info.getReconnectTo(), bs);        bs.writeBoolean(info.isRebalanceConnection());        rc += tightMarshalByteArray1(info.getToken(), bs);        return rc + 0;    }    /**     * Write a object instance to data output stream     *     * @param o the instance to be marshaled     * @param dataOut the output stream     * @throws IOException thrown if an error occurs     */    public void tightMarshal2(OpenWireFormat wireFormat, Object o, DataOutput dataOut, BooleanStream bs) throws IOException {        super.tightMarshal2(wireFormat, o, dataOut, bs);        ConnectionControl info = (ConnectionControl)o;        bs.readBoolean();        bs.readBoolean();        bs.readBoolean();        bs.readBoolean();        bs.readBoolean();        tightMarshalString2(info.getConnectedBrokers(), dataOut, bs);        tightMarshalString2(info.getReconnectTo(), dataOut, bs);        bs.readBoolean();        tightMarshalByteArray2(info.getToken(), dataOut, bs);    }    /**     * Un-marshal an object instance from the data input stream     *     * @param o the object to un-marshal     * @param dataIn the data input stream to build the object from     * @throws IOException     */    public void looseUnmarshal(OpenWireFormat wireFormat, Object o, DataInput dataIn) throws IOException {        super.looseUnmarshal(wireFormat, o, dataIn);        ConnectionControl info = (ConnectionControl)o;        info.setClose(dataIn.readBoolean());        info.setExit(dataIn.readBoolean());        info.setFaultTolerant(dataIn.readBoolean());        info.setResume(dataIn.readBoolean());        info.setSuspend(dataIn.readBoolean());        info.setConnectedBrokers(looseUnmarshalString(dataIn));        info.setReconnectTo(looseUnmarshalString(dataIn));        info.setRebalanceConnection(dataIn.readBoolean());        info.setToken(looseUnmarshalByteArray(dataIn));    }    /**     * Write the booleans that this object uses to a BooleanStream     */    public void looseMarshal(OpenWireFormat wireFormat, Object o, DataOutput dataOut) throws IOException {        ConnectionControl info = (ConnectionControl)o;        super.looseMarshal(wireFormat, o, dataOut);        dataOut.writeBoolean(info.isClose());        dataOut.writeBoolean(info.isExit());        dataOut.writeBoolean(info.isFaultTolerant());        dataOut.writeBoolean(info.isResume());        dataOut.writeBoolean(info.isSuspend());        looseMarshalString(info.getConnectedBrokers(), dataOut);        looseMarshalString(info.getReconnectTo(), dataOut);        dataOut.writeBoolean(info.isRebalanceConnection());        looseMarshalByteArray(wireFormat, info.getToken(), dataOut);    }}
\ No newline at end of file
@@ -30,6 +30,8 @@ import org.apache.activemq.command.FlushCommand;
 import org.apache.activemq.command.KeepAliveInfo;
 import org.apache.activemq.command.Message;
 import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageAckBatch;
+import org.apache.activemq.command.MessageBatch;
 import org.apache.activemq.command.MessageDispatch;
 import org.apache.activemq.command.MessageDispatchNotification;
 import org.apache.activemq.command.MessagePull;
@@ -72,6 +74,10 @@ public interface CommandVisitor {
 
     Response processMessageAck(MessageAck ack) throws Exception;
 
+    Response processMessageBatch(MessageBatch batch) throws Exception;
+
+    Response processMessageAckBatch(MessageAckBatch batch) throws Exception;
+
     Response processMessagePull(MessagePull pull) throws Exception;
 
     Response processBeginTransaction(TransactionInfo info) throws Exception;
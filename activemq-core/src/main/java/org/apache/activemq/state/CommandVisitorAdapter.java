@@ -30,6 +30,8 @@ import org.apache.activemq.command.FlushCommand;
 import org.apache.activemq.command.KeepAliveInfo;
 import org.apache.activemq.command.Message;
 import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageAckBatch;
+import org.apache.activemq.command.MessageBatch;
 import org.apache.activemq.command.MessageDispatch;
 import org.apache.activemq.command.MessageDispatchNotification;
 import org.apache.activemq.command.MessagePull;
@@ -106,6 +108,14 @@ public class CommandVisitorAdapter implements CommandVisitor {
         return null;
     }
 
+    public Response processMessageBatch(MessageBatch batch) throws Exception {
+        return null;
+    }
+
+    public Response processMessageAckBatch(MessageAckBatch batch) throws Exception {
+        return null;
+    }
+
     public Response processMessageDispatchNotification(MessageDispatchNotification notification)
         throws Exception {
         return null;
@@ -37,6 +37,7 @@ import org.apache.activemq.command.DestinationInfo;
 import org.apache.activemq.command.ExceptionResponse;
 import org.apache.activemq.command.IntegerResponse;
 import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageBatch;
 import org.apache.activemq.command.MessagePull;
 import org.apache.activemq.command.ProducerId;
 import org.apache.activemq.command.ProducerInfo;
@@ -141,6 +142,11 @@ public class ConnectionStateTracker extends CommandVisitorAdapter {
                 if (message.getTransactionId()==null) {
                     currentCacheSize = currentCacheSize +  message.getSize();
                 }
+            } else if (trackMessages && command instanceof MessageBatch) {
+                MessageBatch batch = (MessageBatch) command;
+                if (batch.getTransactionId() == null) {
+                    currentCacheSize = currentCacheSize + batch.getSize();
+                }
             } else if (command instanceof MessagePull) {
                 // just needs to be a rough estimate of size, ~4 identifiers
                 currentCacheSize += MESSAGE_PULL_SIZE;
@@ -477,6 +483,22 @@ public class ConnectionStateTracker extends CommandVisitorAdapter {
         return null;
     }
 
+    /**
+     * Tracks the messages of a batch one by one, so that on a reconnect they
+     * are replayed as individual sends.
+     */
+    public Response processMessageBatch(MessageBatch batch) throws Exception {
+        Response response = null;
+        if (batch != null && batch.getMessages() != null) {
+            for (Message message : batch.getMessages()) {
+                if (processMessage(message) != null) {
+                    response = TRACKED_RESPONSE_MARKER;
+                }
+            }
+        }
+        return response;
+    }
+
     public Response processBeginTransaction(TransactionInfo info) {
         if (trackTransactions && info != null && info.getTransactionId() != null) {
             ConnectionId connectionId = info.getConnectionId();
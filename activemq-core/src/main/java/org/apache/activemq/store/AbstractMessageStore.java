@@ -73,6 +73,16 @@ abstract public class AbstractMessageStore implements MessageStore {
         return getMessageCount() == 0;
     }
 
+    @Override
+    public boolean recoverIndexedMessages(String propertyName, Object value, MessageId after, int maxReturned, MessageRecoveryListener listener) throws Exception {
+        return false;
+    }
+
+    @Override
+    public boolean recoverExpiredMessages(long time, int maxReturned, MessageRecoveryListener listener) throws Exception {
+        return false;
+    }
+
     @Override
     public void setPrioritizedMessages(boolean prioritizedMessages) {
         this.prioritizedMessages = prioritizedMessages;
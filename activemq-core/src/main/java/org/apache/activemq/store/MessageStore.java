@@ -167,6 +167,37 @@ public interface MessageStore extends Service {
 
     void recoverNextMessages(int maxReturned, MessageRecoveryListener listener) throws Exception;
 
+    /**
+     * Recovers, in the order they were added, the messages that may have the
+     * value for the property, using an index the store keeps of it. They still
+     * have to be matched against the value.
+     *
+     * @param propertyName
+     * @param value
+     * @param after the last message recovered by the previous call, null to
+     *                start with the first
+     * @param maxReturned
+     * @param listener
+     * @return false if the store keeps no index it can use for the value and
+     *         recovered nothing
+     * @throws Exception
+     */
+    boolean recoverIndexedMessages(String propertyName, Object value, MessageId after, int maxReturned, MessageRecoveryListener listener) throws Exception;
+
+    /**
+     * Recovers messages that expired by the given time, soonest expired
+     * first, using an index the store keeps of their expiration. Messages
+     * the listener reports as duplicates are passed over without being read,
+     * and do not count towards maxReturned.
+     *
+     * @param time
+     * @param maxReturned
+     * @param listener
+     * @return false if the store keeps no such index and recovered nothing
+     * @throws Exception
+     */
+    boolean recoverExpiredMessages(long time, int maxReturned, MessageRecoveryListener listener) throws Exception;
+
     void dispose(ConnectionContext context);
 
     /**
@@ -106,6 +106,16 @@ public class ProxyMessageStore implements MessageStore {
         delegate.recoverNextMessages(maxReturned, listener);
     }
 
+    @Override
+    public boolean recoverIndexedMessages(String propertyName, Object value, MessageId after, int maxReturned, MessageRecoveryListener listener) throws Exception {
+        return delegate.recoverIndexedMessages(propertyName, value, after, maxReturned, listener);
+    }
+
+    @Override
+    public boolean recoverExpiredMessages(long time, int maxReturned, MessageRecoveryListener listener) throws Exception {
+        return delegate.recoverExpiredMessages(time, maxReturned, listener);
+    }
+
     @Override
     public void resetBatching() {
         delegate.resetBatching();
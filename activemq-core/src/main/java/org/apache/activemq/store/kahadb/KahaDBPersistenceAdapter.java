@@ -476,6 +476,41 @@ public class KahaDBPersistenceAdapter implements PersistenceAdapter, BrokerServi
     public void setMaxAsyncJobs(int maxAsyncJobs) {
         letter.setMaxAsyncJobs(maxAsyncJobs);
     }
+
+    public int getTopicRecoveryCacheSize() {
+        return letter.getTopicRecoveryCacheSize();
+    }
+
+    /**
+     * Set the bytes of recently recovered messages each topic keeps so that
+     * durable subscribers catching up over the same messages load them from
+     * the journal once rather than once each. The bytes are kept by every
+     * topic with durable subscriptions and are not counted in the broker's
+     * memory usage, so size it with the number of topics in mind. Defaults
+     * to 0, no sharing.
+     * When set using Xbean, values of the form "20 Mb", "1024kb", and "1g" can be used
+     * @org.apache.xbean.Property propertyEditor="org.apache.activemq.util.MemoryIntPropertyEditor"
+     * @param topicRecoveryCacheSize
+     */
+    public void setTopicRecoveryCacheSize(int topicRecoveryCacheSize) {
+        letter.setTopicRecoveryCacheSize(topicRecoveryCacheSize);
+    }
+
+    public String getIndexedMessageProperties() {
+        return letter.getIndexedMessageProperties();
+    }
+
+    /**
+     * Set the comma separated names of message properties to index for each
+     * queue, such as JMSXGroupID. Removing, moving, copying and browsing the
+     * messages of a queue with a selector testing one of them for a string
+     * value then only reads the messages it may match. Changing the names
+     * rebuilds the indexes on the next start.
+     * @param indexedMessageProperties
+     */
+    public void setIndexedMessageProperties(String indexedMessageProperties) {
+        letter.setIndexedMessageProperties(indexedMessageProperties);
+    }
     
     /**
      * @return the databaseLockedWaitDelay
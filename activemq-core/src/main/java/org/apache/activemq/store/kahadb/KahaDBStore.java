@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +32,7 @@ import java.util.Map.Entry;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.jms.JMSException;
 import org.apache.activemq.broker.ConnectionContext;
 import org.apache.activemq.broker.region.Destination;
 import org.apache.activemq.broker.region.RegionBroker;
@@ -45,6 +47,7 @@ import org.apache.activemq.command.MessageId;
 import org.apache.activemq.command.ProducerId;
 import org.apache.activemq.command.SubscriptionInfo;
 import org.apache.activemq.command.TransactionId;
+import org.apache.activemq.filter.PropertyExpression;
 import org.apache.activemq.openwire.OpenWireFormat;
 import org.apache.activemq.protobuf.Buffer;
 import org.apache.activemq.store.AbstractMessageStore;
@@ -63,9 +66,11 @@ import org.apache.activemq.store.kahadb.data.KahaTransactionInfo;
 import org.apache.activemq.store.kahadb.data.KahaDestination.DestinationType;
 import org.apache.activemq.usage.MemoryUsage;
 import org.apache.activemq.usage.SystemUsage;
+import org.apache.activemq.util.IOExceptionSupport;
 import org.apache.activemq.util.ServiceStopper;
 import org.apache.activemq.wireformat.WireFormat;
 import org.apache.kahadb.util.ByteSequence;
+import org.apache.kahadb.util.SequenceSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.kahadb.journal.Location;
@@ -98,6 +103,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
     private boolean concurrentStoreAndDispatchTopics = false;
     private boolean concurrentStoreAndDispatchTransactions = false;
     private int maxAsyncJobs = MAX_ASYNC_JOBS;
+    private int topicRecoveryCacheSize;
     private final KahaDBTransactionStore transactionStore;
     private TransactionIdTransformer transactionIdTransformer;
 
@@ -175,6 +181,22 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
         this.maxAsyncJobs = maxAsyncJobs;
     }
 
+    public int getTopicRecoveryCacheSize() {
+        return this.topicRecoveryCacheSize;
+    }
+
+    /**
+     * @param topicRecoveryCacheSize
+     *            the bytes of recently recovered messages each topic keeps
+     *            for its other durable subscriptions, 0 (the default) to load
+     *            every message for every subscription. The bytes are held by
+     *            every topic with durable subscriptions and are not counted
+     *            in the broker's memory usage.
+     */
+    public void setTopicRecoveryCacheSize(int topicRecoveryCacheSize) {
+        this.topicRecoveryCacheSize = topicRecoveryCacheSize;
+    }
+
     @Override
     public void doStart() throws Exception {
         super.doStart();
@@ -299,6 +321,30 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
         }
     }
 
+    @Override
+    Object[] getPropertyValues(KahaAddMessageCommand command, String[] names) throws IOException {
+        Message message = (Message) wireFormat.unmarshal(new DataInputStream(command.getMessage().newInput()));
+        Object[] values = new Object[names.length];
+        try {
+            for (int i = 0; i < names.length; i++) {
+                values[i] = new PropertyExpression(names[i]).evaluate(message);
+            }
+        } catch (JMSException e) {
+            throw IOExceptionSupport.create(e);
+        }
+        return values;
+    }
+
+    @Override
+    long getExpiration(KahaAddMessageCommand command) throws IOException {
+        if (command.hasExpiration()) {
+            return command.getExpiration();
+        }
+        // written before the expiration was kept alongside
+        Message message = (Message) wireFormat.unmarshal(new DataInputStream(command.getMessage().newInput()));
+        return message.getExpiration();
+    }
+
     private Location findMessageLocation(final String key, final KahaDestination destination) throws IOException {
         return pageFile.tx().execute(new Transaction.CallableClosure<Location, IOException>() {
             public Location execute(Transaction tx) throws IOException {
@@ -426,6 +472,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
             command.setTransactionInfo(transactionIdTransformer.transform(message.getTransactionId()));
             command.setPriority(message.getPriority());
             command.setPrioritySupported(isPrioritizedMessages());
+            command.setExpiration(message.getExpiration());
             org.apache.activemq.util.ByteSequence packet = wireFormat.marshal(message);
             command.setMessage(new Buffer(packet.getData(), packet.getOffset(), packet.getLength()));
             store(command, isEnableJournalDiskSyncs() && message.isResponseRequired(), null, null);
@@ -444,9 +491,15 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
         }
 
         public void removeAllMessages(ConnectionContext context) throws IOException {
-            KahaRemoveDestinationCommand command = new KahaRemoveDestinationCommand();
-            command.setDestination(dest);
-            store(command, true, null, null);
+            try {
+                // let the adds still in flight land first so they are removed too
+                lockAsyncJobQueue();
+                KahaRemoveDestinationCommand command = new KahaRemoveDestinationCommand();
+                command.setDestination(dest);
+                store(command, true, null, null);
+            } finally {
+                unlockAsyncJobQueue();
+            }
         }
 
         public Message getMessage(MessageId identity) throws IOException {
@@ -568,6 +621,82 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
             }
         }
 
+        @Override
+        public boolean recoverExpiredMessages(final long time, final int maxReturned, final MessageRecoveryListener listener) throws Exception {
+            indexLock.writeLock().lock();
+            try {
+                return pageFile.tx().execute(new Transaction.CallableClosure<Boolean, Exception>() {
+                    public Boolean execute(Transaction tx) throws Exception {
+                        StoredDestination sd = getStoredDestination(dest, tx);
+                        if (sd.expirationIndex == null) {
+                            return false;
+                        }
+                        // only the messages recovered count, the ones passed
+                        // over stay in the index and must not stop the sweep
+                        int counter = 0;
+                        for (Iterator<Entry<Long, SequenceSet>> iterator = sd.expirationIndex.iterator(tx);
+                             counter < maxReturned && iterator.hasNext(); ) {
+                            Entry<Long, SequenceSet> entry = iterator.next();
+                            if (entry.getKey() > time) {
+                                break;
+                            }
+                            for (Iterator<Long> sequences = entry.getValue().iterator(); counter < maxReturned && sequences.hasNext(); ) {
+                                MessageKeys keys = sd.orderIndex.get(tx, sequences.next());
+                                if (keys == null || ackedAndPrepared.contains(keys.messageId)
+                                        || listener.isDuplicate(new MessageId(keys.messageId))) {
+                                    continue;
+                                }
+                                listener.recoverMessage(loadMessage(keys.location));
+                                counter++;
+                            }
+                        }
+                        return true;
+                    }
+                });
+            }finally {
+                indexLock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public boolean recoverIndexedMessages(final String propertyName, final Object value, final MessageId after,
+                final int maxReturned, final MessageRecoveryListener listener) throws Exception {
+            indexLock.writeLock().lock();
+            try {
+                return pageFile.tx().execute(new Transaction.CallableClosure<Boolean, Exception>() {
+                    public Boolean execute(Transaction tx) throws Exception {
+                        StoredDestination sd = getStoredDestination(dest, tx);
+                        long position = after != null && after.getEntryLocator() instanceof Long ? (Long) after.getEntryLocator() : -1;
+                        int counter = 0;
+                        while (counter < maxReturned && listener.hasSpace()) {
+                            List<Long> sequences = getIndexedSequences(tx, sd, propertyName, value, position, maxReturned - counter);
+                            if (sequences == null) {
+                                return false;
+                            }
+                            if (sequences.isEmpty()) {
+                                break;
+                            }
+                            for (Long sequence : sequences) {
+                                position = sequence;
+                                MessageKeys keys = sd.orderIndex.get(tx, sequence);
+                                if (keys == null || ackedAndPrepared.contains(keys.messageId)) {
+                                    continue;
+                                }
+                                Message msg = loadMessage(keys.location);
+                                // where to carry on from
+                                msg.getMessageId().setEntryLocator(sequence);
+                                listener.recoverMessage(msg);
+                                counter++;
+                            }
+                        }
+                        return true;
+                    }
+                });
+            }finally {
+                indexLock.writeLock().unlock();
+            }
+        }
+
         public void resetBatching() {
             if (pageFile.isLoaded()) {
                 indexLock.writeLock().lock();
@@ -656,6 +785,11 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
 
     class KahaDBTopicMessageStore extends KahaDBMessageStore implements TopicMessageStore {
         private final AtomicInteger subscriptionCount = new AtomicInteger();
+        // messages recently recovered for one subscription by order index
+        // sequence, so that the others catching up over the same range share
+        // them rather than each reading the journal; guarded by the index lock
+        private final LinkedHashMap<Long, RecoveredMessage> recovered = new LinkedHashMap<Long, RecoveredMessage>();
+        private long recoveredSize;
         public KahaDBTopicMessageStore(ActiveMQTopic destination) throws IOException {
             super(destination);
             this.subscriptionCount.set(getAllSubscriptions().length);
@@ -819,7 +953,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
                         for (Iterator<Entry<Long, MessageKeys>> iterator = sd.orderIndex.iterator(tx); iterator
                                 .hasNext();) {
                             Entry<Long, MessageKeys> entry = iterator.next();
-                            listener.recoverMessage(loadMessage(entry.getValue().location));
+                            listener.recoverMessage(loadRecoveredMessage(entry));
                         }
                         sd.orderIndex.resetCursorPosition();
                     }
@@ -858,7 +992,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
                         for (Iterator<Entry<Long, MessageKeys>> iterator = sd.orderIndex.iterator(tx, moc); iterator
                                 .hasNext();) {
                             entry = iterator.next();
-                            if (listener.recoverMessage(loadMessage(entry.getValue().location))) {
+                            if (listener.recoverMessage(loadRecoveredMessage(entry))) {
                                 counter++;
                             }
                             if (counter >= maxReturned || listener.hasSpace() == false) {
@@ -877,6 +1011,30 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
             }
         }
 
+        /**
+         * Loads the message of an order index entry, or takes it from the
+         * messages recovered for another subscription. The message is shared
+         * in the same way as when it is dispatched to all the subscriptions
+         * as it arrives.
+         */
+        private Message loadRecoveredMessage(Entry<Long, MessageKeys> entry) throws IOException {
+            int limit = getTopicRecoveryCacheSize();
+            if (limit <= 0 || subscriptionCount.get() < 2) {
+                return loadMessage(entry.getValue().location);
+            }
+            RecoveredMessage result = recovered.get(entry.getKey());
+            if (result == null) {
+                result = new RecoveredMessage(loadMessage(entry.getValue().location));
+                recovered.put(entry.getKey(), result);
+                recoveredSize += result.size;
+                for (Iterator<RecoveredMessage> i = recovered.values().iterator(); recoveredSize > limit && i.hasNext();) {
+                    recoveredSize -= i.next().size;
+                    i.remove();
+                }
+            }
+            return result.message;
+        }
+
         public void resetBatching(String clientId, String subscriptionName) {
             try {
                 final String subscriptionKey = subscriptionKey(clientId, subscriptionName);
@@ -897,6 +1055,16 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
         }
     }
 
+    private static final class RecoveredMessage {
+        final Message message;
+        final int size;
+
+        RecoveredMessage(Message message) {
+            this.message = message;
+            this.size = message.getSize();
+        }
+    }
+
     String subscriptionKey(String clientId, String subscriptionName) {
         return clientId + ":" + subscriptionName;
     }
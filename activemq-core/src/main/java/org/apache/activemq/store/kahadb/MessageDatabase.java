@@ -29,6 +29,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -113,12 +114,18 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     static final int OPEN_STATE = 2;
     static final long NOT_ACKED = -1;
 
-    static final int VERSION = 4;
+    static final int VERSION = 5;
+
+    private static final int MAX_INDEXED_PROPERTY_LENGTH = 256;
+    private static final char PROPERTY_ENTRY_SEPARATOR = '\u0000';
+    // the most index pages of removed destinations that are freed by a cleanup
+    private static final int DETACHED_INDEX_CLEANUP_PAGES = 1000;
 
     protected class Metadata {
         protected Page<Metadata> page;
         protected int state;
         protected BTreeIndex<String, StoredDestination> destinations;
+        protected BTreeIndex<Long, StoredDestination> detachedDestinations;
         protected Location lastUpdate;
         protected Location firstInProgressTransactionLocation;
         protected Location producerSequenceIdTrackerLocation = null;
@@ -150,6 +157,11 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             } catch (EOFException expectedOnUpgrade) {
                 version=1;
             }
+            try {
+                detachedDestinations = new BTreeIndex<Long, StoredDestination>(pageFile, is.readLong());
+            } catch (EOFException expectedOnUpgrade) {
+                detachedDestinations = null;
+            }
             LOG.info("KahaDB is version " + version);
         }
 
@@ -178,6 +190,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 os.writeBoolean(false);
             }
             os.writeInt(VERSION);
+            os.writeLong(detachedDestinations.getPageId());
         }
     }
 
@@ -231,6 +244,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     private boolean enableIndexDiskSyncs = true;
     private boolean enableIndexRecoveryFile = true;
     private boolean enableIndexPageCaching = true;
+    private String indexedMessageProperties = "";
 
     public MessageDatabase() {
     }
@@ -260,16 +274,25 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                         metadata.page = page;
                         metadata.state = CLOSED_STATE;
                         metadata.destinations = new BTreeIndex<String, StoredDestination>(pageFile, tx.allocate().getPageId());
+                        metadata.detachedDestinations = new BTreeIndex<Long, StoredDestination>(pageFile, tx.allocate().getPageId());
 
                         tx.store(metadata.page, metadataMarshaller, true);
                     } else {
                         Page<Metadata> page = tx.load(0, metadataMarshaller);
                         metadata = page.get();
                         metadata.page = page;
+                        if (metadata.detachedDestinations == null) {
+                            // upgrade
+                            metadata.detachedDestinations = new BTreeIndex<Long, StoredDestination>(pageFile, tx.allocate().getPageId());
+                            tx.store(metadata.page, metadataMarshaller, true);
+                        }
                     }
                     metadata.destinations.setKeyMarshaller(StringMarshaller.INSTANCE);
                     metadata.destinations.setValueMarshaller(new StoredDestinationMarshaller());
                     metadata.destinations.load(tx);
+                    metadata.detachedDestinations.setKeyMarshaller(LongMarshaller.INSTANCE);
+                    metadata.detachedDestinations.setValueMarshaller(new StoredDestinationMarshaller());
+                    metadata.detachedDestinations.load(tx);
                 }
             });
             // Load up all the destinations since we need to scan all the indexes to figure out which journal files can be deleted.
@@ -629,6 +652,8 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
             for (Long sequenceId : matches) {
                 MessageKeys keys = sd.orderIndex.remove(tx, sequenceId);
+                removeIndexedProperties(tx, sd, sequenceId);
+                removeExpiration(tx, sd, sequenceId);
                 sd.locationIndex.remove(tx, keys.location);
                 sd.messageIdIndex.remove(tx, keys.messageId);
                 metadata.producerSequenceIdTracker.rollback(keys.messageId);
@@ -730,6 +755,8 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                         // Update the index to remove the references to the missing data
                         for (Long sequenceId : matches) {
                             MessageKeys keys = sd.orderIndex.remove(tx, sequenceId);
+                            removeIndexedProperties(tx, sd, sequenceId);
+                            removeExpiration(tx, sd, sequenceId);
                             sd.locationIndex.remove(tx, keys.location);
                             sd.messageIdIndex.remove(tx, keys.messageId);
                             undoCounter++;
@@ -1200,6 +1227,12 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 if (sd.subscriptions != null && !sd.subscriptions.isEmpty(tx)) {
                     addAckLocationForNewMessage(tx, sd, id);
                 }
+                if (sd.propertyIndex != null) {
+                    indexProperties(tx, sd, id, command);
+                }
+                if (sd.expirationIndex != null) {
+                    addExpiration(tx, sd, id, getExpiration(command));
+                }
             } else {
                 // If the message ID as indexed, then the broker asked us to
                 // store a DUP
@@ -1233,6 +1266,8 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             Long sequenceId = sd.messageIdIndex.remove(tx, command.getMessageId());
             if (sequenceId != null) {
                 MessageKeys keys = sd.orderIndex.remove(tx, sequenceId);
+                removeIndexedProperties(tx, sd, sequenceId);
+                removeExpiration(tx, sd, sequenceId);
                 if (keys != null) {
                     sd.locationIndex.remove(tx, keys.location);
                     recordAckMessageReferenceLocation(ackLocation, keys.location);
@@ -1282,15 +1317,6 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
     void updateIndex(Transaction tx, KahaRemoveDestinationCommand command, Location location) throws IOException {
         StoredDestination sd = getStoredDestination(command.getDestination(), tx);
-        sd.orderIndex.remove(tx);
-
-        sd.locationIndex.clear(tx);
-        sd.locationIndex.unload(tx);
-        tx.free(sd.locationIndex.getPageId());
-
-        sd.messageIdIndex.clear(tx);
-        sd.messageIdIndex.unload(tx);
-        tx.free(sd.messageIdIndex.getPageId());
 
         if (sd.subscriptions != null) {
             sd.subscriptions.clear(tx);
@@ -1304,8 +1330,18 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             sd.ackPositions.clear(tx);
             sd.ackPositions.unload(tx);
             tx.free(sd.ackPositions.getHeadPageId());
+
+            sd.subscriptions = null;
+            sd.subscriptionAcks = null;
+            sd.ackPositions = null;
         }
 
+        // The indexes that grow with the messages are swapped out whole and
+        // freed by later cleanups, so that removing all the messages of a
+        // destination takes the same time however many it holds.
+        Entry<Long, StoredDestination> last = metadata.detachedDestinations.getLast(tx);
+        metadata.detachedDestinations.put(tx, last != null ? last.getKey() + 1 : 0L, sd);
+
         String key = key(command.getDestination());
         storedDestinations.remove(key);
         metadata.destinations.remove(tx, key);
@@ -1359,6 +1395,8 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
         if( cleanup ) {
 
+            freeDetachedDestinations(tx);
+
             final TreeSet<Integer> completeFileSet = new TreeSet<Integer>(journal.getFileMap().keySet());
             final TreeSet<Integer> gcCandidateSet = new TreeSet<Integer>(completeFileSet);
 
@@ -1484,6 +1522,70 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         LOG.debug("Checkpoint done.");
     }
 
+    /**
+     * Frees the indexes of removed destinations, at most a batch of pages at
+     * a time so that no cleanup has to walk all of a large destination.
+     */
+    private void freeDetachedDestinations(Transaction tx) throws IOException {
+        if (metadata.version < VERSION) {
+            // they are written in the current format, which is only read back
+            // once the upgraded store has been reopened
+            return;
+        }
+        int remaining = DETACHED_INDEX_CLEANUP_PAGES;
+        while (remaining > 0) {
+            Entry<Long, StoredDestination> entry = metadata.detachedDestinations.getFirst(tx);
+            if (entry == null) {
+                break;
+            }
+            List<BTreeIndex<?, ?>> indexes = loadMessageIndexes(tx, entry.getValue());
+            for (BTreeIndex<?, ?> index : indexes) {
+                remaining -= index.clear(tx, remaining);
+            }
+            if (remaining > 0) {
+                // they are down to their root pages now
+                for (BTreeIndex<?, ?> index : indexes) {
+                    index.unload(tx);
+                    tx.free(index.getPageId());
+                }
+                metadata.detachedDestinations.remove(tx, entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * @return the loaded indexes of the destination that grow with its messages
+     */
+    private List<BTreeIndex<?, ?>> loadMessageIndexes(Transaction tx, StoredDestination sd) throws IOException {
+        List<BTreeIndex<?, ?>> result = new ArrayList<BTreeIndex<?, ?>>();
+        sd.orderIndex.load(tx);
+        result.add(sd.orderIndex.defaultPriorityIndex);
+        result.add(sd.orderIndex.lowPriorityIndex);
+        result.add(sd.orderIndex.highPriorityIndex);
+
+        sd.locationIndex.setKeyMarshaller(org.apache.kahadb.util.LocationMarshaller.INSTANCE);
+        sd.locationIndex.setValueMarshaller(LongMarshaller.INSTANCE);
+        sd.locationIndex.load(tx);
+        result.add(sd.locationIndex);
+
+        sd.messageIdIndex.setKeyMarshaller(StringMarshaller.INSTANCE);
+        sd.messageIdIndex.setValueMarshaller(LongMarshaller.INSTANCE);
+        sd.messageIdIndex.load(tx);
+        result.add(sd.messageIdIndex);
+
+        if (sd.propertyIndex != null) {
+            loadPropertyIndex(tx, sd);
+            result.add(sd.propertyIndex);
+            result.add(sd.propertyEntries);
+        }
+        if (sd.expirationIndex != null) {
+            loadExpirationIndex(tx, sd);
+            result.add(sd.expirationIndex);
+            result.add(sd.messageExpirations);
+        }
+        return result;
+    }
+
     final Runnable nullCompletionCallback = new Runnable() {
         @Override
         public void run() {
@@ -1619,6 +1721,15 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         HashMap<String, MessageOrderCursor> subscriptionCursors;
         ListIndex<String, SequenceSet> ackPositions;
 
+        // These bits are only set for Queues with indexed message properties
+        BTreeIndex<String, Long> propertyIndex;
+        BTreeIndex<Long, String> propertyEntries;
+        String indexedProperties;
+
+        // These bits are only set for Queues
+        BTreeIndex<Long, SequenceSet> expirationIndex;
+        BTreeIndex<Long, Long> messageExpirations;
+
         // Transient data used to track which Messages are no longer needed.
         final TreeMap<Long, Long> messageReferences = new TreeMap<Long, Long>();
         final HashSet<String> subscriptionCache = new LinkedHashSet<String>();
@@ -1696,6 +1807,15 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                         }
                     });
             }
+            if (metadata.version >= 5 && dataIn.readBoolean()) {
+                value.propertyIndex = new BTreeIndex<String, Long>(pageFile, dataIn.readLong());
+                value.propertyEntries = new BTreeIndex<Long, String>(pageFile, dataIn.readLong());
+                value.indexedProperties = dataIn.readUTF();
+            }
+            if (metadata.version >= 5 && dataIn.readBoolean()) {
+                value.expirationIndex = new BTreeIndex<Long, SequenceSet>(pageFile, dataIn.readLong());
+                value.messageExpirations = new BTreeIndex<Long, Long>(pageFile, dataIn.readLong());
+            }
 
             return value;
         }
@@ -1714,6 +1834,21 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             }
             dataOut.writeLong(value.orderIndex.lowPriorityIndex.getPageId());
             dataOut.writeLong(value.orderIndex.highPriorityIndex.getPageId());
+            if (value.propertyIndex != null) {
+                dataOut.writeBoolean(true);
+                dataOut.writeLong(value.propertyIndex.getPageId());
+                dataOut.writeLong(value.propertyEntries.getPageId());
+                dataOut.writeUTF(value.indexedProperties);
+            } else {
+                dataOut.writeBoolean(false);
+            }
+            if (value.expirationIndex != null) {
+                dataOut.writeBoolean(true);
+                dataOut.writeLong(value.expirationIndex.getPageId());
+                dataOut.writeLong(value.messageExpirations.getPageId());
+            } else {
+                dataOut.writeBoolean(false);
+            }
         }
     }
 
@@ -1775,6 +1910,9 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 rc.subscriptions = new BTreeIndex<String, KahaSubscriptionCommand>(pageFile, tx.allocate());
                 rc.subscriptionAcks = new BTreeIndex<String, LastAck>(pageFile, tx.allocate());
                 rc.ackPositions = new ListIndex<String, SequenceSet>(pageFile, tx.allocate());
+            } else {
+                rc.expirationIndex = new BTreeIndex<Long, SequenceSet>(pageFile, tx.allocate());
+                rc.messageExpirations = new BTreeIndex<Long, Long>(pageFile, tx.allocate());
             }
             metadata.destinations.put(tx, key, rc);
         }
@@ -1874,13 +2012,240 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             }
         }
 
-        if (metadata.version < VERSION) {
+        boolean reconfigured = false;
+        if (!topic) {
+            reconfigured = configurePropertyIndex(tx, key, rc);
+            if (rc.expirationIndex == null) {
+                // upgrade
+                rc.expirationIndex = new BTreeIndex<Long, SequenceSet>(pageFile, tx.allocate());
+                rc.messageExpirations = new BTreeIndex<Long, Long>(pageFile, tx.allocate());
+                loadExpirationIndex(tx, rc);
+                for (Iterator<Entry<Long, MessageKeys>> iterator = rc.orderIndex.iterator(tx, new MessageOrderCursor()); iterator.hasNext(); ) {
+                    Entry<Long, MessageKeys> entry = iterator.next();
+                    try {
+                        addExpiration(tx, rc, entry.getKey(), getExpiration((KahaAddMessageCommand) load(entry.getValue().location)));
+                    } catch (IOException e) {
+                        // recovery drops the messages the journal no longer has
+                        LOG.warn("Could not index the expiration of message " + entry.getValue().messageId + " of " + key + ": " + e);
+                    }
+                }
+                reconfigured = true;
+            } else {
+                loadExpirationIndex(tx, rc);
+            }
+        }
+
+        if (metadata.version < VERSION || reconfigured) {
             // store again after upgrade
             metadata.destinations.put(tx, key, rc);
         }
         return rc;
     }
 
+    /**
+     * Loads the index of the message properties of a queue, building it again
+     * when other properties are to be indexed than the ones it was built for.
+     *
+     * @return true if the index was built or dropped
+     */
+    private boolean configurePropertyIndex(Transaction tx, String key, StoredDestination sd) throws IOException {
+        String names = getIndexedMessageProperties();
+        if (sd.propertyIndex != null) {
+            loadPropertyIndex(tx, sd);
+            if (names.equals(sd.indexedProperties)) {
+                return false;
+            }
+            removePropertyIndex(tx, sd);
+            if (names.length() == 0) {
+                return true;
+            }
+        } else if (names.length() == 0) {
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        sd.propertyIndex = new BTreeIndex<String, Long>(pageFile, tx.allocate());
+        sd.propertyEntries = new BTreeIndex<Long, String>(pageFile, tx.allocate());
+        sd.indexedProperties = names;
+        loadPropertyIndex(tx, sd);
+        int count = 0;
+        for (Iterator<Entry<Long, MessageKeys>> iterator = sd.orderIndex.iterator(tx, new MessageOrderCursor()); iterator.hasNext(); ) {
+            Entry<Long, MessageKeys> entry = iterator.next();
+            try {
+                indexProperties(tx, sd, entry.getKey(), (KahaAddMessageCommand) load(entry.getValue().location));
+                count++;
+            } catch (IOException e) {
+                // recovery drops the messages the journal no longer has
+                LOG.warn("Could not index the properties of message " + entry.getValue().messageId + " of " + key + ": " + e);
+            }
+        }
+        LOG.info("Indexed properties " + names + " of " + count + " messages of " + key + " in " + (System.currentTimeMillis() - start) + " ms");
+        return true;
+    }
+
+    private void loadExpirationIndex(Transaction tx, StoredDestination sd) throws IOException {
+        sd.expirationIndex.setKeyMarshaller(LongMarshaller.INSTANCE);
+        sd.expirationIndex.setValueMarshaller(SequenceSet.Marshaller.INSTANCE);
+        sd.expirationIndex.load(tx);
+        sd.messageExpirations.setKeyMarshaller(LongMarshaller.INSTANCE);
+        sd.messageExpirations.setValueMarshaller(LongMarshaller.INSTANCE);
+        sd.messageExpirations.load(tx);
+    }
+
+    private void addExpiration(Transaction tx, StoredDestination sd, Long sequence, long expiration) throws IOException {
+        if (expiration > 0) {
+            SequenceSet sequences = sd.expirationIndex.get(tx, expiration);
+            if (sequences == null) {
+                sequences = new SequenceSet();
+            }
+            sequences.add(sequence);
+            sd.expirationIndex.put(tx, expiration, sequences);
+            sd.messageExpirations.put(tx, sequence, expiration);
+        }
+    }
+
+    private void removeExpiration(Transaction tx, StoredDestination sd, Long sequence) throws IOException {
+        if (sd.messageExpirations != null) {
+            Long expiration = sd.messageExpirations.remove(tx, sequence);
+            if (expiration != null) {
+                SequenceSet sequences = sd.expirationIndex.get(tx, expiration);
+                if (sequences != null) {
+                    sequences.remove(sequence);
+                    if (sequences.isEmpty()) {
+                        sd.expirationIndex.remove(tx, expiration);
+                    } else {
+                        sd.expirationIndex.put(tx, expiration, sequences);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the time the message expires, 0 if it does not
+     */
+    abstract long getExpiration(KahaAddMessageCommand command) throws IOException;
+
+    private void loadPropertyIndex(Transaction tx, StoredDestination sd) throws IOException {
+        sd.propertyIndex.setKeyMarshaller(StringMarshaller.INSTANCE);
+        sd.propertyIndex.setValueMarshaller(LongMarshaller.INSTANCE);
+        sd.propertyIndex.load(tx);
+        sd.propertyEntries.setKeyMarshaller(LongMarshaller.INSTANCE);
+        sd.propertyEntries.setValueMarshaller(StringMarshaller.INSTANCE);
+        sd.propertyEntries.load(tx);
+    }
+
+    private void removePropertyIndex(Transaction tx, StoredDestination sd) throws IOException {
+        sd.propertyIndex.clear(tx);
+        sd.propertyIndex.unload(tx);
+        tx.free(sd.propertyIndex.getPageId());
+        sd.propertyEntries.clear(tx);
+        sd.propertyEntries.unload(tx);
+        tx.free(sd.propertyEntries.getPageId());
+        sd.propertyIndex = null;
+        sd.propertyEntries = null;
+        sd.indexedProperties = null;
+    }
+
+    /**
+     * The property index of a queue keys each message by an entry for the
+     * value of each indexed property it has, followed by its sequence id.
+     * Property values that are not short strings share an entry per property
+     * and have to be matched once read.
+     */
+    private static String propertyEntry(String name, Object value) {
+        if (value instanceof String) {
+            String text = (String) value;
+            if (text.length() <= MAX_INDEXED_PROPERTY_LENGTH && text.indexOf(PROPERTY_ENTRY_SEPARATOR) < 0) {
+                return name + "=" + text;
+            }
+        }
+        return name + "#";
+    }
+
+    private static String propertyKey(String entry, long sequence) {
+        String position = Long.toHexString(sequence);
+        StringBuilder rc = new StringBuilder(entry.length() + 17);
+        rc.append(entry).append(PROPERTY_ENTRY_SEPARATOR);
+        for (int i = position.length(); i < 16; i++) {
+            rc.append('0');
+        }
+        return rc.append(position).toString();
+    }
+
+    private void indexProperties(Transaction tx, StoredDestination sd, Long sequence, KahaAddMessageCommand command) throws IOException {
+        String[] names = sd.indexedProperties.split(",");
+        Object[] values = getPropertyValues(command, names);
+        StringBuilder entries = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            if (values[i] != null) {
+                String entry = propertyEntry(names[i], values[i]);
+                sd.propertyIndex.put(tx, propertyKey(entry, sequence), sequence);
+                if (entries.length() > 0) {
+                    entries.append(PROPERTY_ENTRY_SEPARATOR);
+                }
+                entries.append(entry);
+            }
+        }
+        if (entries.length() > 0) {
+            sd.propertyEntries.put(tx, sequence, entries.toString());
+        }
+    }
+
+    private void removeIndexedProperties(Transaction tx, StoredDestination sd, Long sequence) throws IOException {
+        if (sd.propertyEntries != null) {
+            String entries = sd.propertyEntries.remove(tx, sequence);
+            if (entries != null) {
+                for (String entry : entries.split(String.valueOf(PROPERTY_ENTRY_SEPARATOR))) {
+                    sd.propertyIndex.remove(tx, propertyKey(entry, sequence));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the sequence ids, in order and past the given one, of the
+     *         messages of a queue that may have the value for the property,
+     *         null if the property is not indexed
+     */
+    List<Long> getIndexedSequences(Transaction tx, StoredDestination sd, String name, Object value, long after, int max) throws IOException {
+        if (sd.propertyIndex == null || !(value instanceof String)
+                || !Arrays.asList(sd.indexedProperties.split(",")).contains(name)) {
+            return null;
+        }
+        TreeSet<Long> rc = new TreeSet<Long>();
+        String entry = propertyEntry(name, value);
+        findIndexedSequences(tx, sd, entry, after, max, rc);
+        String others = propertyEntry(name, null);
+        if (!others.equals(entry)) {
+            findIndexedSequences(tx, sd, others, after, max, rc);
+        }
+        while (rc.size() > max) {
+            rc.pollLast();
+        }
+        return new ArrayList<Long>(rc);
+    }
+
+    private void findIndexedSequences(Transaction tx, StoredDestination sd, String entry, long after, int max, Set<Long> sequences) throws IOException {
+        String prefix = entry + PROPERTY_ENTRY_SEPARATOR;
+        int found = 0;
+        for (Iterator<Entry<String, Long>> iterator = sd.propertyIndex.iterator(tx, propertyKey(entry, after + 1)); found < max && iterator.hasNext(); ) {
+            Entry<String, Long> next = iterator.next();
+            // the separator sorts the entries of longer values after these
+            if (!next.getKey().startsWith(prefix)) {
+                break;
+            }
+            sequences.add(next.getValue());
+            found++;
+        }
+    }
+
+    /**
+     * @return the values the message has for the properties, null for the
+     *         ones it does not have
+     */
+    abstract Object[] getPropertyValues(KahaAddMessageCommand command, String[] names) throws IOException;
+
     private void addAckLocation(Transaction tx, StoredDestination sd, Long messageSequence, String subscriptionKey) throws IOException {
         SequenceSet sequences = sd.ackPositions.get(tx, subscriptionKey);
         if (sequences == null) {
@@ -2421,6 +2786,35 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         return enableIndexPageCaching;
     }
 
+    public String getIndexedMessageProperties() {
+        return indexedMessageProperties;
+    }
+
+    /**
+     * @param indexedMessageProperties
+     *            comma separated names of message properties to keep an index
+     *            of for each queue, so that selectors looking for string
+     *            values of them do not have to read every message
+     */
+    public void setIndexedMessageProperties(String indexedMessageProperties) {
+        TreeSet<String> names = new TreeSet<String>();
+        if (indexedMessageProperties != null) {
+            for (String name : indexedMessageProperties.split(",")) {
+                if (name.trim().length() > 0) {
+                    names.add(name.trim());
+                }
+            }
+        }
+        StringBuilder rc = new StringBuilder();
+        for (String name : names) {
+            if (rc.length() > 0) {
+                rc.append(',');
+            }
+            rc.append(name);
+        }
+        this.indexedMessageProperties = rc.toString();
+    }
+
     // /////////////////////////////////////////////////////////////////
     // Internal conversion methods.
     // /////////////////////////////////////////////////////////////////
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.spool;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+import org.apache.activemq.util.ByteSequence;
+
+/**
+ * A list of entries kept in the memory mapped segments of a
+ * {@link SpoolStore}. Adding at either end and taking from the front are
+ * O(1); removing by id looks through the entries from the front, which is
+ * where they are mostly removed from.
+ *
+ * Nothing is synced to disk and there is no index, a spool does not survive
+ * a restart.
+ */
+public class Spool {
+
+    private final SpoolStore store;
+    private final String name;
+    private final LinkedList<SpoolSegment> segments = new LinkedList<SpoolSegment>();
+    private long size;
+
+    Spool(SpoolStore store, String name) {
+        this.store = store;
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized void addLast(String id, ByteSequence bs) throws IOException {
+        byte[] key = toKey(id);
+        SpoolSegment tail = segments.isEmpty() ? null : segments.getLast();
+        if (tail == null || !tail.append(key, bs)) {
+            tail = store.allocate(SpoolSegment.recordSize(key, bs), false);
+            tail.append(key, bs);
+            segments.addLast(tail);
+        }
+        size++;
+    }
+
+    public synchronized void addFirst(String id, ByteSequence bs) throws IOException {
+        byte[] key = toKey(id);
+        SpoolSegment head = segments.isEmpty() ? null : segments.getFirst();
+        if (head == null || !head.prepend(key, bs)) {
+            head = store.allocate(SpoolSegment.recordSize(key, bs), true);
+            head.prepend(key, bs);
+            segments.addFirst(head);
+        }
+        size++;
+    }
+
+    /**
+     * @return the data of the first entry, which is removed, or null if the
+     *         spool is empty
+     */
+    public synchronized ByteSequence removeFirst() {
+        while (!segments.isEmpty()) {
+            SpoolSegment segment = segments.getFirst();
+            int offset = segment.firstLive();
+            if (offset != -1) {
+                ByteSequence answer = segment.read(offset);
+                remove(segment, offset);
+                return answer;
+            }
+            recycle(segment);
+        }
+        return null;
+    }
+
+    public synchronized boolean remove(String id) {
+        byte[] key = toKey(id);
+        for (SpoolSegment segment : segments) {
+            for (int offset = segment.firstLive(); offset != -1; offset = segment.nextLive(segment.next(offset))) {
+                if (segment.keyEquals(offset, key)) {
+                    remove(segment, offset);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all the entries and gives the segments back to the store.
+     */
+    public synchronized void destroy() {
+        for (SpoolSegment segment : segments) {
+            store.release(segment);
+        }
+        segments.clear();
+        size = 0;
+    }
+
+    /**
+     * @return an iterator over the entries, from the front. Entries added
+     *         once the iterator is created may not be seen.
+     */
+    public synchronized SpoolIterator iterator() {
+        return new SpoolIterator(segments.toArray(new SpoolSegment[segments.size()]));
+    }
+
+    private void remove(SpoolSegment segment, int offset) {
+        segment.remove(offset);
+        size--;
+        if (segment.isEmpty()) {
+            recycle(segment);
+        }
+    }
+
+    private void recycle(SpoolSegment segment) {
+        segments.remove(segment);
+        store.release(segment);
+    }
+
+    private static byte[] toKey(String id) {
+        try {
+            return id.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "[" + size + "]";
+    }
+
+    public final class SpoolIterator implements Iterator<ByteSequence> {
+        private final SpoolSegment[] snapshot;
+        private final int[] generations;
+        private int index;
+        private int offset = -1;
+        private SpoolSegment current;
+        private int currentOffset;
+        private int currentGeneration;
+
+        SpoolIterator(SpoolSegment[] snapshot) {
+            this.snapshot = snapshot;
+            this.generations = new int[snapshot.length];
+            for (int i = 0; i < snapshot.length; i++) {
+                generations[i] = snapshot[i].getGeneration();
+            }
+            if (snapshot.length > 0) {
+                offset = snapshot[0].firstLive();
+            }
+        }
+
+        public boolean hasNext() {
+            synchronized (Spool.this) {
+                while (index < snapshot.length) {
+                    SpoolSegment segment = snapshot[index];
+                    // a recycled segment holds none of our entries any more
+                    if (segment.getGeneration() == generations[index]) {
+                        if (offset != -1 && segment.isRemoved(offset)) {
+                            offset = segment.nextLive(offset);
+                        }
+                        if (offset != -1) {
+                            return true;
+                        }
+                    }
+                    index++;
+                    if (index < snapshot.length) {
+                        offset = snapshot[index].firstLive();
+                    }
+                }
+                return false;
+            }
+        }
+
+        public ByteSequence next() {
+            synchronized (Spool.this) {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                current = snapshot[index];
+                currentOffset = offset;
+                currentGeneration = generations[index];
+                offset = current.nextLive(current.next(offset));
+                return current.read(currentOffset);
+            }
+        }
+
+        public void remove() {
+            synchronized (Spool.this) {
+                if (current == null) {
+                    throw new IllegalStateException();
+                }
+                if (current.getGeneration() == currentGeneration && !current.isRemoved(currentOffset)) {
+                    Spool.this.remove(current, currentOffset);
+                }
+                current = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.spool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.activemq.util.ByteSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A memory mapped file holding a run of {@link Spool} entries. Each record is
+ *
+ * <pre>
+ * int length, byte removed, short key length, key, data
+ * </pre>
+ *
+ * where length counts everything after itself. The records sit back to back
+ * between a start and an end offset: appending writes at the end and
+ * prepending writes just before the start, so a segment taken for
+ * {@link Spool#addFirst} is filled from the back. Removing a record only sets
+ * its removed flag, the space comes back when the whole segment is recycled.
+ *
+ * Not thread safe, the spool serializes access.
+ */
+final class SpoolSegment {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpoolSegment.class);
+    static final int HEADER_SIZE = 4 + 1 + 2;
+    private static final int REMOVED_OFFSET = 4;
+    private static final int KEY_LENGTH_OFFSET = 5;
+
+    private final File file;
+    private final int capacity;
+    private MappedByteBuffer buffer;
+    private int start;
+    private int end;
+    private int live;
+    // changes on every reset so iterators can tell the segment was reused
+    private int generation;
+
+    SpoolSegment(File file, int capacity) throws IOException {
+        this.file = file;
+        this.capacity = capacity;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(capacity);
+            // the mapping stays valid once the channel is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } finally {
+            raf.close();
+        }
+    }
+
+    static int recordSize(byte[] key, ByteSequence data) {
+        return HEADER_SIZE + key.length + data.getLength();
+    }
+
+    /**
+     * @return false if the record does not fit after the last record
+     */
+    boolean append(byte[] key, ByteSequence data) {
+        int size = recordSize(key, data);
+        if (size > capacity - end) {
+            return false;
+        }
+        write(end, size, key, data);
+        end += size;
+        live++;
+        return true;
+    }
+
+    /**
+     * @return false if the record does not fit before the first record
+     */
+    boolean prepend(byte[] key, ByteSequence data) {
+        int size = recordSize(key, data);
+        if (size > start) {
+            return false;
+        }
+        start -= size;
+        write(start, size, key, data);
+        live++;
+        return true;
+    }
+
+    private void write(int offset, int size, byte[] key, ByteSequence data) {
+        buffer.position(offset);
+        buffer.putInt(size - 4);
+        buffer.put((byte)0);
+        buffer.putShort((short)key.length);
+        buffer.put(key);
+        buffer.put(data.getData(), data.getOffset(), data.getLength());
+    }
+
+    /**
+     * @return the offset of the first record at or after offset that was not
+     *         removed, or -1 if there is none
+     */
+    int nextLive(int offset) {
+        if (offset < start) {
+            offset = start;
+        }
+        while (offset < end) {
+            if (buffer.get(offset + REMOVED_OFFSET) == 0) {
+                return offset;
+            }
+            offset = next(offset);
+        }
+        return -1;
+    }
+
+    int firstLive() {
+        return nextLive(start);
+    }
+
+    /**
+     * @return the offset of the record following the one at offset
+     */
+    int next(int offset) {
+        return offset + 4 + buffer.getInt(offset);
+    }
+
+    /**
+     * @return the data of the record at offset, copied out of the mapping
+     */
+    ByteSequence read(int offset) {
+        int keyLength = buffer.getShort(offset + KEY_LENGTH_OFFSET);
+        int dataOffset = offset + HEADER_SIZE + keyLength;
+        byte[] data = new byte[next(offset) - dataOffset];
+        buffer.position(dataOffset);
+        buffer.get(data);
+        return new ByteSequence(data);
+    }
+
+    boolean keyEquals(int offset, byte[] key) {
+        if (buffer.getShort(offset + KEY_LENGTH_OFFSET) != key.length) {
+            return false;
+        }
+        int keyOffset = offset + HEADER_SIZE;
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(keyOffset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isRemoved(int offset) {
+        return buffer.get(offset + REMOVED_OFFSET) != 0;
+    }
+
+    void remove(int offset) {
+        if (buffer.get(offset + REMOVED_OFFSET) == 0) {
+            buffer.put(offset + REMOVED_OFFSET, (byte)1);
+            live--;
+            if (offset == start) {
+                // skip the removed head so that reads start at a live record
+                while (start < end && buffer.get(start + REMOVED_OFFSET) != 0) {
+                    start = next(start);
+                }
+            }
+        }
+    }
+
+    /**
+     * Empties the segment for reuse.
+     *
+     * @param fromBack true if it is going to be filled by prepending
+     */
+    void reset(boolean fromBack) {
+        start = fromBack ? capacity : 0;
+        end = start;
+        live = 0;
+        generation++;
+    }
+
+    /**
+     * Unmaps and deletes the segment, the spool that held it must not read
+     * it any more.
+     */
+    void delete() {
+        MappedByteBuffer mapped = buffer;
+        buffer = null;
+        generation++;
+        if (mapped != null) {
+            unmap(mapped);
+        }
+        file.delete();
+    }
+
+    /**
+     * Releases the mapping now rather than once the buffer is collected, so
+     * the address space and the disk space of the deleted file come back.
+     * Where the JVM does not allow it the mapping is left to the collector.
+     */
+    private static void unmap(MappedByteBuffer mapped) {
+        try {
+            // java 9 and later
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), mapped);
+            return;
+        } catch (NoSuchMethodException e) {
+            // an older JVM, the buffer has a cleaner of its own
+        } catch (Throwable e) {
+            LOG.debug("Could not unmap spool segment, it is released once collected", e);
+            return;
+        }
+        try {
+            Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(mapped);
+            if (cleaner != null) {
+                Method clean = cleaner.getClass().getMethod("clean");
+                clean.setAccessible(true);
+                clean.invoke(cleaner);
+            }
+        } catch (Throwable e) {
+            LOG.debug("Could not unmap spool segment, it is released once collected", e);
+        }
+    }
+
+    int getLive() {
+        return live;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    boolean isEmpty() {
+        return live == 0;
+    }
+
+    File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.spool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.activemq.usage.TempUsage;
+import org.apache.activemq.util.IOHelper;
+import org.apache.activemq.util.ServiceStopper;
+import org.apache.activemq.util.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Temporary storage for data that does not need to survive a restart, such
+ * as messages spooled to disk by pending message cursors.
+ *
+ * Unlike the {@link org.apache.activemq.store.kahadb.plist.PListStore} there
+ * is no journal, index or sync: each {@link Spool} is a list of memory mapped
+ * segment files. Emptied segments go back to a pool shared by all the spools
+ * and are written again from the start, so files are only created when the
+ * spooled data grows and no cleanup task is needed. The directory is emptied
+ * on start.
+ *
+ * @org.apache.xbean.XBean
+ */
+public class SpoolStore extends ServiceSupport {
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final Logger LOG = LoggerFactory.getLogger(SpoolStore.class);
+
+    private File directory;
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private int maxFreeSegments = 16;
+    private TempUsage tempUsage;
+    private final Map<String, Spool> spools = new HashMap<String, Spool>();
+    private final LinkedList<SpoolSegment> freeSegments = new LinkedList<SpoolSegment>();
+    private long segmentCount;
+    private long size;
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Sets the size of the segment files, an entry that does not fit gets a
+     * segment of its own size.
+     *
+     * @org.apache.xbean.Property propertyEditor="org.apache.activemq.util.MemoryIntPropertyEditor"
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public int getMaxFreeSegments() {
+        return maxFreeSegments;
+    }
+
+    /**
+     * Sets how many emptied segments are kept for reuse rather than deleted.
+     */
+    public void setMaxFreeSegments(int maxFreeSegments) {
+        this.maxFreeSegments = maxFreeSegments;
+    }
+
+    public TempUsage getTempUsage() {
+        return tempUsage;
+    }
+
+    /**
+     * Sets the usage that the segment files are accounted to.
+     */
+    public void setTempUsage(TempUsage tempUsage) {
+        this.tempUsage = tempUsage;
+    }
+
+    /**
+     * @return the size in bytes of the segment files, used or not
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized Spool getSpool(String name) {
+        Spool spool = spools.get(name);
+        if (spool == null) {
+            spool = new Spool(this, name);
+            spools.put(name, spool);
+        }
+        return spool;
+    }
+
+    public boolean removeSpool(String name) {
+        Spool spool;
+        synchronized (this) {
+            spool = spools.remove(name);
+        }
+        // the spool locks itself and then the store, so not the other way round
+        if (spool != null) {
+            spool.destroy();
+        }
+        return spool != null;
+    }
+
+    synchronized SpoolSegment allocate(int minimumSize, boolean fromBack) throws IOException {
+        SpoolSegment segment;
+        if (minimumSize <= segmentSize && !freeSegments.isEmpty()) {
+            segment = freeSegments.removeFirst();
+        } else {
+            int capacity = Math.max(minimumSize, segmentSize);
+            IOHelper.mkdirs(directory);
+            segment = new SpoolSegment(new File(directory, (segmentCount++) + ".spool"), capacity);
+            size += capacity;
+            if (tempUsage != null) {
+                tempUsage.increaseUsage(capacity);
+            }
+        }
+        segment.reset(fromBack);
+        return segment;
+    }
+
+    synchronized void release(SpoolSegment segment) {
+        segment.reset(false);
+        if (segment.getCapacity() == segmentSize && freeSegments.size() < maxFreeSegments && isStarted()) {
+            freeSegments.add(segment);
+        } else {
+            delete(segment);
+        }
+    }
+
+    private void delete(SpoolSegment segment) {
+        segment.delete();
+        size -= segment.getCapacity();
+        if (tempUsage != null) {
+            tempUsage.decreaseUsage(segment.getCapacity());
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        if (directory == null) {
+            throw new IllegalArgumentException("No directory set for " + this);
+        }
+        if (directory.exists()) {
+            if (!IOHelper.deleteChildren(directory)) {
+                LOG.warn("Could not delete all of the old spool files in " + directory);
+            }
+        }
+        IOHelper.mkdirs(directory);
+    }
+
+    @Override
+    protected void doStop(ServiceStopper stopper) throws Exception {
+        List<Spool> existing;
+        synchronized (this) {
+            existing = new ArrayList<Spool>(spools.values());
+            spools.clear();
+        }
+        for (Spool spool : existing) {
+            spool.destroy();
+        }
+        synchronized (this) {
+            for (SpoolSegment segment : freeSegments) {
+                delete(segment);
+            }
+            freeSegments.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SpoolStore:[" + directory + "]";
+    }
+}
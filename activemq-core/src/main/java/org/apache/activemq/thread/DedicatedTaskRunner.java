@@ -30,15 +30,16 @@ class DedicatedTaskRunner implements TaskRunner {
     private boolean shutdown;
 
     public DedicatedTaskRunner(Task task, String name, int priority, boolean daemon) {
+        this(task, name, priority, daemon, false);
+    }
+
+    public DedicatedTaskRunner(Task task, String name, int priority, boolean daemon, boolean virtual) {
         this.task = task;
-        thread = new Thread(name) {
+        thread = VirtualThreads.newThread(virtual, name, new Runnable() {
             public void run() {
                 runTask();
             }
-        };
-        thread.setDaemon(daemon);
-        thread.setName(name);
-        thread.setPriority(priority);
+        }, priority, daemon, 0);
         thread.start();
     }
 
@@ -0,0 +1,330 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A timer for large numbers of coarse grained timeouts, such as the inactivity
+ * checks of every connection of a broker.
+ *
+ * Timeouts are kept in a wheel of buckets, each covering one tick. Scheduling,
+ * rescheduling and cancelling a timeout are constant time, and a single
+ * thread expires a whole bucket per tick instead of waking up for every task
+ * like a {@link java.util.Timer}. Timeouts never fire early but may fire up to
+ * one tick late. Expired tasks run on the timer thread so they should be short
+ * and hand off any blocking work.
+ */
+public class HashedWheelTimer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    private final String name;
+    private final long tickDuration;
+    private final Timeout[] wheel;
+    private final int mask;
+    private final Object lock = new Object();
+    private final long startTime = System.currentTimeMillis();
+
+    // the next tick to process, guarded by lock
+    private long tick;
+    private int pendingCount;
+    private volatile Thread worker;
+    private volatile boolean running;
+
+    private volatile long lastTickLag;
+    private volatile long maxTickLag;
+    private volatile long expiredCount;
+
+    /**
+     * @param name the name of the timer thread
+     * @param tickDuration the duration of a tick in milliseconds
+     * @param ticksPerWheel the number of buckets, rounded up to a power of two
+     */
+    public HashedWheelTimer(String name, long tickDuration, int ticksPerWheel) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+        }
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.name = name;
+        this.tickDuration = tickDuration;
+        this.wheel = new Timeout[size];
+        this.mask = size - 1;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        synchronized (lock) {
+            if (pendingCount == 0) {
+                // don't count the time spent stopped as lag
+                tick = (System.currentTimeMillis() - startTime) / tickDuration;
+            }
+        }
+        worker = new Thread(new Runnable() {
+            public void run() {
+                runWorker();
+            }
+        }, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+        synchronized (lock) {
+            for (int i = 0; i < wheel.length; i++) {
+                Timeout timeout = wheel[i];
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    timeout.prev = null;
+                    timeout.next = null;
+                    timeout.bucket = -1;
+                    timeout = next;
+                }
+                wheel[i] = null;
+            }
+            pendingCount = 0;
+        }
+    }
+
+    /**
+     * Runs the task once after the delay.
+     */
+    public Timeout schedule(Runnable task, long delay) {
+        return schedule(task, delay, 0);
+    }
+
+    /**
+     * Runs the task after the initial delay and then repeatedly, each run
+     * starting period milliseconds after the previous one started.
+     */
+    public Timeout schedule(Runnable task, long initialDelay, long period) {
+        Timeout timeout = new Timeout(task, period);
+        synchronized (lock) {
+            insert(timeout, System.currentTimeMillis() + initialDelay);
+        }
+        return timeout;
+    }
+
+    // must hold lock
+    private void insert(Timeout timeout, long deadline) {
+        long deadlineTick = (deadline - startTime + tickDuration - 1) / tickDuration;
+        if (deadlineTick < tick) {
+            deadlineTick = tick;
+        }
+        int bucket = (int) (deadlineTick & mask);
+        timeout.deadline = deadline;
+        timeout.remainingRounds = (deadlineTick - tick) / wheel.length;
+        timeout.bucket = bucket;
+        timeout.prev = null;
+        timeout.next = wheel[bucket];
+        if (wheel[bucket] != null) {
+            wheel[bucket].prev = timeout;
+        }
+        wheel[bucket] = timeout;
+        pendingCount++;
+    }
+
+    // must hold lock
+    private void remove(Timeout timeout) {
+        if (timeout.bucket < 0) {
+            return;
+        }
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            wheel[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        pendingCount--;
+    }
+
+    private void runWorker() {
+        List<Timeout> expired = new ArrayList<Timeout>();
+        while (running && worker == Thread.currentThread()) {
+            long tickTime;
+            synchronized (lock) {
+                tickTime = startTime + tick * tickDuration;
+            }
+            long now = System.currentTimeMillis();
+            if (now < tickTime) {
+                try {
+                    Thread.sleep(tickTime - now);
+                } catch (InterruptedException e) {
+                    // stopped, or spurious, checked by the loop
+                }
+                continue;
+            }
+
+            long lag = now - tickTime;
+            lastTickLag = lag;
+            if (lag > maxTickLag) {
+                maxTickLag = lag;
+            }
+
+            synchronized (lock) {
+                Timeout timeout = wheel[(int) (tick & mask)];
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    if (timeout.remainingRounds > 0) {
+                        timeout.remainingRounds--;
+                    } else {
+                        remove(timeout);
+                        expired.add(timeout);
+                    }
+                    timeout = next;
+                }
+                tick++;
+            }
+
+            for (Timeout timeout : expired) {
+                expire(timeout);
+            }
+            expired.clear();
+        }
+    }
+
+    private void expire(Timeout timeout) {
+        long started = System.currentTimeMillis();
+        expiredCount++;
+        try {
+            timeout.task.run();
+        } catch (Throwable e) {
+            LOG.warn("Task " + timeout.task + " run by " + name + " failed: " + e, e);
+        }
+        if (timeout.period > 0) {
+            synchronized (lock) {
+                // the task may have rescheduled itself already
+                if (!timeout.cancelled && timeout.bucket < 0 && running) {
+                    insert(timeout, started + timeout.period);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of scheduled timeouts
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pendingCount;
+        }
+    }
+
+    /**
+     * @return the number of task runs so far
+     */
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    /**
+     * @return how late, in milliseconds, the timer thread processed the last
+     *         tick. A steadily growing value means the expired tasks take too
+     *         long.
+     */
+    public long getLastTickLag() {
+        return lastTickLag;
+    }
+
+    /**
+     * @return the largest tick lag seen so far, in milliseconds
+     */
+    public long getMaxTickLag() {
+        return maxTickLag;
+    }
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * A handle on a scheduled task.
+     */
+    public final class Timeout {
+        private final Runnable task;
+        private final long period;
+        private long deadline;
+        private long remainingRounds;
+        private int bucket = -1;
+        private Timeout prev;
+        private Timeout next;
+        private boolean cancelled;
+
+        private Timeout(Runnable task, long period) {
+            this.task = task;
+            this.period = period;
+        }
+
+        /**
+         * Stops any further runs of the task.
+         */
+        public void cancel() {
+            synchronized (lock) {
+                cancelled = true;
+                remove(this);
+            }
+        }
+
+        /**
+         * Moves the next run of the task to delay milliseconds from now.
+         */
+        public void reschedule(long delay) {
+            synchronized (lock) {
+                if (!cancelled) {
+                    remove(this);
+                    insert(this, System.currentTimeMillis() + delay);
+                }
+            }
+        }
+
+        public boolean isCancelled() {
+            synchronized (lock) {
+                return cancelled;
+            }
+        }
+
+        public long getDeadline() {
+            synchronized (lock) {
+                return deadline;
+            }
+        }
+    }
+}
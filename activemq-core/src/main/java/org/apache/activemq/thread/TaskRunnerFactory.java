@@ -43,6 +43,8 @@ public class TaskRunnerFactory implements Executor {
     private boolean daemon;
     private AtomicLong id = new AtomicLong(0);
     private boolean dedicatedTaskRunner;
+    private boolean useVirtualThreads = VirtualThreads.isEnabledByDefault();
+    private int maxConcurrentTasks;
     private AtomicBoolean initDone = new AtomicBoolean(false);
 
     public TaskRunnerFactory() {
@@ -68,7 +70,7 @@ public class TaskRunnerFactory implements Executor {
             if (dedicatedTaskRunner || "true".equalsIgnoreCase(System.getProperty("org.apache.activemq.UseDedicatedTaskRunner"))) {
                 executor = null;
             } else if (executor == null) {
-                executor = createDefaultExecutor();
+                executor = isVirtual() ? createVirtualThreadExecutor() : createDefaultExecutor();
             }
         }
     }
@@ -85,7 +87,7 @@ public class TaskRunnerFactory implements Executor {
         if (executor != null) {
             return new PooledTaskRunner(executor, task, maxIterationsPerRun);
         } else {
-            return new DedicatedTaskRunner(task, name, priority, daemon);
+            return new DedicatedTaskRunner(task, name, priority, daemon, isVirtual());
         }
     }
 
@@ -98,10 +100,28 @@ public class TaskRunnerFactory implements Executor {
         if (executor != null) {
             executor.execute(runnable);
         } else {
-            new Thread(runnable, name + "-" + id.incrementAndGet()).start();
+            String threadName = name + "-" + id.incrementAndGet();
+            if (isVirtual()) {
+                VirtualThreads.newThread(true, threadName, runnable, Thread.NORM_PRIORITY, daemon, 0).start();
+            } else {
+                new Thread(runnable, threadName).start();
+            }
         }
     }
 
+    private boolean isVirtual() {
+        return useVirtualThreads && VirtualThreads.isAvailable();
+    }
+
+    /**
+     * Creates an executor running each task on its own virtual thread, the
+     * number of tasks running at once is limited by maxConcurrentTasks rather
+     * than by a thread count.
+     */
+    protected ExecutorService createVirtualThreadExecutor() {
+        return new VirtualThreadExecutor(name, maxConcurrentTasks);
+    }
+
     protected ExecutorService createDefaultExecutor() {
         ThreadPoolExecutor rc = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
             public Thread newThread(Runnable runnable) {
@@ -161,4 +181,28 @@ public class TaskRunnerFactory implements Executor {
     public void setDedicatedTaskRunner(boolean dedicatedTaskRunner) {
         this.dedicatedTaskRunner = dedicatedTaskRunner;
     }
+
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * Run tasks on virtual threads when the JVM supports them, ignored on
+     * JVMs older than Java 21. Must be set before the factory is first used.
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    public int getMaxConcurrentTasks() {
+        return maxConcurrentTasks;
+    }
+
+    /**
+     * The maximum number of tasks running at once on virtual threads, 0 (the
+     * default) for no limit. Has no effect on the platform thread pool.
+     */
+    public void setMaxConcurrentTasks(int maxConcurrentTasks) {
+        this.maxConcurrentTasks = maxConcurrentTasks;
+    }
 }
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.thread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs each task on a new virtual thread. Virtual threads are cheap to create
+ * and to block, so rather than bounding the number of threads the number of
+ * tasks running at once is bounded with a {@link Semaphore}; tasks over the
+ * limit wait on their own virtual thread for a permit.
+ *
+ * Falls back to platform threads when virtual threads are not available,
+ * which is only sensible for testing.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+
+    private final String name;
+    private final Semaphore permits;
+    private final AtomicLong id = new AtomicLong(0);
+    private final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+    private final Object terminationMutex = new Object();
+    private volatile boolean shutdown;
+
+    /**
+     * @param name the thread name prefix
+     * @param maxConcurrentTasks the maximum number of tasks running at once,
+     *                0 or less for no limit
+     */
+    public VirtualThreadExecutor(String name, int maxConcurrentTasks) {
+        this.name = name;
+        this.permits = maxConcurrentTasks > 0 ? new Semaphore(maxConcurrentTasks) : null;
+    }
+
+    public void execute(final Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor " + name + " has been shut down");
+        }
+        Thread thread = VirtualThreads.newThread(true, name + "-" + id.incrementAndGet(), new Runnable() {
+            public void run() {
+                try {
+                    if (permits != null) {
+                        permits.acquire();
+                    }
+                    try {
+                        command.run();
+                    } finally {
+                        if (permits != null) {
+                            permits.release();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    threads.remove(Thread.currentThread());
+                    synchronized (terminationMutex) {
+                        terminationMutex.notifyAll();
+                    }
+                }
+            }
+        }, Thread.NORM_PRIORITY, true, 0);
+        threads.add(thread);
+        thread.start();
+    }
+
+    /**
+     * @return the number of tasks waiting for or holding a permit
+     */
+    public int getActiveCount() {
+        return threads.size();
+    }
+
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        return new ArrayList<Runnable>();
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean isTerminated() {
+        return shutdown && threads.isEmpty();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        synchronized (terminationMutex) {
+            while (!isTerminated()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                terminationMutex.wait(remaining);
+            }
+        }
+        return true;
+    }
+}
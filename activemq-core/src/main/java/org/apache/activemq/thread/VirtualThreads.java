@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.thread;
+
+import java.lang.reflect.Method;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates virtual threads when the JVM supports them (Java 21 or later). The
+ * broker is built for older JVMs so the API is looked up reflectively; when it
+ * is missing, or disabled, platform threads are created instead.
+ *
+ * Virtual threads are used by default when the
+ * <code>org.apache.activemq.UseVirtualThreads</code> system property is set
+ * to true.
+ */
+public final class VirtualThreads {
+
+    public static final String USE_VIRTUAL_THREADS_PROPERTY = "org.apache.activemq.UseVirtualThreads";
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method UNSTARTED;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method unstarted = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class);
+            unstarted = builder.getMethod("unstarted", Runnable.class);
+        } catch (Throwable e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        UNSTARTED = unstarted;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if this JVM can create virtual threads
+     */
+    public static boolean isAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @return true if virtual threads were requested through the system property
+     */
+    public static boolean isEnabledByDefault() {
+        return "true".equalsIgnoreCase(System.getProperty(USE_VIRTUAL_THREADS_PROPERTY));
+    }
+
+    /**
+     * Creates an unstarted virtual thread, or null if they are not available.
+     */
+    public static Thread newVirtualThread(String name, Runnable runnable) {
+        if (OF_VIRTUAL != null) {
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);
+                return (Thread) UNSTARTED.invoke(builder, runnable);
+            } catch (Exception e) {
+                LOG.debug("Could not create a virtual thread, using a platform thread: " + e, e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates an unstarted thread, which is a virtual thread if requested and
+     * available. Priority, daemon and stack size only apply to platform threads.
+     */
+    public static Thread newThread(boolean virtual, String name, Runnable runnable, int priority, boolean daemon, long stackSize) {
+        Thread thread = virtual ? newVirtualThread(name, runnable) : null;
+        if (thread == null) {
+            thread = new Thread(null, runnable, name, stackSize);
+            thread.setDaemon(daemon);
+            thread.setPriority(priority);
+        }
+        return thread;
+    }
+}
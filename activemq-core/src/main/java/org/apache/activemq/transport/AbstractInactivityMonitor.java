@@ -17,7 +17,6 @@
 package org.apache.activemq.transport;
 
 import java.io.IOException;
-import java.util.Timer;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -28,7 +27,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.activemq.command.KeepAliveInfo;
 import org.apache.activemq.command.WireFormatInfo;
-import org.apache.activemq.thread.SchedulerTimerTask;
+import org.apache.activemq.thread.HashedWheelTimer;
 import org.apache.activemq.wireformat.WireFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,8 +43,6 @@ public abstract class AbstractInactivityMonitor extends TransportFilter {
     private static ThreadPoolExecutor ASYNC_TASKS;
     private static int CHECKER_COUNTER;
     private static long DEFAULT_CHECK_TIME_MILLS = 30000;
-    private static Timer READ_CHECK_TIMER;
-    private static Timer WRITE_CHECK_TIMER;
 
     private final AtomicBoolean monitorStarted = new AtomicBoolean(false);
 
@@ -59,8 +56,8 @@ public abstract class AbstractInactivityMonitor extends TransportFilter {
 
     private final ReentrantReadWriteLock sendLock = new ReentrantReadWriteLock();
 
-    private SchedulerTimerTask writeCheckerTask;
-    private SchedulerTimerTask readCheckerTask;
+    private HashedWheelTimer.Timeout writeCheckerTask;
+    private HashedWheelTimer.Timeout readCheckerTask;
 
     private long readCheckTime = DEFAULT_CHECK_TIME_MILLS;
     private long writeCheckTime = DEFAULT_CHECK_TIME_MILLS;
@@ -318,28 +315,19 @@ public abstract class AbstractInactivityMonitor extends TransportFilter {
             return;
         }
 
-        if (readCheckTime > 0) {
-            readCheckerTask = new SchedulerTimerTask(readChecker);
-        }
-
-        if (writeCheckTime > 0) {
-            writeCheckerTask = new SchedulerTimerTask(writeChecker);
-        }
-
         if (writeCheckTime > 0 || readCheckTime > 0) {
             monitorStarted.set(true);
             synchronized(AbstractInactivityMonitor.class) {
                 if( CHECKER_COUNTER == 0 ) {
                     ASYNC_TASKS = createExecutor();
-                    READ_CHECK_TIMER = new Timer("InactivityMonitor ReadCheck",true);
-                    WRITE_CHECK_TIMER = new Timer("InactivityMonitor WriteCheck",true);
                 }
                 CHECKER_COUNTER++;
+                HashedWheelTimer timer = InactivityMonitorTimer.acquire();
                 if (readCheckTime > 0) {
-                    READ_CHECK_TIMER.schedule(readCheckerTask, initialDelayTime, readCheckTime);
+                    readCheckerTask = timer.schedule(readChecker, initialDelayTime, readCheckTime);
                 }
                 if (writeCheckTime > 0) {
-                    WRITE_CHECK_TIMER.schedule(writeCheckerTask, initialDelayTime, writeCheckTime);
+                    writeCheckerTask = timer.schedule(writeChecker, initialDelayTime, writeCheckTime);
                 }
             }
         }
@@ -351,19 +339,16 @@ public abstract class AbstractInactivityMonitor extends TransportFilter {
         if (monitorStarted.compareAndSet(true, false)) {
             if (readCheckerTask != null) {
                 readCheckerTask.cancel();
+                readCheckerTask = null;
             }
             if (writeCheckerTask != null) {
                 writeCheckerTask.cancel();
+                writeCheckerTask = null;
             }
             synchronized( AbstractInactivityMonitor.class ) {
-                WRITE_CHECK_TIMER.purge();
-                READ_CHECK_TIMER.purge();
+                InactivityMonitorTimer.release();
                 CHECKER_COUNTER--;
                 if(CHECKER_COUNTER==0) {
-                  WRITE_CHECK_TIMER.cancel();
-                  READ_CHECK_TIMER.cancel();
-                    WRITE_CHECK_TIMER = null;
-                    READ_CHECK_TIMER = null;
                     ASYNC_TASKS.shutdown();
                     ASYNC_TASKS = null;
                 }
@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport;
+
+import org.apache.activemq.thread.HashedWheelTimer;
+
+/**
+ * The timer shared by the read and write checks of all the inactivity
+ * monitors in the JVM. It is started by the first monitor to start and stopped
+ * when the last one stops.
+ *
+ * The tick defaults to 100ms and can be changed with the
+ * <code>org.apache.activemq.transport.InactivityMonitorTimer.tick</code> system
+ * property.
+ */
+public final class InactivityMonitorTimer {
+
+    private static final long TICK = Long.getLong("org.apache.activemq.transport.InactivityMonitorTimer.tick", 100);
+    private static final int TICKS_PER_WHEEL = 1024;
+
+    private static HashedWheelTimer timer;
+    private static int users;
+
+    private InactivityMonitorTimer() {
+    }
+
+    /**
+     * Registers a monitor as a user of the timer, starting it if needed.
+     */
+    public static synchronized HashedWheelTimer acquire() {
+        if (users == 0) {
+            timer = new HashedWheelTimer("InactivityMonitor Timer", TICK, TICKS_PER_WHEEL);
+            timer.start();
+        }
+        users++;
+        return timer;
+    }
+
+    /**
+     * Unregisters a monitor, the timer is stopped once it has no users left.
+     */
+    public static synchronized void release() {
+        if (users > 0 && --users == 0) {
+            timer.stop();
+            timer = null;
+        }
+    }
+
+    /**
+     * @return the running timer, for its lag statistics, or null if no
+     *         monitor is running
+     */
+    public static synchronized HashedWheelTimer getTimer() {
+        return timer;
+    }
+}
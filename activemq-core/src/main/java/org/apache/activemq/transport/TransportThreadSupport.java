@@ -16,6 +16,8 @@
  */
 package org.apache.activemq.transport;
 
+import org.apache.activemq.thread.VirtualThreads;
+
 /**
  * A useful base class for a transport implementation which has a background
  * reading thread.
@@ -28,6 +30,7 @@ public abstract class TransportThreadSupport extends TransportSupport implements
     private Thread runner;
     // should be a multiple of 128k
     private long stackSize;
+    private boolean useVirtualThread = VirtualThreads.isEnabledByDefault();
 
     public boolean isDaemon() {
         return daemon;
@@ -37,9 +40,22 @@ public abstract class TransportThreadSupport extends TransportSupport implements
         this.daemon = daemon;
     }
 
+    public boolean isUseVirtualThread() {
+        return useVirtualThread;
+    }
+
+    /**
+     * Sets whether the background read thread is a virtual thread, which
+     * avoids reserving a native stack per transport. Ignored on JVMs without
+     * virtual thread support.
+     */
+    public void setUseVirtualThread(boolean useVirtualThread) {
+        this.useVirtualThread = useVirtualThread;
+    }
+
     protected void doStart() throws Exception {
-        runner = new Thread(null, this, "ActiveMQ Transport: " + toString(), stackSize);
-        runner.setDaemon(daemon);
+        runner = VirtualThreads.newThread(useVirtualThread, "ActiveMQ Transport: " + toString(), this,
+                                          Thread.currentThread().getPriority(), daemon, stackSize);
         runner.start();
     }
 
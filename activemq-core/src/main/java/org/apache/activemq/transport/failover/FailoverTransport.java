@@ -40,6 +40,7 @@ import org.apache.activemq.broker.SslContext;
 import org.apache.activemq.command.Command;
 import org.apache.activemq.command.ConnectionControl;
 import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.command.MessageAckBatch;
 import org.apache.activemq.command.RemoveInfo;
 import org.apache.activemq.command.Response;
 import org.apache.activemq.state.ConnectionStateTracker;
@@ -525,7 +526,7 @@ public class FailoverTransport implements CompositeTransport {
                     if (command.isShutdownInfo()) {
                         // Skipping send of ShutdownInfo command when not connected.
                         return;
-                    } else if (command instanceof RemoveInfo || command.isMessageAck()) {
+                    } else if (command instanceof RemoveInfo || command.isMessageAck() || command instanceof MessageAckBatch) {
                         // Simulate response to RemoveInfo command or MessageAck (as it will be stale)
                         stateTracker.track(command);
                         if (command.isResponseRequired()) {
@@ -18,7 +18,6 @@
 package org.apache.activemq.transport.mqtt;
 
 import java.io.IOException;
-import java.util.Timer;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -28,9 +27,10 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.activemq.command.KeepAliveInfo;
-import org.apache.activemq.thread.SchedulerTimerTask;
+import org.apache.activemq.thread.HashedWheelTimer;
 import org.apache.activemq.transport.AbstractInactivityMonitor;
 import org.apache.activemq.transport.InactivityIOException;
+import org.apache.activemq.transport.InactivityMonitorTimer;
 import org.apache.activemq.transport.Transport;
 import org.apache.activemq.transport.TransportFilter;
 import org.apache.activemq.wireformat.WireFormat;
@@ -44,7 +44,6 @@ public class MQTTInactivityMonitor extends TransportFilter {
     private static ThreadPoolExecutor ASYNC_TASKS;
     private static int CHECKER_COUNTER;
     private static long DEFAULT_CHECK_TIME_MILLS = 30000;
-    private static Timer READ_CHECK_TIMER;
 
     private final AtomicBoolean monitorStarted = new AtomicBoolean(false);
 
@@ -57,7 +56,7 @@ public class MQTTInactivityMonitor extends TransportFilter {
     private final AtomicInteger lastReceiveCounter = new AtomicInteger(0);
 
     private final ReentrantReadWriteLock sendLock = new ReentrantReadWriteLock();
-    private SchedulerTimerTask readCheckerTask;
+    private HashedWheelTimer.Timeout readCheckerTask;
 
     private long readCheckTime = DEFAULT_CHECK_TIME_MILLS;
     private long initialDelayTime = DEFAULT_CHECK_TIME_MILLS;
@@ -243,22 +242,14 @@ public class MQTTInactivityMonitor extends TransportFilter {
         }
 
 
-        if (readCheckTime > 0) {
-            readCheckerTask = new SchedulerTimerTask(readChecker);
-        }
-
-
         if (readCheckTime > 0) {
             monitorStarted.set(true);
             synchronized (AbstractInactivityMonitor.class) {
                 if (CHECKER_COUNTER == 0) {
                     ASYNC_TASKS = createExecutor();
-                    READ_CHECK_TIMER = new Timer("InactivityMonitor ReadCheck", true);
                 }
                 CHECKER_COUNTER++;
-                if (readCheckTime > 0) {
-                    READ_CHECK_TIMER.schedule(readCheckerTask, initialDelayTime, readCheckTime);
-                }
+                readCheckerTask = InactivityMonitorTimer.acquire().schedule(readChecker, initialDelayTime, readCheckTime);
             }
         }
     }
@@ -268,14 +259,13 @@ public class MQTTInactivityMonitor extends TransportFilter {
         if (monitorStarted.compareAndSet(true, false)) {
             if (readCheckerTask != null) {
                 readCheckerTask.cancel();
+                readCheckerTask = null;
             }
 
             synchronized (AbstractInactivityMonitor.class) {
-                READ_CHECK_TIMER.purge();
+                InactivityMonitorTimer.release();
                 CHECKER_COUNTER--;
                 if (CHECKER_COUNTER == 0) {
-                    READ_CHECK_TIMER.cancel();
-                    READ_CHECK_TIMER = null;
                     ASYNC_TASKS.shutdown();
                     ASYNC_TASKS = null;
                 }
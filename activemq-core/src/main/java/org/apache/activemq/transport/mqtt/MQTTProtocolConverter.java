@@ -21,14 +21,14 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
 
 import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import org.apache.activemq.broker.BrokerContext;
 import org.apache.activemq.command.*;
-import org.apache.activemq.util.ByteArrayOutputStream;
+import org.apache.activemq.compression.CompressionCodec;
+import org.apache.activemq.compression.CompressionCodecFactory;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.IOExceptionSupport;
 import org.apache.activemq.util.IdGenerator;
@@ -459,16 +459,10 @@ class MQTTProtocolConverter {
         result.topicName(topicName);
 
         ByteSequence byteSequence = message.getContent();
-        if (message.isCompressed()) {
-            Inflater inflater = new Inflater();
-            inflater.setInput(byteSequence.data, byteSequence.offset, byteSequence.length);
-            byte[] data = new byte[4096];
-            int read;
-            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
-            while ((read = inflater.inflate(data, 0, data.length)) != 0) {
-                bytesOut.write(data, 0, read);
-            }
-            byteSequence = bytesOut.toByteSequence();
+        if (message.isCompressed() && message.getDataStructureType() != ActiveMQBytesMessage.DATA_STRUCTURE_TYPE) {
+            Object codecName = message.getProperty(CompressionCodec.CODEC_PROPERTY);
+            CompressionCodec codec = CompressionCodecFactory.createCodec(codecName != null ? codecName.toString() : null);
+            byteSequence = codec.decompress(byteSequence);
         }
 
         if (message.getDataStructureType() == ActiveMQTextMessage.DATA_STRUCTURE_TYPE) {
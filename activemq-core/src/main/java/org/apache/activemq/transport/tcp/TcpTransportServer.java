@@ -27,9 +27,14 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.util.HashMap;
-import java.util.concurrent.BlockingQueue;
+import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ServerSocketFactory;
 
@@ -107,13 +112,29 @@ public class TcpTransportServer extends TransportServerThreadSupport implements
      */
     protected boolean startLogging = true;
     protected final ServerSocketFactory serverSocketFactory;
-    protected BlockingQueue<Socket> socketQueue = new LinkedBlockingQueue<Socket>();
-    protected Thread socketHandlerThread;
+    /**
+     * The number of threads used to set up the transports of newly accepted
+     * sockets when useQueueForAccept is enabled
+     */
+    protected int handshakePoolSize = 4;
+    /**
+     * The maximum number of accepted sockets waiting for a handshake thread,
+     * further sockets are closed straight away
+     */
+    protected int handshakeQueueSize = 1000;
+    protected ThreadPoolExecutor handshakeExecutor;
     /**
      * The maximum number of sockets allowed for this server
      */
     protected int maximumConnections = Integer.MAX_VALUE;
-    protected int currentTransportCount=0;
+    protected final AtomicInteger currentTransportCount = new AtomicInteger();
+    protected final AtomicInteger pendingHandshakeCount = new AtomicInteger();
+    protected final AtomicLong acceptedConnectionCount = new AtomicLong();
+    protected final AtomicLong rejectedConnectionCount = new AtomicLong();
+    private volatile double acceptRate;
+    // only used by the accept thread
+    private long acceptRateWindowStart = System.currentTimeMillis();
+    private long acceptRateWindowCount;
   
     public TcpTransportServer(TcpTransportFactory transportFactory, URI location, ServerSocketFactory serverSocketFactory) throws IOException, URISyntaxException {
         super(location);
@@ -269,6 +290,35 @@ public class TcpTransportServer extends TransportServerThreadSupport implements
     }
     
 
+    /**
+     * @return the number of threads setting up accepted sockets
+     */
+    public int getHandshakePoolSize() {
+        return handshakePoolSize;
+    }
+
+    /**
+     * @param handshakePoolSize the number of threads setting up accepted sockets
+     */
+    public void setHandshakePoolSize(int handshakePoolSize) {
+        this.handshakePoolSize = handshakePoolSize;
+    }
+
+    /**
+     * @return the maximum number of accepted sockets waiting to be set up
+     */
+    public int getHandshakeQueueSize() {
+        return handshakeQueueSize;
+    }
+
+    /**
+     * @param handshakeQueueSize the maximum number of accepted sockets waiting
+     *                to be set up, sockets accepted beyond it are closed
+     */
+    public void setHandshakeQueueSize(int handshakeQueueSize) {
+        this.handshakeQueueSize = handshakeQueueSize;
+    }
+
     /**
      * pull Sockets from the ServerSocket
      */
@@ -278,14 +328,16 @@ public class TcpTransportServer extends TransportServerThreadSupport implements
             try {
                 socket = serverSocket.accept();
                 if (socket != null) {
+                    acceptRateWindowCount++;
                     if (isStopped() || getAcceptListener() == null) {
                         socket.close();
+                    } else if (isAtConnectionLimit()) {
+                        rejectSocket(socket, createExceededMaximumConnectionsException());
+                    } else if (useQueueForAccept) {
+                        queueSocket(socket);
                     } else {
-                        if (useQueueForAccept) {
-                            socketQueue.put(socket);
-                        }else {
-                            handleSocket(socket);
-                        }
+                        acceptedConnectionCount.incrementAndGet();
+                        handleSocket(socket);
                     }
                 }
             } catch (SocketTimeoutException ste) {
@@ -297,10 +349,67 @@ public class TcpTransportServer extends TransportServerThreadSupport implements
                     LOG.warn("run()", e);
                     onAcceptError(e);
                 }
+            } finally {
+                updateAcceptRate();
             }
         }
     }
 
+    /**
+     * Hands the socket over to the handshake pool, so the accept thread can go
+     * straight back to accepting
+     */
+    private void queueSocket(Socket socket) {
+        pendingHandshakeCount.incrementAndGet();
+        try {
+            handshakeExecutor.execute(new SocketHandshake(socket));
+            acceptedConnectionCount.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            pendingHandshakeCount.decrementAndGet();
+            rejectSocket(socket, new ExceededMaximumConnectionsException("Exceeded the maximum "
+                + "number of connections waiting to be set up. See the 'handshakeQueueSize' "
+                + "property on the TCP transport configuration URI"));
+        }
+    }
+
+    /**
+     * Transports still being set up count towards the maximumConnections so a
+     * burst of reconnects is turned away at the accept rather than queued up.
+     * The check is approximate as a transport is only counted again once it
+     * has been started.
+     */
+    private boolean isAtConnectionLimit() {
+        return currentTransportCount.get() + pendingHandshakeCount.get() >= maximumConnections;
+    }
+
+    private void rejectSocket(Socket socket, Exception reason) {
+        rejectedConnectionCount.incrementAndGet();
+        try {
+            socket.close();
+        } catch (IOException ignore) {
+        }
+        if (!isStopping()) {
+            onAcceptError(reason);
+        }
+    }
+
+    private ExceededMaximumConnectionsException createExceededMaximumConnectionsException() {
+        return new ExceededMaximumConnectionsException("Exceeded the maximum " +
+            "number of allowed client connections. See the 'maximumConnections' " +
+            "property on the TCP transport configuration URI in the ActiveMQ " +
+            "configuration file (e.g., activemq.xml)");
+    }
+
+    private void updateAcceptRate() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - acceptRateWindowStart;
+        if (elapsed >= 1000) {
+            acceptRate = acceptRateWindowCount * 1000.0 / elapsed;
+            acceptRateWindowStart = now;
+            acceptRateWindowCount = 0;
+        }
+    }
+
     /**
      * Allow derived classes to override the Transport implementation that this
      * transport server creates.
@@ -344,32 +453,21 @@ public class TcpTransportServer extends TransportServerThreadSupport implements
     
     protected void doStart() throws Exception {
         if(useQueueForAccept) {
-            Runnable run = new Runnable() {
-                public void run() {
-                    try {
-                        while (!isStopped() && !isStopping()) {
-                            Socket sock = socketQueue.poll(1, TimeUnit.SECONDS);
-                            if (sock != null) {
-                                handleSocket(sock);
-                            }
-                        }
-    
-                    } catch (InterruptedException e) {
-                        LOG.info("socketQueue interuppted - stopping");
-                        if (!isStopping()) {
-                            onAcceptError(e);
-                        }
-                    }
-    
+            final AtomicInteger threadCount = new AtomicInteger();
+            ThreadFactory threadFactory = new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(null, runnable,
+                            "ActiveMQ Transport Server Thread Handler: " + TcpTransportServer.this.toString()
+                            + " #" + threadCount.incrementAndGet(), getStackSize());
+                    thread.setDaemon(true);
+                    thread.setPriority(ThreadPriorities.BROKER_MANAGEMENT-1);
+                    return thread;
                 }
-    
             };
-            socketHandlerThread = new Thread(null, run,
-                    "ActiveMQ Transport Server Thread Handler: " + toString(),
-                    getStackSize());
-            socketHandlerThread.setDaemon(true);
-            socketHandlerThread.setPriority(ThreadPriorities.BROKER_MANAGEMENT-1);
-            socketHandlerThread.start();
+            int poolSize = Math.max(1, handshakePoolSize);
+            handshakeExecutor = new ThreadPoolExecutor(poolSize, poolSize, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(Math.max(1, handshakeQueueSize)), threadFactory);
+            handshakeExecutor.allowCoreThreadTimeOut(true);
         }
         super.doStart();
         
@@ -380,6 +478,19 @@ public class TcpTransportServer extends TransportServerThreadSupport implements
         if (serverSocket != null) {
             serverSocket.close();
         }
+        if (handshakeExecutor != null) {
+            List<Runnable> pending = handshakeExecutor.shutdownNow();
+            for (Runnable runnable : pending) {
+                if (runnable instanceof SocketHandshake) {
+                    pendingHandshakeCount.decrementAndGet();
+                    try {
+                        ((SocketHandshake) runnable).socket.close();
+                    } catch (IOException ignore) {
+                    }
+                }
+            }
+            handshakeExecutor = null;
+        }
     }
 
     public InetSocketAddress getSocketAddress() {
@@ -388,12 +499,10 @@ public class TcpTransportServer extends TransportServerThreadSupport implements
 
     protected final void handleSocket(Socket socket) {
         try {
-            if (this.currentTransportCount >= this.maximumConnections) {
-                throw new ExceededMaximumConnectionsException("Exceeded the maximum " + 
-                    "number of allowed client connections. See the 'maximumConnections' " + 
-                    "property on the TCP transport configuration URI in the ActiveMQ " + 
-                    "configuration file (e.g., activemq.xml)"); 
-                
+            if (this.currentTransportCount.get() >= this.maximumConnections) {
+                socket.close();
+                rejectedConnectionCount.incrementAndGet();
+                throw createExceededMaximumConnectionsException();
             } else {
                 HashMap<String, Object> options = new HashMap<String, Object>();
                 options.put("maxInactivityDuration", Long.valueOf(maxInactivityDuration));
@@ -473,12 +582,65 @@ public class TcpTransportServer extends TransportServerThreadSupport implements
         this.maximumConnections = maximumConnections;
     }
 
-    
+    /**
+     * @return the number of transports currently started by this server
+     */
+    public int getCurrentTransportCount() {
+        return currentTransportCount.get();
+    }
+
+    /**
+     * @return the number of accepted sockets waiting for, or going through,
+     *         the setup of their transport
+     */
+    public int getPendingHandshakeCount() {
+        return pendingHandshakeCount.get();
+    }
+
+    /**
+     * @return the total number of sockets admitted by this server
+     */
+    public long getAcceptedConnectionCount() {
+        return acceptedConnectionCount.get();
+    }
+
+    /**
+     * @return the total number of sockets closed on arrival because of the
+     *         maximumConnections or handshakeQueueSize limits
+     */
+    public long getRejectedConnectionCount() {
+        return rejectedConnectionCount.get();
+    }
+
+    /**
+     * @return the number of sockets accepted per second, sampled over the
+     *         last second or so
+     */
+    public double getAcceptRate() {
+        return acceptRate;
+    }
+
     public void started(Service service) {
-       this.currentTransportCount++;
+       this.currentTransportCount.incrementAndGet();
     }
 
     public void stopped(Service service) {
-        this.currentTransportCount--;
+        this.currentTransportCount.decrementAndGet();
+    }
+
+    private class SocketHandshake implements Runnable {
+        private final Socket socket;
+
+        SocketHandshake(Socket socket) {
+            this.socket = socket;
+        }
+
+        public void run() {
+            try {
+                handleSocket(socket);
+            } finally {
+                pendingHandshakeCount.decrementAndGet();
+            }
+        }
     }
 }
@@ -16,17 +16,43 @@
  */
 package org.apache.activemq.usage;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 /**
  * Used to keep track of how much of something is being used so that a
  * productive working set usage can be controlled. Main use case is manage
  * memory usage.
  * 
+ * Increasing and decreasing the usage takes no lock. The usage is kept in an
+ * atomic counter and, once threads start to contend for it, in per thread
+ * stripes that are only added to the counter once they hold more than a
+ * slice of the limit. The percent usage, and so {@link #isFull()}, is worked
+ * out from the counter and can be off by up to about one percent of the limit
+ * while stripes are pending; {@link #getUsage()} adds the stripes in. The
+ * usage mutex is only taken when the usage crosses a percentUsageMinDelta
+ * step, and listeners are told about it asynchronously.
+ * 
  * @org.apache.xbean.XBean
  * 
  */
 public class MemoryUsage extends Usage<MemoryUsage> {
 
-    private long usage;
+    private static final int STRIPES;
+    // longs between two stripes, so that they sit on separate cache lines
+    private static final int STRIPE_SPACING = 8;
+
+    static {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() && stripes < 64) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final AtomicLong usage = new AtomicLong();
+    private volatile AtomicLongArray stripes;
+    private volatile long stripeSlack;
 
     public MemoryUsage() {
         this(null, null);
@@ -53,6 +79,7 @@ public class MemoryUsage extends Usage<MemoryUsage> {
 
     public MemoryUsage(MemoryUsage parent, String name, float portion) {
         super(parent, name, portion);
+        updateStripeSlack();
     }
 
     /**
@@ -63,7 +90,7 @@ public class MemoryUsage extends Usage<MemoryUsage> {
             parent.waitForSpace();
         }
         synchronized (usageMutex) {
-            for (int i = 0; percentUsage >= 100; i++) {
+            while (percentUsage >= 100) {
                 usageMutex.wait();
             }
         }
@@ -92,9 +119,7 @@ public class MemoryUsage extends Usage<MemoryUsage> {
         if (parent != null && parent.isFull()) {
             return true;
         }
-        synchronized (usageMutex) {
-            return percentUsage >= 100;
-        }
+        return percentUsage >= 100;
     }
 
     /**
@@ -118,14 +143,9 @@ public class MemoryUsage extends Usage<MemoryUsage> {
         if (value == 0) {
             return;
         }
-        int percentUsage;
-        synchronized (usageMutex) {
-            usage += value;
-            percentUsage = caclPercentUsage();
-        }
-        setPercentUsage(percentUsage);
+        add(value);
         if (parent != null) {
-            ((MemoryUsage)parent).increaseUsage(value);
+            parent.increaseUsage(value);
         }
     }
 
@@ -138,26 +158,95 @@ public class MemoryUsage extends Usage<MemoryUsage> {
         if (value == 0) {
             return;
         }
-        int percentUsage;
-        synchronized (usageMutex) {
-            usage -= value;
-            percentUsage = caclPercentUsage();
-        }
-        setPercentUsage(percentUsage);
+        add(-value);
         if (parent != null) {
             parent.decreaseUsage(value);
         }
     }
 
+    private void add(long delta) {
+        AtomicLongArray stripes = this.stripes;
+        if (stripes == null) {
+            long current = usage.get();
+            if (usage.compareAndSet(current, current + delta)) {
+                checkPercentUsage();
+                return;
+            }
+            if (STRIPES == 1) {
+                usage.addAndGet(delta);
+                checkPercentUsage();
+                return;
+            }
+            stripes = createStripes();
+        }
+        int index = ((int)Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE_SPACING;
+        long slack = stripeSlack;
+        long pending = stripes.addAndGet(index, delta);
+        if (pending >= slack || pending <= -slack) {
+            pending = stripes.getAndSet(index, 0);
+            if (pending != 0) {
+                usage.addAndGet(pending);
+                checkPercentUsage();
+            }
+        }
+    }
+
+    private AtomicLongArray createStripes() {
+        synchronized (usage) {
+            if (stripes == null) {
+                stripes = new AtomicLongArray(STRIPES * STRIPE_SPACING);
+            }
+            return stripes;
+        }
+    }
+
+    /**
+     * Only takes the usage mutex when the usage moved to another step. The
+     * percent usage is read back after it is set, so a change made by another
+     * thread in the meantime is never missed.
+     */
+    private void checkPercentUsage() {
+        int value = caclPercentUsage();
+        while (value != percentUsage) {
+            setPercentUsage(value);
+            value = caclPercentUsage();
+        }
+    }
+
+    private void updateStripeSlack() {
+        // all the stripes together hold less than one percent of the limit
+        stripeSlack = getLimit() / (100L * STRIPES);
+    }
+
+    @Override
+    protected void onLimitChange() {
+        updateStripeSlack();
+        super.onLimitChange();
+    }
+
     protected long retrieveUsage() {
-        return usage;
+        return usage.get();
     }
 
     public long getUsage() {
-        return usage;
+        long answer = usage.get();
+        AtomicLongArray stripes = this.stripes;
+        if (stripes != null) {
+            for (int i = 0; i < STRIPES; i++) {
+                answer += stripes.get(i * STRIPE_SPACING);
+            }
+        }
+        return answer;
     }
 
     public void setUsage(long usage) {
-        this.usage = usage;
+        AtomicLongArray stripes = this.stripes;
+        if (stripes != null) {
+            for (int i = 0; i < STRIPES; i++) {
+                stripes.set(i * STRIPE_SPACING, 0);
+            }
+        }
+        this.usage.set(usage);
+        checkPercentUsage();
     }
 }
@@ -16,6 +16,8 @@
  */
 package org.apache.activemq.usage;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.activemq.store.kahadb.plist.PListStore;
 
 
@@ -30,27 +32,47 @@ import org.apache.activemq.store.kahadb.plist.PListStore;
 public class TempUsage extends Usage<TempUsage> {
 
     private PListStore store;
+    // temporary files kept outside the store, shared with the children
+    private final AtomicLong externalUsage;
 
     public TempUsage() {
         super(null, null, 1.0f);
+        this.externalUsage = new AtomicLong();
     }
 
     public TempUsage(String name, PListStore store) {
         super(null, name, 1.0f);
         this.store = store;
+        this.externalUsage = new AtomicLong();
     }
 
     public TempUsage(TempUsage parent, String name) {
         super(parent, name, 1.0f);
         this.store = parent.store;
+        this.externalUsage = parent.externalUsage;
     }
 
     @Override
     protected long retrieveUsage() {
+        long usage = externalUsage.get();
         if (store == null) {
-            return 0;
+            return usage;
         }
-        return store.size();
+        return usage + store.size();
+    }
+
+    /**
+     * Accounts for temporary files that are not part of the store, such as
+     * the segments of a {@link org.apache.activemq.store.spool.SpoolStore}.
+     *
+     * @param value the size in bytes
+     */
+    public void increaseUsage(long value) {
+        externalUsage.addAndGet(value);
+    }
+
+    public void decreaseUsage(long value) {
+        externalUsage.addAndGet(-value);
     }
 
     public PListStore getStore() {
@@ -39,10 +39,10 @@ public abstract class Usage<T extends Usage> implements Service {
 
     private static final Logger LOG = LoggerFactory.getLogger(Usage.class);
     protected final Object usageMutex = new Object();
-    protected int percentUsage;
+    protected volatile int percentUsage;
     protected T parent;
     private UsageCapacity limiter = new DefaultUsageCapacity();
-    private int percentUsageMinDelta = 1;
+    private volatile int percentUsageMinDelta = 1;
     private final List<UsageListener> listeners = new CopyOnWriteArrayList<UsageListener>();
     private final boolean debug = LOG.isDebugEnabled();
     protected String name;
@@ -113,10 +113,7 @@ public abstract class Usage<T extends Usage> implements Service {
         if (parent != null && parent.isFull(highWaterMark)) {
             return true;
         }
-        synchronized (usageMutex) {
-            percentUsage=caclPercentUsage();
-            return percentUsage >= highWaterMark;
-        }
+        return caclPercentUsage() >= highWaterMark;
     }
 
     public void addUsageListener(UsageListener listener) {
@@ -187,15 +184,11 @@ public abstract class Usage<T extends Usage> implements Service {
     }
 
     public int getPercentUsage() {
-        synchronized (usageMutex) {
-            return percentUsage;
-        }
+        return percentUsage;
     }
 
     public int getPercentUsageMinDelta() {
-        synchronized (usageMutex) {
-            return percentUsageMinDelta;
-        }
+        return percentUsageMinDelta;
     }
 
     /**
@@ -224,12 +217,15 @@ public abstract class Usage<T extends Usage> implements Service {
     }
 
     protected void setPercentUsage(int value) {
+        int oldValue;
         synchronized (usageMutex) {
-            int oldValue = percentUsage;
+            oldValue = percentUsage;
             percentUsage = value;
-            if (oldValue != value) {
-                fireEvent(oldValue, value);
-            }
+        }
+        // listeners and waiters are told outside the lock so that they can't
+        // hold up the threads changing the usage
+        if (oldValue != value) {
+            fireEvent(oldValue, value);
         }
     }
 
@@ -250,7 +246,8 @@ public abstract class Usage<T extends Usage> implements Service {
             if (oldPercentUsage >= 100 && newPercentUsage < 100) {
                 synchronized (usageMutex) {
                     usageMutex.notifyAll();
-                    if (!callbacks.isEmpty()) {
+                    // the usage may have gone back up since the event
+                    if (!callbacks.isEmpty() && percentUsage < 100) {
                         for (Iterator<Runnable> iter = new ArrayList<Runnable>(callbacks).iterator(); iter.hasNext();) {
                             Runnable callback = iter.next();
                             getExecutor().execute(callback);
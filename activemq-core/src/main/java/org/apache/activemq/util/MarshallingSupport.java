@@ -20,6 +20,7 @@ import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.UTFDataFormatException;
 import java.util.ArrayList;
@@ -268,117 +269,146 @@ public final class MarshallingSupport {
 
     public static void writeUTF8(DataOutput dataOut, String text) throws IOException {
         if (text != null) {
-            int strlen = text.length();
-            int utflen = 0;
-            char[] charr = new char[strlen];
-            int c = 0;
-            int count = 0;
-
-            text.getChars(0, strlen, charr, 0);
-
-            for (int i = 0; i < strlen; i++) {
-                c = charr[i];
-                if ((c >= 0x0001) && (c <= 0x007F)) {
-                    utflen++;
-                } else if (c > 0x07FF) {
-                    utflen += 3;
-                } else {
-                    utflen += 2;
-                }
-            }
-            // TODO diff: Sun code - removed
-            byte[] bytearr = new byte[utflen + 4]; // TODO diff: Sun code
-            bytearr[count++] = (byte)((utflen >>> 24) & 0xFF); // TODO diff:
-            // Sun code
-            bytearr[count++] = (byte)((utflen >>> 16) & 0xFF); // TODO diff:
-            // Sun code
-            bytearr[count++] = (byte)((utflen >>> 8) & 0xFF);
-            bytearr[count++] = (byte)((utflen >>> 0) & 0xFF);
-            for (int i = 0; i < strlen; i++) {
-                c = charr[i];
-                if ((c >= 0x0001) && (c <= 0x007F)) {
-                    bytearr[count++] = (byte)c;
-                } else if (c > 0x07FF) {
-                    bytearr[count++] = (byte)(0xE0 | ((c >> 12) & 0x0F));
-                    bytearr[count++] = (byte)(0x80 | ((c >> 6) & 0x3F));
-                    bytearr[count++] = (byte)(0x80 | ((c >> 0) & 0x3F));
-                } else {
-                    bytearr[count++] = (byte)(0xC0 | ((c >> 6) & 0x1F));
-                    bytearr[count++] = (byte)(0x80 | ((c >> 0) & 0x3F));
-                }
-            }
-            dataOut.write(bytearr);
-
+            ByteSequence encoded = encodeUTF8(text);
+            dataOut.write(encoded.getData(), encoded.getOffset(), encoded.getLength());
         } else {
             dataOut.writeInt(-1);
         }
     }
 
+    /**
+     * Encodes a string in the format written by
+     * {@link #writeUTF8(DataOutput, String)}, the length followed by the
+     * characters, straight into the returned byte sequence.
+     */
+    public static ByteSequence encodeUTF8(String text) {
+        int strlen = text.length();
+        int utflen = 0;
+        int c = 0;
+        int count = 0;
+
+        for (int i = 0; i < strlen; i++) {
+            c = text.charAt(i);
+            if ((c >= 0x0001) && (c <= 0x007F)) {
+                utflen++;
+            } else if (c > 0x07FF) {
+                utflen += 3;
+            } else {
+                utflen += 2;
+            }
+        }
+        byte[] bytearr = new byte[utflen + 4];
+        bytearr[count++] = (byte)((utflen >>> 24) & 0xFF);
+        bytearr[count++] = (byte)((utflen >>> 16) & 0xFF);
+        bytearr[count++] = (byte)((utflen >>> 8) & 0xFF);
+        bytearr[count++] = (byte)((utflen >>> 0) & 0xFF);
+        for (int i = 0; i < strlen; i++) {
+            c = text.charAt(i);
+            if ((c >= 0x0001) && (c <= 0x007F)) {
+                bytearr[count++] = (byte)c;
+            } else if (c > 0x07FF) {
+                bytearr[count++] = (byte)(0xE0 | ((c >> 12) & 0x0F));
+                bytearr[count++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                bytearr[count++] = (byte)(0x80 | ((c >> 0) & 0x3F));
+            } else {
+                bytearr[count++] = (byte)(0xC0 | ((c >> 6) & 0x1F));
+                bytearr[count++] = (byte)(0x80 | ((c >> 0) & 0x3F));
+            }
+        }
+        return new ByteSequence(bytearr, 0, bytearr.length);
+    }
+
     public static String readUTF8(DataInput dataIn) throws IOException {
         int utflen = dataIn.readInt(); // TODO diff: Sun code
         if (utflen > -1) {
-            StringBuffer str = new StringBuffer(utflen);
             byte bytearr[] = new byte[utflen];
-            int c;
-            int char2;
-            int char3;
-            int count = 0;
-
             dataIn.readFully(bytearr, 0, utflen);
+            return decodeUTF8(bytearr, 0, utflen);
+        } else {
+            return null;
+        }
+    }
 
-            while (count < utflen) {
-                c = bytearr[count] & 0xff;
-                switch (c >> 4) {
-                case 0:
-                case 1:
-                case 2:
-                case 3:
-                case 4:
-                case 5:
-                case 6:
-                case 7:
-                    /* 0xxxxxxx */
-                    count++;
-                    str.append((char)c);
-                    break;
-                case 12:
-                case 13:
-                    /* 110x xxxx 10xx xxxx */
-                    count += 2;
-                    if (count > utflen) {
-                        throw new UTFDataFormatException();
-                    }
-                    char2 = bytearr[count - 1];
-                    if ((char2 & 0xC0) != 0x80) {
-                        throw new UTFDataFormatException();
-                    }
-                    str.append((char)(((c & 0x1F) << 6) | (char2 & 0x3F)));
-                    break;
-                case 14:
-                    /* 1110 xxxx 10xx xxxx 10xx xxxx */
-                    count += 3;
-                    if (count > utflen) {
-                        throw new UTFDataFormatException();
-                    }
-                    char2 = bytearr[count - 2]; // TODO diff: Sun code
-                    char3 = bytearr[count - 1]; // TODO diff: Sun code
-                    if (((char2 & 0xC0) != 0x80) || ((char3 & 0xC0) != 0x80)) {
-                        throw new UTFDataFormatException();
-                    }
-                    str.append((char)(((c & 0x0F) << 12) | ((char2 & 0x3F) << 6) | ((char3 & 0x3F) << 0)));
-                    break;
-                default:
-                    /* 10xx xxxx, 1111 xxxx */
-                    throw new UTFDataFormatException();
-                }
+    /**
+     * Reads a string written by {@link #writeUTF8(DataOutput, String)}
+     * straight from the bytes of the sequence.
+     */
+    public static String readUTF8(ByteSequence sequence) throws IOException {
+        if (sequence.getLength() < 4) {
+            throw new EOFException();
+        }
+        byte[] data = sequence.getData();
+        int offset = sequence.getOffset();
+        int utflen = ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+        if (utflen > -1) {
+            if (utflen > sequence.getLength() - 4) {
+                throw new EOFException();
             }
-            // The number of chars produced may be less than utflen
-            return new String(str);
+            return decodeUTF8(data, offset + 4, utflen);
         } else {
             return null;
         }
     }
 
+    private static String decodeUTF8(byte[] bytearr, int offset, int utflen) throws UTFDataFormatException {
+        char[] chars = new char[utflen];
+        int c;
+        int char2;
+        int char3;
+        int count = offset;
+        int end = offset + utflen;
+        int chararrCount = 0;
+
+        while (count < end) {
+            c = bytearr[count] & 0xff;
+            switch (c >> 4) {
+            case 0:
+            case 1:
+            case 2:
+            case 3:
+            case 4:
+            case 5:
+            case 6:
+            case 7:
+                /* 0xxxxxxx */
+                count++;
+                chars[chararrCount++] = (char)c;
+                break;
+            case 12:
+            case 13:
+                /* 110x xxxx 10xx xxxx */
+                count += 2;
+                if (count > end) {
+                    throw new UTFDataFormatException();
+                }
+                char2 = bytearr[count - 1];
+                if ((char2 & 0xC0) != 0x80) {
+                    throw new UTFDataFormatException();
+                }
+                chars[chararrCount++] = (char)(((c & 0x1F) << 6) | (char2 & 0x3F));
+                break;
+            case 14:
+                /* 1110 xxxx 10xx xxxx 10xx xxxx */
+                count += 3;
+                if (count > end) {
+                    throw new UTFDataFormatException();
+                }
+                char2 = bytearr[count - 2]; // TODO diff: Sun code
+                char3 = bytearr[count - 1]; // TODO diff: Sun code
+                if (((char2 & 0xC0) != 0x80) || ((char3 & 0xC0) != 0x80)) {
+                    throw new UTFDataFormatException();
+                }
+                chars[chararrCount++] = (char)(((c & 0x0F) << 12) | ((char2 & 0x3F) << 6) | ((char3 & 0x3F) << 0));
+                break;
+            default:
+                /* 10xx xxxx, 1111 xxxx */
+                throw new UTFDataFormatException();
+            }
+        }
+        // The number of chars produced may be less than utflen
+        return new String(chars, 0, chararrCount);
+    }
+
     public static String propertiesToString(Properties props) throws IOException {
         String result = "";
         if (props != null) {
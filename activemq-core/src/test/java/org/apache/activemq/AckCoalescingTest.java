@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.MessageAckBatch;
+import org.apache.activemq.util.Wait;
+
+public class AckCoalescingTest extends TcpBrokerTestSupport {
+
+    public void testAcksOfManyConsumersAreSent() throws Exception {
+        ((ActiveMQConnectionFactory) connectionFactory).setAckCoalescingInterval(50);
+        connection = (ActiveMQConnection) createConnection();
+        assertEquals(50, connection.getAckCoalescingInterval());
+        connection.start();
+        ActiveMQDestination other = createDestination("other");
+        send(destination, 20);
+        send(other, 20);
+
+        receive(connection.createSession(false, Session.AUTO_ACKNOWLEDGE), destination, 20);
+        receive(connection.createSession(false, Session.AUTO_ACKNOWLEDGE), other, 20);
+        assertDequeued(destination, 20);
+        assertDequeued(other, 20);
+    }
+
+    public void testAcksAreSentOneByOneOverAnOlderProtocol() throws Exception {
+        String uri = broker.getTransportConnectors().get(0).getPublishableConnectString();
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(uri + "?wireFormat.version=9");
+        factory.setAckCoalescingInterval(50);
+        connection = (ActiveMQConnection) factory.createConnection();
+        connection.start();
+        assertTrue(connection.getProtocolVersion() < MessageAckBatch.MINIMUM_VERSION);
+        ActiveMQDestination other = createDestination("other");
+        send(destination, 20);
+        send(other, 20);
+
+        receive(connection.createSession(false, Session.AUTO_ACKNOWLEDGE), destination, 20);
+        receive(connection.createSession(false, Session.AUTO_ACKNOWLEDGE), other, 20);
+        assertDequeued(destination, 20);
+        assertDequeued(other, 20);
+    }
+
+    public void testPendingAcksAreSentOnClose() throws Exception {
+        ((ActiveMQConnectionFactory) connectionFactory).setAckCoalescingInterval(60000);
+        connection = (ActiveMQConnection) createConnection();
+        connection.start();
+        send(destination, 10);
+
+        receive(connection.createSession(false, Session.AUTO_ACKNOWLEDGE), destination, 10);
+        connection.close();
+        connection = null;
+
+        Connection next = createConnection();
+        try {
+            next.start();
+            MessageConsumer consumer = next.createSession(false, Session.AUTO_ACKNOWLEDGE).createConsumer(destination);
+            assertNull("acked messages were redelivered", consumer.receive(500));
+        } finally {
+            next.close();
+        }
+    }
+
+    public void testPendingAcksAreSentOnCommit() throws Exception {
+        ((ActiveMQConnectionFactory) connectionFactory).setAckCoalescingInterval(60000);
+        connection = (ActiveMQConnection) createConnection();
+        connection.start();
+        send(destination, 10);
+
+        Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+        receive(session, destination, 10);
+        session.commit();
+        assertDequeued(destination, 10);
+    }
+
+    private void send(ActiveMQDestination destination, int count) throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(destination);
+        for (int i = 0; i < count; i++) {
+            producer.send(session.createTextMessage("message " + i));
+        }
+        session.close();
+    }
+
+    private void receive(Session session, ActiveMQDestination destination, int count) throws Exception {
+        MessageConsumer consumer = session.createConsumer(destination);
+        for (int i = 0; i < count; i++) {
+            assertNotNull("message " + i + " was not received", consumer.receive(5000));
+        }
+    }
+
+    private void assertDequeued(final ActiveMQDestination destination, final long count) throws Exception {
+        assertTrue("acks reached the broker", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return broker.getDestination(destination).getDestinationStatistics().getDequeues().getCount() == count;
+            }
+        }, 5000));
+    }
+}
@@ -18,7 +18,11 @@ package org.apache.activemq;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
 
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
 import javax.jms.Queue;
 import javax.jms.Session;
 
@@ -138,4 +142,47 @@ public class ActiveMQInputStreamTest extends TestCase {
 
         connection.close();
     }
+
+    public void testResumeAfterPartialRead() throws Exception {
+
+        ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(connectionUri);
+        ActiveMQConnection connection = (ActiveMQConnection) connectionFactory.createConnection();
+        connection.start();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        Queue destination = session.createQueue(DESTINATION + "?producer.maxChunksInFlight=2");
+
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(ActiveMQOutputStream.AMQ_STREAM_CHUNK_SIZE, 1);
+        ActiveMQOutputStream out = (ActiveMQOutputStream) connection.createOutputStream(destination, properties,
+                DeliveryMode.NON_PERSISTENT, Message.DEFAULT_PRIORITY, Message.DEFAULT_TIME_TO_LIVE);
+        assertEquals(2, out.getMaxChunksInFlight());
+        for (int i = 0; i < 3 * 1024; ++i) {
+            out.write(i);
+        }
+        out.close();
+
+        // reads the first chunk and part of the second
+        InputStream in = connection.createInputStream(destination);
+        for (int i = 0; i < 1024 + 10; ++i) {
+            assertEquals(i & 0xff, in.read());
+        }
+        in.close();
+
+        ActiveMQInputStream resumed = (ActiveMQInputStream) connection.createInputStream(destination);
+        resumed.setResumable(true);
+        assertEquals(1024 & 0xff, resumed.read());
+        assertEquals(1024 + 1, resumed.getPosition());
+        int count = 1;
+        int b;
+        while ((b = resumed.read()) != -1) {
+            assertEquals((1024 + count) & 0xff, b);
+            ++count;
+        }
+        assertEquals(2 * 1024, count);
+        assertEquals(3 * 1024, resumed.getPosition());
+        assertFalse(resumed.getJMSProperties().containsKey(ActiveMQOutputStream.AMQ_STREAM_OFFSET));
+        resumed.close();
+
+        connection.close();
+    }
 }
@@ -22,6 +22,9 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import junit.framework.TestCase;
 import org.apache.activemq.broker.region.MessageReference;
 import org.apache.activemq.command.ActiveMQMessage;
@@ -127,6 +130,91 @@ public class ActiveMQMessageAuditTest extends TestCase {
         }
     }
 
+    public void testRollbackString() {
+        ActiveMQMessageAudit audit = new ActiveMQMessageAudit();
+        IdGenerator idGen = new IdGenerator();
+        String id = idGen.generateId();
+        assertFalse(audit.isDuplicate(id));
+        assertTrue(audit.isDuplicate(id));
+        audit.rollback(id);
+        assertFalse(audit.isDuplicate(id));
+    }
+
+    public void testConcurrentProducers() throws Exception {
+        final ActiveMQMessageAudit audit = new ActiveMQMessageAudit();
+        final int producers = 8;
+        final int count = 10000;
+        final AtomicInteger duplicates = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(producers * 2);
+        for (int p = 0; p < producers; p++) {
+            final ProducerId pid = new ProducerId();
+            pid.setConnectionId("test");
+            pid.setSessionId(0);
+            pid.setValue(p);
+            // two threads see the same messages of each producer, between
+            // them every message is seen once before
+            for (int t = 0; t < 2; t++) {
+                new Thread() {
+                    public void run() {
+                        for (int i = 0; i < count; i++) {
+                            MessageId id = new MessageId(pid, i);
+                            if (audit.isDuplicate(id)) {
+                                duplicates.incrementAndGet();
+                            }
+                        }
+                        done.countDown();
+                    }
+                }.start();
+            }
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(producers * count, duplicates.get());
+        assertEquals(producers, audit.getProducerCount());
+    }
+
+    public void testMemoryBound() {
+        ActiveMQMessageAudit audit = new ActiveMQMessageAudit();
+        for (int j = 0; j < 10; j++) {
+            assertFalse(audit.isDuplicate(createMessageId(j, 0)));
+        }
+        long perProducer = audit.getMemoryUsage() / 10;
+        assertTrue(perProducer > 0);
+
+        audit.setMaximumMemory(perProducer * 4);
+        assertEquals(4, audit.getProducerCount());
+        assertTrue(audit.getMemoryUsage() <= audit.getMaximumMemory());
+        // the most recently seen producers are kept
+        assertTrue(audit.isDuplicate(createMessageId(9, 0)));
+        assertFalse(audit.isDuplicate(createMessageId(0, 0)));
+        assertEquals(4, audit.getProducerCount());
+
+        audit.setMaximumNumberOfProducersToTrack(2);
+        assertEquals(2, audit.getProducerCount());
+        audit.clear();
+        assertEquals(0, audit.getMemoryUsage());
+    }
+
+    public void testLeastRecentlyUsedProducerIsForgotten() {
+        ActiveMQMessageAudit audit = new ActiveMQMessageAudit(2048, 3);
+        for (int j = 0; j < 3; j++) {
+            assertFalse(audit.isDuplicate(createMessageId(j, 0)));
+        }
+        // seen again, so producer 1 is now the least recently used
+        assertFalse(audit.isDuplicate(createMessageId(0, 1)));
+        assertFalse(audit.isDuplicate(createMessageId(3, 0)));
+        assertEquals(3, audit.getProducerCount());
+        assertTrue(audit.isDuplicate(createMessageId(0, 0)));
+        assertFalse(audit.isDuplicate(createMessageId(1, 0)));
+    }
+
+    private MessageId createMessageId(long producer, long sequence) {
+        ProducerId pid = new ProducerId();
+        pid.setConnectionId("test");
+        pid.setSessionId(0);
+        pid.setValue(producer);
+        return new MessageId(pid, sequence);
+    }
+
     public void testSerialization() throws Exception {
         ActiveMQMessageAuditNoSync audit = new ActiveMQMessageAuditNoSync();
 
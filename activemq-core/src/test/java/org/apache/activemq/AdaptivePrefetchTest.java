@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.broker.region.AbstractRegion;
+import org.apache.activemq.broker.region.RegionBroker;
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.util.Wait;
+
+public class AdaptivePrefetchTest extends TcpBrokerTestSupport {
+
+    public void testSlowConsumerPrefetchShrinks() throws Exception {
+        ((ActiveMQConnectionFactory) connectionFactory).getPrefetchPolicy().setTargetInFlightTime(200);
+        final ActiveMQMessageConsumer consumer = consumeSlowly();
+
+        // each message takes at least 10ms, so at most 100 msg/s and 200ms of
+        // work is at most 20 messages; 150 messages span several reports
+        assertTrue("prefetch shrank: " + consumer.getPrefetchNumber(), consumer.getPrefetchNumber() < 200);
+        assertTrue("broker and consumer agree", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return consumer.getPrefetchNumber() == getSubscription().getPrefetchSize();
+            }
+        }, 5000));
+    }
+
+    public void testIdleConsumerIsNotSeenAsSlow() throws Exception {
+        ((ActiveMQConnectionFactory) connectionFactory).getPrefetchPolicy().setTargetInFlightTime(200);
+        connection = (ActiveMQConnection) createConnection();
+        connection.start();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(destination);
+        ActiveMQMessageConsumer consumer = (ActiveMQMessageConsumer) session.createConsumer(destination);
+
+        // messages trickle in and are handled at once, the consumer spends
+        // nearly all of its time waiting in receive for the next one
+        for (int i = 0; i < 30; i++) {
+            producer.send(session.createTextMessage("message " + i));
+            assertNotNull(consumer.receive(5000));
+            assertNull(consumer.receive(20));
+        }
+
+        assertTrue("prefetch grew", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return getSubscription().getPrefetchSize() > ActiveMQPrefetchPolicy.DEFAULT_QUEUE_PREFETCH;
+            }
+        }, 5000));
+    }
+
+    public void testPrefetchIsFixedByDefault() throws Exception {
+        ActiveMQMessageConsumer consumer = consumeSlowly();
+
+        assertEquals(ActiveMQPrefetchPolicy.DEFAULT_QUEUE_PREFETCH, consumer.getPrefetchNumber());
+        assertEquals(ActiveMQPrefetchPolicy.DEFAULT_QUEUE_PREFETCH, getSubscription().getPrefetchSize());
+    }
+
+    private ActiveMQMessageConsumer consumeSlowly() throws Exception {
+        connection = (ActiveMQConnection) createConnection();
+        connection.start();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(destination);
+        for (int i = 0; i < 300; i++) {
+            producer.send(session.createTextMessage("message " + i));
+        }
+        ActiveMQMessageConsumer consumer = (ActiveMQMessageConsumer) session.createConsumer(destination);
+        for (int i = 0; i < 150; i++) {
+            assertNotNull(consumer.receive(5000));
+            // the work done on each message, counted as busy time
+            Thread.sleep(10);
+        }
+        return consumer;
+    }
+
+    private Subscription getSubscription() throws Exception {
+        RegionBroker regionBroker = (RegionBroker) broker.getRegionBroker();
+        AbstractRegion region = (AbstractRegion) regionBroker.getQueueRegion();
+        assertEquals(1, region.getSubscriptions().size());
+        return region.getSubscriptions().values().iterator().next();
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.IllegalStateException;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+public class InlineListenerDispatchTest extends TcpBrokerTestSupport {
+
+    protected ConnectionFactory createConnectionFactory() throws Exception {
+        ActiveMQConnectionFactory factory = (ActiveMQConnectionFactory) super.createConnectionFactory();
+        factory.setInlineListenerDispatch(true);
+        factory.setSessionDispatchBatchSize(10);
+        return factory;
+    }
+
+    public void testSingleListenerRunsOnTransportThread() throws Exception {
+        connection = (ActiveMQConnection) createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ThreadRecordingListener listener = new ThreadRecordingListener(10);
+        session.createConsumer(destination).setMessageListener(listener);
+        connection.start();
+
+        send(10);
+        assertTrue(listener.received.await(5, TimeUnit.SECONDS));
+        for (String thread : listener.threads) {
+            assertTrue(thread, thread.startsWith("ActiveMQ Transport"));
+        }
+    }
+
+    public void testSessionThreadIsUsedWithManyConsumers() throws Exception {
+        connection = (ActiveMQConnection) createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ThreadRecordingListener listener = new ThreadRecordingListener(10);
+        session.createConsumer(destination).setMessageListener(listener);
+        MessageConsumer other = session.createConsumer(createDestination("other"));
+        connection.start();
+
+        send(10);
+        assertTrue(listener.received.await(5, TimeUnit.SECONDS));
+        for (String thread : listener.threads) {
+            assertTrue(thread, thread.startsWith("ActiveMQ Session"));
+        }
+        other.close();
+    }
+
+    public void testSyncSendFromInlineListenerIsNotLost() throws Exception {
+        connection = (ActiveMQConnection) createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final MessageProducer replies = session.createProducer(createDestination("replies"));
+        final List<Exception> failures = new CopyOnWriteArrayList<Exception>();
+        final CountDownLatch first = new CountDownLatch(1);
+        final ThreadRecordingListener listener = new ThreadRecordingListener(2) {
+            public void onMessage(Message message) {
+                try {
+                    // a persistent send waits for the broker's response
+                    replies.send(message);
+                } catch (JMSException e) {
+                    failures.add(e);
+                }
+                super.onMessage(message);
+                first.countDown();
+            }
+        };
+        session.createConsumer(destination).setMessageListener(listener);
+        connection.start();
+
+        send(1);
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        send(1);
+        assertTrue(listener.received.await(5, TimeUnit.SECONDS));
+        assertTrue(failures.toString(), failures.isEmpty());
+        // the session went back to its own thread
+        assertTrue(listener.threads.get(0), listener.threads.get(0).startsWith("ActiveMQ Transport"));
+        assertTrue(listener.threads.get(1), listener.threads.get(1).startsWith("ActiveMQ Session"));
+
+        MessageConsumer consumer = session.createConsumer(createDestination("replies"));
+        for (int i = 0; i < 2; i++) {
+            assertNotNull("reply " + i + " was not received", consumer.receive(5000));
+        }
+    }
+
+    public void testReplyProducerIsClosedInsideInlineListener() throws Exception {
+        connection = (ActiveMQConnection) createConnection();
+        final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final List<Exception> failures = new CopyOnWriteArrayList<Exception>();
+        final ThreadRecordingListener listener = new ThreadRecordingListener(1) {
+            public void onMessage(Message message) {
+                try {
+                    MessageProducer replies = session.createProducer(createDestination("replies"));
+                    replies.send(message);
+                    // does not wait for the response of the send
+                    replies.close();
+                } catch (JMSException e) {
+                    failures.add(e);
+                }
+                super.onMessage(message);
+            }
+        };
+        session.createConsumer(destination).setMessageListener(listener);
+        connection.start();
+
+        send(1);
+        assertTrue(listener.received.await(5, TimeUnit.SECONDS));
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertTrue(listener.threads.get(0), listener.threads.get(0).startsWith("ActiveMQ Transport"));
+
+        MessageConsumer consumer = session.createConsumer(createDestination("replies"));
+        assertNotNull("reply was not received", consumer.receive(5000));
+    }
+
+    public void testOtherSyncRequestFromInlineListenerFails() throws Exception {
+        connection = (ActiveMQConnection) createConnection();
+        final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final List<Exception> failures = new CopyOnWriteArrayList<Exception>();
+        final ThreadRecordingListener listener = new ThreadRecordingListener(1) {
+            public void onMessage(Message message) {
+                try {
+                    // a temporary queue is created with a request to the broker
+                    session.createTemporaryQueue();
+                } catch (JMSException e) {
+                    failures.add(e);
+                }
+                super.onMessage(message);
+            }
+        };
+        session.createConsumer(destination).setMessageListener(listener);
+        connection.start();
+
+        send(1);
+        assertTrue(listener.received.await(5, TimeUnit.SECONDS));
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0) instanceof IllegalStateException);
+    }
+
+    private void send(int count) throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(destination);
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        for (int i = 0; i < count; i++) {
+            producer.send(session.createTextMessage("message " + i));
+        }
+        session.close();
+    }
+
+    static class ThreadRecordingListener implements MessageListener {
+        final List<String> threads = new CopyOnWriteArrayList<String>();
+        final CountDownLatch received;
+
+        ThreadRecordingListener(int count) {
+            received = new CountDownLatch(count);
+        }
+
+        public void onMessage(Message message) {
+            threads.add(Thread.currentThread().getName());
+            received.countDown();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+public class MessageRecyclingTest extends EmbeddedBrokerTestSupport {
+
+    private ActiveMQConnection connection;
+
+    protected void setUp() throws Exception {
+        bindAddress = "tcp://localhost:0";
+        super.setUp();
+    }
+
+    protected void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        super.tearDown();
+    }
+
+    protected ConnectionFactory createConnectionFactory() throws Exception {
+        return new ActiveMQConnectionFactory(broker.getTransportConnectors().get(0).getPublishableConnectString()
+                                             + "?wireFormat.messagePoolSize=16&wireFormat.internCacheSize=64");
+    }
+
+    public void testListenerSeesEveryMessageOnce() throws Exception {
+        connection = (ActiveMQConnection) createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final CountDownLatch received = new CountDownLatch(100);
+        final List<String> texts = new CopyOnWriteArrayList<String>();
+        final Set<Message> instances = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Message, Boolean>()));
+        session.createConsumer(destination).setMessageListener(new MessageListener() {
+            public void onMessage(Message message) {
+                try {
+                    texts.add(((TextMessage) message).getText());
+                } catch (JMSException e) {
+                    texts.add(e.toString());
+                }
+                instances.add(message);
+                received.countDown();
+            }
+        });
+        connection.start();
+
+        MessageProducer producer = session.createProducer(destination);
+        for (int i = 0; i < 100; i++) {
+            producer.send(session.createTextMessage("message " + i));
+        }
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertEquals("message " + i, texts.get(i));
+        }
+        assertTrue("messages were reused: " + instances.size(), instances.size() < 100);
+    }
+}
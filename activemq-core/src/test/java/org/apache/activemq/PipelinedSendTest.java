@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.BrokerPluginSupport;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.ProducerBrokerExchange;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.util.Wait;
+
+public class PipelinedSendTest extends TcpBrokerTestSupport {
+
+    protected BrokerService createBroker() throws Exception {
+        BrokerService answer = super.createBroker();
+        answer.setPlugins(new BrokerPlugin[] {new BrokerPluginSupport() {
+            public void send(ProducerBrokerExchange producerExchange, Message messageSend) throws Exception {
+                if (messageSend.getProperty("fail") != null) {
+                    throw new JMSException("rejected " + messageSend.getMessageId());
+                }
+                super.send(producerExchange, messageSend);
+            }
+        }});
+        return answer;
+    }
+
+    protected ConnectionFactory createConnectionFactory() throws Exception {
+        ActiveMQConnectionFactory factory = (ActiveMQConnectionFactory) super.createConnectionFactory();
+        factory.setProducerMaxInFlightSends(10);
+        return factory;
+    }
+
+    public void testPipelinedSends() throws Exception {
+        connection = (ActiveMQConnection) createConnection();
+        connection.start();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(destination);
+        assertEquals(10, producer.getMaxInFlightSends());
+
+        final AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < 100; i++) {
+            producer.send(session.createTextMessage("message " + i), new AsyncCallback() {
+                public void onSuccess() {
+                    completed.incrementAndGet();
+                }
+
+                public void onException(JMSException exception) {
+                }
+            });
+        }
+        producer.flush();
+        assertEquals(100, completed.get());
+
+        MessageConsumer consumer = session.createConsumer(destination);
+        for (int i = 0; i < 100; i++) {
+            TextMessage message = (TextMessage) consumer.receive(5000);
+            assertNotNull("message " + i + " was not received", message);
+            assertEquals("message " + i, message.getText());
+        }
+    }
+
+    public void testPipelinedSendsWithoutCallback() throws Exception {
+        connection = (ActiveMQConnection) createConnection();
+        connection.start();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(destination);
+
+        for (int i = 0; i < 100; i++) {
+            producer.send(session.createTextMessage("message " + i));
+            assertTrue(producer.getInFlightSends() <= 10);
+        }
+        producer.flush();
+        assertEquals(0, producer.getInFlightSends());
+
+        MessageConsumer consumer = session.createConsumer(destination);
+        for (int i = 0; i < 100; i++) {
+            TextMessage message = (TextMessage) consumer.receive(5000);
+            assertNotNull("message " + i + " was not received", message);
+            assertEquals("message " + i, message.getText());
+        }
+        assertNull(consumer.receiveNoWait());
+    }
+
+    public void testFailureIsThrownFromNextSend() throws Exception {
+        connection = (ActiveMQConnection) createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(destination);
+
+        TextMessage failing = session.createTextMessage("failing");
+        failing.setBooleanProperty("fail", true);
+        producer.send(failing);
+        final ActiveMQMessageProducer sent = producer;
+        assertTrue("the failed send completed", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return sent.getInFlightSends() == 0;
+            }
+        }));
+        try {
+            producer.send(session.createTextMessage("next"));
+            fail("the failed send should have been reported");
+        } catch (JMSException expected) {
+            assertTrue(expected.getMessage().indexOf("rejected") >= 0);
+        }
+        // reported once only
+        producer.send(session.createTextMessage("next"));
+        producer.flush();
+    }
+
+    public void testFailureIsThrownFromClose() throws Exception {
+        connection = (ActiveMQConnection) createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(destination);
+
+        TextMessage failing = session.createTextMessage("failing");
+        failing.setBooleanProperty("fail", true);
+        producer.send(failing);
+        try {
+            producer.close();
+            fail("the failed send should have been reported");
+        } catch (JMSException expected) {
+        }
+
+        // the producer is removed on the broker all the same
+        final Destination queue = broker.getRegionBroker().getDestinationMap().get(destination);
+        assertTrue("producer was removed from the broker", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return queue.getDestinationStatistics().getProducers().getCount() == 0;
+            }
+        }));
+    }
+
+    public void testFailedFlushDoesNotStopConnectionClose() throws Exception {
+        connection = (ActiveMQConnection) createConnection();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(destination);
+
+        TextMessage failing = session.createTextMessage("failing");
+        failing.setBooleanProperty("fail", true);
+        producer.send(failing);
+        try {
+            connection.close();
+            fail("the failed send should have been reported");
+        } catch (JMSException expected) {
+        }
+        assertTrue(connection.isClosed());
+        assertTrue("connection was removed from the broker", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return broker.getRegionBroker().getClients().length == 0;
+            }
+        }));
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.MessageBatch;
+
+public class ProducerBatchTest extends TcpBrokerTestSupport {
+
+    protected boolean isPersistent() {
+        return true;
+    }
+
+    public void testSendBatch() throws Exception {
+        connection = (ActiveMQConnection) createConnection();
+        connection.start();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(destination);
+        List<Message> messages = new ArrayList<Message>();
+        for (int i = 0; i < 10; i++) {
+            messages.add(session.createTextMessage("message " + i));
+        }
+        producer.sendBatch(messages);
+
+        assertReceived(session, 0, 10);
+    }
+
+    public void testSendBatchOverAnOlderProtocol() throws Exception {
+        String uri = broker.getTransportConnectors().get(0).getPublishableConnectString();
+        connection = (ActiveMQConnection) new ActiveMQConnectionFactory(uri + "?wireFormat.version=9").createConnection();
+        connection.start();
+        assertTrue(connection.getProtocolVersion() < MessageBatch.MINIMUM_VERSION);
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(destination);
+        List<Message> messages = new ArrayList<Message>();
+        for (int i = 0; i < 10; i++) {
+            messages.add(session.createTextMessage("message " + i));
+        }
+        producer.sendBatch(messages);
+
+        assertReceived(session, 0, 10);
+    }
+
+    public void testBatchedMessagesAreNotLeftInATransaction() throws Exception {
+        connection = (ActiveMQConnection) createConnection();
+        connection.start();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(destination);
+        List<Message> messages = new ArrayList<Message>();
+        for (int i = 0; i < 3; i++) {
+            messages.add(session.createTextMessage("message " + i));
+        }
+        producer.sendBatch(messages);
+
+        MessageConsumer consumer = session.createConsumer(destination);
+        for (int i = 0; i < 3; i++) {
+            ActiveMQMessage message = (ActiveMQMessage) consumer.receive(5000);
+            assertNotNull("message " + i + " was not received", message);
+            assertNull(message.getTransactionId());
+        }
+        consumer.close();
+    }
+
+    public void testLingerBatching() throws Exception {
+        ((ActiveMQConnectionFactory) connectionFactory).setProducerBatchSize(5);
+        ((ActiveMQConnectionFactory) connectionFactory).setProducerBatchLinger(50);
+        connection = (ActiveMQConnection) createConnection();
+        connection.start();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(destination);
+        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        assertEquals(5, producer.getBatchSize());
+        for (int i = 0; i < 12; i++) {
+            producer.send(session.createTextMessage("message " + i));
+        }
+
+        // the last two are sent once the linger time has passed
+        assertReceived(session, 0, 12);
+    }
+
+    public void testBatchedMessagesAreDroppedOnRollback() throws Exception {
+        ((ActiveMQConnectionFactory) connectionFactory).setProducerBatchSize(5);
+        ((ActiveMQConnectionFactory) connectionFactory).setProducerBatchLinger(0);
+        connection = (ActiveMQConnection) createConnection();
+        connection.start();
+        Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(destination);
+        for (int i = 0; i < 3; i++) {
+            producer.send(session.createTextMessage("rolled back " + i));
+        }
+        session.rollback();
+        for (int i = 0; i < 2; i++) {
+            producer.send(session.createTextMessage("message " + i));
+        }
+        session.commit();
+
+        assertReceived(connection.createSession(false, Session.AUTO_ACKNOWLEDGE), 0, 2);
+    }
+
+    private void assertReceived(Session session, int first, int count) throws Exception {
+        MessageConsumer consumer = session.createConsumer(destination);
+        for (int i = first; i < first + count; i++) {
+            TextMessage message = (TextMessage) consumer.receive(5000);
+            assertNotNull("message " + i + " was not received", message);
+            assertEquals("message " + i, message.getText());
+        }
+        assertNull(consumer.receive(100));
+        consumer.close();
+    }
+}
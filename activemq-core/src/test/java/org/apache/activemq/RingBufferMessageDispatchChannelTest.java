@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.MessageDispatch;
+
+public class RingBufferMessageDispatchChannelTest extends TestCase {
+
+    private RingBufferMessageDispatchChannel channel = new RingBufferMessageDispatchChannel(4);
+
+    public void testFifoOrderThroughOverflow() throws Exception {
+        channel.start();
+        MessageDispatch[] dispatches = create(10);
+        for (MessageDispatch md : dispatches) {
+            channel.enqueue(md);
+        }
+        assertEquals(10, channel.size());
+        for (MessageDispatch md : dispatches) {
+            assertSame(md, channel.dequeueNoWait());
+        }
+        assertNull(channel.dequeueNoWait());
+        assertTrue(channel.isEmpty());
+    }
+
+    public void testEnqueueFirstIsReadFirst() throws Exception {
+        channel.start();
+        MessageDispatch[] dispatches = create(3);
+        channel.enqueue(dispatches[2]);
+        channel.enqueueFirst(dispatches[1]);
+        channel.enqueueFirst(dispatches[0]);
+        assertSame(dispatches[0], channel.peek());
+        assertSame(dispatches[0], channel.dequeue(0));
+        assertSame(dispatches[1], channel.dequeue(0));
+        assertSame(dispatches[2], channel.dequeue(0));
+    }
+
+    public void testNothingDequeuedWhenStopped() throws Exception {
+        channel.enqueue(new MessageDispatch());
+        assertNull(channel.dequeueNoWait());
+        assertNull(channel.dequeue(10));
+        channel.start();
+        assertNotNull(channel.dequeueNoWait());
+    }
+
+    public void testBlockedDequeueIsWokenByEnqueue() throws Exception {
+        channel.start();
+        final MessageDispatch md = new MessageDispatch();
+        final CountDownLatch received = new CountDownLatch(1);
+        Thread consumer = new Thread() {
+            public void run() {
+                try {
+                    if (channel.dequeue(-1) == md) {
+                        received.countDown();
+                    }
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        consumer.start();
+        Thread.sleep(50);
+        channel.enqueue(md);
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testBlockedDequeueIsWokenByClose() throws Exception {
+        channel.start();
+        final CountDownLatch returned = new CountDownLatch(1);
+        Thread consumer = new Thread() {
+            public void run() {
+                try {
+                    if (channel.dequeue(-1) == null) {
+                        returned.countDown();
+                    }
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        consumer.start();
+        Thread.sleep(50);
+        channel.close();
+        assertTrue(returned.await(5, TimeUnit.SECONDS));
+        assertTrue(channel.isClosed());
+    }
+
+    public void testRemoveAllDoesNotWaitForABlockedDequeue() throws Exception {
+        channel.start();
+        final CountDownLatch returned = new CountDownLatch(1);
+        Thread consumer = new Thread() {
+            public void run() {
+                try {
+                    channel.dequeue(60000);
+                    returned.countDown();
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        consumer.start();
+        Thread.sleep(50);
+        long start = System.currentTimeMillis();
+        assertTrue(channel.removeAll().isEmpty());
+        assertNull(channel.peek());
+        assertTrue("did not wait for the receive to time out", System.currentTimeMillis() - start < 5000);
+        channel.close();
+        assertTrue(returned.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testRemoveAll() throws Exception {
+        MessageDispatch[] dispatches = create(6);
+        for (MessageDispatch md : dispatches) {
+            channel.enqueue(md);
+        }
+        List<MessageDispatch> all = channel.removeAll();
+        assertEquals(6, all.size());
+        for (int i = 0; i < dispatches.length; i++) {
+            assertSame(dispatches[i], all.get(i));
+        }
+        assertEquals(0, channel.size());
+    }
+
+    public void testConcurrentProducersKeepTheirOrder() throws Exception {
+        // small enough for the producers to keep spilling into the overflow
+        channel = new RingBufferMessageDispatchChannel(4);
+        channel.start();
+        final int producers = 4;
+        final int count = 10000;
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            new Thread() {
+                public void run() {
+                    for (int i = 0; i < count; i++) {
+                        MessageDispatch md = new MessageDispatch();
+                        md.setRedeliveryCounter(producer * count + i);
+                        channel.enqueue(md);
+                    }
+                }
+            }.start();
+        }
+        int[] next = new int[producers];
+        int received = 0;
+        while (received < producers * count) {
+            MessageDispatch md = channel.dequeue(5000);
+            assertNotNull("received " + received, md);
+            int producer = md.getRedeliveryCounter() / count;
+            assertEquals("order of producer " + producer, next[producer]++, md.getRedeliveryCounter() % count);
+            received++;
+        }
+        assertTrue(channel.isEmpty());
+    }
+
+    private MessageDispatch[] create(int count) {
+        MessageDispatch[] result = new MessageDispatch[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new MessageDispatch();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.HeaderMessageEvaluationContext;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.selector.SelectorParser;
+import org.apache.activemq.store.memory.MemoryMessageStore;
+import org.apache.activemq.usage.MemoryUsage;
+
+public class EvictableMessageReferenceTest extends TestCase {
+
+    private static final int BODY_SIZE = 10 * 1024;
+
+    private final ActiveMQQueue destination = new ActiveMQQueue("TEST");
+    private final AtomicInteger loads = new AtomicInteger();
+    private MemoryMessageStore store;
+    private MemoryUsage memoryUsage;
+    private MessageBodyCache cache;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        store = new MemoryMessageStore(destination) {
+            public Message getMessage(MessageId identity) throws IOException {
+                loads.incrementAndGet();
+                // as if read back from disk
+                Message message = super.getMessage(identity);
+                return message != null ? message.copy() : null;
+            }
+        };
+        memoryUsage = new MemoryUsage();
+        memoryUsage.setLimit(1024 * 1024);
+        cache = new MessageBodyCache();
+    }
+
+    public void testBodiesPastTheLimitAreLetGo() throws Exception {
+        EvictableMessageReference[] refs = pageIn(4);
+        int size = refs[0].getSize();
+        cache.setLimit(size * 4);
+        for (EvictableMessageReference ref : refs) {
+            cache.add(ref, false);
+        }
+        assertEquals(0, cache.getEvictions());
+        cache.setLimit(size * 2 + size / 2);
+        cache.add(refs[3], false);
+
+        assertEquals(2, cache.getEvictions());
+        assertEquals(size * 2, cache.getSize());
+        assertTrue(refs[0].isBodyEvicted());
+        assertTrue(refs[1].isBodyEvicted());
+        assertFalse(refs[2].isBodyEvicted());
+        assertTrue("only the headers of evicted messages are counted", memoryUsage.getUsage() < size * 3);
+        assertNull(((ActiveMQTextMessage) refs[0].getMessageHardRef()).getText());
+    }
+
+    public void testEvictedBodiesAreReloaded() throws Exception {
+        EvictableMessageReference[] refs = pageIn(3);
+        cache.setLimit(Long.MAX_VALUE);
+        for (EvictableMessageReference ref : refs) {
+            cache.add(ref, false);
+        }
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertTrue(refs[1].isBodyEvicted());
+
+        refs[1].incrementRedeliveryCounter();
+        Message message = refs[1].getMessage();
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getReloads());
+        assertEquals(text(1), ((ActiveMQTextMessage) message).getText());
+        assertEquals(1, message.getRedeliveryCounter());
+        assertFalse(refs[1].isBodyEvicted());
+        assertEquals(refs[1].getSize(), cache.getSize());
+
+        assertSame(message, refs[1].getMessage());
+        assertEquals(1, loads.get());
+    }
+
+    public void testLockedBodiesAreKept() throws Exception {
+        EvictableMessageReference[] refs = pageIn(3);
+        cache.setLimit(refs[0].getSize() * 2);
+        assertTrue(refs[0].lock(LockOwner.HIGH_PRIORITY_LOCK_OWNER));
+        for (EvictableMessageReference ref : refs) {
+            cache.add(ref, false);
+        }
+        assertFalse(refs[0].isBodyEvicted());
+        assertTrue(refs[1].isBodyEvicted());
+        assertFalse(refs[2].isBodyEvicted());
+    }
+
+    public void testBodiesNotYetStoredAreKept() throws Exception {
+        EvictableMessageReference[] refs = pageIn(3);
+        cache.setLimit(refs[0].getSize() * 2);
+        cache.storeAddPending(refs[0].getMessageId());
+        for (EvictableMessageReference ref : refs) {
+            cache.add(ref, false);
+        }
+        assertFalse(refs[0].isBodyEvicted());
+        assertTrue(refs[1].isBodyEvicted());
+
+        cache.storeAddCompleted(refs[0].getMessageId());
+        refs[1].getMessage();
+        assertTrue(refs[0].isBodyEvicted());
+    }
+
+    public void testDroppingReleasesTheMemory() throws Exception {
+        EvictableMessageReference[] refs = pageIn(3);
+        cache.setLimit(refs[0].getSize() * 2);
+        for (EvictableMessageReference ref : refs) {
+            cache.add(ref, false);
+        }
+        assertTrue(memoryUsage.getUsage() > 0);
+        for (EvictableMessageReference ref : refs) {
+            ref.drop();
+        }
+        assertEquals(0, cache.getSize());
+        assertEquals(0, memoryUsage.getUsage());
+    }
+
+    public void testSelectorsOnlyNeedTheHeaders() throws Exception {
+        EvictableMessageReference[] refs = pageIn(2);
+        cache.setLimit(Long.MAX_VALUE);
+        for (EvictableMessageReference ref : refs) {
+            cache.add(ref, false);
+        }
+        cache.clear();
+
+        BooleanExpression selector = SelectorParser.parse("color = 'red'");
+        MessageEvaluationContext context = new HeaderMessageEvaluationContext();
+        context.setMessageReference(refs[0]);
+        assertTrue(selector.matches(context));
+        context.setMessageReference(refs[1]);
+        assertFalse(selector.matches(context));
+        assertEquals(0, loads.get());
+    }
+
+    /**
+     * Stores the messages and pages them in the way a queue does
+     */
+    private EvictableMessageReference[] pageIn(int count) throws Exception {
+        EvictableMessageReference[] result = new EvictableMessageReference[count];
+        for (int i = 0; i < count; i++) {
+            ActiveMQTextMessage message = new ActiveMQTextMessage();
+            message.setMessageId(new MessageId("ID:producer:1:1:1", i + 1));
+            message.setDestination(destination);
+            message.setPersistent(true);
+            message.setText(text(i));
+            message.setStringProperty("color", i % 2 == 0 ? "red" : "blue");
+            message.setReadOnlyProperties(true);
+            message.setReadOnlyBody(true);
+            message.onSend();
+            store.addMessage(null, message.copy());
+
+            Message pagedIn = message.copy();
+            pagedIn.setMemoryUsage(memoryUsage);
+            pagedIn.incrementReferenceCount();
+            result[i] = new EvictableMessageReference(pagedIn, cache, store);
+        }
+        return result;
+    }
+
+    private String text(int i) {
+        StringBuilder builder = new StringBuilder(BODY_SIZE);
+        while (builder.length() < BODY_SIZE) {
+            builder.append(i);
+        }
+        return builder.toString();
+    }
+}
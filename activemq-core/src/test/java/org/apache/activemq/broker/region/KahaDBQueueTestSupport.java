@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import java.io.File;
+
+import javax.jms.Connection;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+import org.apache.activemq.util.Wait;
+
+/**
+ * A broker on a fresh KahaDB store paging in a few messages of a queue at a
+ * time, for tests of what a queue does with the messages it has not paged
+ * in. The connection is started before a test runs.
+ */
+public abstract class KahaDBQueueTestSupport extends TestCase {
+
+    protected static final int PAGE_SIZE = 10;
+
+    protected final ActiveMQQueue destination = new ActiveMQQueue("TEST");
+    protected BrokerService broker;
+    protected Connection connection;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        broker = new BrokerService();
+        broker.setUseJmx(false);
+        broker.setDeleteAllMessagesOnStartup(true);
+        KahaDBPersistenceAdapter persistenceAdapter = new KahaDBPersistenceAdapter();
+        persistenceAdapter.setDirectory(new File("target/activemq-data/" + getClass().getSimpleName()));
+        configurePersistenceAdapter(persistenceAdapter);
+        broker.setPersistenceAdapter(persistenceAdapter);
+        PolicyEntry entry = new PolicyEntry();
+        entry.setMaxPageSize(PAGE_SIZE);
+        configurePolicy(entry);
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setDefaultEntry(entry);
+        broker.setDestinationPolicy(policyMap);
+        broker.start();
+        connection = new ActiveMQConnectionFactory("vm://localhost?create=false").createConnection();
+        connection.start();
+    }
+
+    protected void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+        super.tearDown();
+    }
+
+    protected void configurePersistenceAdapter(KahaDBPersistenceAdapter persistenceAdapter) {
+    }
+
+    protected void configurePolicy(PolicyEntry entry) {
+    }
+
+    /**
+     * @return the memory usage of the queue once the first page is in
+     */
+    protected long waitForSettledUsage() throws Exception {
+        final long[] last = new long[] {-1};
+        assertTrue("usage settled", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                long usage = getQueue().getMemoryUsage().getUsage();
+                boolean settled = usage > 0 && usage == last[0];
+                last[0] = usage;
+                return settled;
+            }
+        }));
+        return last[0];
+    }
+
+    protected Queue getQueue() throws Exception {
+        return getQueue(destination);
+    }
+
+    protected Queue getQueue(ActiveMQDestination destination) throws Exception {
+        return (Queue) broker.getRegionBroker().getDestinationMap().get(destination);
+    }
+}
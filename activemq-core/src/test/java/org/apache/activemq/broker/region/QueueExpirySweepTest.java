@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import javax.jms.DeliveryMode;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.util.Wait;
+
+public class QueueExpirySweepTest extends KahaDBQueueTestSupport {
+
+    private static final long TIME_TO_LIVE = 500;
+
+    protected void configurePolicy(PolicyEntry entry) {
+        entry.setExpireMessagesPeriod(500);
+    }
+
+    public void testExpiredMessagesBehindLiveOnesAreSwept() throws Exception {
+        // a page of live messages keeps the others from being paged in
+        sendMessages(PAGE_SIZE, 0);
+        long usage = waitForSettledUsage();
+
+        sendMessages(PAGE_SIZE * 3, TIME_TO_LIVE);
+        waitForExpired(PAGE_SIZE * 3);
+        assertEquals(PAGE_SIZE, getQueue().getDestinationStatistics().getMessages().getCount());
+        assertUsage(usage);
+    }
+
+    public void testPagedInExpiredMessagesAreLeftToTheBrowse() throws Exception {
+        // the first page is paged in while the rest is swept from the store
+        sendMessages(PAGE_SIZE * 3, TIME_TO_LIVE);
+        waitForExpired(PAGE_SIZE * 3);
+        assertEquals(0, getQueue().getDestinationStatistics().getMessages().getCount());
+        assertUsage(0);
+    }
+
+    private void sendMessages(int count, long timeToLive) throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(destination);
+        producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+        producer.setTimeToLive(timeToLive);
+        for (int i = 0; i < count; i++) {
+            producer.send(session.createTextMessage("message " + i));
+        }
+        session.close();
+    }
+
+    private void waitForExpired(final int count) throws Exception {
+        assertTrue("messages expired", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return getQueue().getDestinationStatistics().getExpired().getCount() == count;
+            }
+        }));
+    }
+
+    private void assertUsage(final long usage) throws Exception {
+        assertTrue("memory usage back to " + usage, Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return getQueue().getMemoryUsage().getUsage() == usage;
+            }
+        }, 5000));
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import javax.jms.DeliveryMode;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+
+public class QueueIndexedMessagesTest extends KahaDBQueueTestSupport {
+
+    private static final String SELECTOR = "color = 'red'";
+
+    protected void configurePersistenceAdapter(KahaDBPersistenceAdapter persistenceAdapter) {
+        persistenceAdapter.setIndexedMessageProperties("color");
+    }
+
+    public void testBrowsingLeavesMemoryUsageAlone() throws Exception {
+        sendMessages();
+        long usage = waitForSettledUsage();
+
+        Message[] browsed = getQueue().browse(SELECTOR);
+        assertEquals(5, browsed.length);
+        for (int i = 0; i < browsed.length; i++) {
+            assertEquals("red " + i, ((TextMessage) browsed[i]).getText());
+        }
+        assertEquals(usage, getQueue().getMemoryUsage().getUsage());
+        assertEquals(PAGE_SIZE * 3 + 5, getQueue().getDestinationStatistics().getMessages().getCount());
+    }
+
+    public void testCopyingLeavesMemoryUsageAlone() throws Exception {
+        sendMessages();
+        long usage = waitForSettledUsage();
+
+        ActiveMQQueue copies = new ActiveMQQueue("TEST.COPY");
+        assertEquals(5, getQueue().copyMatchingMessagesTo(broker.getAdminConnectionContext(), SELECTOR, copies));
+        assertEquals(usage, getQueue().getMemoryUsage().getUsage());
+        assertEquals(PAGE_SIZE * 3 + 5, getQueue().getDestinationStatistics().getMessages().getCount());
+        Queue copyQueue = getQueue(copies);
+        assertEquals(5, copyQueue.getDestinationStatistics().getMessages().getCount());
+    }
+
+    public void testMovingReleasesTheMessagesMoved() throws Exception {
+        sendMessages();
+        long usage = waitForSettledUsage();
+
+        ActiveMQQueue moved = new ActiveMQQueue("TEST.MOVED");
+        assertEquals(5, getQueue().moveMatchingMessagesTo(broker.getAdminConnectionContext(), SELECTOR, moved));
+        assertEquals(usage, getQueue().getMemoryUsage().getUsage());
+        assertEquals(PAGE_SIZE * 3, getQueue().getDestinationStatistics().getMessages().getCount());
+    }
+
+    /**
+     * Sends a few red messages behind pages of blue ones, so that only the
+     * blue ones get paged in
+     */
+    private void sendMessages() throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(destination);
+        producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+        for (int i = 0; i < PAGE_SIZE * 3; i++) {
+            TextMessage message = session.createTextMessage("blue " + i);
+            message.setStringProperty("color", "blue");
+            producer.send(message);
+        }
+        for (int i = 0; i < 5; i++) {
+            TextMessage message = session.createTextMessage("red " + i);
+            message.setStringProperty("color", "red");
+            producer.send(message);
+        }
+        session.close();
+    }
+}
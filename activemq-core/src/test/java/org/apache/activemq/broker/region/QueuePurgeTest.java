@@ -32,6 +32,7 @@ import javax.management.ObjectName;
 
 import junit.framework.TestCase;
 
+import org.apache.activemq.ActiveMQConnection;
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.apache.activemq.CombinationTestSupport;
 import org.apache.activemq.broker.BrokerService;
@@ -42,6 +43,7 @@ import org.apache.activemq.broker.region.policy.PendingQueueMessageStoragePolicy
 import org.apache.activemq.broker.region.policy.PolicyEntry;
 import org.apache.activemq.broker.region.policy.PolicyMap;
 import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+import org.apache.activemq.util.Wait;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -140,6 +142,52 @@ public class QueuePurgeTest extends CombinationTestSupport {
         assertEquals("usage goes to duck", 0, proxy.getMemoryPercentUsage());
     }
 
+    public void testPurgeRemovesDispatchedPagedInAndPendingMessages() throws Exception {
+        final int pageSize = 10;
+        PolicyMap policyMap = new PolicyMap();
+        PolicyEntry defaultEntry = new PolicyEntry();
+        defaultEntry.setMaxPageSize(pageSize);
+        policyMap.setDefaultEntry(defaultEntry);
+        broker.setDestinationPolicy(policyMap);
+        createProducerAndSendMessages(pageSize * 3);
+
+        // the consumer holds half a page unacked, the rest of the page waits
+        // for dispatch and the cursor holds the pages not paged in
+        ((ActiveMQConnection) connection).getPrefetchPolicy().setQueuePrefetch(pageSize / 2);
+        consumer = session.createConsumer(queue);
+        assertNotNull(consumer.receive(5000));
+        final QueueViewMBean proxy = getProxyToQueueViewMBean();
+        assertTrue("messages dispatched", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return proxy.getInFlightCount() >= pageSize / 2;
+            }
+        }));
+
+        proxy.purge();
+        assertEquals(0, proxy.getQueueSize());
+        assertEquals(pageSize * 3, proxy.getEnqueueCount());
+        assertEquals(pageSize * 3, proxy.getDequeueCount());
+
+        // the messages the consumer held are not redelivered
+        consumer.close();
+        consumer = session.createConsumer(queue);
+        assertNull(consumer.receive(1000));
+
+        MessageProducer producer = session.createProducer(queue);
+        producer.send(session.createTextMessage("after purge"));
+        TextMessage message = (TextMessage) consumer.receive(5000);
+        assertNotNull(message);
+        assertEquals("after purge", message.getText());
+        message.acknowledge();
+        assertTrue("message acked", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return proxy.getQueueSize() == 0;
+            }
+        }));
+        assertEquals(pageSize * 3 + 1, proxy.getEnqueueCount());
+        assertEquals(pageSize * 3 + 1, proxy.getDequeueCount());
+    }
+
     private QueueViewMBean getProxyToQueueViewMBean()
             throws MalformedObjectNameException, JMSException {
         ObjectName queueViewMBeanName = new ObjectName("org.apache.activemq"
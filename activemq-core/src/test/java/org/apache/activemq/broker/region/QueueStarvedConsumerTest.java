@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.util.Wait;
+
+public class QueueStarvedConsumerTest extends TestCase {
+
+    private static final int PAGE_SIZE = 10;
+
+    private final ActiveMQQueue destination = new ActiveMQQueue("TEST");
+    private BrokerService broker;
+    private Connection connection;
+
+    public void testMatchingMessagesArePagedInPastTheOthers() throws Exception {
+        startBroker(1000);
+        sendMessages();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(destination, "color = 'red'");
+        for (int i = 0; i < 5; i++) {
+            TextMessage message = (TextMessage) consumer.receive(5000);
+            assertNotNull("red message " + i, message);
+            assertEquals("red " + i, message.getText());
+        }
+        assertEquals(PAGE_SIZE * 10, getQueue().getDestinationStatistics().getMessages().getCount());
+    }
+
+    public void testStarvedConsumersAreReported() throws Exception {
+        startBroker(0);
+        sendMessages();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(destination, "color = 'red'");
+        assertTrue("consumer reported as starved", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return getQueue().getStarvedConsumers().size() == 1;
+            }
+        }));
+        assertNull(consumer.receive(500));
+
+        // a consumer for the messages paged in takes them out of the way
+        MessageConsumer blue = session.createConsumer(destination, "color = 'blue'");
+        for (int i = 0; i < PAGE_SIZE * 10; i++) {
+            assertNotNull(blue.receive(5000));
+        }
+        assertNotNull(consumer.receive(5000));
+        assertTrue("no longer starved", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return getQueue().getStarvedConsumers().isEmpty();
+            }
+        }));
+    }
+
+    protected void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+        super.tearDown();
+    }
+
+    private void startBroker(int maxPageInScanSize) throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        PolicyEntry entry = new PolicyEntry();
+        entry.setMaxPageSize(PAGE_SIZE);
+        entry.setMaxPageInScanSize(maxPageInScanSize);
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setDefaultEntry(entry);
+        broker.setDestinationPolicy(policyMap);
+        broker.start();
+        connection = new ActiveMQConnectionFactory("vm://localhost?create=false").createConnection();
+        connection.start();
+    }
+
+    /**
+     * Sends a few red messages behind many pages of blue ones
+     */
+    private void sendMessages() throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(destination);
+        producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+        for (int i = 0; i < PAGE_SIZE * 10; i++) {
+            TextMessage message = session.createTextMessage("blue " + i);
+            message.setStringProperty("color", "blue");
+            producer.send(message);
+        }
+        for (int i = 0; i < 5; i++) {
+            TextMessage message = session.createTextMessage("red " + i);
+            message.setStringProperty("color", "red");
+            producer.send(message);
+        }
+        session.close();
+    }
+
+    private Queue getQueue() throws Exception {
+        return (Queue) broker.getRegionBroker().getDestinationMap().get(destination);
+    }
+}
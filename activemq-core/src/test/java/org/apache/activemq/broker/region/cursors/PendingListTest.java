@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.cursors;
+
+import java.util.Iterator;
+
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageId;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PendingListTest {
+
+    @Test
+    public void testOrderedListKeepsMessageSize() throws Exception {
+        assertMessageSizeIsKept(new OrderedPendingList());
+    }
+
+    @Test
+    public void testPrioritizedListKeepsMessageSize() throws Exception {
+        assertMessageSizeIsKept(new PrioritizedPendingList());
+    }
+
+    private void assertMessageSizeIsKept(PendingList list) throws Exception {
+        ActiveMQTextMessage first = createMessage(1, 4, "a");
+        ActiveMQTextMessage second = createMessage(2, 6, "bb");
+        ActiveMQTextMessage third = createMessage(3, 4, "ccc");
+        assertEquals(0, list.messageSize());
+
+        list.addMessageLast(first);
+        list.addMessageLast(second);
+        list.addMessageFirst(third);
+        assertEquals(first.getSize() + second.getSize() + third.getSize(), list.messageSize());
+
+        list.remove(second);
+        assertEquals(first.getSize() + third.getSize(), list.messageSize());
+
+        Iterator<MessageReference> iterator = list.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == first) {
+                iterator.remove();
+            }
+        }
+        assertEquals(third.getSize(), list.messageSize());
+
+        list.clear();
+        assertEquals(0, list.messageSize());
+    }
+
+    private ActiveMQTextMessage createMessage(long sequence, int priority, String text) throws Exception {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setMessageId(new MessageId("ID:producer:1:1:1", sequence));
+        message.setPriority((byte) priority);
+        message.setText(text);
+        return message;
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.cursors;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.broker.region.DestinationStatistics;
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.broker.region.Queue;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.store.MessageStore;
+import org.apache.activemq.usage.SystemUsage;
+
+public class QueueStorePrefetchReadAheadTest extends TestCase {
+    ActiveMQQueue destination = new ActiveMQQueue("queue-" + QueueStorePrefetchReadAheadTest.class.getSimpleName());
+    BrokerService brokerService;
+    ThreadPoolExecutor executor;
+    MessageStore queueMessageStore;
+    Queue queue;
+
+    final static String mesageIdRoot = "11111:22222:";
+    final int count = 100;
+    final int batchSize = 10;
+
+    public void setUp() throws Exception {
+        brokerService = new BrokerService();
+        brokerService.setUseJmx(false);
+        brokerService.deleteAllMessages();
+        brokerService.start();
+        executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+        queueMessageStore = brokerService.getPersistenceAdapter().createQueueMessageStore(destination);
+        queue = new Queue(brokerService, destination, queueMessageStore, new DestinationStatistics(), null);
+        queueMessageStore.start();
+        ConnectionContext context = new ConnectionContext();
+        for (int i = 0; i < count; i++) {
+            queueMessageStore.addMessage(context, getMessage(i));
+        }
+    }
+
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        brokerService.stop();
+    }
+
+    public void testBatchesAreReadAhead() throws Exception {
+        QueueStorePrefetch underTest = createCursor(3);
+        assertEquals(count, drain(underTest, 50));
+        assertTrue("batches read ahead: " + underTest.getReadAheadHits(), underTest.getReadAheadHits() > 0);
+        assertTrue(underTest.getReadAheadDepth() >= batchSize);
+        assertTrue(underTest.getReadAheadDepth() <= 3 * batchSize);
+    }
+
+    public void testDepthGrowsWhenConsumersCatchUp() throws Exception {
+        // keep the executor busy so that no read ahead gets to run
+        final CountDownLatch busy = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    busy.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        try {
+            QueueStorePrefetch underTest = createCursor(4);
+            assertEquals(count, drain(underTest, 0));
+            assertEquals(0, underTest.getReadAheadHits());
+            assertTrue("misses: " + underTest.getReadAheadMisses(), underTest.getReadAheadMisses() > 1);
+            assertEquals(4 * batchSize, underTest.getReadAheadDepth());
+        } finally {
+            busy.countDown();
+        }
+    }
+
+    public void testStoreCursorReadsAheadOnItsOwnExecutor() throws Exception {
+        StoreQueueCursor cursor = new StoreQueueCursor(brokerService.getBroker(), queue);
+        cursor.setMaxReadAheadBatches(2);
+        assertSame(brokerService.getStoreReadAheadExecutor(), cursor.getPersistent().getReadAheadExecutor());
+        assertNotSame(brokerService.getSystemUsage().getExecutor(), cursor.getPersistent().getReadAheadExecutor());
+    }
+
+    public void testNothingIsReadAheadByDefault() throws Exception {
+        QueueStorePrefetch underTest = createCursor(0);
+        assertEquals(count, drain(underTest, 0));
+        assertEquals(0, underTest.getReadAheadHits());
+        assertEquals(0, underTest.getReadAheadMisses());
+        assertEquals(0, executor.getCompletedTaskCount());
+    }
+
+    private QueueStorePrefetch createCursor(int maxReadAheadBatches) throws Exception {
+        QueueStorePrefetch underTest = new QueueStorePrefetch(queue);
+        underTest.setSystemUsage(new SystemUsage());
+        underTest.setReadAheadExecutor(executor);
+        underTest.setMaxBatchSize(batchSize);
+        underTest.setMaxReadAheadBatches(maxReadAheadBatches);
+        underTest.start();
+        assertFalse("store has messages so the cache is off", underTest.isCacheEnabled());
+        return underTest;
+    }
+
+    /**
+     * Dispatches all the messages, checking their order, and pauses for a
+     * while each time the batch runs out
+     */
+    private int drain(QueueStorePrefetch underTest, long pause) throws Exception {
+        int dequeueCount = 0;
+        underTest.reset();
+        while (underTest.hasNext()) {
+            MessageReference ref = underTest.next();
+            ref.decrementReferenceCount();
+            underTest.remove();
+            assertEquals(dequeueCount++, ref.getMessageId().getProducerSequenceId());
+            queueMessageStore.removeMessage(new ConnectionContext(), ack(ref));
+            if (!underTest.hasMessagesBufferedToDeliver() && pause > 0) {
+                Thread.sleep(pause);
+            }
+        }
+        underTest.release();
+        return dequeueCount;
+    }
+
+    private MessageAck ack(MessageReference ref) {
+        MessageAck ack = new MessageAck();
+        ack.setLastMessageId(ref.getMessageId());
+        ack.setDestination(destination);
+        return ack;
+    }
+
+    private ActiveMQTextMessage getMessage(int i) throws Exception {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        MessageId id = new MessageId(mesageIdRoot + i);
+        id.setBrokerSequenceId(i);
+        id.setProducerSequenceId(i);
+        message.setMessageId(id);
+        message.setDestination(destination);
+        message.setPersistent(true);
+        message.setText("Msg:" + i);
+        return message;
+    }
+}
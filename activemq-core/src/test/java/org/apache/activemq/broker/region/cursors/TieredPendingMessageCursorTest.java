@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.cursors;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.DestinationStatistics;
+import org.apache.activemq.broker.region.IndirectMessageReference;
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.broker.region.Queue;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.usage.SystemUsage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TieredPendingMessageCursorTest {
+    BrokerService brokerService;
+    SystemUsage usage;
+    Destination destination;
+    TieredPendingMessageCursor underTest;
+    String body = new String(new byte[1024]);
+
+    @Before
+    public void createCursor() throws Exception {
+        brokerService = new BrokerService();
+        usage = brokerService.getSystemUsage();
+        usage.getMemoryUsage().setLimit(1024 * 150);
+        destination = new Queue(brokerService, new ActiveMQQueue("Q"), null, new DestinationStatistics(), null);
+
+        underTest = new TieredPendingMessageCursor(brokerService.getBroker(), "test", false);
+        underTest.setSystemUsage(usage);
+        underTest.start();
+    }
+
+    @After
+    public void stopBroker() throws Exception {
+        if (brokerService != null) {
+            brokerService.getTempDataStore().stop();
+            brokerService.getTempSpoolStore().stop();
+        }
+    }
+
+    @Test
+    public void testSpilledMessagesComeBackInOrder() throws Exception {
+        long initialTempUsage = usage.getTempUsage().getUsage();
+        final int numMessages = 1000;
+
+        for (int j = 0; j < 3; j++) {
+            for (int i = 0; i < numMessages; i++) {
+                underTest.addMessageLast(createMessage(i));
+            }
+            assertEquals(numMessages, underTest.size());
+            assertTrue("messages were spilled", brokerService.getTempSpoolStore().size() > 0);
+            assertTrue("spool is accounted as temp usage", usage.getTempUsage().getUsage() > initialTempUsage);
+
+            long receivedCount = 0;
+            while (!underTest.isEmpty()) {
+                underTest.reset();
+                while (underTest.hasNext()) {
+                    MessageReference ref = underTest.next();
+                    underTest.remove();
+                    assertEquals("id is correct", receivedCount++, ref.getMessageId().getProducerSequenceId());
+                }
+                underTest.release();
+            }
+            assertEquals("got all messages back", numMessages, receivedCount);
+            assertEquals(0, underTest.size());
+        }
+
+        underTest.destroy();
+        brokerService.getTempSpoolStore().stop();
+        assertEquals(initialTempUsage, usage.getTempUsage().getUsage());
+    }
+
+    @Test
+    public void testRemoveSpilledMessage() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            underTest.addMessageLast(createMessage(i));
+        }
+        assertTrue(brokerService.getTempSpoolStore().size() > 0);
+        underTest.remove(createMessage(400));
+        underTest.remove(createMessage(401));
+        assertEquals(498, underTest.size());
+
+        int count = 0;
+        underTest.reset();
+        while (underTest.hasNext()) {
+            MessageReference ref = underTest.next();
+            ref.decrementReferenceCount();
+            assertFalse(ref.getMessageId().getProducerSequenceId() == 400);
+            assertFalse(ref.getMessageId().getProducerSequenceId() == 401);
+            count++;
+        }
+        underTest.release();
+        assertEquals(498, count);
+        underTest.destroy();
+    }
+
+    private MessageReference createMessage(int sequence) throws Exception {
+        ActiveMQMessage mqMessage = new ActiveMQMessage();
+        mqMessage.setStringProperty("body", body);
+        mqMessage.setMessageId(new MessageId("1:2:3:" + sequence));
+        mqMessage.setMemoryUsage(usage.getMemoryUsage());
+        mqMessage.setRegionDestination(destination);
+        return new IndirectMessageReference(mqMessage);
+    }
+}
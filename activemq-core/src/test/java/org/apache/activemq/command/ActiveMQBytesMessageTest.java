@@ -16,6 +16,8 @@
  */
 package org.apache.activemq.command;
 
+import java.nio.ByteBuffer;
+
 import javax.jms.JMSException;
 import javax.jms.MessageFormatException;
 import javax.jms.MessageNotReadableException;
@@ -485,4 +487,39 @@ public class ActiveMQBytesMessageTest extends TestCase {
         } catch (MessageNotReadableException e) {
         }
     }
+
+    public void testBodyBuffer() throws JMSException {
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        try {
+            message.getBodyBuffer();
+            fail("Should have thrown exception");
+        } catch (MessageNotReadableException e) {
+        }
+        message.writeBytes(new byte[] {1, 2, 3, 4});
+        message.reset();
+        assertEquals(1, message.readByte());
+
+        ByteBuffer buffer = message.getBodyBuffer();
+        assertTrue(buffer.isReadOnly());
+        assertEquals(4, buffer.remaining());
+        assertEquals(1, buffer.get(0));
+        assertEquals(4, buffer.get(3));
+        // the view does not move the stream
+        assertEquals(2, message.readByte());
+    }
+
+    public void testCopySharesBody() throws JMSException {
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.writeBytes(new byte[] {1, 2, 3});
+        ActiveMQBytesMessage copy = (ActiveMQBytesMessage) message.copy();
+        assertSame(message.getContent(), copy.getContent());
+
+        copy.clearBody();
+        copy.writeBytes(new byte[] {4});
+        copy.reset();
+        message.reset();
+        assertEquals(1, copy.getBodyLength());
+        assertEquals(3, message.getBodyLength());
+        assertEquals(1, message.readByte());
+    }
 }
@@ -18,6 +18,7 @@ package org.apache.activemq.command;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import javax.jms.JMSException;
 import javax.jms.MessageNotReadableException;
@@ -149,6 +150,59 @@ public class ActiveMQTextMessageTest extends TestCase {
     	assertTrue(nullMessage.toString().contains("text = null"));
     }
     
+    public void testTextBuffer() throws Exception {
+        ActiveMQTextMessage msg = new ActiveMQTextMessage();
+        String text = "text \u00e9\u4e2d";
+        setContent(msg, text);
+        ByteSequence content = msg.getContent();
+
+        ByteBuffer buffer = msg.getTextBuffer();
+        assertTrue(buffer.isReadOnly());
+        assertEquals(content.getLength() - 4, buffer.remaining());
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        assertEquals(text, new String(bytes, "UTF-8"));
+        // the content was not decoded or dropped
+        assertSame(content, msg.getContent());
+
+        assertEquals(text, msg.getText());
+        assertEquals(text, new String(toArray(msg.getTextBuffer()), "UTF-8"));
+    }
+
+    public void testTruncatedTextBufferFails() throws Exception {
+        ActiveMQTextMessage msg = new ActiveMQTextMessage();
+        msg.setContent(new ByteSequence(new byte[] {0, 0}));
+        try {
+            msg.getTextBuffer();
+            fail("Should have thrown a JMSException");
+        } catch (JMSException expected) {
+        }
+
+        // a length beyond the end of the body
+        msg.setContent(new ByteSequence(new byte[] {0, 0, 0, 10, 'a'}));
+        try {
+            msg.getTextBuffer();
+            fail("Should have thrown a JMSException");
+        } catch (JMSException expected) {
+        }
+    }
+
+    public void testCopySharesContent() throws Exception {
+        ActiveMQTextMessage msg = new ActiveMQTextMessage();
+        setContent(msg, "shared");
+        ActiveMQTextMessage copy = (ActiveMQTextMessage) msg.copy();
+        assertSame(msg.getContent(), copy.getContent());
+        copy.setText("changed");
+        assertEquals("shared", msg.getText());
+        assertEquals("changed", copy.getText());
+    }
+
+    private byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
     protected void setContent(Message message, String text) throws Exception {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         DataOutputStream dataOut = new DataOutputStream(baos);
@@ -29,6 +29,7 @@ import junit.framework.TestCase;
 import org.apache.activemq.ActiveMQConnection;
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.compression.CompressionCodec;
 
 public class MessageCompressionTest extends TestCase {
 
@@ -103,6 +104,72 @@ public class MessageCompressionTest extends TestCase {
                    compressedSize < unCompressedSize);
     }
 
+    public void testTextMessageCompressionWithLZ4() throws Exception {
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(connectionUri);
+        factory.setUseCompression(true);
+        factory.setCompressionCodec("lz4");
+        sendTestMessage(factory, TEXT);
+
+        // the receiver picks the codec recorded in the message
+        factory = new ActiveMQConnectionFactory(connectionUri);
+        ActiveMQTextMessage message = receiveTestMessage(factory);
+        assertTrue(message.isCompressed());
+        assertEquals("lz4", message.getStringProperty(CompressionCodec.CODEC_PROPERTY));
+        assertTrue(message.getContent().getLength() < TEXT.length());
+        assertEquals(TEXT, message.getText());
+    }
+
+    public void testBytesMessageCompressionWithLZ4AndDictionary() throws Exception {
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(connectionUri);
+        factory.setUseCompression(true);
+        factory.setCompressionCodec("lz4");
+        factory.setCompressionDictionary(TEXT.getBytes("UTF8"));
+        sendTestBytesMessage(factory, TEXT);
+        ActiveMQBytesMessage message = receiveTestBytesMessage(factory);
+        assertTrue(message.isCompressed());
+        assertTrue(message.getContent().getLength() < TEXT.length() / 10);
+        assertEquals(TEXT.getBytes("UTF8").length, message.getBodyLength());
+        byte[] bytes = new byte[TEXT.getBytes("UTF8").length];
+        message.readBytes(bytes);
+        assertEquals(TEXT, new String(bytes, "UTF8"));
+    }
+
+    public void testDictionaryIsUsedByReceiversThatDoNotCompress() throws Exception {
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(connectionUri);
+        factory.setUseCompression(true);
+        factory.setCompressionDictionary(TEXT.getBytes("UTF8"));
+        sendTestMessage(factory, TEXT);
+        factory.setCompressionCodec("lz4");
+        sendTestMessage(factory, TEXT);
+
+        factory = new ActiveMQConnectionFactory(connectionUri);
+        factory.setCompressionDictionary(TEXT.getBytes("UTF8"));
+        for (int i = 0; i < 2; i++) {
+            ActiveMQTextMessage message = receiveTestMessage(factory);
+            assertTrue(message.isCompressed());
+            assertEquals(TEXT, message.getText());
+        }
+    }
+
+    public void testCompressionThreshold() throws Exception {
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(connectionUri);
+        factory.setUseCompression(true);
+        factory.setCompressionThreshold(TEXT.length() * 4);
+        sendTestMessage(factory, TEXT);
+        ActiveMQTextMessage message = receiveTestMessage(factory);
+        assertFalse(message.isCompressed());
+        assertEquals(TEXT, message.getText());
+
+        sendTestBytesMessage(factory, TEXT);
+        ActiveMQBytesMessage bytesMessage = receiveTestBytesMessage(factory);
+        assertFalse(bytesMessage.isCompressed());
+        assertEquals(TEXT.getBytes("UTF8").length, bytesMessage.getBodyLength());
+    }
+
     private void sendTestMessage(ActiveMQConnectionFactory factory, String message) throws JMSException {
         ActiveMQConnection connection = (ActiveMQConnection) factory.createConnection();
         Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
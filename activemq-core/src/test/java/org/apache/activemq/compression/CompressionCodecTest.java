@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.util.ByteSequence;
+
+public class CompressionCodecTest extends TestCase {
+
+    private static final String JSON = "{\"id\":12345,\"type\":\"telemetry\",\"source\":\"sensor-17\",\"values\":[1.5,2.5,3.5],"
+            + "\"tags\":{\"site\":\"north\",\"rack\":\"a4\"},\"status\":\"OK\"}";
+
+    public void testLookupByName() throws Exception {
+        assertTrue(CompressionCodecFactory.createCodec(null) instanceof DeflateCodec);
+        assertTrue(CompressionCodecFactory.createCodec("deflate") instanceof DeflateCodec);
+        assertTrue(CompressionCodecFactory.createCodec("lz4") instanceof LZ4Codec);
+        try {
+            CompressionCodecFactory.createCodec("does-not-exist");
+            fail("Expected unknown codec to be rejected");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testDeflateRoundTrip() throws Exception {
+        assertRoundTrip(new DeflateCodec());
+    }
+
+    public void testLZ4RoundTrip() throws Exception {
+        assertRoundTrip(new LZ4Codec());
+    }
+
+    public void testDeflateWithDictionary() throws Exception {
+        assertDictionaryHelps(new DeflateCodec(), new DeflateCodec());
+    }
+
+    public void testLZ4WithDictionary() throws Exception {
+        assertDictionaryHelps(new LZ4Codec(), new LZ4Codec());
+    }
+
+    public void testLZ4RejectsCorruptContent() throws Exception {
+        LZ4Codec codec = new LZ4Codec();
+        ByteSequence compressed = codec.compress(new ByteSequence(repeat(JSON, 20).getBytes("UTF-8")));
+        compressed.getData()[compressed.getOffset() + 3] ^= 0x7F;
+        try {
+            codec.decompress(compressed);
+            fail("Expected corrupt content to be detected");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testDeflateRequiresDictionary() throws Exception {
+        DeflateCodec codec = new DeflateCodec();
+        codec.setDictionary(JSON.getBytes("UTF-8"));
+        ByteSequence compressed = codec.compress(new ByteSequence(JSON.getBytes("UTF-8")));
+        try {
+            new DeflateCodec().decompress(compressed);
+            fail("Expected missing dictionary to be detected");
+        } catch (IOException expected) {
+        }
+    }
+
+    private void assertRoundTrip(CompressionCodec codec) throws Exception {
+        Random random = new Random(42);
+        byte[] noise = new byte[70000];
+        random.nextBytes(noise);
+
+        byte[][] inputs = new byte[][] {
+            new byte[0],
+            "a".getBytes("UTF-8"),
+            JSON.getBytes("UTF-8"),
+            repeat(JSON, 200).getBytes("UTF-8"),
+            new byte[100000],
+            noise
+        };
+        for (byte[] input : inputs) {
+            // use an offset into a larger buffer to check the offset handling
+            byte[] padded = new byte[input.length + 7];
+            System.arraycopy(input, 0, padded, 3, input.length);
+            ByteSequence compressed = codec.compress(new ByteSequence(padded, 3, input.length));
+            ByteSequence result = codec.decompress(compressed);
+            assertTrue(codec.getName() + " round trip of " + input.length + " bytes", Arrays.equals(input, toArray(result)));
+        }
+
+        int size = repeat(JSON, 200).getBytes("UTF-8").length;
+        ByteSequence compressed = codec.compress(new ByteSequence(repeat(JSON, 200).getBytes("UTF-8")));
+        assertTrue(codec.getName() + " should compress repetitive content", compressed.getLength() < size / 4);
+    }
+
+    private void assertDictionaryHelps(CompressionCodec plain, CompressionCodec primed) throws Exception {
+        byte[] message = JSON.replace("12345", "67890").getBytes("UTF-8");
+        primed.setDictionary(JSON.getBytes("UTF-8"));
+
+        ByteSequence withoutDictionary = plain.compress(new ByteSequence(message));
+        ByteSequence withDictionary = primed.compress(new ByteSequence(message));
+        assertTrue(primed.getName() + " dictionary should improve the ratio of small payloads",
+                   withDictionary.getLength() < withoutDictionary.getLength());
+        assertTrue(Arrays.equals(message, toArray(primed.decompress(withDictionary))));
+    }
+
+    private static byte[] toArray(ByteSequence sequence) {
+        byte[] rc = new byte[sequence.getLength()];
+        System.arraycopy(sequence.getData(), sequence.getOffset(), rc, 0, rc.length);
+        return rc;
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}
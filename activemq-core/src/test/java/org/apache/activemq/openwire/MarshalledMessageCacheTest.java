@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.openwire;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.command.MessageDispatch;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.SessionId;
+import org.apache.activemq.util.ByteSequence;
+
+public class MarshalledMessageCacheTest extends TestCase {
+
+    private OpenWireFormat wireFormat;
+    private ActiveMQTextMessage message;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        wireFormat = new OpenWireFormat();
+        wireFormat.setTightEncodingEnabled(true);
+        wireFormat.setCacheEnabled(false);
+        wireFormat.setMarshalledMessageCacheEnabled(true);
+
+        message = new ActiveMQTextMessage();
+        message.setMessageId(new MessageId("ID:producer:1:1:1", 1));
+        message.setDestination(new ActiveMQQueue("TEST"));
+        message.setText("Hello World");
+        message.setStringProperty("color", "red");
+        message.setBrokerInTime(System.currentTimeMillis());
+        message.setBrokerOutTime(System.currentTimeMillis());
+    }
+
+    public void testDispatchesShareTheMarshalledMessage() throws Exception {
+        MessageDispatch first = unmarshal(marshalDispatch(1));
+        ByteSequence cached = message.getCachedMarshalledForm(wireFormat.getVersion());
+        assertNotNull("message form should have been cached", cached);
+
+        MessageDispatch second = unmarshal(marshalDispatch(2));
+        assertSame(cached, message.getCachedMarshalledForm(wireFormat.getVersion()));
+
+        assertEquals("Hello World", ((ActiveMQTextMessage)first.getMessage()).getText());
+        assertEquals("Hello World", ((ActiveMQTextMessage)second.getMessage()).getText());
+        assertEquals("red", second.getMessage().getProperty("color"));
+        assertEquals(2, second.getConsumerId().getValue());
+    }
+
+    public void testModificationInvalidatesTheMarshalledMessage() throws Exception {
+        marshalDispatch(1);
+        assertNotNull(message.getCachedMarshalledForm(wireFormat.getVersion()));
+
+        message.incrementRedeliveryCounter();
+        assertNull(message.getCachedMarshalledForm(wireFormat.getVersion()));
+
+        MessageDispatch redelivered = unmarshal(marshalDispatch(1));
+        assertEquals(1, redelivered.getMessage().getRedeliveryCounter());
+    }
+
+    public void testBrokerOutTimeIsPatched() throws Exception {
+        marshalDispatch(1);
+        ByteSequence cached = message.getCachedMarshalledForm(wireFormat.getVersion());
+
+        long outTime = message.getBrokerOutTime() + 1000;
+        message.setBrokerOutTime(outTime);
+        ByteSequence patched = message.getCachedMarshalledForm(wireFormat.getVersion());
+        assertNotNull(patched);
+        assertNotSame(cached, patched);
+
+        MessageDispatch dispatch = unmarshal(marshalDispatch(1));
+        assertEquals(outTime, dispatch.getMessage().getBrokerOutTime());
+        assertEquals("Hello World", ((ActiveMQTextMessage)dispatch.getMessage()).getText());
+    }
+
+    public void testNotCachedWithValueCaching() throws Exception {
+        wireFormat.setCacheEnabled(true);
+        MessageDispatch dispatch = unmarshal(marshalDispatch(1));
+        assertNull(message.getCachedMarshalledForm(wireFormat.getVersion()));
+        assertEquals("Hello World", ((ActiveMQTextMessage)dispatch.getMessage()).getText());
+    }
+
+    private ByteSequence marshalDispatch(long consumerId) throws Exception {
+        MessageDispatch dispatch = new MessageDispatch();
+        dispatch.setConsumerId(new ConsumerId(new SessionId(new ConnectionId("consumer"), 1), consumerId));
+        dispatch.setDestination(message.getDestination());
+        dispatch.setMessage(message);
+        ByteSequence sequence = wireFormat.marshal(dispatch);
+        // the wire format reuses its buffer
+        byte[] data = new byte[sequence.getLength()];
+        System.arraycopy(sequence.getData(), sequence.getOffset(), data, 0, data.length);
+        return new ByteSequence(data);
+    }
+
+    private MessageDispatch unmarshal(ByteSequence sequence) throws Exception {
+        return (MessageDispatch)wireFormat.unmarshal(sequence);
+    }
+}
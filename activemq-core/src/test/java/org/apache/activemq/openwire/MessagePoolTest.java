@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.openwire;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ConnectionId;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageDispatch;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.SessionId;
+import org.apache.activemq.util.ByteSequence;
+
+public class MessagePoolTest extends TestCase {
+
+    private OpenWireFormat wireFormat;
+    private ActiveMQBytesMessage message;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        wireFormat = new OpenWireFormat(OpenWireFormat.DEFAULT_WIRE_VERSION);
+        wireFormat.setTightEncodingEnabled(true);
+        wireFormat.setCacheEnabled(false);
+
+        message = new ActiveMQBytesMessage();
+        message.setMessageId(new MessageId("ID:producer:1:1:1", 1));
+        message.setDestination(new ActiveMQQueue("TEST"));
+        message.writeBytes(new byte[] {1, 2, 3, 4});
+        message.setStringProperty("color", "red");
+    }
+
+    public void testRecycledDispatchIsReused() throws Exception {
+        wireFormat.setMessagePoolSize(10);
+        MessageDispatch first = unmarshal(marshalDispatch(1));
+        Message firstMessage = first.getMessage();
+        byte[] body = firstMessage.getContent().getData();
+        assertNotNull(first.getMessagePool());
+
+        first.getMessagePool().recycle(first);
+        assertNull(first.getMessage());
+        assertNull(firstMessage.getMessageId());
+        assertNull(firstMessage.getContent());
+
+        MessageDispatch second = unmarshal(marshalDispatch(2));
+        assertSame(first, second);
+        assertSame(firstMessage, second.getMessage());
+        assertSame(body, second.getMessage().getContent().getData());
+        assertEquals(2, second.getConsumerId().getValue());
+        assertEquals("red", second.getMessage().getProperty("color"));
+
+        ActiveMQBytesMessage received = (ActiveMQBytesMessage)second.getMessage();
+        received.setReadOnlyBody(true);
+        assertEquals(4, received.getBodyLength());
+        byte[] data = new byte[4];
+        received.readBytes(data);
+        assertEquals(3, data[2]);
+    }
+
+    public void testBodyOfCopiedMessageIsNotRecycled() throws Exception {
+        wireFormat.setMessagePoolSize(10);
+        MessageDispatch first = unmarshal(marshalDispatch(1));
+        Message copy = first.getMessage().copy();
+        byte[] body = copy.getContent().getData();
+
+        first.getMessagePool().recycle(first);
+        message.clearBody();
+        message.writeBytes(new byte[] {5, 6, 7, 8});
+        MessageDispatch second = unmarshal(marshalDispatch(2));
+
+        assertNotSame(body, second.getMessage().getContent().getData());
+        ActiveMQBytesMessage received = (ActiveMQBytesMessage)copy;
+        received.setReadOnlyBody(true);
+        byte[] data = new byte[4];
+        received.readBytes(data);
+        assertEquals(3, data[2]);
+        assertEquals("red", received.getStringProperty("color"));
+    }
+
+    public void testRecycledMessageKeepsNoState() throws Exception {
+        wireFormat.setMessagePoolSize(10);
+        MessageDispatch first = unmarshal(marshalDispatch(1));
+        Message firstMessage = first.getMessage();
+        firstMessage.setArrival(System.currentTimeMillis());
+        firstMessage.setRedeliveryCounter(3);
+        firstMessage.setRecievedByDFBridge(true);
+        firstMessage.setCorrelationId("correlation");
+        firstMessage.setTimestamp(1);
+
+        first.getMessagePool().recycle(first);
+        assertEquals(0, firstMessage.getArrival());
+        assertEquals(0, firstMessage.getRedeliveryCounter());
+        assertFalse(firstMessage.isRecievedByDFBridge());
+        assertNull(firstMessage.getCorrelationId());
+        assertEquals(0, firstMessage.getTimestamp());
+    }
+
+    public void testNothingIsPooledByDefault() throws Exception {
+        MessageDispatch dispatch = unmarshal(marshalDispatch(1));
+        assertNull(dispatch.getMessagePool());
+        assertEquals(0, wireFormat.getMessagePoolSize());
+    }
+
+    public void testIdsAndDestinationsAreInterned() throws Exception {
+        MessageDispatch first = unmarshal(marshalDispatch(1));
+        MessageDispatch second = unmarshal(marshalDispatch(1));
+        assertNotSame(first.getDestination(), second.getDestination());
+
+        wireFormat.setInternCacheSize(10);
+        first = unmarshal(marshalDispatch(1));
+        second = unmarshal(marshalDispatch(1));
+        assertSame(first.getDestination(), second.getDestination());
+        assertSame(first.getConsumerId(), second.getConsumerId());
+        assertSame(first.getMessage().getMessageId().getProducerId(), second.getMessage().getMessageId().getProducerId());
+        assertNotSame(first.getMessage().getMessageId(), second.getMessage().getMessageId());
+    }
+
+    private ByteSequence marshalDispatch(long consumerId) throws Exception {
+        MessageDispatch dispatch = new MessageDispatch();
+        dispatch.setConsumerId(new ConsumerId(new SessionId(new ConnectionId("consumer"), 1), consumerId));
+        dispatch.setDestination(message.getDestination());
+        dispatch.setMessage(message);
+        ByteSequence sequence = wireFormat.marshal(dispatch);
+        // the wire format reuses its buffer
+        byte[] data = new byte[sequence.getLength()];
+        System.arraycopy(sequence.getData(), sequence.getOffset(), data, 0, data.length);
+        return new ByteSequence(data);
+    }
+
+    private MessageDispatch unmarshal(ByteSequence sequence) throws Exception {
+        return (MessageDispatch)wireFormat.unmarshal(sequence);
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.perf;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.store.kahadb.plist.PList;
+import org.apache.activemq.store.kahadb.plist.PListEntry;
+import org.apache.activemq.store.kahadb.plist.PListStore;
+import org.apache.activemq.store.spool.Spool;
+import org.apache.activemq.store.spool.SpoolStore;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares spooling entries through a {@link Spool} with a {@link PList}:
+ * append them all, then take them from the front.
+ */
+public class SpoolPerfTest extends TestCase {
+    private static final Logger LOG = LoggerFactory.getLogger(SpoolPerfTest.class);
+    private static final int ENTRIES = 20000;
+    private static final int ENTRY_SIZE = 1024;
+    private static final int ROUNDS = 3;
+
+    private final File directory = new File("target/test/SpoolPerf");
+
+    public void testSpoolVersusPList() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            long plist = timePList();
+            long spool = timeSpool();
+            LOG.info("Round " + round + ": " + ENTRIES + " entries of " + ENTRY_SIZE + " bytes, PList "
+                     + plist + "ms (" + rate(plist) + "/s), Spool " + spool + "ms (" + rate(spool) + "/s)");
+        }
+    }
+
+    private long timePList() throws Exception {
+        File dir = new File(directory, "plist");
+        IOHelper.deleteFile(dir);
+        PListStore store = new PListStore();
+        store.setDirectory(dir);
+        store.start();
+        try {
+            PList list = store.getPList("perf");
+            org.apache.kahadb.util.ByteSequence payload = new org.apache.kahadb.util.ByteSequence(new byte[ENTRY_SIZE]);
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < ENTRIES; i++) {
+                list.addLast("ID:perf:" + i, payload);
+            }
+            int count = 0;
+            PListEntry entry;
+            while ((entry = list.getFirst()) != null) {
+                list.remove(entry.getId());
+                count++;
+            }
+            long time = System.currentTimeMillis() - start;
+            assertEquals(ENTRIES, count);
+            return time;
+        } finally {
+            store.stop();
+        }
+    }
+
+    private long timeSpool() throws Exception {
+        File dir = new File(directory, "spool");
+        SpoolStore store = new SpoolStore();
+        store.setDirectory(dir);
+        store.start();
+        try {
+            Spool spool = store.getSpool("perf");
+            ByteSequence payload = new ByteSequence(new byte[ENTRY_SIZE]);
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < ENTRIES; i++) {
+                spool.addLast("ID:perf:" + i, payload);
+            }
+            int count = 0;
+            while (spool.removeFirst() != null) {
+                count++;
+            }
+            long time = System.currentTimeMillis() - start;
+            assertEquals(ENTRIES, count);
+            return time;
+        } finally {
+            store.stop();
+        }
+    }
+
+    private static long rate(long time) {
+        return ENTRIES * 1000L / Math.max(1, time);
+    }
+}
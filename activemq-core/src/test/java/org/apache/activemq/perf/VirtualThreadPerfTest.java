@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.perf;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.thread.TaskRunnerFactory;
+import org.apache.activemq.thread.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class VirtualThreadPerfTest extends TestCase {
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadPerfTest.class);
+
+    /**
+     * Compares the cost of running many short lived tasks which block briefly,
+     * the way connections and destinations use the task runners, on the
+     * platform thread pool and on virtual threads.
+     */
+    public void testBenchmarkAgainstThreadPool() throws Exception {
+        long pooled = runBenchmark(new TaskRunnerFactory("bench", Thread.NORM_PRIORITY, true, 1000, false));
+        LOG.info("Platform thread pool: " + pooled + " ms");
+        if (VirtualThreads.isAvailable()) {
+            TaskRunnerFactory factory = new TaskRunnerFactory("bench", Thread.NORM_PRIORITY, true, 1000, false);
+            factory.setUseVirtualThreads(true);
+            long virtual = runBenchmark(factory);
+            LOG.info("Virtual threads: " + virtual + " ms");
+        } else {
+            LOG.info("Virtual threads are not available on this JVM");
+        }
+    }
+
+    private long runBenchmark(TaskRunnerFactory factory) throws Exception {
+        final int tasks = 2000;
+        final CountDownLatch done = new CountDownLatch(tasks);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < tasks; i++) {
+            factory.execute(new Runnable() {
+                public void run() {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        long duration = System.currentTimeMillis() - start;
+        factory.shutdown();
+        return duration;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KahaDBExpirationIndexTest {
+
+    private static final long NOW = 1000000L;
+
+    KahaDBStore store;
+    ActiveMQQueue destination = new ActiveMQQueue("Test");
+    ProducerId producerId = new ProducerId("1.1.1");
+    KahaDBStore.KahaDBMessageStore underTest;
+
+    @Before
+    public void initStore() throws Exception {
+        store = new KahaDBStore();
+        store.setDeleteAllMessages(true);
+        store.start();
+        underTest = store.new KahaDBMessageStore(destination);
+        underTest.start();
+        // expiring at these times, in order sent
+        long[] expirations = {NOW + 500, 0, NOW - 100, NOW - 300, 0, NOW, NOW - 300, NOW + 100};
+        ConnectionContext context = new ConnectionContext();
+        for (int i = 0; i < expirations.length; i++) {
+            ActiveMQTextMessage message = new ActiveMQTextMessage();
+            message.setMessageId(new MessageId(producerId, i + 1));
+            message.setDestination(destination);
+            message.setExpiration(expirations[i]);
+            message.setText("message " + (i + 1));
+            underTest.addMessage(context, message);
+        }
+    }
+
+    @After
+    public void destroyStore() throws Exception {
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testExpiredMessagesAreRecoveredSoonestFirst() throws Exception {
+        assertEquals(Arrays.asList(4L, 7L, 3L, 6L), ids(recover(NOW, 10)));
+        assertEquals(Arrays.asList(4L, 7L, 3L, 6L, 8L, 1L), ids(recover(NOW + 1000, 10)));
+    }
+
+    @Test
+    public void testRecoveryIsBounded() throws Exception {
+        assertEquals(Arrays.asList(4L, 7L, 3L), ids(recover(NOW, 3)));
+    }
+
+    @Test
+    public void testMessagesHeldElsewhereArePassedOver() throws Exception {
+        // the first page is held by a consumer, so the queue reports it paged in
+        final List<MessageId> held = Arrays.asList(new MessageId(producerId, 4), new MessageId(producerId, 7));
+        List<Message> messages = new ArrayList<Message>();
+        assertTrue(underTest.recoverExpiredMessages(NOW, 2, new MessageCollector(messages) {
+            public boolean isDuplicate(MessageId ref) {
+                return held.contains(ref);
+            }
+        }));
+        assertEquals(Arrays.asList(3L, 6L), ids(messages));
+    }
+
+    @Test
+    public void testRemovedMessagesAreNoLongerRecovered() throws Exception {
+        for (long id : new long[] {3, 4}) {
+            MessageAck ack = new MessageAck();
+            ack.setDestination(destination);
+            ack.setLastMessageId(new MessageId(producerId, id));
+            underTest.removeMessage(new ConnectionContext(), ack);
+        }
+        assertEquals(Arrays.asList(7L, 6L), ids(recover(NOW, 10)));
+    }
+
+    @Test
+    public void testTopicsKeepNoIndex() throws Exception {
+        KahaDBStore.KahaDBMessageStore topicStore = store.new KahaDBTopicMessageStore(new ActiveMQTopic("Test"));
+        topicStore.start();
+        List<Message> messages = new ArrayList<Message>();
+        assertFalse(topicStore.recoverExpiredMessages(NOW, 10, new MessageCollector(messages)));
+        assertTrue(messages.isEmpty());
+    }
+
+    private List<Message> recover(long time, int count) throws Exception {
+        List<Message> messages = new ArrayList<Message>();
+        assertTrue(underTest.recoverExpiredMessages(time, count, new MessageCollector(messages)));
+        return messages;
+    }
+
+    private List<Long> ids(List<Message> messages) {
+        List<Long> result = new ArrayList<Long>();
+        for (Message message : messages) {
+            result.add(message.getMessageId().getProducerSequenceId());
+        }
+        return result;
+    }
+}
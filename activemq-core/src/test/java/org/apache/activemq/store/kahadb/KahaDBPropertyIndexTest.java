@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KahaDBPropertyIndexTest {
+
+    private static final int MESSAGE_COUNT = 20;
+
+    KahaDBStore store;
+    ActiveMQQueue destination = new ActiveMQQueue("Test");
+    ProducerId producerId = new ProducerId("1.1.1");
+    File directory = new File("target/activemq-data/kahadb-property-index");
+
+    @Before
+    public void initStore() throws Exception {
+        store = createStore("color");
+        store.setDeleteAllMessages(true);
+        store.start();
+    }
+
+    @After
+    public void destroyStore() throws Exception {
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testOnlyMessagesThatMayMatchAreRecovered() throws Exception {
+        KahaDBStore.KahaDBMessageStore underTest = addMessages();
+        List<Message> messages = recover(underTest, "red", null, MESSAGE_COUNT);
+        assertEquals(reds(), ids(messages));
+    }
+
+    @Test
+    public void testRecoveryCarriesOnAfterTheLastMessage() throws Exception {
+        KahaDBStore.KahaDBMessageStore underTest = addMessages();
+        List<Message> messages = new ArrayList<Message>();
+        MessageId after = null;
+        List<Message> batch;
+        while (!(batch = recover(underTest, "red", after, 2)).isEmpty()) {
+            assertTrue(batch.size() <= 2);
+            messages.addAll(batch);
+            after = batch.get(batch.size() - 1).getMessageId();
+        }
+        assertEquals(reds(), ids(messages));
+    }
+
+    @Test
+    public void testRemovedMessagesAreNoLongerRecovered() throws Exception {
+        KahaDBStore.KahaDBMessageStore underTest = addMessages();
+        MessageAck ack = new MessageAck();
+        ack.setDestination(destination);
+        ack.setLastMessageId(new MessageId(producerId, 1));
+        underTest.removeMessage(new ConnectionContext(), ack);
+
+        List<Long> expected = reds();
+        expected.remove(Long.valueOf(1));
+        assertEquals(expected, ids(recover(underTest, "red", null, MESSAGE_COUNT)));
+    }
+
+    @Test
+    public void testUnindexedPropertiesAreNotRecovered() throws Exception {
+        KahaDBStore.KahaDBMessageStore underTest = addMessages();
+        List<Message> messages = new ArrayList<Message>();
+        assertFalse(underTest.recoverIndexedMessages("shade", "red", null, MESSAGE_COUNT, new MessageCollector(messages)));
+        assertFalse(underTest.recoverIndexedMessages("color", Integer.valueOf(7), null, MESSAGE_COUNT, new MessageCollector(messages)));
+        assertTrue(messages.isEmpty());
+    }
+
+    @Test
+    public void testIndexIsBuiltForExistingMessages() throws Exception {
+        store.stop();
+        store = createStore(null);
+        store.setDeleteAllMessages(true);
+        store.start();
+        KahaDBStore.KahaDBMessageStore underTest = addMessages();
+        assertFalse(underTest.recoverIndexedMessages("color", "red", null, MESSAGE_COUNT, new MessageCollector(new ArrayList<Message>())));
+        store.stop();
+
+        store = createStore("color");
+        store.start();
+        underTest = store.new KahaDBMessageStore(destination);
+        underTest.start();
+        assertEquals(reds(), ids(recover(underTest, "red", null, MESSAGE_COUNT)));
+    }
+
+    private KahaDBStore createStore(String indexedMessageProperties) {
+        KahaDBStore result = new KahaDBStore();
+        result.setDirectory(directory);
+        result.setIndexedMessageProperties(indexedMessageProperties);
+        return result;
+    }
+
+    /**
+     * Adds red and blue messages, along with one that has a number for
+     * a color and one that has none
+     */
+    private KahaDBStore.KahaDBMessageStore addMessages() throws Exception {
+        KahaDBStore.KahaDBMessageStore underTest = store.new KahaDBMessageStore(destination);
+        underTest.start();
+        ConnectionContext context = new ConnectionContext();
+        for (int i = 1; i <= MESSAGE_COUNT; i++) {
+            ActiveMQTextMessage message = new ActiveMQTextMessage();
+            message.setMessageId(new MessageId(producerId, i));
+            message.setDestination(destination);
+            message.setText("message " + i);
+            if (i == 10) {
+                message.setIntProperty("color", 7);
+            } else if (i != 15) {
+                message.setStringProperty("color", i % 4 == 1 ? "red" : "blue");
+            }
+            underTest.addMessage(context, message);
+        }
+        return underTest;
+    }
+
+    /**
+     * @return the messages that may be red
+     */
+    private List<Long> reds() {
+        List<Long> result = new ArrayList<Long>();
+        for (long i = 1; i <= MESSAGE_COUNT; i++) {
+            if (i % 4 == 1 || i == 10) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    private List<Long> ids(List<Message> messages) {
+        List<Long> result = new ArrayList<Long>();
+        for (Message message : messages) {
+            result.add(message.getMessageId().getProducerSequenceId());
+        }
+        return result;
+    }
+
+    private List<Message> recover(KahaDBStore.KahaDBMessageStore underTest, String color, MessageId after, int count) throws Exception {
+        List<Message> messages = new ArrayList<Message>();
+        assertTrue(underTest.recoverIndexedMessages("color", color, after, count, new MessageCollector(messages)));
+        return messages;
+    }
+}
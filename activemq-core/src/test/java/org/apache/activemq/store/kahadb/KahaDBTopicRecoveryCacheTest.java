@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.command.SubscriptionInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class KahaDBTopicRecoveryCacheTest {
+
+    private static final int MESSAGE_COUNT = 20;
+
+    KahaDBStore store;
+    ActiveMQTopic destination = new ActiveMQTopic("Test");
+    ProducerId producerId = new ProducerId("1.1.1");
+
+    @Before
+    public void initStore() throws Exception {
+        store = new KahaDBStore();
+        store.setDeleteAllMessages(true);
+        store.start();
+    }
+
+    @After
+    public void destroyStore() throws Exception {
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testSubscriptionsShareRecoveredMessages() throws Exception {
+        store.setTopicRecoveryCacheSize(1024 * 1024);
+        KahaDBStore.KahaDBTopicMessageStore underTest = createStore();
+        List<Message> first = recover(underTest, "first");
+        List<Message> second = recover(underTest, "second");
+        assertEquals(MESSAGE_COUNT, first.size());
+        assertEquals(MESSAGE_COUNT, second.size());
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+    }
+
+    @Test
+    public void testSubscriptionsCatchingUpTogetherShareASmallCache() throws Exception {
+        KahaDBStore.KahaDBTopicMessageStore underTest = createStore();
+        // room for a little more than a batch of five
+        store.setTopicRecoveryCacheSize(messageSize(underTest) * 6);
+        List<Message> first = new ArrayList<Message>();
+        List<Message> second = new ArrayList<Message>();
+        for (int i = 0; i < MESSAGE_COUNT; i += 5) {
+            first.addAll(recover(underTest, "first", 5));
+            second.addAll(recover(underTest, "second", 5));
+        }
+        assertEquals(MESSAGE_COUNT, second.size());
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+    }
+
+    @Test
+    public void testOnlyTheCacheSizeIsKept() throws Exception {
+        KahaDBStore.KahaDBTopicMessageStore underTest = createStore();
+        store.setTopicRecoveryCacheSize(messageSize(underTest) * 6);
+        List<Message> first = recover(underTest, "first");
+        List<Message> second = recover(underTest, "second");
+        assertEquals(MESSAGE_COUNT, second.size());
+        // the oldest went first
+        assertNotSame(first.get(0), second.get(0));
+        assertEquals(first.get(0).getMessageId(), second.get(0).getMessageId());
+    }
+
+    @Test
+    public void testNothingIsSharedByDefault() throws Exception {
+        assertEquals(0, store.getTopicRecoveryCacheSize());
+        KahaDBStore.KahaDBTopicMessageStore underTest = createStore();
+        List<Message> first = recover(underTest, "first");
+        List<Message> second = recover(underTest, "second");
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            assertNotSame(first.get(i), second.get(i));
+            assertEquals(first.get(i).getMessageId(), second.get(i).getMessageId());
+        }
+    }
+
+    private KahaDBStore.KahaDBTopicMessageStore createStore() throws Exception {
+        KahaDBStore.KahaDBTopicMessageStore underTest = store.new KahaDBTopicMessageStore(destination);
+        underTest.start();
+        for (String name : new String[] {"first", "second"}) {
+            SubscriptionInfo info = new SubscriptionInfo();
+            info.setClientId("client");
+            info.setSubscriptionName(name);
+            info.setDestination(destination);
+            underTest.addSubsciption(info, false);
+        }
+        ConnectionContext context = new ConnectionContext();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            ActiveMQTextMessage message = new ActiveMQTextMessage();
+            message.setMessageId(new MessageId(producerId, i + 1));
+            message.setDestination(destination);
+            message.setText(String.format("message %03d", i));
+            underTest.addMessage(context, message);
+        }
+        return underTest;
+    }
+
+    private int messageSize(KahaDBStore.KahaDBTopicMessageStore underTest) throws Exception {
+        return underTest.getMessage(new MessageId(producerId, 1)).getSize();
+    }
+
+    private List<Message> recover(KahaDBStore.KahaDBTopicMessageStore underTest, String name) throws Exception {
+        return recover(underTest, name, MESSAGE_COUNT);
+    }
+
+    private List<Message> recover(KahaDBStore.KahaDBTopicMessageStore underTest, String name, int count) throws Exception {
+        List<Message> messages = new ArrayList<Message>();
+        underTest.recoverNextMessages("client", name, count, new MessageCollector(messages));
+        return messages;
+    }
+}
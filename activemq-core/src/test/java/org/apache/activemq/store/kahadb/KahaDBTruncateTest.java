@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.kahadb.page.Transaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KahaDBTruncateTest {
+
+    KahaDBStore store;
+    ActiveMQQueue destination = new ActiveMQQueue("Test");
+    ProducerId producerId = new ProducerId("1.1.1");
+    KahaDBStore.KahaDBMessageStore underTest;
+
+    @Before
+    public void initStore() throws Exception {
+        store = new KahaDBStore();
+        store.setDeleteAllMessages(true);
+        store.start();
+        underTest = store.new KahaDBMessageStore(destination);
+        underTest.start();
+    }
+
+    @After
+    public void destroyStore() throws Exception {
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testAllMessagesAreRemoved() throws Exception {
+        addMessages(1, 50);
+        underTest.removeAllMessages(new ConnectionContext());
+        assertEquals(0, underTest.getMessageCount());
+        assertTrue(recover().isEmpty());
+        assertNull(underTest.getMessage(new MessageId(producerId, 1)));
+    }
+
+    @Test
+    public void testDestinationIsUsableAfterwards() throws Exception {
+        addMessages(1, 10);
+        underTest.removeAllMessages(new ConnectionContext());
+        addMessages(11, 13);
+        assertEquals(3, underTest.getMessageCount());
+        assertEquals(Arrays.asList(11L, 12L, 13L), ids(recover()));
+    }
+
+    @Test
+    public void testDetachedIndexesAreFreedByCleanup() throws Exception {
+        addMessages(1, 10);
+        underTest.removeAllMessages(new ConnectionContext());
+        assertEquals(1, countDetachedDestinations());
+        store.checkpointCleanup(true);
+        assertEquals(0, countDetachedDestinations());
+    }
+
+    private void addMessages(int first, int last) throws Exception {
+        ConnectionContext context = new ConnectionContext();
+        for (int i = first; i <= last; i++) {
+            ActiveMQTextMessage message = new ActiveMQTextMessage();
+            message.setMessageId(new MessageId(producerId, i));
+            message.setDestination(destination);
+            message.setText("message " + i);
+            underTest.addMessage(context, message);
+        }
+    }
+
+    private int countDetachedDestinations() throws Exception {
+        store.indexLock.writeLock().lock();
+        try {
+            return store.getPageFile().tx().execute(new Transaction.CallableClosure<Integer, IOException>() {
+                public Integer execute(Transaction tx) throws IOException {
+                    int count = 0;
+                    Iterator<?> iterator = store.metadata.detachedDestinations.iterator(tx);
+                    while (iterator.hasNext()) {
+                        iterator.next();
+                        count++;
+                    }
+                    return count;
+                }
+            });
+        } finally {
+            store.indexLock.writeLock().unlock();
+        }
+    }
+
+    private List<Message> recover() throws Exception {
+        List<Message> messages = new ArrayList<Message>();
+        underTest.recover(new MessageCollector(messages));
+        return messages;
+    }
+
+    private List<Long> ids(List<Message> messages) {
+        List<Long> result = new ArrayList<Long>();
+        for (Message message : messages) {
+            result.add(message.getMessageId().getProducerSequenceId());
+        }
+        return result;
+    }
+}
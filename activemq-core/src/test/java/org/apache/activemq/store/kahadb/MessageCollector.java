@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import java.util.List;
+
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.store.MessageRecoveryListener;
+
+/**
+ * Adds the messages recovered from a store to a list, KahaDB recovers
+ * messages rather than references.
+ */
+public class MessageCollector implements MessageRecoveryListener {
+
+    private final List<Message> messages;
+
+    public MessageCollector(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    public boolean recoverMessage(Message message) throws Exception {
+        messages.add(message);
+        return true;
+    }
+
+    public boolean recoverMessageReference(MessageId ref) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    public boolean hasSpace() {
+        return true;
+    }
+
+    public boolean isDuplicate(MessageId ref) {
+        return false;
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.spool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Iterator;
+
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpoolTest {
+    private SpoolStore store;
+    private Spool spool;
+
+    @Test
+    public void testAddLast() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            spool.addLast("test" + i, data("test" + i));
+        }
+        assertEquals(1000, spool.size());
+        int count = 0;
+        for (Iterator<ByteSequence> i = spool.iterator(); i.hasNext();) {
+            assertEquals("test" + count++, string(i.next()));
+        }
+        assertEquals(1000, count);
+    }
+
+    @Test
+    public void testAddFirst() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            spool.addFirst("test" + i, data("test" + i));
+        }
+        spool.addLast("last", data("last"));
+        assertEquals(1001, spool.size());
+        for (int i = 999; i >= 0; i--) {
+            assertEquals("test" + i, string(spool.removeFirst()));
+        }
+        assertEquals("last", string(spool.removeFirst()));
+        assertNull(spool.removeFirst());
+        assertTrue(spool.isEmpty());
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            spool.addLast("test" + i, data("test" + i));
+        }
+        assertTrue(spool.remove("test50"));
+        assertFalse(spool.remove("test50"));
+        assertTrue(spool.remove("test0"));
+        assertEquals(98, spool.size());
+        assertEquals("test1", string(spool.removeFirst()));
+
+        Iterator<ByteSequence> i = spool.iterator();
+        while (i.hasNext()) {
+            if (string(i.next()).equals("test60")) {
+                i.remove();
+            }
+        }
+        assertEquals(96, spool.size());
+        int count = 0;
+        for (i = spool.iterator(); i.hasNext();) {
+            String value = string(i.next());
+            assertFalse(value.equals("test50") || value.equals("test60"));
+            count++;
+        }
+        assertEquals(96, count);
+    }
+
+    @Test
+    public void testSegmentsAreReused() throws Exception {
+        ByteSequence payload = new ByteSequence(new byte[100]);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 1000; i++) {
+                spool.addLast("test" + i, payload);
+            }
+            while (spool.removeFirst() != null) {
+            }
+        }
+        assertTrue("size " + store.size(), store.size() <= store.getMaxFreeSegments() * store.getSegmentSize());
+        assertEquals(store.size(), totalFileSize());
+    }
+
+    @Test
+    public void testEntryLargerThanSegment() throws Exception {
+        spool.addLast("small", data("small"));
+        spool.addLast("large", new ByteSequence(new byte[store.getSegmentSize() * 3]));
+        spool.addLast("after", data("after"));
+        assertEquals("small", string(spool.removeFirst()));
+        assertEquals(store.getSegmentSize() * 3, spool.removeFirst().getLength());
+        assertEquals("after", string(spool.removeFirst()));
+    }
+
+    @Test
+    public void testOversizedSegmentIsDeletedOnceEmpty() throws Exception {
+        spool.addLast("large", new ByteSequence(new byte[store.getSegmentSize() * 3]));
+        assertEquals(store.getSegmentSize() * 3, spool.removeFirst().getLength());
+        assertTrue("size " + store.size(), store.size() < store.getSegmentSize() * 3);
+        assertEquals(store.size(), totalFileSize());
+
+        spool.addLast("after", data("after"));
+        assertEquals("after", string(spool.removeFirst()));
+    }
+
+    @Test
+    public void testDestroy() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            spool.addLast("test" + i, data("test" + i));
+        }
+        Iterator<ByteSequence> i = spool.iterator();
+        assertTrue(store.removeSpool("main"));
+        assertEquals(0, spool.size());
+        assertFalse("recycled segments are not iterated", i.hasNext());
+        store.stop();
+        assertEquals(0, store.size());
+        assertEquals(0, totalFileSize());
+    }
+
+    private long totalFileSize() {
+        long total = 0;
+        for (File file : store.getDirectory().listFiles()) {
+            total += file.length();
+        }
+        return total;
+    }
+
+    private static ByteSequence data(String value) {
+        return new ByteSequence(value.getBytes());
+    }
+
+    private static String string(ByteSequence bs) {
+        return new String(bs.getData(), bs.getOffset(), bs.getLength());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        File directory = new File("target/test/SpoolStore");
+        IOHelper.mkdirs(directory);
+        IOHelper.deleteChildren(directory);
+        store = new SpoolStore();
+        store.setDirectory(directory);
+        store.setSegmentSize(4 * 1024);
+        store.setMaxFreeSegments(4);
+        store.start();
+        spool = store.getSpool("main");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.stop();
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.thread;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class HashedWheelTimerTest extends TestCase {
+
+    private HashedWheelTimer timer;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        timer = new HashedWheelTimer("test timer", 10, 8);
+        timer.start();
+    }
+
+    protected void tearDown() throws Exception {
+        timer.stop();
+        super.tearDown();
+    }
+
+    public void testNeverFiresEarly() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long[] ranAt = new long[1];
+        long scheduledAt = System.currentTimeMillis();
+        // longer than a full turn of the wheel
+        timer.schedule(new Runnable() {
+            public void run() {
+                ranAt[0] = System.currentTimeMillis();
+                latch.countDown();
+            }
+        }, 250);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue("ran after " + (ranAt[0] - scheduledAt) + "ms", ranAt[0] - scheduledAt >= 250);
+        assertEquals(0, timer.getPendingCount());
+        assertEquals(1, timer.getExpiredCount());
+    }
+
+    public void testPeriodic() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(5);
+        HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }, 20, 20);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, timer.getPendingCount());
+        timeout.cancel();
+        assertEquals(0, timer.getPendingCount());
+        assertTrue(timeout.isCancelled());
+    }
+
+    public void testCancel() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable task = new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+        HashedWheelTimer.Timeout[] timeouts = new HashedWheelTimer.Timeout[100];
+        for (int i = 0; i < timeouts.length; i++) {
+            timeouts[i] = timer.schedule(task, 50);
+        }
+        for (int i = 0; i < timeouts.length; i += 2) {
+            timeouts[i].cancel();
+        }
+        assertEquals(50, timer.getPendingCount());
+        Thread.sleep(300);
+        assertEquals(50, runs.get());
+    }
+
+    public void testReschedule() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long[] ranAt = new long[1];
+        HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable() {
+            public void run() {
+                ranAt[0] = System.currentTimeMillis();
+                latch.countDown();
+            }
+        }, 50);
+        long rescheduledAt = System.currentTimeMillis();
+        timeout.reschedule(200);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(ranAt[0] - rescheduledAt >= 200);
+        assertEquals(1, timer.getExpiredCount());
+    }
+
+    public void testLagIsMeasured() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        timer.schedule(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                }
+                latch.countDown();
+            }
+        }, 10);
+        timer.schedule(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }, 30);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue("max lag " + timer.getMaxTickLag(), timer.getMaxTickLag() >= 50);
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.thread;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class VirtualThreadExecutorTest extends TestCase {
+
+    public void testConcurrentTasksAreLimited() throws Exception {
+        final int limit = 3;
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test", limit);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    int now = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), now));
+                    }
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue("no more than " + limit + " tasks at once: " + maxRunning.get(), maxRunning.get() <= limit);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    public void testRejectsAfterShutdown() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test", 0);
+        executor.shutdown();
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                }
+            });
+            fail("Should have been rejected");
+        } catch (RejectedExecutionException expected) {
+        }
+    }
+
+    public void testTaskRunnerOnVirtualThreads() throws Exception {
+        TaskRunnerFactory factory = new TaskRunnerFactory();
+        factory.setUseVirtualThreads(true);
+        final CountDownLatch ran = new CountDownLatch(1);
+        TaskRunner runner = factory.createTaskRunner(new Task() {
+            public boolean iterate() {
+                ran.countDown();
+                return false;
+            }
+        }, "test");
+        runner.wakeup();
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+        runner.shutdown();
+        factory.shutdown();
+        if (VirtualThreads.isAvailable()) {
+            assertTrue(factory.getExecutor() instanceof VirtualThreadExecutor);
+        } else {
+            assertFalse(factory.getExecutor() instanceof VirtualThreadExecutor);
+        }
+    }
+}
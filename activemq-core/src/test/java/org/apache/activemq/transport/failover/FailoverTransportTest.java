@@ -19,6 +19,7 @@ package org.apache.activemq.transport.failover;
 import org.apache.activemq.command.ConnectionId;
 import org.apache.activemq.command.ConnectionInfo;
 import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageAckBatch;
 import org.apache.activemq.command.RemoveInfo;
 import org.apache.activemq.command.ShutdownInfo;
 import org.apache.activemq.state.ConnectionStateTracker;
@@ -113,6 +114,7 @@ public class FailoverTransportTest {
 		}
 
 		this.transport.oneway(new MessageAck());
+		this.transport.oneway(new MessageAckBatch());
 		this.transport.oneway(new ShutdownInfo());
 	}
 
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.tcp;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.transport.Transport;
+import org.apache.activemq.transport.TransportAcceptListener;
+import org.apache.activemq.transport.TransportFactory;
+import org.apache.activemq.transport.TransportListener;
+import org.apache.activemq.util.Wait;
+
+public class TcpTransportServerTest extends TestCase {
+
+    private TcpTransportServer server;
+    private final List<Transport> transports = new CopyOnWriteArrayList<Transport>();
+    private final List<Exception> acceptErrors = new CopyOnWriteArrayList<Exception>();
+    private final List<Socket> sockets = new ArrayList<Socket>();
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = (TcpTransportServer) TransportFactory.bind(new URI("tcp://localhost:0?maximumConnections=2&handshakePoolSize=2"));
+        server.setAcceptListener(new TransportAcceptListener() {
+            public void onAccept(Transport transport) {
+                try {
+                    transport.setTransportListener(new TransportListener() {
+                        public void onCommand(Object command) {
+                        }
+
+                        public void onException(IOException error) {
+                        }
+
+                        public void transportInterupted() {
+                        }
+
+                        public void transportResumed() {
+                        }
+                    });
+                    transport.start();
+                    transports.add(transport);
+                } catch (Exception e) {
+                    acceptErrors.add(e);
+                }
+            }
+
+            public void onAcceptError(Exception error) {
+                acceptErrors.add(error);
+            }
+        });
+        server.start();
+    }
+
+    protected void tearDown() throws Exception {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        for (Transport transport : transports) {
+            transport.stop();
+        }
+        server.stop();
+        super.tearDown();
+    }
+
+    public void testConnectionsBeyondMaximumAreRejectedOnAccept() throws Exception {
+        connect();
+        connect();
+        assertTrue("both transports started", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return server.getCurrentTransportCount() == 2;
+            }
+        }));
+
+        connect();
+        assertTrue("third connection rejected", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return server.getRejectedConnectionCount() == 1;
+            }
+        }));
+
+        assertEquals(2, server.getAcceptedConnectionCount());
+        assertEquals(0, server.getPendingHandshakeCount());
+        assertEquals(2, transports.size());
+        assertEquals(1, acceptErrors.size());
+        assertTrue(acceptErrors.get(0) instanceof ExceededMaximumConnectionsException);
+    }
+
+    public void testSlotIsFreedWhenTransportStops() throws Exception {
+        connect();
+        connect();
+        assertTrue("both transports started", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return server.getCurrentTransportCount() == 2;
+            }
+        }));
+
+        transports.get(0).stop();
+        assertEquals(1, server.getCurrentTransportCount());
+
+        connect();
+        assertTrue("third connection admitted", Wait.waitFor(new Wait.Condition() {
+            public boolean isSatisified() throws Exception {
+                return server.getAcceptedConnectionCount() == 3 && server.getCurrentTransportCount() == 2;
+            }
+        }));
+        assertEquals(0, server.getRejectedConnectionCount());
+    }
+
+    private void connect() throws Exception {
+        sockets.add(new Socket("localhost", server.getSocketAddress().getPort()));
+    }
+}
@@ -18,9 +18,12 @@
 package org.apache.activemq.usage;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -67,6 +70,74 @@ public class MemoryUsageTest {
         assertEquals("new thread created with listener", activeThreadCount + 1, Thread.activeCount());        
     }
     
+    @Test
+    public final void testConcurrentChangesAreAllCounted() throws Exception {
+        MemoryUsage parent = new MemoryUsage();
+        parent.setExecutor(executor);
+        parent.setLimit(1024 * 1024);
+        underTest = new MemoryUsage(parent, "child");
+        underTest.setExecutor(executor);
+        parent.start();
+        underTest.start();
+
+        final int threads = 8;
+        final CountDownLatch filled = new CountDownLatch(threads);
+        final CountDownLatch drain = new CountDownLatch(1);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.execute(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        underTest.increaseUsage(10);
+                    }
+                    filled.countDown();
+                    try {
+                        drain.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 10000; j++) {
+                        underTest.decreaseUsage(10);
+                    }
+                }
+            });
+        }
+        assertTrue(filled.await(30, TimeUnit.SECONDS));
+        assertEquals(threads * 10000 * 10, underTest.getUsage());
+        assertEquals(threads * 10000 * 10, parent.getUsage());
+        // the percent usage may lag by the pending stripes
+        int percent = (int)(threads * 10000 * 10 * 100L / (1024 * 1024));
+        assertTrue("percent usage " + parent.getPercentUsage(), Math.abs(percent - parent.getPercentUsage()) <= 1);
+
+        drain.countDown();
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(0, underTest.getUsage());
+        assertEquals(0, parent.getUsage());
+        assertEquals(0, parent.getPercentUsage());
+        parent.stop();
+    }
+
+    @Test
+    public final void testFullIsDetectedWithoutLock() throws Exception {
+        underTest.setLimit(1000);
+        underTest.start();
+        underTest.increaseUsage(999);
+        assertFalse(underTest.isFull());
+        underTest.increaseUsage(1);
+        assertTrue(underTest.isFull());
+        assertEquals(100, underTest.getPercentUsage());
+        final CountDownLatch resumed = new CountDownLatch(1);
+        assertTrue(underTest.notifyCallbackWhenNotFull(new Runnable() {
+            public void run() {
+                resumed.countDown();
+            }
+        }));
+        underTest.decreaseUsage(500);
+        assertFalse(underTest.isFull());
+        assertTrue("callback was run", resumed.await(30, TimeUnit.SECONDS));
+    }
+
     @Before
     public void setUp() throws Exception {
         underTest = new MemoryUsage();
@@ -16,6 +16,10 @@
  */
 package org.apache.activemq.util;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.util.Arrays;
 import java.util.Properties;
 
 import junit.framework.TestCase;
@@ -58,4 +62,31 @@ public class MarshallingSupportTest extends TestCase {
         Properties props2 = MarshallingSupport.stringToProperties(str);
         assertEquals(props, props2);
     }
+
+    public void testUTF8EncodingMatchesStream() throws Exception {
+        String text = "ascii \u0000 \u00e9 \u4e2d \ud83d\ude00";
+        ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+        DataOutputStream dataOut = new DataOutputStream(bytesOut);
+        MarshallingSupport.writeUTF8(dataOut, text);
+        dataOut.close();
+        ByteSequence encoded = MarshallingSupport.encodeUTF8(text);
+        assertTrue(Arrays.equals(bytesOut.toByteArray(), encoded.getData()));
+
+        assertEquals(text, MarshallingSupport.readUTF8(encoded));
+        assertEquals(text, MarshallingSupport.readUTF8(new DataInputStream(new ByteArrayInputStream(encoded))));
+
+        // a sequence that starts inside a larger array
+        byte[] padded = new byte[encoded.getLength() + 10];
+        System.arraycopy(encoded.getData(), 0, padded, 5, encoded.getLength());
+        assertEquals(text, MarshallingSupport.readUTF8(new ByteSequence(padded, 5, encoded.getLength())));
+    }
+
+    public void testReadUTF8FromTruncatedSequence() throws Exception {
+        ByteSequence encoded = MarshallingSupport.encodeUTF8("truncated");
+        try {
+            MarshallingSupport.readUTF8(new ByteSequence(encoded.getData(), 0, encoded.getLength() - 1));
+            fail("Should have thrown exception");
+        } catch (EOFException expected) {
+        }
+    }
 }
@@ -404,7 +404,7 @@ public class JavaMarshallingGenerator extends MultiSourceGenerator {
                 out.println("        info." + setter + "(tightUnmarshalByteArray(dataIn, bs));");
             }
         } else if (type.equals("ByteSequence")) {
-            out.println("        info." + setter + "(tightUnmarshalByteSequence(dataIn, bs));");
+            out.println("        info." + setter + "(tightUnmarshalByteSequence(wireFormat, dataIn, bs));");
         } else if (isThrowable(property.getType())) {
             out.println("        info." + setter + "((" + property.getType().getQualifiedName() + ") tightUnmarsalThrowable(wireFormat, dataIn, bs));");
         } else if (isCachedProperty(property)) {
@@ -636,7 +636,7 @@ public class JavaMarshallingGenerator extends MultiSourceGenerator {
                 out.println("        info." + setter + "(looseUnmarshalByteArray(dataIn));");
             }
         } else if (type.equals("ByteSequence")) {
-            out.println("        info." + setter + "(looseUnmarshalByteSequence(dataIn));");
+            out.println("        info." + setter + "(looseUnmarshalByteSequence(wireFormat, dataIn));");
         } else if (isThrowable(property.getType())) {
             out.println("        info." + setter + "((" + property.getType().getQualifiedName() + ") looseUnmarsalThrowable(wireFormat, dataIn));");
         } else if (isCachedProperty(property)) {
@@ -202,6 +202,18 @@ public class BTreeIndex<Key,Value> implements Index<Key,Value> {
         getRoot(tx).clear(tx);
     }
 
+    /**
+     * Clears the index a few pages at a time, for an index too large to be
+     * cleared at once. The entries left are not to be read in between.
+     *
+     * @param maxPages the most pages to free
+     * @return the number of pages freed, less than maxPages once the index
+     *         is down to its root page
+     */
+    synchronized public int clear(Transaction tx, int maxPages) throws IOException {
+        return getRoot(tx).clear(tx, maxPages);
+    }
+
     synchronized public int getMinLeafDepth(Transaction tx) throws IOException {
         return getRoot(tx).getMinLeafDepth(tx, 0);
     }
@@ -663,6 +663,44 @@ public final class BTreeNode<Key,Value> {
     }
 
 
+    /**
+     * Frees the pages below this node, the last ones first, at most max of
+     * them. The node keeps pointing at the ones left, so that the rest can
+     * be freed later on.
+     *
+     * @return the number of pages freed
+     */
+    public int clear(Transaction tx, int max) throws IOException {
+        if (!isBranch()) {
+            return 0;
+        }
+        int freed = 0;
+        int count = children.length;
+        while (count > 0 && freed < max) {
+            BTreeNode<Key, Value> node = index.loadNode(tx, children[count - 1], this);
+            freed += node.clear(tx, max - freed);
+            if (node.isBranch() || freed >= max) {
+                break;
+            }
+            tx.free(node.getPage());
+            freed++;
+            count--;
+        }
+        if (count == 0) {
+            setLeafData(createKeyArray(0), createValueArray(0));
+            next = -1;
+            index.storeNode(tx, this, true);
+        } else if (count < children.length) {
+            Key[] leftKeys = createKeyArray(count - 1);
+            long[] leftChildren = new long[count];
+            System.arraycopy(keys, 0, leftKeys, 0, leftKeys.length);
+            System.arraycopy(children, 0, leftChildren, 0, leftChildren.length);
+            setBranchData(leftKeys, leftChildren);
+            index.storeNode(tx, this, true);
+        }
+        return freed;
+    }
+
     private static <Key,Value> BTreeNode<Key, Value> getLeafNode(Transaction tx, final BTreeNode<Key, Value> node, Key key) throws IOException {
         BTreeNode<Key, Value> current = node;
         while( true ) {
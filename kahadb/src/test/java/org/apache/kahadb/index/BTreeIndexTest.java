@@ -129,6 +129,31 @@ public class BTreeIndexTest extends IndexTestSupport {
         tx.commit();
     }
 
+    public void testClearAFewPagesAtATime() throws Exception {
+        createPageFileAndIndex(100);
+        BTreeIndex<String,Long> index = ((BTreeIndex<String,Long>)this.index);
+        this.index.load(tx);
+        tx.commit();
+        long used = pf.getPageCount() - pf.getFreePageCount();
+
+        doInsert(1000);
+        assertTrue("Depth of tree grew", index.getMaxLeafDepth(tx) > 1);
+
+        int clears = 0;
+        while (index.clear(tx, 10) == 10) {
+            tx.commit();
+            clears++;
+        }
+        tx.commit();
+        assertTrue("Cleared in steps", clears > 1);
+        assertEquals(1, index.getMaxLeafDepth(tx));
+        assertFalse(index.iterator(tx).hasNext());
+        assertEquals(used, pf.getPageCount() - pf.getFreePageCount());
+
+        this.index.unload(tx);
+        tx.commit();
+    }
+
     public void testIteration() throws Exception {
         createPageFileAndIndex(500);
         BTreeIndex<String,Long> index = ((BTreeIndex<String,Long>)this.index);